@@ -5,7 +5,9 @@ import com.deetysoft.exception.MissingPropertyException;
 import com.deetysoft.exception.StringFormatException;
 import com.deetysoft.file.ClasspathFile;
 import com.deetysoft.util.Hierarchy;
+import com.deetysoft.util.HierarchyCache;
 import com.deetysoft.util.HierarchyNode;
+import com.deetysoft.util.HierarchyPath;
 import com.deetysoft.util.StringReplacer;
 import com.deetysoft.util.TokenIndexRetriever;
 
@@ -21,8 +23,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A configuration data utility.
@@ -134,6 +138,9 @@ public class Config
 	// Artificial root of our data, named "root"
 	private HierarchyNode		data;
 
+	// Paths looked up, parsed once. Paths are names in code, so there are few.
+	private final Map<String, HierarchyPath>	paths	= new ConcurrentHashMap<String, HierarchyPath>();
+
 	/**
 	 * Initialize the singleton.
 	 * <p>
@@ -264,6 +271,44 @@ public class Config
 		init (fileNames, dtdNames);
 	}
 
+	/**
+	 * Construct using arrays of XML and DTD file names,
+	 * parsing the files in parallel if asked.
+	 * The data is the same either way.
+	 *
+	 * @param	fileNames		the XML file names
+	 * @param	dtdNames		the DTD file names
+	 * @param	parallel		if true, parse the files in parallel
+	 * @throws	ConfigException	on error
+	 * @see		#Config(String[], String[])
+	 */
+	public  Config (String[] fileNames, String[] dtdNames, boolean parallel) 
+		throws ConfigException
+	{
+		this (fileNames, dtdNames, parallel, null);
+	}
+
+	/**
+	 * Construct using arrays of XML and DTD file names,
+	 * parsing the files in parallel if asked and taking
+	 * unchanged files from the cache if given.
+	 * The data is the same either way.
+	 *
+	 * @param	fileNames		the XML file names
+	 * @param	dtdNames		the DTD file names
+	 * @param	parallel		if true, parse the files in parallel
+	 * @param	cache			the cache or null
+	 * @throws	ConfigException	on error
+	 * @see		#Config(String[], String[])
+	 */
+	public  Config (String[] fileNames, String[] dtdNames, boolean parallel,
+		HierarchyCache cache) 
+		throws ConfigException
+	{
+		listeners = new ArrayList<ConfigListener>();
+		init (fileNames, dtdNames, parallel, cache);
+	}
+
 	/** 
 	 * Convert the given file name into an InputStream.
 	 * This method will first treat fileName as an absolute path, then
@@ -292,6 +337,31 @@ public class Config
 		return new ClasspathFile(fileName).getInputStream();
 	}
 
+	/** 
+	 * Convert the given file name into a File, as
+	 * {@link #getInputStream(String) getInputStream} does
+	 * before looking in the classpath.
+	 *
+	 * @param fileName the file name
+	 * @return the file or null if not found
+	 */
+	private static File getFile (String fileName)
+	{
+		File file = new File(fileName);
+
+		if (file.exists()) {
+			return file;
+		}
+
+		file = new File(System.getProperty("user.dir"), fileName);
+
+		if (file.exists()) {
+			return file;
+		}
+
+		return null;
+	}
+
 	/**
 	 * Get the hierarchical elements for the given path, expanding if necessary.
 	 *
@@ -305,7 +375,21 @@ public class Config
 	public Collection<HierarchyNode>	getElements (String path)
 		throws MissingPropertyException, StringFormatException
 	{
-		return data.getNodesByPath (path);
+		return data.getNodesByPath (getPath (path));
+	}
+
+	/**
+	 * Get the parsed path, parsing it on first use.
+	 */
+	private HierarchyPath getPath (String path)
+	{
+		HierarchyPath hierarchyPath = paths.get (path);
+		if (hierarchyPath == null)
+		{
+			hierarchyPath = new HierarchyPath (path);
+			paths.put (path, hierarchyPath);
+		}
+		return hierarchyPath;
 	}
 
 	/**
@@ -440,7 +524,7 @@ public class Config
 	public String	getValUnexpanded (String path) 
 		throws MissingPropertyException
 	{
-		String result = (String)data.getValue (path);
+		String result = (String)data.getValue (getPath (path));
 
 		if (result == null)
 			throw new MissingPropertyException
@@ -538,11 +622,69 @@ public class Config
 	public void	init (String[] fileNames, String[] dtdNames) 
 		throws ConfigException
 	{
+		init (fileNames, dtdNames, false);
+	}
+
+	/**
+	 * Initialize using arrays of xml and dtd file names,
+	 * parsing the files in parallel if asked.
+	 * The files are still merged in the array order.
+	 *
+	 * @param		fileNames			the xml file names
+	 * @param		dtdNames			the dtd file names
+	 * @param		parallel			if true, parse the files in parallel
+	 * @exception	ConfigException		on error
+	 * @see			#init(String[], String[])
+	 */
+	public void	init (String[] fileNames, String[] dtdNames, boolean parallel) 
+		throws ConfigException
+	{
+		init (fileNames, dtdNames, parallel, null);
+	}
+
+	/**
+	 * Initialize using arrays of xml and dtd file names,
+	 * parsing the files in parallel if asked.
+	 * If a cache is given and every file is found outside the classpath,
+	 * the hierarchy of each unchanged file is taken from the cache.
+	 *
+	 * @param		fileNames			the xml file names
+	 * @param		dtdNames			the dtd file names
+	 * @param		parallel			if true, parse the files in parallel
+	 * @param		cache				the cache or null
+	 * @exception	ConfigException		on error
+	 * @see			#init(String[], String[], boolean)
+	 */
+	public void	init (String[] fileNames, String[] dtdNames, boolean parallel,
+		HierarchyCache cache) 
+		throws ConfigException
+	{
+		if (cache != null) {
+			List<File> xmlFiles = new ArrayList<File>();
+			for (String fileName : fileNames) {
+				File file = getFile(fileName);
+				if (file == null)
+					break;
+				xmlFiles.add(file);
+			}
+			if (xmlFiles.size() == fileNames.length) {
+				try {
+					data = Hierarchy.buildFromXmlFiles(xmlFiles, getDtdUrls(dtdNames),
+						true, parallel, cache);
+				}
+				catch (Exception e) {
+					String errorMsg = "Could not initialize Config.";
+					throw new ConfigException(errorMsg, e);
+				}
+				return;
+			}
+		}
+
+		// Create new list to contain the file names converted to input
+		// streams.
+		List<InputStream> xmlStreams = new ArrayList<InputStream>();
 		try {
-			// Create new list to contain the file names converted to input
-			// streams.
-			List<InputStream> xmlStreams = new ArrayList<InputStream>();
-			List<URL> dtdUrls = new ArrayList<URL>();
+			List<URL> dtdUrls = getDtdUrls(dtdNames);
 
 			// For every (xml,dtd) pair
 			for (int i = 0; i < fileNames.length; i++) {
@@ -557,26 +699,45 @@ public class Config
 				   */
 
 				xmlStreams.add(xmlStream);
-
-				if (dtdNames[i] != null) {
-					if (!dtdNames[i].equals ("null"))
-						dtdUrls.add(new ClasspathFile(dtdNames[i]).getUrl());
-					else
-						dtdUrls.add(null);
-				}
-				else
-				{
-					dtdUrls.add (null);
-				}
-				xmlStream.close();
 			}
 
-			data = Hierarchy.buildFromXml(xmlStreams, dtdUrls, true);
+			data = Hierarchy.buildFromXml(xmlStreams, dtdUrls, true, parallel);
 		}
 		catch (Exception e) {
 			String errorMsg = "Could not initialize Config.";
 			throw new ConfigException(errorMsg, e);
 		}
+		finally {
+			// The streams are read by the build, so close them after.
+			for (InputStream xmlStream : xmlStreams) {
+				try {
+					xmlStream.close();
+				}
+				catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Resolve DTD names into URLs, null for a null name or "null".
+	 *
+	 * @param		dtdNames	the dtd file names
+	 * @return					a URL or null for each name
+	 * @exception	FileNotFoundException	if a DTD is not found
+	 */
+	private static List<URL> getDtdUrls (String[] dtdNames)
+		throws FileNotFoundException
+	{
+		List<URL> dtdUrls = new ArrayList<URL>();
+
+		for (String dtdName : dtdNames) {
+			if (dtdName != null && !dtdName.equals ("null"))
+				dtdUrls.add(new ClasspathFile(dtdName).getUrl());
+			else
+				dtdUrls.add (null);
+		}
+		return dtdUrls;
 	}
 
 	/**
@@ -5,14 +5,21 @@ import com.deetysoft.exception.MissingPropertyException;
 import com.deetysoft.exception.StringFormatException;
 
 import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.Reader;
 import java.net.URL;
 import java.util.Collection;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -226,16 +233,124 @@ public class Hierarchy {
 	 */
 	public static HierarchyNode	buildFromXml (List<InputStream> xmlStreams, List<URL> dtds, boolean replace)  
 	throws IOException, ParserConfigurationException, SAXException {
-		HierarchyNode root = new HierarchyNode ("root");
+		return buildFromXml (xmlStreams, dtds, replace, false);
+	}
 
-		int index = 0;
+	/**
+	 * This method is the same as {@link #buildFromXml(List, List, boolean)}
+	 * except that parameter parallel is defined.
+	 * <p>
+	 * If parallel, the documents are parsed and validated at once on the
+	 * common fork-join pool. The documents are then merged one at a time in
+	 * the given document order, so the hierarchy is the same as when they are
+	 * parsed one at a time. If more than one document fails to parse, the
+	 * exception is that of the first in document order.
+	 *
+	 * @param	xmlStreams	a List of InputStream objects to XML documents
+	 * @param	dtds		a List of URL objects to the DTDs for the XML documents
+	 * @param	replace		if true, replace matching nodes as they are traversed,
+	 * 						otherwise add to the child list
+	 * @param	parallel	if true, parse the documents in parallel
+	 * @return	a {@link com.deetysoft.util.HierarchyNode} named "root" representing
+	 * the root node for the hierarchy
+	 * @throws	IOException						if an IO exception occurs
+	 * @throws	ParserConfigurationException	if an exception occurs in 
+	 *											retrieving the parser
+	 * @throws	SAXException			if an exception occurs during parsing
+	 * @see #buildFromXml(List, List, boolean)
+	 */
+	public static HierarchyNode	buildFromXml (List<InputStream> xmlStreams, List<URL> dtds, boolean replace,
+		boolean parallel)
+	throws IOException, ParserConfigurationException, SAXException {
 
-		for (Iterator<InputStream> i = xmlStreams.iterator(); i.hasNext(); ) {
-			@SuppressWarnings("resource")
-			InputStream xmlStream = i.next();
-			URL dtd = dtds.get(index++);
+		List<DocumentParse> documents = new ArrayList<DocumentParse> ();
+		for (int i = 0; i < xmlStreams.size(); i++) {
+			final InputStream xmlStream = xmlStreams.get(i);
+			final URL dtd = dtds.get(i);
+			documents.add (new DocumentParse () {
+				public HierarchyNode parse ()
+					throws IOException, ParserConfigurationException, SAXException {
+					return buildFromXml(xmlStream, dtd);
+				}
+			});
+		}
+		return build (documents, replace, parallel);
+	}
 
-			HierarchyNode kid = buildFromXml(xmlStream, dtd);
+	/**
+	 * This method is the same as {@link #buildFromXml(List, List, boolean, boolean)}
+	 * for XML files, taking the hierarchy of each file from the cache if given.
+	 * A file not in the cache, or changed since, is parsed and cached.
+	 *
+	 * @param	xmlFiles	a List of XML files
+	 * @param	dtds		a List of URL objects to the DTDs for the XML files
+	 * @param	replace		if true, replace matching nodes as they are traversed,
+	 * 						otherwise add to the child list
+	 * @param	parallel	if true, read the files in parallel
+	 * @param	cache		the cache or null to parse every file
+	 * @return	a {@link com.deetysoft.util.HierarchyNode} named "root" representing
+	 * the root node for the hierarchy
+	 * @throws	IOException						if an IO exception occurs
+	 * @throws	ParserConfigurationException	if an exception occurs in 
+	 *											retrieving the parser
+	 * @throws	SAXException			if an exception occurs during parsing
+	 * @see #buildFromXml(List, List, boolean, boolean)
+	 * @see HierarchyCache
+	 */
+	public static HierarchyNode	buildFromXmlFiles (List<File> xmlFiles, List<URL> dtds, boolean replace,
+		boolean parallel, final HierarchyCache cache)
+	throws IOException, ParserConfigurationException, SAXException {
+
+		List<DocumentParse> documents = new ArrayList<DocumentParse> ();
+		for (int i = 0; i < xmlFiles.size(); i++) {
+			final File xmlFile = xmlFiles.get(i);
+			final URL dtd = dtds.get(i);
+			documents.add (new DocumentParse () {
+				public HierarchyNode parse ()
+					throws IOException, ParserConfigurationException, SAXException {
+					if (cache != null)
+						return cache.get(xmlFile, dtd);
+					InputStream xmlStream = new FileInputStream (xmlFile);
+					try {
+						return buildFromXml(xmlStream, dtd);
+					}
+					finally {
+						xmlStream.close();
+					}
+				}
+			});
+		}
+		return build (documents, replace, parallel);
+	}
+
+	/**
+	 * An XML document to parse into a hierarchy.
+	 */
+	private interface DocumentParse {
+		HierarchyNode parse () throws IOException, ParserConfigurationException, SAXException;
+	}
+
+	/**
+	 * Parse the documents, in parallel if asked, and merge them in order.
+	 */
+	private static HierarchyNode build (List<DocumentParse> documents, boolean replace, boolean parallel)
+	throws IOException, ParserConfigurationException, SAXException {
+		HierarchyNode root = new HierarchyNode ("root");
+
+		if (parallel && documents.size() > 1) {
+			for (HierarchyNode kid : parse (documents)) {
+				if (replace) {
+					merge (root, kid);
+				} else {
+					root.addChild(kid);
+				}
+			}
+			root.compact();
+			return root;
+		}
+
+		for (Iterator<DocumentParse> i = documents.iterator(); i.hasNext(); ) {
+			HierarchyNode kid = i.next().parse();
 
 			if (replace) {
 				merge (root, kid);
@@ -243,10 +358,60 @@ public class Hierarchy {
 				root.addChild(kid);
 			}
 		}
+		root.compact();
 
 		return root;
 	}
 
+	/**
+	 * Parse the documents for {@link #buildFromXml(List, List, boolean, boolean)
+	 * buildFromXml(List, List, boolean, boolean)} on the common fork-join pool.
+	 *
+	 * @return	the hierarchy of each document, in document order
+	 */
+	private static List<HierarchyNode> parse (List<DocumentParse> documents)
+	throws IOException, ParserConfigurationException, SAXException {
+
+		// Each parse returns its hierarchy or the exception it threw.
+		List<Callable<Object>> parses = new ArrayList<Callable<Object>> ();
+		for (final DocumentParse document : documents) {
+			parses.add (new Callable<Object> () {
+				public Object call () {
+					try {
+						return document.parse();
+					} catch (Exception e) {
+						return e;
+					}
+				}
+			});
+		}
+
+		List<HierarchyNode> kids = new ArrayList<HierarchyNode> ();
+		for (Future<Object> future : ForkJoinPool.commonPool().invokeAll(parses)) {
+			Object result;
+			try {
+				result = future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException ("Interrupted parsing XML documents.");
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Error)
+					throw (Error) e.getCause();
+				throw new IOException (e.getCause());
+			}
+			if (result instanceof IOException)
+				throw (IOException) result;
+			if (result instanceof ParserConfigurationException)
+				throw (ParserConfigurationException) result;
+			if (result instanceof SAXException)
+				throw (SAXException) result;
+			if (result instanceof RuntimeException)
+				throw (RuntimeException) result;
+			kids.add ((HierarchyNode) result);
+		}
+		return kids;
+	}
+
 	/**
 	 * Do the merge for {@link #buildFromXml(List, List)
 	 * buildFromXml(List, List)}.
@@ -311,6 +476,7 @@ public class Hierarchy {
 		//System.err.println(nodeName);
 		HierarchyNode node = new HierarchyNode(nodeName);
 		addChildren(node, rootElement, replaceEnvVars);
+		node.compact();
 
 		return node;
 	}
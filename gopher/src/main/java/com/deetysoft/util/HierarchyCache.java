@@ -0,0 +1,362 @@
+package com.deetysoft.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+
+/**
+ * An on-disk cache of the {@link HierarchyNode HierarchyNode} trees parsed from XML files,
+ * so a JVM reading unchanged files does not parse and validate them again.
+ * <p>
+ * An entry is keyed by the file's path, size, modification time and the SHA-256 of its
+ * content, and of the DTD's content. An entry that does not match, or does not read, is
+ * replaced by parsing the file. The entry is a binary file: a string table of the names
+ * and values, then the nodes depth first as varint indexes and child counts. It is read
+ * through a memory-mapped buffer. Entries are written to a temporary file and moved into
+ * place, so JVMs may share the directory. The cache is best effort: if an entry cannot be
+ * written the parsed tree is still returned.
+ * <p>
+ * Only trees parsed without environment variable replacement are cached, as by
+ * {@link Hierarchy#buildFromXmlFiles(List, List, boolean, boolean, HierarchyCache)
+ * Hierarchy.buildFromXmlFiles}.
+ */
+public class HierarchyCache {
+
+	private static final int		MAGIC		= 0x48434831;	// "HCH1"
+	private static final int		VERSION		= 1;
+	private static final String		SUFFIX		= ".hch";
+	private static final Charset	UTF8		= Charset.forName("UTF-8");
+
+	private final File			dir;
+
+	private final AtomicInteger	hits		= new AtomicInteger();
+	private final AtomicInteger	misses		= new AtomicInteger();
+
+	/**
+	 * Construct with the directory of the cache entries, created on the first write.
+	 *
+	 * @param	dir	the directory
+	 */
+	public HierarchyCache (File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * Get the directory of the cache entries.
+	 * @return	the directory
+	 */
+	public File getDir () {
+		return dir;
+	}
+
+	/**
+	 * Get the hierarchy of an XML file, from the cache if the file is unchanged,
+	 * otherwise parsed as by {@link Hierarchy#buildFromXml(InputStream, URL)
+	 * Hierarchy.buildFromXml(InputStream, URL)} and cached.
+	 *
+	 * @param	xmlFile	the XML file
+	 * @param	dtd		a URL to the DTD for the XML file or null
+	 * @return			the hierarchy
+	 * @throws	IOException						on read error
+	 * @throws	ParserConfigurationException	on configuration error
+	 * @throws	SAXException					on SAX parser error
+	 */
+	public HierarchyNode get (File xmlFile, URL dtd)
+		throws IOException, ParserConfigurationException, SAXException {
+
+		String path = xmlFile.getCanonicalPath();
+		long modified = xmlFile.lastModified();
+		byte[] content = Files.readAllBytes(xmlFile.toPath());
+		byte[] hash = sha256 (content);
+		byte[] dtdHash = new byte[32];
+		if (dtd != null) {
+			InputStream dtdStream = dtd.openStream();
+			try {
+				dtdHash = sha256 (readAll (dtdStream));
+			}
+			finally {
+				dtdStream.close();
+			}
+		}
+		Key key = new Key (path, content.length, modified, hash, dtdHash);
+		File entry = new File (dir, hex (sha256 (path.getBytes(UTF8))) + SUFFIX);
+
+		HierarchyNode node = read (entry, key);
+		if (node != null) {
+			hits.incrementAndGet();
+			return node;
+		}
+		misses.incrementAndGet();
+		node = Hierarchy.buildFromXml(new ByteArrayInputStream(content), dtd);
+		write (entry, key, node);
+		return node;
+	}
+
+	/**
+	 * Get the number of trees read from the cache.
+	 * @return	the number of hits
+	 */
+	public int getHits () {
+		return hits.get();
+	}
+
+	/**
+	 * Get the number of files parsed.
+	 * @return	the number of misses
+	 */
+	public int getMisses () {
+		return misses.get();
+	}
+
+	/**
+	 * What an entry must match to be used.
+	 */
+	private static final class Key {
+		final String	path;
+		final long		size;
+		final long		modified;
+		final byte[]	hash;
+		final byte[]	dtdHash;
+
+		Key (String path, long size, long modified, byte[] hash, byte[] dtdHash) {
+			this.path = path;
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+			this.dtdHash = dtdHash;
+		}
+	}
+
+	/**
+	 * Read an entry if it exists and matches the key.
+	 *
+	 * @return	the tree or null
+	 */
+	private static HierarchyNode read (File entry, Key key) {
+
+		if (!entry.isFile())
+			return null;
+		FileChannel channel = null;
+		try {
+			channel = FileChannel.open(entry.toPath(), StandardOpenOption.READ);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+				return null;
+			if (!readString (buffer).equals(key.path) ||
+				buffer.getLong() != key.size || buffer.getLong() != key.modified ||
+				!Arrays.equals(readBytes (buffer, 32), key.hash) ||
+				!Arrays.equals(readBytes (buffer, 32), key.dtdHash))
+				return null;
+
+			int count = readVarint (buffer);
+			String[] strings = new String[count];
+			for (int i = 0; i < count; i++)
+				strings[i] = readString (buffer);
+
+			HierarchyNode root = readNode (buffer, strings);
+			root.compact();
+			return root;
+		}
+		catch (IOException e) {
+			return null;
+		}
+		catch (BufferUnderflowException e) {
+			return null;
+		}
+		catch (IndexOutOfBoundsException e) {
+			return null;
+		}
+		catch (IllegalArgumentException e) {
+			return null;
+		}
+		finally {
+			if (channel != null) {
+				try {
+					channel.close();
+				}
+				catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private static HierarchyNode readNode (ByteBuffer buffer, String[] strings) {
+		String name = strings[readVarint (buffer)];
+		int valueIndex = readVarint (buffer);
+		HierarchyNode node = new HierarchyNode (name, valueIndex == 0 ? null : strings[valueIndex-1]);
+		int children = readVarint (buffer);
+		for (int i = 0; i < children; i++)
+			node.addChild (readNode (buffer, strings));
+		return node;
+	}
+
+	/**
+	 * Write an entry, ignoring errors. A tree with a value that is not a String is not cached.
+	 */
+	private static void write (File entry, Key key, HierarchyNode root) {
+
+		Map<String, Integer> indexes = new HashMap<String, Integer>();
+		List<String> strings = new ArrayList<String>();
+		ByteArrayOutputStream nodes = new ByteArrayOutputStream();
+		File temp = null;
+		try {
+			if (!writeNode (root, indexes, strings, nodes))
+				return;
+			if (!entry.getParentFile().isDirectory() && !entry.getParentFile().mkdirs() &&
+				!entry.getParentFile().isDirectory())
+				return;
+			temp = File.createTempFile(entry.getName(), ".tmp", entry.getParentFile());
+			DataOutputStream out = new DataOutputStream (new BufferedOutputStream (
+				new FileOutputStream (temp), 32768));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeString (out, key.path);
+				out.writeLong(key.size);
+				out.writeLong(key.modified);
+				out.write(key.hash);
+				out.write(key.dtdHash);
+				writeVarint (out, strings.size());
+				for (String s : strings)
+					writeString (out, s);
+				nodes.writeTo(out);
+			}
+			finally {
+				out.close();
+			}
+			try {
+				Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			temp = null;
+		}
+		catch (IOException e) {
+			// The entry is parsed again next time.
+		}
+		finally {
+			if (temp != null)
+				temp.delete();
+		}
+	}
+
+	private static boolean writeNode (HierarchyNode node, Map<String, Integer> indexes,
+		List<String> strings, OutputStream out) throws IOException {
+
+		Object value = node.getValue();
+		if (value != null && !(value instanceof String))
+			return false;
+		writeVarint (out, index (node.getName(), indexes, strings));
+		writeVarint (out, value == null ? 0 : index ((String) value, indexes, strings) + 1);
+		writeVarint (out, node.getChildList().size());
+		for (HierarchyNode child : node.getChildList()) {
+			if (!writeNode (child, indexes, strings, out))
+				return false;
+		}
+		return true;
+	}
+
+	private static int index (String s, Map<String, Integer> indexes, List<String> strings) {
+		Integer index = indexes.get(s);
+		if (index == null) {
+			index = strings.size();
+			indexes.put(s, index);
+			strings.add(s);
+		}
+		return index;
+	}
+
+	private static void writeString (OutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(UTF8);
+		writeVarint (out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString (ByteBuffer buffer) {
+		return new String (readBytes (buffer, readVarint (buffer)), UTF8);
+	}
+
+	private static byte[] readBytes (ByteBuffer buffer, int length) {
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	private static void writeVarint (OutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static int readVarint (ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (value < 0)
+					throw new IllegalArgumentException ("Negative length in cache entry.");
+				return value;
+			}
+		}
+		throw new IllegalArgumentException ("Bad varint in cache entry.");
+	}
+
+	private static byte[] readAll (InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		byte[] buffer = new byte[8192];
+		for (int n = in.read(buffer); n >= 0; n = in.read(buffer))
+			out.write(buffer, 0, n);
+		return out.toByteArray();
+	}
+
+	private static byte[] sha256 (byte[] bytes) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(bytes);
+		}
+		catch (NoSuchAlgorithmException e) {
+			// Every JVM has SHA-256.
+			throw new IllegalStateException (e);
+		}
+	}
+
+	private static String hex (byte[] bytes) {
+		StringBuilder s = new StringBuilder ();
+		for (byte b : bytes)
+			s.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return s.toString();
+	}
+}
@@ -4,7 +4,11 @@ import com.deetysoft.exception.StringFormatException;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 /**
  * This class represents a node in a hierarchy.
@@ -12,6 +16,10 @@ import java.util.Iterator;
  * A <code>HierarchyNode</code> holds a name and either a collection of child 
  * nodes or a value.  A non-leaf node has children and no value, 
  * and a leaf node has a value and no children.
+ * <p>
+ * Trees from large XML files are mostly leaves with a few repeated names,
+ * so names are interned and a leaf allocates no child list.
+ * {@link #compact() compact} trims child lists once a tree is built.
  */
 @SuppressWarnings("serial")
 public class HierarchyNode implements java.io.Serializable {
@@ -30,9 +38,47 @@ public class HierarchyNode implements java.io.Serializable {
 	private HierarchyNode parent;
 
 	/**
-	 * A collection of child nodes.
+	 * A collection of child nodes, null until the first child is added.
+	 */
+	private ArrayList<HierarchyNode> children;
+
+	/**
+	 * The capacity of a child list when the first child is added.
 	 */
-	private Collection<HierarchyNode> children = new ArrayList<HierarchyNode>();
+	private static final int INITIAL_CHILDREN = 4;
+
+	/**
+	 * The number of children from which lookups by name use an index.
+	 */
+	static final int INDEX_THRESHOLD = 8;
+
+	/**
+	 * The children by name, built on the first lookup by name of a node with
+	 * at least {@link #INDEX_THRESHOLD INDEX_THRESHOLD} children.
+	 * Dropped when a child is added.
+	 */
+	private transient volatile NameIndex index;
+
+	/**
+	 * The children by name, in child order, of a given number of children.
+	 */
+	private static final class NameIndex {
+		final int								size;
+		final Map<String, List<HierarchyNode>>	nodes;
+
+		NameIndex (Collection<HierarchyNode> children) {
+			size = children.size();
+			nodes = new HashMap<String, List<HierarchyNode>>();
+			for (HierarchyNode child : children) {
+				List<HierarchyNode> named = nodes.get(child.getName());
+				if (named == null) {
+					named = new ArrayList<HierarchyNode>(1);
+					nodes.put(child.getName(), named);
+				}
+				named.add(child);
+			}
+		}
+	}
 
 	/**
 	* Creates a HierarchyNode with the given name.
@@ -40,7 +86,7 @@ public class HierarchyNode implements java.io.Serializable {
 	* @param name the name for this node
 	*/
 	public HierarchyNode(String name) {
-		this.name = name;
+		this.name = name == null ? null : name.intern();
 	}
 
 	/**
@@ -61,7 +107,10 @@ public class HierarchyNode implements java.io.Serializable {
 	 */
 	public void addChild(HierarchyNode childNode) {
 		childNode.setParent (this);
+		if (children == null)
+			children = new ArrayList<HierarchyNode>(INITIAL_CHILDREN);
 		children.add(childNode);
+		index = null;
 	}
 
 	/**
@@ -85,7 +134,7 @@ public class HierarchyNode implements java.io.Serializable {
 
 		if (!Equals.equals(name, o.name)) return false;
 		if (!Equals.equals(value, o.value)) return false;
-		if (!CollectionEquality.equalityByValue(children, o.children))
+		if (!CollectionEquality.equalityByValue(getChildList(), o.getChildList()))
 			return false;
 
 		return true;
@@ -146,6 +195,17 @@ public class HierarchyNode implements java.io.Serializable {
 	 * @see #getNodesByPath
 	 */
 	public Object getValue (String relNodePath)
+	{
+		return getValue (new HierarchyPath (relNodePath));
+	}
+
+	/**
+	 * Same as {@link #getValue(String) getValue(String)} for a path parsed once.
+	 *
+	 * @param	relNodePath	a relative path of node names to the node of interest
+	 * @return				the value of the node or null if no unique node exists
+	 */
+	public Object getValue (HierarchyPath relNodePath)
 	{
 		Collection<HierarchyNode> nodes = getNodesByPath (relNodePath);
 
@@ -308,14 +368,40 @@ public class HierarchyNode implements java.io.Serializable {
 	 * Returns the child nodes for this node.
 	 *
 	 * @return a Collection of child nodes for this node.  If this node is a 
-	 * leaf node, then this method returns a Collection of size 0.
+	 * leaf node, then this method returns an empty Collection, which becomes
+	 * the node's child list.
 	 * @see #getNodesByName
 	 * @see #getNodeByName
 	 */
 	public Collection<HierarchyNode> getChildren() {
+		if (children == null)
+			children = new ArrayList<HierarchyNode>();
 		return children;
 	}
 
+	/**
+	 * Get the child nodes without giving a leaf a child list.
+	 *
+	 * @return	the children, not to be modified
+	 */
+	Collection<HierarchyNode> getChildList() {
+		if (children == null)
+			return Collections.emptyList();
+		return children;
+	}
+
+	/**
+	 * Trim the child lists of the tree rooted at this node to their size.
+	 * Call once the tree is built.
+	 */
+	public void compact() {
+		if (children == null)
+			return;
+		children.trimToSize();
+		for (HierarchyNode child : children)
+			child.compact();
+	}
+
 	/**
 	 * Get a child node by name and value.
 	 *
@@ -325,20 +411,12 @@ public class HierarchyNode implements java.io.Serializable {
 	 */
 	public HierarchyNode	getChild (String name, Object value)
 	{
-		Iterator<HierarchyNode> i = children.iterator ();
+		Iterator<HierarchyNode> i = getNodesByNameList (name).iterator ();
 
 		while (i.hasNext ())
 		{
 			HierarchyNode n = i.next ();
 
-			String name_ = n.getName();
-
-			if (name == null && name_ != null)
-				continue;
-
-			if (name != null && !name.equals (name_))
-				continue;
-
 			Object value_ = n.getValue ();
 
 			if (value == null && value_ != null)
@@ -419,18 +497,40 @@ public class HierarchyNode implements java.io.Serializable {
 	 * @see #getChildren
 	 */
 	public Collection<HierarchyNode> getNodesByName(String nodeName) {
-		Collection<HierarchyNode> returnNodes = new ArrayList<HierarchyNode>();
+		return new ArrayList<HierarchyNode>(getNodesByNameList(nodeName));
+	}
 
-		if (hasChildren()) {
-			Collection<HierarchyNode> children = getChildren();
-			for (Iterator<HierarchyNode> i = children.iterator(); i.hasNext(); ) {
-				HierarchyNode node = i.next();
-				if (node.getName().equals(nodeName))
+	/**
+	 * Get the children with the given name, in child order, from the index
+	 * if this node has enough children to keep one.
+	 *
+	 * @param nodeName	the name of the child nodes
+	 * @return			the children, not to be modified
+	 */
+	List<HierarchyNode> getNodesByNameList(String nodeName) {
+		if (children == null)
+			return Collections.emptyList();
+		if (children.size() < INDEX_THRESHOLD) {
+			List<HierarchyNode> returnNodes = Collections.emptyList();
+			for (HierarchyNode node : children) {
+				String name_ = node.getName();
+				if (nodeName == null ? name_ == null : nodeName.equals(name_)) {
+					if (returnNodes.isEmpty())
+						returnNodes = new ArrayList<HierarchyNode>(1);
 					returnNodes.add(node);
+				}
 			}
+			return returnNodes;
 		}
 
-		return returnNodes;
+		NameIndex nameIndex = index;
+		// The size also catches children changed through getChildren().
+		if (nameIndex == null || nameIndex.size != children.size()) {
+			nameIndex = new NameIndex (children);
+			index = nameIndex;
+		}
+		List<HierarchyNode> returnNodes = nameIndex.nodes.get(nodeName);
+		return returnNodes == null ? Collections.<HierarchyNode>emptyList() : returnNodes;
 	}
 
 	/**
@@ -474,16 +574,9 @@ public class HierarchyNode implements java.io.Serializable {
 	 * @see #getChildren
 	 */
 	public HierarchyNode getNodeByName(String nodeName) {
-		if (hasChildren()) {
-			Collection<HierarchyNode> children = getChildren();
-			for (Iterator<HierarchyNode> i = children.iterator(); i.hasNext(); ) {
-				HierarchyNode node = i.next();
-				if (node.getName().equals(nodeName))
-					return node;
-			}
-		}
+		List<HierarchyNode> nodes = getNodesByNameList(nodeName);
 
-		return null;
+		return nodes.isEmpty() ? null : nodes.get(0);
 	}
 
 	/**
@@ -516,67 +609,20 @@ public class HierarchyNode implements java.io.Serializable {
 	 */
 	public Collection<HierarchyNode> getNodesByPath (String path) throws StringFormatException
 	{
-		Collection<HierarchyNode> results = new ArrayList<HierarchyNode> ();
-
-		getNodesByPath (this, path, results);
-
-		return results;
+		return getNodesByPath (new HierarchyPath (path));
 	}
 
 	/**
-	 * Get all the nodes under node matching path. Store matching nodes in
-	 * results.
+	 * Same as {@link #getNodesByPath(String) getNodesByPath(String)} for a
+	 * path parsed once.
+	 *
+	 * @param	path					the path to the nodes
+	 * @return							a collection of nodes
+	 * @throws	StringFormatException	if path string is invalid
 	 */
-	private void	getNodesByPath (HierarchyNode node, String path,
-					Collection<HierarchyNode> results) throws StringFormatException
+	public Collection<HierarchyNode> getNodesByPath (HierarchyPath path) throws StringFormatException
 	{
-		if (path == null)
-			return;
-		if (path.equals (""))
-			return;
-
-		int	delimIndex = path.indexOf ('/');
-
-		if (delimIndex == 0)
-		{
-			throw new StringFormatException ("Path '" + path + 
-					"' begins with the '/' character");
-		}
-
-		String	name		= null;
-		String	nextPath	= null;
-
-		if (delimIndex == -1)
-		{
-			name		= path.substring (0,path.length ());
-			nextPath	= "";
-		}
-		else
-		{
-			name		= path.substring (0,delimIndex);
-			nextPath	= path.substring (delimIndex+1,path.length());
-		}
-
-		Collection<HierarchyNode>	kids		= node.getChildren ();
-		Iterator<HierarchyNode>	kidsIterator	= kids.iterator ();
-
-		while (kidsIterator.hasNext ())
-		{
-			HierarchyNode kid = kidsIterator.next ();
-
-			if (kid.getName ().equals (name))
-			{
-				if (nextPath.equals (""))
-				{
-					results.add(kid);
-				}
-				else
-				{
-					if (kid.hasChildren ())
-						getNodesByPath (kid, nextPath, results);
-				}
-			}
-		}
+		return path.getNodes (this);
 	}
 
 	/**
@@ -586,7 +632,7 @@ public class HierarchyNode implements java.io.Serializable {
 	 * <code>false</code> otherwise.
 	 */
 	public boolean hasChildren() {
-		return (!(children.size() == 0));
+		return children != null && !children.isEmpty();
 	}
 
 	/**
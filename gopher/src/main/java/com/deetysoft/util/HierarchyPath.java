@@ -0,0 +1,134 @@
+package com.deetysoft.util;
+
+import com.deetysoft.exception.StringFormatException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A path of node names separated by '/', parsed once for reuse with
+ * {@link HierarchyNode#getNodesByPath(HierarchyPath)
+ * HierarchyNode.getNodesByPath(HierarchyPath)}.
+ * <p>
+ * Matches the same nodes, in the same order, as
+ * {@link HierarchyNode#getNodesByPath(String) HierarchyNode.getNodesByPath(String)},
+ * including throwing {@link StringFormatException StringFormatException} only when a
+ * match reaches a name that begins with '/'.
+ */
+public class HierarchyPath {
+
+	private final String	path;
+
+	// The node names, one for each level.
+	private final String[]	names;
+
+	// The level whose rest of path begins with '/', or -1.
+	private final int		invalidLevel;
+
+	// The rest of the path from the invalid level, for the message.
+	private final String	invalidPath;
+
+	/**
+	 * Parse a path.
+	 *
+	 * @param	path	the path, as for
+	 * 					{@link HierarchyNode#getValue(String) HierarchyNode.getValue(String)}
+	 */
+	public HierarchyPath (String path)
+	{
+		this.path = path;
+
+		List<String>	names		= new ArrayList<String> ();
+		int				invalid		= -1;
+		String			invalidRest	= null;
+		String			rest		= path == null ? "" : path;
+
+		while (!rest.equals (""))
+		{
+			int	delimIndex = rest.indexOf ('/');
+
+			if (delimIndex == 0)
+			{
+				invalid		= names.size ();
+				invalidRest	= rest;
+				break;
+			}
+			if (delimIndex == -1)
+			{
+				names.add (rest);
+				rest = "";
+			}
+			else
+			{
+				names.add (rest.substring (0, delimIndex));
+				rest = rest.substring (delimIndex+1);
+			}
+		}
+
+		this.names			= names.toArray (new String[names.size ()]);
+		this.invalidLevel	= invalid;
+		this.invalidPath	= invalidRest;
+	}
+
+	/**
+	 * Get the path as given.
+	 * @return	the path
+	 */
+	public String getPath ()
+	{
+		return path;
+	}
+
+	/**
+	 * Get all the nodes under node matching this path, in tree order.
+	 *
+	 * @param	node					the node the path is relative to
+	 * @return							a collection of nodes
+	 * @throws	StringFormatException	if a match reaches a name beginning with '/'
+	 */
+	Collection<HierarchyNode> getNodes (HierarchyNode node) throws StringFormatException
+	{
+		Collection<HierarchyNode> results = new ArrayList<HierarchyNode> ();
+
+		getNodes (node, 0, results);
+
+		return results;
+	}
+
+	private void getNodes (HierarchyNode node, int level, Collection<HierarchyNode> results)
+		throws StringFormatException
+	{
+		if (level == invalidLevel)
+		{
+			throw new StringFormatException ("Path '" + invalidPath +
+					"' begins with the '/' character");
+		}
+		if (level == names.length)
+			return;
+
+		boolean last = level == names.length-1 && invalidLevel == -1;
+
+		for (HierarchyNode kid : node.getNodesByNameList (names[level]))
+		{
+			if (last)
+			{
+				results.add (kid);
+			}
+			else
+			{
+				if (kid.hasChildren ())
+					getNodes (kid, level+1, results);
+			}
+		}
+	}
+
+	/**
+	 * Override Object to show the path.
+	 * @return	the path
+	 */
+	public String toString ()
+	{
+		return path;
+	}
+}
@@ -0,0 +1,103 @@
+package com.echostar.gopher.persist;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+/**
+ * A {@link TestRun TestRun} a {@link SuiteInstance SuiteInstance} did not run
+ * because it did not fit in the Suite's time budget.
+ * Written by {@link com.echostar.gopher.testng.SuiteBudget SuiteBudget}.
+ */
+@Entity
+@Table(name="deferred_test_run")
+public class DeferredTestRun {
+
+    private Long			id;
+    private SuiteInstance	suiteInstance;
+    private TestRun			testRun;
+    private Double			value;
+    private Long			expectedDuration;
+    private String			reason;
+
+    public DeferredTestRun () {}
+
+    /**
+     * Construct with all member data.
+     *
+     * @param suiteInstance		the SuiteInstance that deferred the TestRun
+     * @param testRun			the TestRun deferred
+     * @param value				the value of running it
+     * @param expectedDuration	the time in ms it was expected to take
+     * @param reason			why it was deferred
+     */
+    public DeferredTestRun (SuiteInstance suiteInstance, TestRun testRun, Double value,
+    	Long expectedDuration, String reason) {
+    	this.suiteInstance = suiteInstance;
+    	this.testRun = testRun;
+    	this.value = value;
+    	this.expectedDuration = expectedDuration;
+    	this.reason = reason;
+    }
+
+    @Id
+    @GeneratedValue
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    /**
+     * Get the {@link SuiteInstance SuiteInstance} that deferred the TestRun.
+     * @return the SuiteInstance
+     */
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "suite_instance_id")
+    public SuiteInstance getSuiteInstance () { return suiteInstance; }
+    public void setSuiteInstance (SuiteInstance suiteInstance) { this.suiteInstance = suiteInstance; }
+
+    /**
+     * Get the {@link TestRun TestRun} deferred.
+     * @return the TestRun
+     */
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "test_run_id")
+    public TestRun getTestRun () { return testRun; }
+    public void setTestRun (TestRun testRun) { this.testRun = testRun; }
+
+    /**
+     * Get the value of running the TestRun.
+     * @return the value
+     */
+    @Column(name = "run_value", nullable = false)
+    public Double getValue () { return value; }
+    public void setValue (Double value) { this.value = value; }
+
+    /**
+     * Get the time in ms the TestRun was expected to take.
+     * @return the duration
+     */
+    @Column(name = "expected_duration", nullable = false)
+    public Long getExpectedDuration () { return expectedDuration; }
+    public void setExpectedDuration (Long expectedDuration) { this.expectedDuration = expectedDuration; }
+
+    /**
+     * Get why the TestRun was deferred.
+     * @return the reason
+     */
+    @Column(name = "reason")
+    public String getReason () { return reason; }
+    public void setReason (String reason) { this.reason = reason; }
+
+    /**
+	 * Override Object to show the deferral.
+	 * @return	the String
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " (" + id + ", value=" + value +
+			", " + expectedDuration + " ms, " + reason + ")";
+	}
+}
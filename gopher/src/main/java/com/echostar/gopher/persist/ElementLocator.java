@@ -10,6 +10,8 @@ import javax.persistence.ManyToMany;
 import javax.persistence.Table;
 import javax.persistence.Transient;
 
+import com.echostar.gopher.selenium.Locator;
+
 /**
  * A page element locator. 
  * @author charles.young
@@ -115,6 +117,18 @@ public class ElementLocator {
 		return result;
 	}
 
+	/**
+	 * Get the compiled {@link Locator Locator} accepted by
+	 * {@link com.echostar.gopher.selenium.GopherDriver GopherDriverAPI}.
+	 * It is compiled once per id and cached.
+	 *
+	 * @return	the Locator
+	 */
+	@Transient
+	public Locator getCompiledLocator () {
+		return Locator.forElementLocator(this);
+	}
+
 	public static String[] getLocator(ElementLocatorType locatorType, String value) {
 		String[] result = new String[2];
 		
@@ -3,6 +3,7 @@ package com.echostar.gopher.persist;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.hibernate.Session;
 
@@ -217,6 +218,33 @@ public interface GopherData {
 	public TestNode createTestNode (PlatformEnum platform, String nodeIP, String nodePort,
 			String userName, String password, String installDir, String seleniumServer) throws Exception;
 
+	/**
+	 * Create a {@link TestNodeHealth TestNodeHealth} recording one health check of a TestNode.
+	 * @param testNode		the TestNode checked
+	 * @param checkTime		when it was checked
+	 * @param up			if it answered
+	 * @param latency		the time in ms it took to answer or fail
+	 * @param freeSlots		the number of free sessions, -1 if not known
+	 * @param message		why it is down, or null
+	 * @return				a TestNodeHealth
+	 * @throws Exception	on any error
+	 */
+	public TestNodeHealth createTestNodeHealth (TestNode testNode, Date checkTime, boolean up,
+			long latency, int freeSlots, String message) throws Exception;
+
+	/**
+	 * Create a {@link DeferredTestRun DeferredTestRun} recording a TestRun a SuiteInstance did not run.
+	 * @param suiteInstance		the SuiteInstance
+	 * @param testRun			the TestRun
+	 * @param value				the value of running it
+	 * @param expectedDuration	the time in ms it was expected to take
+	 * @param reason			why it was deferred
+	 * @return					a DeferredTestRun
+	 * @throws Exception		on any error
+	 */
+	public DeferredTestRun createDeferredTestRun (SuiteInstance suiteInstance, TestRun testRun,
+		double value, long expectedDuration, String reason) throws Exception;
+
 	/**
 	 * Create a {@link TestRunResult TestRunResult} for a {@link TestCase TestCase}
 	 * 
@@ -270,6 +298,16 @@ public interface GopherData {
 	 */
 	public SuiteInstance createSuiteInstance (Suite suite) throws Exception;
 
+	/**
+	 * Create a SuiteInstance shared by the processes of a run.
+	 * Only one SuiteInstance of a Suite may have a run key: a second throws a ConstraintViolationException.
+	 * @param suite			the Suite of this instance
+	 * @param runKey		the run key or null
+	 * @return				the SuiteInstance
+	 * @throws Exception	on any error
+	 */
+	public SuiteInstance createSuiteInstance (Suite suite, String runKey) throws Exception;
+
 	/**
 	 * Create a TestSuiteInstance.
 	 * @param testSuite		the TestSuite of this instance
@@ -306,6 +344,23 @@ public interface GopherData {
 	 */
 	public List<TestNode> findTestNodes () throws Exception;
 
+	/**
+	 * Find the latest health checks of a TestNode, the latest first.
+	 * @param testNode		the TestNode
+	 * @param maxResults	the maximum number of checks
+	 * @return				the TestNodeHealths
+	 * @throws Exception	on error
+	 */
+	public List<TestNodeHealth> findTestNodeHealth (TestNode testNode, int maxResults) throws Exception;
+
+	/**
+	 * Delete the health checks of all TestNodes made before a time.
+	 * @param before		the time
+	 * @return				the number deleted
+	 * @throws Exception	on error
+	 */
+	public int deleteTestNodeHealth (Date before) throws Exception;
+
 	/**
 	 * Find all the TestCases.
 	 * @return	the TestCases
@@ -339,6 +394,26 @@ public interface GopherData {
 	 */
 	public SuiteInstance findLatestSuiteInstance () throws Exception;
 
+	/**
+	 * Find the latest SuiteInstance of a Suite, leaving out the SuiteInstance of a run key.
+	 *
+	 * @param suiteId		the Suite id
+	 * @param runKey		the run key of the SuiteInstance to leave out, or null
+	 * @return				the latest SuiteInstance or null if none
+	 * @throws Exception	on any error
+	 */
+	public SuiteInstance findLatestSuiteInstance (Long suiteId, String runKey) throws Exception;
+
+	/**
+	 * Find the SuiteInstance of a Suite created for a run key.
+	 *
+	 * @param suiteId		the Suite id
+	 * @param runKey		the run key
+	 * @return				the SuiteInstance or null if not found
+	 * @throws Exception	on any error
+	 */
+	public SuiteInstance findSuiteInstanceByRunKey (Long suiteId, String runKey) throws Exception;
+
 	/**
 	 * Find a {@link TestClass TestClass} by its unique test class name.
 	 * 
@@ -357,6 +432,16 @@ public interface GopherData {
 	 */
 	public List<TestCase> findTestCasesByTestClass (Long testClassId) throws Exception;
 
+	/**
+	 * Find the {@link TestCase TestCases} of every {@link TestClass TestClass}
+	 * in a {@link TestSuite TestSuite} with a single query.
+	 * 
+	 * @param testSuiteId	the TestSuite id
+	 * @return				a List of {@link TestCase TestCase}
+	 * @throws Exception	on error
+	 */
+	public List<TestCase> findTestCasesByTestSuite (Long testSuiteId) throws Exception;
+
 	/**
 	 * Find {@link TestCase TestCases} by name.
 	 * 
@@ -379,6 +464,133 @@ public interface GopherData {
 
 	public List<TestRunResult> findTestRunResultsByTestRun (Long testRunId) throws Exception;
 
+	/**
+	 * Find the durations of the {@link TestRunResult TestRunResults} of every
+	 * {@link TestRun TestRun} in a {@link TestSuite TestSuite} with a single query.
+	 *
+	 * @param testSuiteId	the TestSuite id
+	 * @param since			the earliest start time of a TestRunResult
+	 * @return				map of TestRun id to durations in ms, newest first
+	 * @throws Exception	on any error
+	 */
+	public Map<Long, List<Long>> findTestRunDurationsByTestSuite (Long testSuiteId, Date since) throws Exception;
+
+	/**
+	 * Find the durations of the {@link TestRunResult TestRunResults} of every
+	 * {@link TestRun TestRun} in a {@link TestSuite TestSuite} that started in a period.
+	 *
+	 * @param testSuiteId	the TestSuite id
+	 * @param since			the earliest start time of a TestRunResult
+	 * @param until			the start time TestRunResults started before, or null for none
+	 * @return				map of TestRun id to durations in ms, newest first
+	 * @throws Exception	on any error
+	 */
+	public Map<Long, List<Long>> findTestRunDurationsByTestSuite (Long testSuiteId, Date since,
+		Date until) throws Exception;
+
+	/**
+	 * Find the outcomes of the {@link TestRunResult TestRunResults} of every
+	 * {@link TestRun TestRun} in a {@link TestSuite TestSuite} with a single query.
+	 * The TestRunResults have only their result, start time and end time.
+	 *
+	 * @param testSuiteId	the TestSuite id
+	 * @param since			the earliest start time of a TestRunResult
+	 * @return				map of TestRun id to TestRunResults, newest first
+	 * @throws Exception	on any error
+	 */
+	public Map<Long, List<TestRunResult>> findTestRunOutcomesByTestSuite (Long testSuiteId, Date since) throws Exception;
+
+	/**
+	 * Find the {@link DeferredTestRun DeferredTestRuns} of a {@link SuiteInstance SuiteInstance}.
+	 * @param suiteInstanceId	the SuiteInstance id
+	 * @return					the DeferredTestRuns
+	 * @throws Exception		on any error
+	 */
+	public List<DeferredTestRun> findDeferredTestRuns (Long suiteInstanceId) throws Exception;
+
+	/**
+	 * Find the latest result of every {@link TestRun TestRun} run by a
+	 * {@link SuiteInstance SuiteInstance} or its {@link SuiteInstance#getReruns() reruns}.
+	 *
+	 * @param suiteInstanceId	the SuiteInstance id
+	 * @return					map of TestRun id to its latest result
+	 * @throws Exception		on any error
+	 */
+	public Map<Long, Boolean> findFinalTestRunResults (Long suiteInstanceId) throws Exception;
+
+	/**
+	 * Find the fingerprints of the {@link TestRunResult TestRunResults} of the
+	 * {@link TestRun TestRuns} in a {@link TestSuite TestSuite} that passed when run,
+	 * not from a cache, with a single query.
+	 *
+	 * @param testSuiteId	the TestSuite id
+	 * @param since			the earliest start time of a TestRunResult
+	 * @return				map of fingerprint to the start time of its latest pass
+	 * @throws Exception	on any error
+	 */
+	public Map<String, Date> findPassingFingerprints (Long testSuiteId, Date since) throws Exception;
+
+	/**
+	 * Queue {@link TestRun TestRuns} of a {@link SuiteInstance SuiteInstance} as
+	 * {@link QueuedTestRun QueuedTestRuns}, in order. A TestRun already queued, by this or another
+	 * executor, keeps its place and state.
+	 *
+	 * @param suiteInstanceId	the SuiteInstance id
+	 * @param testRunIds		the TestRun ids
+	 * @return					the number of TestRuns queued
+	 * @throws Exception		on any error
+	 */
+	public int enqueueTestRuns (Long suiteInstanceId, List<Long> testRunIds) throws Exception;
+
+	/**
+	 * Claim up to max {@link QueuedTestRun QueuedTestRuns} of a {@link SuiteInstance SuiteInstance}
+	 * that are pending or whose lease expired, in queue order.
+	 * Each is claimed by a conditional update, so two executors never claim the same one.
+	 * The TestRuns read are locked until the commit, so another executor claiming at the same
+	 * time waits for it. Commit before the claims are seen by other executors.
+	 *
+	 * @param suiteInstanceId	the SuiteInstance id
+	 * @param testRunIds		the TestRun ids to claim from
+	 * @param owner				the executor claiming
+	 * @param max				the most TestRuns to claim
+	 * @param now				the current time
+	 * @param leaseUntil		when the leases expire
+	 * @return					the ids of the TestRuns claimed, in queue order
+	 * @throws Exception		on any error
+	 */
+	public List<Long> claimQueuedTestRuns (Long suiteInstanceId, Collection<Long> testRunIds,
+		String owner, int max, Date now, Date leaseUntil) throws Exception;
+
+	/**
+	 * Extend the leases of the {@link QueuedTestRun QueuedTestRuns} an executor claimed and has not done.
+	 *
+	 * @param owner				the executor
+	 * @param leaseUntil		when the leases expire
+	 * @return					the number of leases renewed
+	 * @throws Exception		on any error
+	 */
+	public int renewQueuedTestRuns (String owner, Date leaseUntil) throws Exception;
+
+	/**
+	 * Mark a {@link QueuedTestRun QueuedTestRun} done, if the executor still holds it.
+	 *
+	 * @param suiteInstanceId	the SuiteInstance id
+	 * @param testRunId			the TestRun id
+	 * @param owner				the executor
+	 * @return					false if the lease was lost to another executor
+	 * @throws Exception		on any error
+	 */
+	public boolean completeQueuedTestRun (Long suiteInstanceId, Long testRunId, String owner) throws Exception;
+
+	/**
+	 * Return the {@link QueuedTestRun QueuedTestRuns} an executor claimed and has not done to the queue.
+	 *
+	 * @param owner				the executor
+	 * @return					the number released
+	 * @throws Exception		on any error
+	 */
+	public int releaseQueuedTestRuns (String owner) throws Exception;
+
 	/**
 	 * Find a {@link TestDataType TestDataType} by id.
 	 * 
@@ -18,4 +18,22 @@ public class GopherDataFactory {
 	public static GopherData getGopherData () {
 		return new GopherDataImpl();
 	}
+
+	/**
+	 * Start preparing the persistence layer in the background so the first
+	 * {@link #getGopherData() getGopherData} is fast.
+	 * @see GopherDataImpl#warmUp()
+	 */
+	public static void warmUp () {
+		GopherDataImpl.warmUp();
+	}
+
+	/**
+	 * Get a description of the database connection pool.
+	 * @return	the pool status
+	 * @see GopherDataImpl#getConnectionPoolStatus()
+	 */
+	public static String getConnectionPoolStatus () {
+		return GopherDataImpl.getConnectionPoolStatus();
+	}
 }
@@ -4,16 +4,22 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.hibernate.Query;
+import org.hibernate.SQLQuery;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
 import org.hibernate.cfg.Configuration;
 
+import com.mchange.v2.c3p0.C3P0Registry;
+import com.mchange.v2.c3p0.PooledDataSource;
+
 import com.echostar.gopher.util.Config;
 
 /**
@@ -61,18 +67,101 @@ public class GopherDataImpl implements GopherData {
 	 */
 	public static final String HIBERNATE_CONFIG_FILE_NAME_PROP = "hibernate.config.fileName";
 
+	// Thread building the SessionFactory ahead of first use, if any.
+	private static Thread			warmUpThread;
+
+	// The most rows in one INSERT of enqueueTestRuns, to stay within the bind parameter
+	// and packet limits of the driver.
+	static final int				ENQUEUE_CHUNK = 500;
+
 	static {
 		rootLog = Logger.getRootLogger();
+	}
+
+	/**
+	 * Get the shared Hibernate SessionFactory, building it on first use.
+	 * Building it configures Hibernate and starts the connection pool,
+	 * so the first call is slow. Every later call returns the same SessionFactory.
+	 *
+	 * @return	the SessionFactory
+	 */
+	public static synchronized SessionFactory getSessionFactory () {
+
+		if (hibernateSessionFactory == null) {
+			long start = System.currentTimeMillis();
+
+			Configuration config = new Configuration();
+
+			String hibernateConfigDir = getHibernateConfigDir();
 
-		hibernateConfig = new Configuration();
+			String hibernateConfigFileName = getHibernateConfigFileName();
 
-		String hibernateConfigDir = getHibernateConfigDir();
+			config.configure (new File(hibernateConfigDir+"/"+hibernateConfigFileName));
+			StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder().applySettings(config.getProperties());
+			hibernateSessionFactory = config.buildSessionFactory(ssrb.build());
+			hibernateConfig = config;
+
+			rootLog.debug("Built Hibernate SessionFactory in "+
+				(System.currentTimeMillis()-start)+" ms.");
+		}
+		return hibernateSessionFactory;
+	}
+
+	/**
+	 * Start building the SessionFactory in a background thread and return.
+	 * Call this early, e.g. while the Selenium grid starts,
+	 * so the first {@link GopherDataFactory#getGopherData() getGopherData} does not wait as long.
+	 */
+	public static synchronized void warmUp () {
+
+		if (hibernateSessionFactory != null || warmUpThread != null) {
+			return;
+		}
+		warmUpThread = new Thread("GopherDataImpl-warmUp") {
+			@Override
+			public void run () {
+				try {
+					getSessionFactory ();
+				} catch (Throwable t) {
+					// Let the first real use report the error.
+					rootLog.warn("Warming up the Hibernate SessionFactory failed: "+t.getMessage());
+				}
+			}
+		};
+		warmUpThread.setDaemon(true);
+		warmUpThread.start();
+	}
 
-		String hibernateConfigFileName = getHibernateConfigFileName();
+	/**
+	 * Get a description of the connection pool:
+	 * the number of connections, how many are busy and idle,
+	 * and how many threads are waiting for a connection.
+	 *
+	 * @return	the pool status, or a message saying there is no pool
+	 */
+	public static String getConnectionPoolStatus () {
 
-        hibernateConfig.configure (new File(hibernateConfigDir+"/"+hibernateConfigFileName));
-		StandardServiceRegistryBuilder ssrb = new StandardServiceRegistryBuilder().applySettings(hibernateConfig.getProperties());
-		hibernateSessionFactory = hibernateConfig.buildSessionFactory(ssrb.build());
+		StringBuilder sb = new StringBuilder();
+		try {
+			for (Object o : C3P0Registry.getPooledDataSources()) {
+				PooledDataSource pds = (PooledDataSource) o;
+				if (sb.length() > 0) {
+					sb.append("\n");
+				}
+				sb.append(pds.getDataSourceName())
+					.append(" connections=").append(pds.getNumConnectionsDefaultUser())
+					.append(" busy=").append(pds.getNumBusyConnectionsDefaultUser())
+					.append(" idle=").append(pds.getNumIdleConnectionsDefaultUser())
+					.append(" waiting=").append(pds.getNumThreadsAwaitingCheckoutDefaultUser())
+					.append(" unclosedOrphaned=").append(pds.getNumUnclosedOrphanedConnectionsDefaultUser());
+			}
+		} catch (Exception e) {
+			return "Connection pool status not available: "+e.getMessage();
+		}
+		if (sb.length() == 0) {
+			return "No connection pool.";
+		}
+		return sb.toString();
 	}
 
 	/**
@@ -124,7 +213,7 @@ public class GopherDataImpl implements GopherData {
 	}
 
 	public GopherDataImpl () {
-		hibernateSession = hibernateSessionFactory.openSession();		
+		hibernateSession = getSessionFactory().openSession();
 	}
 
 	public Session getHibernateSession () {
@@ -151,6 +240,10 @@ public class GopherDataImpl implements GopherData {
 	    query.executeUpdate();
 	    query = hibernateSession.createQuery("DELETE FROM TestDataType");
 	    query.executeUpdate();
+	    query = hibernateSession.createQuery("DELETE FROM QueuedTestRun");
+	    query.executeUpdate();
+	    query = hibernateSession.createQuery("DELETE FROM DeferredTestRun");
+	    query.executeUpdate();
 	    query = hibernateSession.createQuery("DELETE FROM TestRunResult");
 	    query.executeUpdate();
 	    query = hibernateSession.createQuery("DELETE FROM TestSuiteInstance");
@@ -159,6 +252,8 @@ public class GopherDataImpl implements GopherData {
 	    query.executeUpdate();
 	    query = hibernateSession.createQuery("DELETE FROM TestRun");
 	    query.executeUpdate();
+	    query = hibernateSession.createQuery("DELETE FROM TestNodeHealth");
+	    query.executeUpdate();
 	    query = hibernateSession.createQuery("DELETE FROM TestNode");
 	    query.executeUpdate();
 	    query = hibernateSession.createQuery("DELETE FROM TestClassDecorator");
@@ -366,6 +461,32 @@ public class GopherDataImpl implements GopherData {
 		return testNode;
 	}
 
+	/**
+	 * Implement {@link GopherData#createTestNodeHealth(TestNode, Date, boolean, long, int, String) GopherData}.
+	 */
+	public TestNodeHealth createTestNodeHealth (TestNode testNode, Date checkTime, boolean up,
+		long latency, int freeSlots, String message) throws Exception {
+
+		TestNodeHealth testNodeHealth = new TestNodeHealth (testNode, checkTime, up,
+			latency, freeSlots, message);
+		Long id = (Long) hibernateSession.save(testNodeHealth);
+		testNodeHealth.setId(id);
+		return testNodeHealth;
+	}
+
+	/**
+	 * Implement {@link GopherData#createDeferredTestRun(SuiteInstance, TestRun, double, long, String) GopherData}.
+	 */
+	public DeferredTestRun createDeferredTestRun (SuiteInstance suiteInstance, TestRun testRun,
+		double value, long expectedDuration, String reason) throws Exception {
+
+		DeferredTestRun deferredTestRun = new DeferredTestRun (suiteInstance, testRun, value,
+			expectedDuration, reason);
+		Long id = (Long) hibernateSession.save(deferredTestRun);
+		deferredTestRun.setId(id);
+		return deferredTestRun;
+	}
+
 	/**
 	 * Implement {@link GopherData#createTestRunResult(boolean, String, Date, Date, String, TestRun, SuiteInstance, TestSuiteInstance) GopherData}.
 	 */
@@ -415,9 +536,17 @@ public class GopherDataImpl implements GopherData {
 	}
 
 	public SuiteInstance createSuiteInstance (Suite suite) throws Exception {
+		return createSuiteInstance (suite, null);
+	}
+
+	/**
+	 * Implement {@link GopherData#createSuiteInstance(Suite, String) GopherData}.
+	 */
+	public SuiteInstance createSuiteInstance (Suite suite, String runKey) throws Exception {
 		Date d1 = new Date();
 		Date d2 = null;
 		SuiteInstance suiteInstance = new SuiteInstance (d1, d2, suite);
+		suiteInstance.setRunKey (runKey);
 		Long id = (Long) hibernateSession.save(suiteInstance);
 		suiteInstance.setId (id);
 
@@ -479,6 +608,31 @@ public class GopherDataImpl implements GopherData {
 		return results;
 	}
 
+	/**
+	 * Implement {@link GopherData#findTestNodeHealth(TestNode, int) GopherData}.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<TestNodeHealth> findTestNodeHealth (TestNode testNode, int maxResults) throws Exception {
+
+		Query query = hibernateSession.createQuery(
+			"FROM TestNodeHealth WHERE testNode.id = :testNodeId ORDER BY checkTime DESC");
+		query.setParameter("testNodeId", testNode.getId());
+		query.setMaxResults(maxResults);
+		@SuppressWarnings("rawtypes")
+	    List results = query.list();
+		return results;
+	}
+
+	/**
+	 * Implement {@link GopherData#deleteTestNodeHealth(Date) GopherData}.
+	 */
+	public int deleteTestNodeHealth (Date before) throws Exception {
+
+		Query query = hibernateSession.createQuery("DELETE FROM TestNodeHealth WHERE checkTime < :before");
+		query.setParameter("before", before);
+		return query.executeUpdate();
+	}
+
 	/**
 	 * Implement {@link GopherData#findTestCases() GopherData}.
 	 */
@@ -548,6 +702,18 @@ public class GopherDataImpl implements GopherData {
 		return results;
 	}
 
+	/**
+	 * Implement {@link GopherData#findTestCasesByTestSuite(Long) GopherData}.
+	 */
+	public List<TestCase> findTestCasesByTestSuite (Long testSuiteId) throws Exception {
+
+		Query query = hibernateSession.createQuery("FROM TestCase WHERE testClass.id IN "+
+			"(SELECT c.id FROM TestSuite s JOIN s.testClasses c WHERE s.id="+testSuiteId+")");
+	    @SuppressWarnings("unchecked")
+        List<TestCase> results = query.list();
+		return results;
+	}
+
 	/**
 	 * Implement {@link GopherData#findTestCasesByName(String) GopherData}.
 	 */
@@ -570,6 +736,237 @@ public class GopherDataImpl implements GopherData {
 		return results;
 	}
 
+	/**
+	 * Implement {@link GopherData#findTestRunDurationsByTestSuite(Long, Date) GopherData}.
+	 */
+	public Map<Long, List<Long>> findTestRunDurationsByTestSuite (Long testSuiteId, Date since) throws Exception {
+		return findTestRunDurationsByTestSuite (testSuiteId, since, null);
+	}
+
+	/**
+	 * Implement {@link GopherData#findTestRunDurationsByTestSuite(Long, Date, Date) GopherData}.
+	 */
+	public Map<Long, List<Long>> findTestRunDurationsByTestSuite (Long testSuiteId, Date since,
+		Date until) throws Exception {
+
+		Query query = hibernateSession.createQuery(
+			"SELECT r.testRun.id, r.startTime, r.endTime FROM TestRunResult r "+
+			"WHERE r.startTime >= :since "+(until == null ? "" : "AND r.startTime < :until ")+
+			"AND r.testRun.testCase.testClass.id IN "+
+			"(SELECT c.id FROM TestSuite s JOIN s.testClasses c WHERE s.id = :testSuiteId) "+
+			"ORDER BY r.startTime DESC");
+		query.setParameter("since", since);
+		if (until != null) {
+			query.setParameter("until", until);
+		}
+		query.setParameter("testSuiteId", testSuiteId);
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = query.list();
+		Map<Long, List<Long>> durations = new HashMap<Long, List<Long>>();
+		for (Object[] row : rows) {
+			Date startTime = (Date) row[1];
+			Date endTime = (Date) row[2];
+			if (startTime == null || endTime == null) {
+				continue;
+			}
+			List<Long> testRunDurations = durations.get(row[0]);
+			if (testRunDurations == null) {
+				testRunDurations = new ArrayList<Long>();
+				durations.put((Long) row[0], testRunDurations);
+			}
+			testRunDurations.add(endTime.getTime() - startTime.getTime());
+		}
+		return durations;
+	}
+
+	/**
+	 * Implement {@link GopherData#findTestRunOutcomesByTestSuite(Long, Date) GopherData}.
+	 */
+	public Map<Long, List<TestRunResult>> findTestRunOutcomesByTestSuite (Long testSuiteId, Date since) throws Exception {
+
+		Query query = hibernateSession.createQuery(
+			"SELECT r.testRun.id, r.result, r.startTime, r.endTime FROM TestRunResult r "+
+			"WHERE r.startTime >= :since AND r.testRun.testCase.testClass.id IN "+
+			"(SELECT c.id FROM TestSuite s JOIN s.testClasses c WHERE s.id = :testSuiteId) "+
+			"ORDER BY r.startTime DESC");
+		query.setParameter("since", since);
+		query.setParameter("testSuiteId", testSuiteId);
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = query.list();
+		Map<Long, List<TestRunResult>> outcomes = new HashMap<Long, List<TestRunResult>>();
+		for (Object[] row : rows) {
+			TestRunResult testRunResult = new TestRunResult ();
+			testRunResult.setResult((Boolean) row[1]);
+			testRunResult.setStartTime((Date) row[2]);
+			testRunResult.setEndTime((Date) row[3]);
+			List<TestRunResult> testRunOutcomes = outcomes.get(row[0]);
+			if (testRunOutcomes == null) {
+				testRunOutcomes = new ArrayList<TestRunResult>();
+				outcomes.put((Long) row[0], testRunOutcomes);
+			}
+			testRunOutcomes.add(testRunResult);
+		}
+		return outcomes;
+	}
+
+	/**
+	 * Implement {@link GopherData#findDeferredTestRuns(Long) GopherData}.
+	 */
+	public List<DeferredTestRun> findDeferredTestRuns (Long suiteInstanceId) throws Exception {
+
+		Query query = hibernateSession.createQuery(
+			"FROM DeferredTestRun WHERE suiteInstance.id = :suiteInstanceId ORDER BY value DESC");
+		query.setParameter("suiteInstanceId", suiteInstanceId);
+		@SuppressWarnings("unchecked")
+		List<DeferredTestRun> results = query.list();
+		return results;
+	}
+
+	/**
+	 * Implement {@link GopherData#findFinalTestRunResults(Long) GopherData}.
+	 */
+	public Map<Long, Boolean> findFinalTestRunResults (Long suiteInstanceId) throws Exception {
+
+		Query query = hibernateSession.createQuery(
+			"SELECT r.testRun.id, r.result FROM TestRunResult r JOIN r.suiteInstance s "+
+			"WHERE s.id = :suiteInstanceId OR s.rerunOf.id = :suiteInstanceId "+
+			"ORDER BY r.startTime");
+		query.setParameter("suiteInstanceId", suiteInstanceId);
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = query.list();
+		Map<Long, Boolean> results = new HashMap<Long, Boolean>();
+		for (Object[] row : rows) {
+			// The latest result wins.
+			results.put((Long) row[0], (Boolean) row[1]);
+		}
+		return results;
+	}
+
+	/**
+	 * Implement {@link GopherData#findPassingFingerprints(Long, Date) GopherData}.
+	 */
+	public Map<String, Date> findPassingFingerprints (Long testSuiteId, Date since) throws Exception {
+
+		Query query = hibernateSession.createQuery(
+			"SELECT r.fingerprint, MAX(r.startTime) FROM TestRunResult r "+
+			"WHERE r.fingerprint IS NOT NULL AND r.result = true AND r.startTime >= :since "+
+			"AND (r.cached IS NULL OR r.cached = false) AND r.testRun.testCase.testClass.id IN "+
+			"(SELECT c.id FROM TestSuite s JOIN s.testClasses c WHERE s.id = :testSuiteId) "+
+			"GROUP BY r.fingerprint");
+		query.setParameter("since", since);
+		query.setParameter("testSuiteId", testSuiteId);
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = query.list();
+		Map<String, Date> fingerprints = new HashMap<String, Date>();
+		for (Object[] row : rows) {
+			fingerprints.put((String) row[0], (Date) row[1]);
+		}
+		return fingerprints;
+	}
+
+	/**
+	 * Implement {@link GopherData#enqueueTestRuns(Long, List) GopherData}.
+	 * The unique key on suite_instance_id and test_run_id makes INSERT IGNORE skip TestRuns
+	 * already queued, even by an executor inserting at the same time.
+	 * The TestRuns are inserted {@link #ENQUEUE_CHUNK ENQUEUE_CHUNK} at a time, in order.
+	 */
+	public int enqueueTestRuns (Long suiteInstanceId, List<Long> testRunIds) throws Exception {
+
+		int queued = 0;
+		for (int from = 0; from < testRunIds.size(); from += ENQUEUE_CHUNK) {
+			List<Long> chunk = testRunIds.subList(from, Math.min(from + ENQUEUE_CHUNK, testRunIds.size()));
+			StringBuilder sql = new StringBuilder(
+				"INSERT IGNORE INTO test_run_queue (suite_instance_id, test_run_id, done, claims) VALUES ");
+			for (int i = 0; i < chunk.size(); i++) {
+				sql.append(i == 0 ? "" : ", ").append("(:suiteInstanceId, :testRunId").append(i).append(", 0, 0)");
+			}
+			SQLQuery query = hibernateSession.createSQLQuery(sql.toString());
+			query.setParameter("suiteInstanceId", suiteInstanceId);
+			for (int i = 0; i < chunk.size(); i++) {
+				query.setParameter("testRunId"+i, chunk.get(i));
+			}
+			queued += query.executeUpdate();
+		}
+		return queued;
+	}
+
+	/**
+	 * Implement {@link GopherData#claimQueuedTestRuns(Long, Collection, String, int, Date, Date) GopherData}.
+	 * The candidates are read with SELECT ... FOR UPDATE. A locking read sees the rows as last
+	 * committed, not the transaction's snapshot, and holds them until the commit, so an executor
+	 * claiming at the same time waits and then reads past them.
+	 * Each is still claimed only if it is claimable.
+	 */
+	public List<Long> claimQueuedTestRuns (Long suiteInstanceId, Collection<Long> testRunIds,
+		String owner, int max, Date now, Date leaseUntil) throws Exception {
+
+		List<Long> claimed = new ArrayList<Long>();
+		if (max <= 0 || testRunIds.isEmpty()) {
+			return claimed;
+		}
+		SQLQuery select = hibernateSession.createSQLQuery(
+			"SELECT id, test_run_id FROM test_run_queue WHERE suite_instance_id = :suiteInstanceId "+
+			"AND test_run_id IN (:testRunIds) AND done = 0 AND (owner IS NULL OR lease_until < :now) "+
+			"ORDER BY id LIMIT "+max+" FOR UPDATE");
+		select.setParameter("suiteInstanceId", suiteInstanceId);
+		select.setParameterList("testRunIds", testRunIds);
+		select.setTimestamp("now", now);
+		Query update = hibernateSession.createQuery(
+			"UPDATE QueuedTestRun q SET q.owner = :owner, q.leaseUntil = :leaseUntil, "+
+			"q.claims = q.claims + 1 WHERE q.id = :id AND q.done = false AND "+
+			"(q.owner IS NULL OR q.leaseUntil < :now)");
+		update.setParameter("owner", owner);
+		update.setParameter("leaseUntil", leaseUntil);
+		update.setParameter("now", now);
+
+		@SuppressWarnings("unchecked")
+		List<Object[]> candidates = select.list();
+		for (Object[] candidate : candidates) {
+			update.setParameter("id", ((Number) candidate[0]).longValue());
+			if (update.executeUpdate() == 1) {
+				claimed.add(((Number) candidate[1]).longValue());
+			}
+		}
+		return claimed;
+	}
+
+	/**
+	 * Implement {@link GopherData#renewQueuedTestRuns(String, Date) GopherData}.
+	 */
+	public int renewQueuedTestRuns (String owner, Date leaseUntil) throws Exception {
+
+		Query query = hibernateSession.createQuery(
+			"UPDATE QueuedTestRun SET leaseUntil = :leaseUntil WHERE owner = :owner AND done = false");
+		query.setParameter("leaseUntil", leaseUntil);
+		query.setParameter("owner", owner);
+		return query.executeUpdate();
+	}
+
+	/**
+	 * Implement {@link GopherData#completeQueuedTestRun(Long, Long, String) GopherData}.
+	 */
+	public boolean completeQueuedTestRun (Long suiteInstanceId, Long testRunId, String owner) throws Exception {
+
+		Query query = hibernateSession.createQuery(
+			"UPDATE QueuedTestRun SET done = true WHERE suiteInstance.id = :suiteInstanceId "+
+			"AND testRun.id = :testRunId AND owner = :owner");
+		query.setParameter("suiteInstanceId", suiteInstanceId);
+		query.setParameter("testRunId", testRunId);
+		query.setParameter("owner", owner);
+		return query.executeUpdate() == 1;
+	}
+
+	/**
+	 * Implement {@link GopherData#releaseQueuedTestRuns(String) GopherData}.
+	 */
+	public int releaseQueuedTestRuns (String owner) throws Exception {
+
+		Query query = hibernateSession.createQuery(
+			"UPDATE QueuedTestRun SET owner = null, leaseUntil = null WHERE owner = :owner AND done = false");
+		query.setParameter("owner", owner);
+		return query.executeUpdate();
+	}
+
 	/**
 	 * Implement {@link GopherData#findTestRunResultsBySuiteInstance(Long) GopherData}.
 	 */
@@ -611,8 +1008,8 @@ public class GopherDataImpl implements GopherData {
 	 */
 	public SuiteInstance findLatestSuiteInstance () throws Exception {
 
-		// TBD - do not get them all.
 		Query query = hibernateSession.createQuery("FROM SuiteInstance ORDER BY start_time DESC");
+		query.setMaxResults(1);
 		@SuppressWarnings({ "unchecked" })
 	    List<SuiteInstance> results = query.list();
 		if (results.size() == 0) {
@@ -621,6 +1018,39 @@ public class GopherDataImpl implements GopherData {
 		return results.get(0);
 	}
 
+	/**
+	 * Implement {@link GopherData#findLatestSuiteInstance(Long, String) GopherData}.
+	 */
+	public SuiteInstance findLatestSuiteInstance (Long suiteId, String runKey) throws Exception {
+
+		Query query = hibernateSession.createQuery("FROM SuiteInstance i WHERE i.suite.id = :suiteId "+
+			(runKey == null ? "" : "AND (i.runKey IS NULL OR i.runKey <> :runKey) ")+
+			"ORDER BY i.startTime DESC, i.id DESC");
+		query.setParameter("suiteId", suiteId);
+		if (runKey != null) {
+			query.setParameter("runKey", runKey);
+		}
+		query.setMaxResults(1);
+		@SuppressWarnings({ "unchecked" })
+	    List<SuiteInstance> results = query.list();
+		if (results.size() == 0) {
+			return null;
+		}
+		return results.get(0);
+	}
+
+	/**
+	 * Implement {@link GopherData#findSuiteInstanceByRunKey(Long, String) GopherData}.
+	 */
+	public SuiteInstance findSuiteInstanceByRunKey (Long suiteId, String runKey) throws Exception {
+
+		Query query = hibernateSession.createQuery(
+			"FROM SuiteInstance i WHERE i.suite.id = :suiteId AND i.runKey = :runKey");
+		query.setParameter("suiteId", suiteId);
+		query.setParameter("runKey", runKey);
+		return (SuiteInstance) query.uniqueResult();
+	}
+
 	/**
 	 * Implement {@link GopherData#findTestRunResultsByTestClass(Long) GopherData}.
 	 */
@@ -0,0 +1,97 @@
+package com.echostar.gopher.persist;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+/**
+ * A {@link TestRun TestRun} of a {@link SuiteInstance SuiteInstance} waiting in the work queue
+ * the executors of the SuiteInstance pull from.
+ * It is pending without an owner, leased to its owner until the lease expires, or done.
+ * Written by {@link com.echostar.gopher.testng.TestRunQueue TestRunQueue}.
+ */
+@Entity
+@Table(name="test_run_queue")
+public class QueuedTestRun {
+
+    private Long			id;
+    private SuiteInstance	suiteInstance;
+    private TestRun			testRun;
+    private String			owner;
+    private Date			leaseUntil;
+    private Boolean			done;
+    private Integer			claims;
+
+    public QueuedTestRun () {}
+
+    @Id
+    @GeneratedValue
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    /**
+     * Get the {@link SuiteInstance SuiteInstance} that queued the TestRun.
+     * @return the SuiteInstance
+     */
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "suite_instance_id")
+    public SuiteInstance getSuiteInstance () { return suiteInstance; }
+    public void setSuiteInstance (SuiteInstance suiteInstance) { this.suiteInstance = suiteInstance; }
+
+    /**
+     * Get the {@link TestRun TestRun} queued.
+     * @return the TestRun
+     */
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "test_run_id")
+    public TestRun getTestRun () { return testRun; }
+    public void setTestRun (TestRun testRun) { this.testRun = testRun; }
+
+    /**
+     * Get the executor that claimed the TestRun.
+     * @return the owner or null if pending
+     */
+    @Column(name = "owner")
+    public String getOwner () { return owner; }
+    public void setOwner (String owner) { this.owner = owner; }
+
+    /**
+     * Get when the lease of the owner expires unless renewed.
+     * @return the time or null if pending
+     */
+    @Column(name = "lease_until")
+    public Date getLeaseUntil () { return leaseUntil; }
+    public void setLeaseUntil (Date leaseUntil) { this.leaseUntil = leaseUntil; }
+
+    /**
+     * Get if the TestRun ran.
+     * @return true if done
+     */
+    @Column(name = "done", nullable = false)
+    public Boolean getDone () { return done; }
+    public void setDone (Boolean done) { this.done = done; }
+
+    /**
+     * Get the number of times the TestRun was claimed. More than one means a lease expired.
+     * @return the number of claims
+     */
+    @Column(name = "claims", nullable = false)
+    public Integer getClaims () { return claims; }
+    public void setClaims (Integer claims) { this.claims = claims; }
+
+    /**
+	 * Override Object to show the queue entry.
+	 * @return	the String
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " (" + id + ", owner=" + owner +
+			", leaseUntil=" + leaseUntil + ", done=" + done + ", claims=" + claims + ")";
+	}
+}
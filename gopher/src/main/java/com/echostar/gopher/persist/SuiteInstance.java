@@ -10,8 +10,10 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
+import javax.persistence.OrderBy;
 import javax.persistence.Table;
 
 @Entity
@@ -23,6 +25,10 @@ public class SuiteInstance {
     Date		endTime;
     List<TestRunResult> testRunResults = new ArrayList<TestRunResult>();
     List<TestSuiteInstance> testSuiteInstances = new ArrayList<TestSuiteInstance>();
+    List<DeferredTestRun> deferredTestRuns = new ArrayList<DeferredTestRun>();
+    SuiteInstance		rerunOf;
+    String		runKey;
+    List<SuiteInstance> reruns = new ArrayList<SuiteInstance>();
  
     public SuiteInstance () {}
     public SuiteInstance (Date startTime, Date endTime, Suite	suite)
@@ -88,6 +94,52 @@ public class SuiteInstance {
     	this.testSuiteInstances = testSuiteInstances;
     }
 
+    /**
+     * Get the key the processes running shards of a Suite share this instance by.
+     * @return	the run key or null if not sharded
+     */
+    @Column(name = "run_key")
+    public String getRunKey () { return runKey; }
+    public void setRunKey (String runKey) { this.runKey = runKey; }
+
+    /**
+     * Get the SuiteInstance whose failed TestRuns this one reran.
+     * @return	the SuiteInstance or null if not a rerun
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "rerun_of_id")
+    public SuiteInstance getRerunOf () {
+    	return rerunOf;
+    }
+    public void setRerunOf (SuiteInstance rerunOf) {
+    	this.rerunOf = rerunOf;
+    }
+
+    /**
+     * Get the SuiteInstances that reran the failed TestRuns of this one, the first first.
+     * @return	the SuiteInstances
+     */
+    @OneToMany(fetch = FetchType.LAZY, mappedBy = "rerunOf")
+    @OrderBy("startTime")
+    public List<SuiteInstance> getReruns () {
+    	return reruns;
+    }
+    public void setReruns (List<SuiteInstance> reruns) {
+    	this.reruns = reruns;
+    }
+
+    /**
+     * Get the {@link DeferredTestRun DeferredTestRuns}, the TestRuns that did not fit in the time budget.
+     * @return the DeferredTestRuns
+     */
+    @OneToMany(fetch = FetchType.LAZY, mappedBy = "suiteInstance")
+    public List<DeferredTestRun> getDeferredTestRuns () {
+    	return deferredTestRuns;
+    }
+    public void setDeferredTestRuns (List<DeferredTestRun> deferredTestRuns) {
+    	this.deferredTestRuns = deferredTestRuns;
+    }
+
     /**
      * Add a {@link TestSuiteInstance TestSuiteInstance}.
      * @param testSuiteInstance		a TestSuiteInstance
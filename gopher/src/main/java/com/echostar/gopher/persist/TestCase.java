@@ -17,6 +17,7 @@ import javax.persistence.Table;
 import javax.persistence.Transient;
 
 import com.deetysoft.exception.MissingPropertyException;
+import com.echostar.gopher.selenium.Locator;
 
 /**
  * A test case. A test case relates {@link TestData TestData} arguments with a TestClass producing a runnable case.
@@ -238,6 +239,17 @@ public class TestCase {
 		return ElementLocator.getLocator(locatorType, value);
 	}
 	
+	/**
+	 * Get the compiled {@link Locator Locator} of the ElementLocator with the given name.
+	 * @param name	the ElementLocator name
+	 * @return		the Locator
+	 * @throws		MissingPropertyException	if the locator is not found
+	 */
+	@Transient
+	public Locator getCompiledLocator(String name) throws MissingPropertyException {
+		return findElementLocatorByName (name).getCompiledLocator();
+	}
+
 	/**
 	 * Override Object to show our id, and name.
 	 * @return	the String
@@ -39,6 +39,7 @@ public class TestClassDecorator {
     Boolean			runmode;
     TestSuite		testSuite;
     TestClass		testClass;
+    String			readiness;
 
     public TestClassDecorator () {}
  
@@ -90,6 +91,15 @@ public class TestClassDecorator {
     public Boolean getRunmode () {return runmode;}
     public void setRunmode (Boolean runmode) { this.runmode = runmode; }
 
+    /**
+     * Get the {@link com.echostar.gopher.selenium.NavigationReadiness NavigationReadiness}
+     * spec deciding when the page at the url is ready, e.g. "readyState=interactive,quiet=500".
+     * @return the spec or null for the default
+     */
+    @Column(name = "readiness")
+    public String getReadiness () {return readiness;}
+    public void setReadiness (String readiness) { this.readiness = readiness; }
+
     /**
      * Get the {@link TestSuite TestSuite} of this run.
      * @return the TestSuite
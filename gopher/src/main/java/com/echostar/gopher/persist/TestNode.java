@@ -32,6 +32,7 @@ public class TestNode {
     private String			password;
     private String			installDir;
     private String			seleniumServer;
+    private String			slots;
     private List<Browser>	supportedBrowsers = new ArrayList<Browser>();
 
     public TestNode () {}
@@ -121,6 +122,15 @@ public class TestNode {
     public void setSeleniumServer (String seleniumServer)
     { this.seleniumServer = seleniumServer; }
 
+    /**
+     * Get the number of concurrent sessions per browser, e.g. "firefox=5,chrome=5,iexplore=1".
+     * Used by {@link com.echostar.gopher.testng.TestRunScheduler TestRunScheduler}.
+     * @return the slots or null for the default
+     */
+    @Column(name = "slots")
+    public String getSlots () {return slots;}
+    public void setSlots (String slots) { this.slots = slots; }
+
     /**
      * Get the set of supported {@link Browser Browsers} for this TestNode.
      * @return the Browsers
@@ -0,0 +1,115 @@
+package com.echostar.gopher.persist;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+/**
+ * One health check of a {@link TestNode TestNode}: if the node answered its
+ * status request, how long it took and how many sessions it had free.
+ * Written by {@link com.echostar.gopher.selenium.TestNodeMonitor TestNodeMonitor}.
+ */
+@Entity
+@Table(name="test_node_health")
+public class TestNodeHealth {
+
+    private Long		id;
+    private TestNode	testNode;
+    private Date		checkTime;
+    private Boolean		up;
+    private Long		latency;
+    private Integer		freeSlots;
+    private String		message;
+
+    public TestNodeHealth () {}
+
+    /**
+     * Construct with all member data.
+     *
+     * @param testNode		the TestNode checked
+     * @param checkTime		when it was checked
+     * @param up			if it answered
+     * @param latency		the time in ms it took to answer or fail
+     * @param freeSlots		the number of free sessions, -1 if not known
+     * @param message		why it is down, or null
+     */
+    public TestNodeHealth (TestNode testNode, Date checkTime, Boolean up,
+    	Long latency, Integer freeSlots, String message) {
+    	this.testNode = testNode;
+    	this.checkTime = checkTime;
+    	this.up = up;
+    	this.latency = latency;
+    	this.freeSlots = freeSlots;
+    	this.message = message;
+    }
+
+    @Id
+    @GeneratedValue
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    /**
+     * Get the {@link TestNode TestNode} checked.
+     * @return the TestNode
+     */
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "test_node_id")
+    public TestNode getTestNode () { return testNode; }
+    public void setTestNode (TestNode testNode) { this.testNode = testNode; }
+
+    /**
+     * Get when the node was checked.
+     * @return the time
+     */
+    @Column(name = "check_time", nullable = false)
+    public Date getCheckTime () { return checkTime; }
+    public void setCheckTime (Date checkTime) { this.checkTime = checkTime; }
+
+    /**
+     * Get if the node answered.
+     * @return true if up
+     */
+    @Column(name = "up", nullable = false)
+    public Boolean getUp () { return up; }
+    public void setUp (Boolean up) { this.up = up; }
+
+    /**
+     * Get the time in ms the node took to answer or fail.
+     * @return the latency
+     */
+    @Column(name = "latency", nullable = false)
+    public Long getLatency () { return latency; }
+    public void setLatency (Long latency) { this.latency = latency; }
+
+    /**
+     * Get the number of free sessions.
+     * @return the number or -1 if not known
+     */
+    @Column(name = "free_slots", nullable = false)
+    public Integer getFreeSlots () { return freeSlots; }
+    public void setFreeSlots (Integer freeSlots) { this.freeSlots = freeSlots; }
+
+    /**
+     * Get why the node is down.
+     * @return the message or null
+     */
+    @Column(name = "message")
+    public String getMessage () { return message; }
+    public void setMessage (String message) { this.message = message; }
+
+    /**
+	 * Override Object to show the check.
+	 * @return	the String
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " (" + id + ", " + checkTime + ", up=" + up +
+			", " + latency + " ms, freeSlots=" + freeSlots + ")";
+	}
+}
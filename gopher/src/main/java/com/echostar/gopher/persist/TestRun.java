@@ -27,6 +27,7 @@ public class TestRun {
     Boolean			runmode;
     TestCase		testCase;
     TestNode		testNode;
+    String			readiness;
 
     public TestRun () {}
 
@@ -78,6 +79,15 @@ public class TestRun {
     public Boolean getRunmode () {return runmode;}
     public void setRunmode (Boolean runmode) { this.runmode = runmode; }
 
+    /**
+     * Get the {@link com.echostar.gopher.selenium.NavigationReadiness NavigationReadiness}
+     * spec deciding when the page at the url is ready, e.g. "readyState=interactive,quiet=500".
+     * @return the spec or null for the default
+     */
+    @Column(name = "readiness")
+    public String getReadiness () {return readiness;}
+    public void setReadiness (String readiness) { this.readiness = readiness; }
+
     /**
      * Get the {@link TestCase TestCase} of this run.
      * @return the TestCase
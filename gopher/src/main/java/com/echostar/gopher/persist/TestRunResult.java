@@ -32,9 +32,12 @@ public class TestRunResult {
     Date		endTime;
     String		user;
     String      url;
+    String		fingerprint;
+    Boolean		cached;
     SuiteInstance		suiteInstance;
     TestSuiteInstance	testSuiteInstance;
     TestRun				testRun;
+    TestNode			testNode;
     List<TestException>	exceptions = new ArrayList<TestException>();
 
     public TestRunResult () {}
@@ -127,6 +130,23 @@ public class TestRunResult {
     public Date getEndTime () {return endTime;}
     public void setEndTime (Date endTime) { this.endTime = endTime; }
 
+    /**
+     * Get the fingerprint of the run's inputs, written by
+     * {@link com.echostar.gopher.testng.IncrementalRun IncrementalRun}.
+     * @return	the fingerprint or null
+     */
+    @Column(name = "fingerprint")
+    public String getFingerprint () {return fingerprint;}
+    public void setFingerprint (String fingerprint) { this.fingerprint = fingerprint; }
+
+    /**
+     * Get if the TestRun was not run because it passed recently with the same fingerprint.
+     * @return	TRUE for a cached pass, FALSE or null if run
+     */
+    @Column(name = "cached")
+    public Boolean getCached () {return cached;}
+    public void setCached (Boolean cached) { this.cached = cached; }
+
     /**
      * Get the name of the user who initiated the run.
      * @return the user name
@@ -174,6 +194,21 @@ public class TestRunResult {
 		this.testRun = testRun;
 	}
 
+    /**
+     * Get the {@link TestNode TestNode} the run ran on, which is the one
+     * {@link com.echostar.gopher.testng.TestRunScheduler TestRunScheduler} leased, if any,
+     * rather than the TestRun's.
+     * @return the TestNode or null if not recorded
+     */
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "test_node_id")
+	public TestNode getTestNode() {
+		return this.testNode;
+	}
+	public void setTestNode(TestNode testNode) {
+		this.testNode = testNode;
+	}
+
 	@OneToMany(fetch = FetchType.LAZY, mappedBy = "testRunResult")
 	public List<TestException> getTestExceptions() {
 		return exceptions;
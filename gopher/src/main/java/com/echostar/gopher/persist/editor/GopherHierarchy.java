@@ -1,8 +1,6 @@
 package com.echostar.gopher.persist.editor;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -11,6 +9,8 @@ import java.util.List;
 import com.deetysoft.util.Hierarchy;
 import com.deetysoft.util.HierarchyNode;
 import com.echostar.gopher.persist.BrowserEnum;
+import com.echostar.gopher.persist.util.GopherDataIngest;
+import com.echostar.gopher.util.Config;
 
 public class GopherHierarchy {
 
@@ -45,8 +45,8 @@ public class GopherHierarchy {
 			dtdURL = new File(dtdName).toURI().toURL();
 		}
 
-		// Build a collection of InputStreams, one per input XML file.
-		List<InputStream> fileStreams = new ArrayList<InputStream>();
+		// Build a collection of Files, one per input XML file.
+		List<File> files = new ArrayList<File>();
 
 		String[] fileArgs = fileArg.split(";");
 
@@ -55,9 +55,8 @@ public class GopherHierarchy {
 			// If the file is not a directory
 			File f = new File (fileArgs[i]);
 			if (!f.isDirectory()) {
-				// Add the file to the list of file streams
-				FileInputStream xmlStream = new FileInputStream(fileArgs[i]);
-				fileStreams.add (xmlStream);
+				// Add the file to the list of files
+				files.add (f);
 				// Add the DTD if any to the list of DTDs
 				dtds.add(dtdURL);
 			} else {
@@ -66,9 +65,8 @@ public class GopherHierarchy {
 				String dirName = f.getPath();
 				for (int j = 0; j < dirFiles.length; j++) {
 					if (dirFiles[j].endsWith(".xml")) {					
-						// Add the file to the list of file streams
-						FileInputStream xmlStream = new FileInputStream(dirName + "/" + dirFiles[j]);
-						fileStreams.add (xmlStream);
+						// Add the file to the list of files
+						files.add (new File(dirName + "/" + dirFiles[j]));
 						// Add the DTD if any to the list of DTDs
 						dtds.add(dtdURL);
 					}
@@ -76,7 +74,8 @@ public class GopherHierarchy {
 			}
 		}
 
-		HierarchyNode root = Hierarchy.buildFromXml(fileStreams, dtds, false);
+		HierarchyNode root = Hierarchy.buildFromXmlFiles(files, dtds, false,
+			Config.getPropertyAsBoolean_S(GopherDataIngest.PARALLEL_PARSE_PROP, false), Config.getHierarchyCache());
 
 		// Get the root of each branch for each element type in the model.
 
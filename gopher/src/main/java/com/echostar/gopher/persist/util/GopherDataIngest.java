@@ -1,9 +1,7 @@
 package com.echostar.gopher.persist.util;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileWriter;
-import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.URL;
 import java.util.ArrayList;
@@ -37,6 +35,7 @@ import com.echostar.gopher.persist.TestCase;
 import com.echostar.gopher.persist.TestNode;
 import com.echostar.gopher.persist.TestSuite;
 import com.echostar.gopher.persist.TestClassDecorator;
+import com.echostar.gopher.util.Config;
 
 /**
  * Ingest Gopher data from XML.
@@ -52,6 +51,12 @@ import com.echostar.gopher.persist.TestClassDecorator;
  */
 public class GopherDataIngest {
 
+	/**
+	 * Property to parse and validate the XML files in parallel. The default is false.
+	 * The data read is the same either way.
+	 */
+	public static final String PARALLEL_PARSE_PROP = "GopherDataIngest.parallelParse";
+
 	// The file argument. This may be a single file or directory or list of either separated by a ';'.
 	private static String fileName = null;
 
@@ -64,6 +69,9 @@ public class GopherDataIngest {
 	// Read-only, no ingest.
 	private static boolean readOnly = false;
 
+	// Ingest with GopherDataStreamIngest.
+	private static boolean stream = false;
+
 	// The Gopher data interface
 	private GopherData gopherData;
 
@@ -112,6 +120,9 @@ public class GopherDataIngest {
 	// A map of requested ElementLocator id to ElementLocator.
 	private Map<String, ElementLocator> elementLocatorMap = new HashMap<String, ElementLocator>();
 
+	// A map of requested TestSuite id to test-suite node, for the report, built on first use.
+	private Map<String, HierarchyNode> testSuiteNodeMap = null;
+
 	public GopherDataIngest () {
 		gopherData = GopherDataFactory.getGopherData();
 		session = gopherData.getHibernateSession();
@@ -135,6 +146,10 @@ public class GopherDataIngest {
 				case "-r":
 					doReport = true;
 					break;
+				case "-s":
+				case "-stream":
+					stream = true;
+					break;
 				default:
 					if (args[i].charAt(0) != '-') {
 						fileName = args[i];
@@ -149,6 +164,27 @@ public class GopherDataIngest {
 			System.exit (1);
 		}
 
+		// The report reads the whole tree, so only the tree ingest makes it.
+		if (stream && doReport) {
+			System.err.println ("The -stream option can not be used with -r or -ro.");
+			System.err.println ("\n"+getUsage ());
+			System.exit (1);
+		}
+
+		if (stream) {
+			GopherDataStreamIngest streamIngester = new GopherDataStreamIngest ();
+			try {
+				streamIngester.ingest(fileName);
+			} catch (Exception e) {
+				e.printStackTrace();
+				System.exit (-1);
+			}
+			finally {
+				streamIngester.close();
+			}
+			System.exit (0);
+		}
+
 		GopherDataIngest ingester = new GopherDataIngest ();
 	
 		try {
@@ -187,7 +223,7 @@ public class GopherDataIngest {
 			System.out.println ("Found DTD in CLASSPATH '"+dtdName+"'.");
 		}
 		
-		List<InputStream> fileStreams = new ArrayList<InputStream>();
+		List<File> files = new ArrayList<File>();
 		List<URL> dtds = new ArrayList<URL>();
 
 		URL dtdURL = null;
@@ -202,10 +238,8 @@ public class GopherDataIngest {
 			// If the file is not a directory
 			File f = new File (fileArgs[i]);
 			if (!f.isDirectory()) {
-				// Add the file to the list of file streams
-				@SuppressWarnings("resource")
-				FileInputStream xmlStream = new FileInputStream(fileArgs[i]);
-				fileStreams.add (xmlStream);
+				// Add the file to the list of files
+				files.add (f);
 				// Add the DTD if any to the list of DTDs
 				dtds.add(dtdURL);
 			} else {
@@ -214,10 +248,8 @@ public class GopherDataIngest {
 				String dirName = f.getPath();
 				for (int j = 0; j < dirFiles.length; j++) {
 					if (dirFiles[j].endsWith(".xml")) {					
-						// Add the file to the list of file streams
-						@SuppressWarnings("resource")
-						FileInputStream xmlStream = new FileInputStream(dirName + "/" + dirFiles[j]);
-						fileStreams.add (xmlStream);
+						// Add the file to the list of files
+						files.add (new File(dirName + "/" + dirFiles[j]));
 						// Add the DTD if any to the list of DTDs
 						dtds.add(dtdURL);
 					}
@@ -225,11 +257,9 @@ public class GopherDataIngest {
 			}
 		}
 
-		HierarchyNode root = Hierarchy.buildFromXml(fileStreams, dtds, false);
-
-		for (InputStream stream : fileStreams) {
-			stream.close();
-		}
+		// Unchanged files are read from the cache, if any, instead of parsed.
+		HierarchyNode root = Hierarchy.buildFromXmlFiles(files, dtds, false,
+			Config.getPropertyAsBoolean_S(PARALLEL_PARSE_PROP, false), Config.getHierarchyCache());
 
 		testClassNodes = root.getNodesByPath("gopher-data/test-class");
 		suiteNodes = root.getNodesByPath("gopher-data/suite");
@@ -447,6 +477,10 @@ public class GopherDataIngest {
 
 			TestNode testNode = gopherData.createTestNode(platformEnum, nodeIP, nodePort,
 					userName,password,installDir,seleniumServer);
+			HierarchyNode slotsNode = testNodeNode.getNodeByName ("slots");
+			if (slotsNode != null) {
+				testNode.setSlots ((String) slotsNode.getValue());
+			}
 
 			Collection<HierarchyNode> browserIdNodes = testNodeNode.getNodesByName (
 					"supported-browser-id");
@@ -490,6 +524,10 @@ public class GopherDataIngest {
 			TestCase testCase = testCaseMap.get(testCaseIdReq);
 			TestNode testNode = testNodeMap.get(testNodeIdReq);
 			TestRun testRun = gopherData.createTestRun(url, browserEnum, runmode, testCase, testNode);
+			HierarchyNode readinessNode = testRunNode.getNodeByName ("readiness");
+			if (readinessNode != null) {
+				testRun.setReadiness ((String) readinessNode.getValue());
+			}
 			session.update (testRun);
 		}
 
@@ -559,6 +597,10 @@ public class GopherDataIngest {
 			TestClass testClass = testClassMap.get(testClassIdReq);
 			TestClassDecorator testClassDecorator = gopherData.createTestClassDecorator(url, browserEnum, runmode,
 				testSuite, testClass);
+			HierarchyNode readinessNode = testClassDecoratorNode.getNodeByName ("readiness");
+			if (readinessNode != null) {
+				testClassDecorator.setReadiness ((String) readinessNode.getValue());
+			}
 			session.update (testClassDecorator);
 		}
 
@@ -609,13 +651,17 @@ public class GopherDataIngest {
 	}
 
 	private HierarchyNode findTestSuiteNodeById(String testSuiteIdReq) {
-		for (HierarchyNode node : testSuiteNodes) {
-			String idReq = (String) node.getNodeByName ("id").getValue();
-			if (testSuiteIdReq.equals(idReq)) {
-				return node;
+		if (testSuiteNodeMap == null) {
+			testSuiteNodeMap = new HashMap<String, HierarchyNode>();
+			for (HierarchyNode node : testSuiteNodes) {
+				String idReq = (String) node.getNodeByName ("id").getValue();
+				// The first node with an id is found.
+				if (!testSuiteNodeMap.containsKey(idReq)) {
+					testSuiteNodeMap.put(idReq, node);
+				}
 			}
 		}
-		return null;
+		return testSuiteNodeMap.get(testSuiteIdReq);
 	}
 	
 	private List<TestClass> findTestClassesByReqId (Collection<HierarchyNode> testClassIdNodes) {
@@ -752,6 +798,9 @@ public class GopherDataIngest {
 		usage.append("\nwhere \'dir*\' is the path to a directory containing Gopher data definitions files.");
 		usage.append("\nwhere \'dtdFile\' is the name of an optional DTD file containing Gopher data XML schema.");
 		usage.append("\nIf the DTD argument is not supplied, try to find 'gopher-data.dtd' in the CLASSPATH.");
+		usage.append("\nOption -r writes a report and -ro only writes the report.");
+		usage.append("\nOption -stream ingests one element at a time with GopherDataStreamIngest, without the DTD,");
+		usage.append("\nfor data too large to read whole. It can not be used with -r or -ro.");
 		return usage.toString();
 	}
 }
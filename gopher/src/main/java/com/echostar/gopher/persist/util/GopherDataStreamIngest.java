@@ -0,0 +1,551 @@
+package com.echostar.gopher.persist.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+import com.echostar.gopher.persist.Browser;
+import com.echostar.gopher.persist.BrowserEnum;
+import com.echostar.gopher.persist.DataRoleEnum;
+import com.echostar.gopher.persist.DataTypeEnum;
+import com.echostar.gopher.persist.ElementLocator;
+import com.echostar.gopher.persist.ElementLocatorType;
+import com.echostar.gopher.persist.GopherData;
+import com.echostar.gopher.persist.GopherDataFactory;
+import com.echostar.gopher.persist.PlatformEnum;
+import com.echostar.gopher.persist.Suite;
+import com.echostar.gopher.persist.SuiteDecorator;
+import com.echostar.gopher.persist.TestCase;
+import com.echostar.gopher.persist.TestClass;
+import com.echostar.gopher.persist.TestClassDecorator;
+import com.echostar.gopher.persist.TestData;
+import com.echostar.gopher.persist.TestDataType;
+import com.echostar.gopher.persist.TestNode;
+import com.echostar.gopher.persist.TestRun;
+import com.echostar.gopher.persist.TestSuite;
+import com.echostar.gopher.util.Config;
+
+/**
+ * Ingest Gopher data from XML one element at a time, for data too large for
+ * {@link GopherDataIngest GopherDataIngest} to hold as one tree.
+ * <p>
+ * Each file is read with a StAX pull parser. Every element under 'gopher-data' is read into a
+ * {@link Record Record}, persisted and dropped. Elements refer to each other by requested id, so
+ * the files are read once for each of the {@link #PASSES PASSES}, each pass persisting the types
+ * the next refer to. The id table maps requested ids to database ids, references are loaded as
+ * proxies by id and the Hibernate session is flushed and cleared every
+ * {@link #BATCH_SIZE_PROP BATCH_SIZE_PROP} entities, so memory holds little more than the id table.
+ * All is ingested in one transaction.
+ * <p>
+ * The files are not validated against the DTD. A reference to an id not defined is an error.
+ * Then, as GopherDataIngest does, create {@link TestRun TestRuns} for
+ * {@link TestCase TestCases} based on the {@link TestNode TestNodes} supported browsers.
+ */
+public class GopherDataStreamIngest {
+
+	/**
+	 * Property defining the number of entities persisted between flushes of the session.
+	 */
+	public static final String BATCH_SIZE_PROP = "GopherDataStreamIngest.batchSize";
+
+	/**
+	 * The default batch size.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	/**
+	 * The element types read by each pass over the files.
+	 * Elements refer only to types of earlier passes.
+	 */
+	static final String[][] PASSES = {
+		{"test-data-type", "element-locator", "supported-browser"},
+		{"test-data", "test-class", "test-node"},
+		{"test-suite", "test-case"},
+		{"suite", "test-run", "test-class-decorator"},
+		{"suite-decorator", "test-suite-decorator"}
+	};
+
+	// The Gopher data interface
+	private GopherData gopherData;
+
+	// The Hibernate Session, from Gopher
+	private Session session;
+
+	private final int batchSize;
+
+	// Entities persisted since the session was last flushed.
+	private int unflushed = 0;
+
+	// Map of element type to map of requested id to database id.
+	private Map<String, Map<String, Long>> ids = new HashMap<String, Map<String, Long>>();
+
+	// Map of element type to the number ingested, in ingest order.
+	private Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+
+	/**
+	 * Receive the Records of a pass.
+	 */
+	interface Handler {
+		void handle (Record record) throws Exception;
+	}
+
+	/**
+	 * An element under 'gopher-data' with its child element values, trimmed, null if empty.
+	 */
+	static class Record {
+
+		private final String						type;
+		private final String						source;
+		private final Map<String, List<String>>	fields = new HashMap<String, List<String>>();
+
+		Record (String type, String source) {
+			this.type = type;
+			this.source = source;
+		}
+
+		void add (String name, String value) {
+			List<String> values = fields.get(name);
+			if (values == null) {
+				values = new ArrayList<String>(1);
+				fields.put(name, values);
+			}
+			values.add(value);
+		}
+
+		/**
+		 * Get the element type.
+		 * @return	the type
+		 */
+		String getType () {
+			return type;
+		}
+
+		/**
+		 * Get the file and line of the element, for messages.
+		 * @return	the source
+		 */
+		String getSource () {
+			return source;
+		}
+
+		/**
+		 * Get the first value of a child element.
+		 * @param name	the child element name
+		 * @return		the value or null if missing or empty
+		 */
+		String get (String name) {
+			List<String> values = fields.get(name);
+			return values == null ? null : values.get(0);
+		}
+
+		/**
+		 * Get every value of a repeated child element.
+		 * @param name	the child element name
+		 * @return		the values, in document order
+		 */
+		List<String> getAll (String name) {
+			List<String> values = fields.get(name);
+			return values == null ? Collections.<String>emptyList() : values;
+		}
+
+		/**
+		 * Get the value of a required child element.
+		 * @param name			the child element name
+		 * @return				the value
+		 * @throws Exception	if missing or empty
+		 */
+		String require (String name) throws Exception {
+			String value = get (name);
+			if (value == null) {
+				throw new Exception (type+" at "+source+" has no "+name+".");
+			}
+			return value;
+		}
+
+		/**
+		 * Get the value of a required child element as a boolean, true if 'true' or 'y'.
+		 * @param name			the child element name
+		 * @return				the value
+		 * @throws Exception	if missing or empty
+		 */
+		boolean requireBoolean (String name) throws Exception {
+			String value = require (name);
+			return value.equalsIgnoreCase("true") || value.equalsIgnoreCase("y");
+		}
+	}
+
+	public GopherDataStreamIngest () {
+		gopherData = GopherDataFactory.getGopherData();
+		session = gopherData.getHibernateSession();
+		batchSize = Math.max(1, Config.getPropertyAsInt_S(BATCH_SIZE_PROP, DEFAULT_BATCH_SIZE));
+	}
+
+	protected void close () {
+		if (session != null) {
+			session.close();
+		}
+	}
+
+	/**
+	 * Ingest the data from the given files or directories.
+	 *
+	 * @param	fileArg		a ';' delimited list of XML files and/or directories containing Gopher data definitions
+	 * @throws	Exception	on any error
+	 */
+	public void ingest (String fileArg) throws Exception {
+
+		List<File> files = new ArrayList<File>();
+		for (String name : fileArg.split(";")) {
+			File f = new File (name);
+			if (!f.isDirectory()) {
+				files.add(f);
+			} else {
+				for (String dirFile : f.list()) {
+					if (dirFile.endsWith(".xml")) {
+						files.add(new File (f, dirFile));
+					}
+				}
+			}
+		}
+
+		Handler handler = new Handler () {
+			public void handle (Record record) throws Exception {
+				persist (record);
+			}
+		};
+
+		Transaction tran = session.beginTransaction();
+		try {
+			for (String[] pass : PASSES) {
+				Set<String> types = new HashSet<String>(Arrays.asList(pass));
+				for (File file : files) {
+					InputStream in = new FileInputStream (file);
+					try {
+						read (in, file.getPath(), types, handler);
+					} finally {
+						in.close();
+					}
+				}
+			}
+			createTestRuns ();
+			session.flush();
+			tran.commit();
+		} finally {
+			if (tran.isActive()) {
+				tran.rollback();
+			}
+		}
+
+		for (Map.Entry<String, Integer> count : counts.entrySet()) {
+			System.out.println ("Ingested "+count.getValue()+" "+count.getKey()+".");
+		}
+		System.out.println ("Ingest ok");
+	}
+
+	/**
+	 * Read the elements of the given types under 'gopher-data', passing each to the handler
+	 * when it ends. The DTD, if any, is not read.
+	 *
+	 * @param in			the XML
+	 * @param fileName		the file name, for messages
+	 * @param types			the element types to read
+	 * @param handler		the handler
+	 * @throws Exception	on a parse error or from the handler
+	 */
+	static void read (InputStream in, String fileName, Set<String> types, Handler handler)
+		throws Exception {
+
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		XMLStreamReader reader = factory.createXMLStreamReader(in);
+		try {
+			int depth = 0;
+			Record record = null;
+			String field = null;
+			StringBuilder text = new StringBuilder ();
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+					case XMLStreamConstants.START_ELEMENT:
+						depth++;
+						if (depth == 2 && types.contains(reader.getLocalName())) {
+							record = new Record (reader.getLocalName(),
+								fileName+":"+reader.getLocation().getLineNumber());
+						} else if (depth == 3 && record != null) {
+							field = reader.getLocalName();
+							text.setLength(0);
+						}
+						break;
+					case XMLStreamConstants.CHARACTERS:
+					case XMLStreamConstants.CDATA:
+					case XMLStreamConstants.SPACE:
+						if (field != null) {
+							text.append(reader.getText());
+						}
+						break;
+					case XMLStreamConstants.END_ELEMENT:
+						if (depth == 3 && record != null) {
+							String value = text.toString().trim();
+							record.add(field, value.isEmpty() ? null : value);
+							field = null;
+						} else if (depth == 2 && record != null) {
+							handler.handle(record);
+							record = null;
+						}
+						depth--;
+						break;
+					default:
+						break;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Persist one element, recording its database id by its requested id.
+	 *
+	 * @param record		the element
+	 * @throws Exception	on an unknown reference, a bad value or a database error
+	 */
+	private void persist (Record record) throws Exception {
+
+		String type = record.getType();
+		Long id;
+		switch (type) {
+			case "test-data-type": {
+				TestDataType testDataType = new TestDataType (record.require("name"),
+					DataTypeEnum.valueOf(record.require("type")),
+					DataRoleEnum.valueOf(record.require("role")));
+				id = (Long) session.save(testDataType);
+				break;
+			}
+			case "element-locator": {
+				ElementLocator locator = new ElementLocator (
+					ElementLocatorType.valueOf(record.require("locator-type")),
+					record.require("name"), record.require("value"), record.get("description"));
+				id = (Long) session.save(locator);
+				break;
+			}
+			case "supported-browser": {
+				id = gopherData.createBrowser(record.require("name"),
+					BrowserEnum.valueOf(record.require("browser-type"))).getId();
+				break;
+			}
+			case "test-data": {
+				TestData testData = new TestData (
+					load (TestDataType.class, "test-data-type", record.require("test-data-type-id"), record),
+					record.get("value"));
+				id = (Long) session.save(testData);
+				break;
+			}
+			case "test-class": {
+				TestClass testClass = gopherData.createTestClass(record.require("name"),
+					record.require("version"), record.require("class-name"), record.get("description"),
+					record.requireBoolean("runmode"), record.get("jira-issue"));
+				testClass.setTestDataTypes(loadAll (TestDataType.class, "test-data-type",
+					record.getAll("test-data-type-id"), record));
+				session.update(testClass);
+				id = testClass.getId();
+				break;
+			}
+			case "test-node": {
+				String nodeIP = record.get("node-ip");
+				// If the node ip is missing default to localhost.
+				if (nodeIP == null) {
+					nodeIP = InetAddress.getLocalHost().getHostAddress();
+					System.out.println("Using "+nodeIP+" as test node address.");
+				}
+				TestNode testNode = gopherData.createTestNode(
+					PlatformEnum.valueOf(record.require("platform")), nodeIP, record.require("node-port"),
+					record.require("user-name"), record.get("password"), record.require("install-dir"),
+					record.require("selenium-server"));
+				if (record.get("slots") != null) {
+					testNode.setSlots(record.get("slots"));
+				}
+				testNode.setSupportedBrowsers(loadAll (Browser.class, "supported-browser",
+					record.getAll("supported-browser-id"), record));
+				session.update(testNode);
+				id = testNode.getId();
+				break;
+			}
+			case "test-suite": {
+				TestSuite testSuite = gopherData.createTestSuite(record.require("name"),
+					record.require("version"), record.get("description"), record.requireBoolean("runmode"),
+					loadAll (TestClass.class, "test-class", record.getAll("test-class-id"), record));
+				id = testSuite.getId();
+				break;
+			}
+			case "test-case": {
+				TestCase testCase = gopherData.createTestCase(record.require("name"),
+					record.require("version"), record.requireBoolean("runmode"),
+					load (TestClass.class, "test-class", record.require("test-class-id"), record), null);
+				testCase.setTestData(loadAll (TestData.class, "test-data",
+					record.getAll("test-data-id"), record));
+				testCase.setElementLocators(loadAll (ElementLocator.class, "element-locator",
+					record.getAll("element-locator-id"), record));
+				session.update(testCase);
+				id = testCase.getId();
+				break;
+			}
+			case "suite": {
+				Suite suite = gopherData.createSuite(record.require("name"), record.require("version"),
+					record.get("description"), record.requireBoolean("runmode"),
+					loadAll (TestSuite.class, "test-suite", record.getAll("test-suite-id"), record));
+				id = suite.getId();
+				break;
+			}
+			case "test-run": {
+				// The test node is optional so test classes other than Selenium test classes may run.
+				String testNodeIdReq = record.get("test-node-id");
+				TestRun testRun = gopherData.createTestRun(record.get("url"), browser (record),
+					record.requireBoolean("runmode"),
+					load (TestCase.class, "test-case", record.require("test-case-id"), record),
+					testNodeIdReq == null ? null : load (TestNode.class, "test-node", testNodeIdReq, record));
+				if (record.get("readiness") != null) {
+					testRun.setReadiness(record.get("readiness"));
+					session.update(testRun);
+				}
+				id = testRun.getId();
+				break;
+			}
+			case "test-class-decorator": {
+				TestClassDecorator testClassDecorator = gopherData.createTestClassDecorator(
+					record.get("url"), browser (record), record.requireBoolean("runmode"),
+					load (TestSuite.class, "test-suite", record.require("test-suite-id"), record),
+					load (TestClass.class, "test-class", record.require("test-class-id"), record));
+				if (record.get("readiness") != null) {
+					testClassDecorator.setReadiness(record.get("readiness"));
+					session.update(testClassDecorator);
+				}
+				id = testClassDecorator.getId();
+				break;
+			}
+			case "suite-decorator": {
+				SuiteDecorator suiteDecorator = gopherData.createSuiteDecorator(record.require("name"),
+					record.get("url"), browser (record), record.requireBoolean("runmode"),
+					load (Suite.class, "suite", record.require("suite-id"), record));
+				id = suiteDecorator.getId();
+				break;
+			}
+			case "test-suite-decorator": {
+				id = gopherData.createTestSuiteDecorator(record.get("url"), browser (record),
+					record.requireBoolean("runmode"),
+					load (Suite.class, "suite", record.require("suite-id"), record),
+					load (TestSuite.class, "test-suite", record.require("test-suite-id"), record)).getId();
+				break;
+			}
+			default:
+				throw new Exception ("Unknown element "+type+" at "+record.getSource()+".");
+		}
+
+		String idReq = record.get("id");
+		if (idReq != null) {
+			Map<String, Long> typeIds = ids.get(type);
+			if (typeIds == null) {
+				typeIds = new HashMap<String, Long>();
+				ids.put(type, typeIds);
+			}
+			typeIds.put(idReq, id);
+		}
+		Integer count = counts.get(type);
+		counts.put(type, count == null ? 1 : count + 1);
+		persisted ();
+	}
+
+	/**
+	 * Count a persisted entity, flushing and clearing the session every batch.
+	 */
+	private void persisted () {
+		if (++unflushed >= batchSize) {
+			session.flush();
+			session.clear();
+			unflushed = 0;
+		}
+	}
+
+	private BrowserEnum browser (Record record) {
+		String browser = record.get("browser");
+		return browser == null ? null : BrowserEnum.valueOf(browser);
+	}
+
+	/**
+	 * Get a proxy of the entity with the given requested id.
+	 *
+	 * @param entityClass	the entity class
+	 * @param type			the element type of the entity
+	 * @param idReq			the requested id
+	 * @param from			the element referring to it, for messages
+	 * @return				the proxy
+	 * @throws Exception	if no element of the type has the id
+	 */
+	private <T> T load (Class<T> entityClass, String type, String idReq, Record from) throws Exception {
+		Map<String, Long> typeIds = ids.get(type);
+		Long id = typeIds == null ? null : typeIds.get(idReq);
+		if (id == null) {
+			throw new Exception (from.getType()+" at "+from.getSource()+" refers to "+type+" id '"+
+				idReq+"' not defined.");
+		}
+		return entityClass.cast(session.load(entityClass, id));
+	}
+
+	private <T> List<T> loadAll (Class<T> entityClass, String type, List<String> idReqs, Record from)
+		throws Exception {
+		List<T> entities = new ArrayList<T>();
+		for (String idReq : idReqs) {
+			entities.add(load (entityClass, type, idReq, from));
+		}
+		return entities;
+	}
+
+	/**
+	 * Create TestRuns based on all TestNodes and their supported Browsers,
+	 * reading ids only and flushing every batch.
+	 * @throws Exception	on any error
+	 */
+	private void createTestRuns () throws Exception {
+
+		Query query = session.createQuery(
+			"SELECT n.id, b.type FROM TestNode n JOIN n.supportedBrowsers b ORDER BY n.id, b.id");
+		@SuppressWarnings("unchecked")
+		List<Object[]> nodeBrowsers = query.list();
+		if (nodeBrowsers.isEmpty()) {
+			return;
+		}
+		query = session.createQuery("SELECT id FROM TestCase WHERE name NOT IN ('ShutdownGrid', 'StartupGrid')"+
+			" ORDER BY id");
+		@SuppressWarnings("unchecked")
+		List<Long> testCaseIds = query.list();
+
+		int created = 0;
+		for (Long testCaseId : testCaseIds) {
+			for (Object[] nodeBrowser : nodeBrowsers) {
+				gopherData.createTestRun(null, (BrowserEnum) nodeBrowser[1], true,
+					(TestCase) session.load(TestCase.class, testCaseId),
+					(TestNode) session.load(TestNode.class, (Long) nodeBrowser[0]));
+				created++;
+				persisted ();
+			}
+		}
+		System.out.println ("Created "+created+" test-run for "+testCaseIds.size()+" test-case.");
+	}
+}
@@ -2,7 +2,9 @@ package com.echostar.gopher.reports;
 
 import java.io.File;
 import java.io.FileWriter;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.echostar.gopher.persist.GopherData;
 import com.echostar.gopher.persist.GopherDataFactory;
@@ -155,6 +157,28 @@ public class GopherReporter {
 			}
 			element = Float.toString((float)passed/results.size()*100)+ "% true of "+results.size()+".\n";
 			writer.write(element, 0, element.length());
+			element = "</td>\n";
+			writer.write(element, 0, element.length());
+
+			// Link reruns of failed TestRuns to the SuiteInstance they reran.
+			element = "<td>\n";
+			writer.write(element, 0, element.length());
+			element = "";
+			if (suiteInstance.getRerunOf() != null) {
+				Long rerunOfId = suiteInstance.getRerunOf().getId();
+				element = "Rerun of <a href=\"#SuiteInstance_"+rerunOfId+"\">"+rerunOfId+"</a>\n";
+			} else if (!suiteInstance.getReruns().isEmpty()) {
+				Map<Long, Boolean> finalResults = getFinalResults(suiteInstance);
+				passed=0;
+				for (Boolean result : finalResults.values()) {
+					if (result) {
+						passed++;
+					}
+				}
+				element = "Final "+Float.toString((float)passed/finalResults.size()*100)+"% true of "+
+					finalResults.size()+" after "+suiteInstance.getReruns().size()+" reruns.\n";
+			}
+			writer.write(element, 0, element.length());
 			element = "</td></tr>\n";
 			writer.write(element, 0, element.length());
 		}
@@ -162,6 +186,24 @@ public class GopherReporter {
 		writer.write(element, 0, element.length());
 	}
 
+	/**
+	 * Get the latest result of every TestRun of a SuiteInstance and its reruns.
+	 * @param suiteInstance	the SuiteInstance
+	 * @return				map of TestRun id to result
+	 */
+	private static Map<Long, Boolean> getFinalResults (SuiteInstance suiteInstance) {
+		Map<Long, Boolean> finalResults = new LinkedHashMap<Long, Boolean>();
+		for (TestRunResult r : suiteInstance.getTestRunResults()) {
+			finalResults.put(r.getTestRun().getId(), r.getResult());
+		}
+		for (SuiteInstance rerun : suiteInstance.getReruns()) {
+			for (TestRunResult r : rerun.getTestRunResults()) {
+				finalResults.put(r.getTestRun().getId(), r.getResult());
+			}
+		}
+		return finalResults;
+	}
+
 	private static void writeSuiteInstanceViews(FileWriter writer,
 		List<SuiteInstance> suiteInstances) throws Exception {
 		
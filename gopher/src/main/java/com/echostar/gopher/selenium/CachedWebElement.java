@@ -0,0 +1,207 @@
+package com.echostar.gopher.selenium;
+
+import java.util.List;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.interactions.internal.Coordinates;
+import org.openqa.selenium.internal.Locatable;
+import org.openqa.selenium.internal.WrapsElement;
+
+/**
+ * A WebElement held in an {@link ElementCache ElementCache}.
+ * If the element is stale it is found again with its Locator and parent
+ * and the call is repeated once. Calls that may change the page
+ * (click, submit, sendKeys, clear) leave the cache unverified.
+ * It wraps the element, so it can be passed to scripts and Actions.
+ */
+class CachedWebElement implements WebElement, WrapsElement, Locatable {
+
+	private GopherDriverImpl	driver;
+	private ElementCache		cache;
+	private WebElement			parent;
+	private Locator				locator;
+	private WebElement			element;
+
+	/**
+	 * Construct with all member data.
+	 *
+	 * @param driver	the driver finding the element again
+	 * @param cache		the cache holding the element
+	 * @param parent	the parent or null for the page
+	 * @param locator	the Locator
+	 * @param element	the element found
+	 */
+	CachedWebElement (GopherDriverImpl driver, ElementCache cache, WebElement parent,
+		Locator locator, WebElement element) {
+		this.driver = driver;
+		this.cache = cache;
+		this.parent = parent;
+		this.locator = locator;
+		this.element = element;
+	}
+
+	/**
+	 * Find the element again after it went stale.
+	 *
+	 * @param e	the exception showing the element is stale
+	 * @return	the element found
+	 * @throws StaleElementReferenceException	if the element is no longer on the page
+	 */
+	private WebElement refind (StaleElementReferenceException e) {
+		cache.refound();
+		WebElement found = driver.findUncached(parent, locator);
+		if (found == null) {
+			throw e;
+		}
+		element = found;
+		return element;
+	}
+
+	public WebElement getWrappedElement () {
+		return element;
+	}
+
+	public Coordinates getCoordinates () {
+		try {
+			return ((Locatable) element).getCoordinates();
+		} catch (StaleElementReferenceException e) {
+			return ((Locatable) refind(e)).getCoordinates();
+		}
+	}
+
+	public void click () {
+		cache.pageMayChange();
+		try {
+			element.click();
+		} catch (StaleElementReferenceException e) {
+			refind(e).click();
+		}
+	}
+
+	public void submit () {
+		cache.pageMayChange();
+		try {
+			element.submit();
+		} catch (StaleElementReferenceException e) {
+			refind(e).submit();
+		}
+	}
+
+	public void sendKeys (CharSequence... keysToSend) {
+		cache.pageMayChange();
+		try {
+			element.sendKeys(keysToSend);
+		} catch (StaleElementReferenceException e) {
+			refind(e).sendKeys(keysToSend);
+		}
+	}
+
+	public void clear () {
+		cache.pageMayChange();
+		try {
+			element.clear();
+		} catch (StaleElementReferenceException e) {
+			refind(e).clear();
+		}
+	}
+
+	public String getTagName () {
+		try {
+			return element.getTagName();
+		} catch (StaleElementReferenceException e) {
+			return refind(e).getTagName();
+		}
+	}
+
+	public String getAttribute (String name) {
+		try {
+			return element.getAttribute(name);
+		} catch (StaleElementReferenceException e) {
+			return refind(e).getAttribute(name);
+		}
+	}
+
+	public boolean isSelected () {
+		try {
+			return element.isSelected();
+		} catch (StaleElementReferenceException e) {
+			return refind(e).isSelected();
+		}
+	}
+
+	public boolean isEnabled () {
+		try {
+			return element.isEnabled();
+		} catch (StaleElementReferenceException e) {
+			return refind(e).isEnabled();
+		}
+	}
+
+	public String getText () {
+		try {
+			return element.getText();
+		} catch (StaleElementReferenceException e) {
+			return refind(e).getText();
+		}
+	}
+
+	public List<WebElement> findElements (By by) {
+		try {
+			return element.findElements(by);
+		} catch (StaleElementReferenceException e) {
+			return refind(e).findElements(by);
+		}
+	}
+
+	public WebElement findElement (By by) {
+		try {
+			return element.findElement(by);
+		} catch (StaleElementReferenceException e) {
+			return refind(e).findElement(by);
+		}
+	}
+
+	public boolean isDisplayed () {
+		try {
+			return element.isDisplayed();
+		} catch (StaleElementReferenceException e) {
+			return refind(e).isDisplayed();
+		}
+	}
+
+	public Point getLocation () {
+		try {
+			return element.getLocation();
+		} catch (StaleElementReferenceException e) {
+			return refind(e).getLocation();
+		}
+	}
+
+	public Dimension getSize () {
+		try {
+			return element.getSize();
+		} catch (StaleElementReferenceException e) {
+			return refind(e).getSize();
+		}
+	}
+
+	public String getCssValue (String propertyName) {
+		try {
+			return element.getCssValue(propertyName);
+		} catch (StaleElementReferenceException e) {
+			return refind(e).getCssValue(propertyName);
+		}
+	}
+
+	/**
+	 * Override Object to show the Locator.
+	 * @return	the String
+	 */
+	public String toString () {
+		return getClass().getSimpleName()+" ("+locator+")"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
@@ -0,0 +1,194 @@
+package com.echostar.gopher.selenium;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openqa.selenium.WebElement;
+
+/**
+ * A page scoped cache of the WebElements found by a {@link GopherDriverImpl GopherDriver},
+ * keyed by {@link Locator Locator} and parent element.
+ * <p>
+ * The cache belongs to one page. The page is identified by its URL and a token
+ * {@link #PAGE_SCRIPT PAGE_SCRIPT} stores in the document, so a reload is a new page.
+ * After anything that may change the page (a click, keys sent, a navigation) the cache is
+ * unverified and the driver checks the page identity once before the next hit,
+ * clearing the cache if the page changed. An element that turns out to be stale anyway
+ * is found again once, see {@link CachedWebElement CachedWebElement}.
+ * <p>
+ * The cache is not thread safe, like the driver it belongs to.
+ */
+public class ElementCache {
+
+	/**
+	 * Property enabling the cache. The default is true.
+	 */
+	public static final String ENABLED_PROP = "GopherDriver.elementCache"; //$NON-NLS-1$
+
+	/**
+	 * Script returning the URL and a token unique to the document.
+	 */
+	static final String PAGE_SCRIPT =
+		"if (!document.__gopherPage) {" + //$NON-NLS-1$
+		"  document.__gopherPage = new Date().getTime() + '-' + Math.random();" + //$NON-NLS-1$
+		"}" + //$NON-NLS-1$
+		"return location.href + ' ' + document.__gopherPage;"; //$NON-NLS-1$
+
+	/**
+	 * The most elements cached for one page. The cache is cleared when it is full.
+	 */
+	static final int MAX_SIZE = 500;
+
+	private Map<Key, WebElement>	elements = new HashMap<Key, WebElement>();
+	private String					page = null;
+	private boolean					verified = false;
+	private long					hits = 0;
+	private long					misses = 0;
+	private long					refinds = 0;
+	private long					invalidations = 0;
+
+	/**
+	 * Get if the page identity was checked since the page may have changed.
+	 * @return	true if checked
+	 */
+	public boolean isVerified () { return verified; }
+
+	/**
+	 * Record the identity of the page, as returned by {@link #PAGE_SCRIPT PAGE_SCRIPT}.
+	 * The cache is cleared if the page changed.
+	 * @param page	the page identity
+	 */
+	public void verify (String page) {
+		if (this.page == null || !this.page.equals(page)) {
+			invalidate();
+			this.page = page;
+		}
+		verified = true;
+	}
+
+	/**
+	 * Note the page may have changed. The page identity is checked before the next hit.
+	 */
+	public void pageMayChange () {
+		verified = false;
+	}
+
+	/**
+	 * Get a cached element, counting a hit or miss.
+	 *
+	 * @param parent	the parent or null for the page
+	 * @param locator	the Locator
+	 * @return			the element or null if not cached
+	 */
+	public WebElement get (WebElement parent, Locator locator) {
+		WebElement element = elements.get(new Key (parent, locator));
+		if (element == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return element;
+	}
+
+	/**
+	 * Cache an element.
+	 *
+	 * @param parent	the parent or null for the page
+	 * @param locator	the Locator
+	 * @param element	the element
+	 */
+	public void put (WebElement parent, Locator locator, WebElement element) {
+		if (elements.size() >= MAX_SIZE) {
+			elements.clear();
+		}
+		elements.put(new Key (parent, locator), element);
+	}
+
+	/**
+	 * Count an element found again because it was stale, and note the page may have changed.
+	 */
+	public void refound () {
+		refinds++;
+		verified = false;
+	}
+
+	/**
+	 * Forget every cached element.
+	 */
+	public void invalidate () {
+		if (!elements.isEmpty()) {
+			invalidations++;
+			elements.clear();
+		}
+		page = null;
+		verified = false;
+	}
+
+	/**
+	 * Get the number of elements cached.
+	 * @return	the size
+	 */
+	public int size () { return elements.size(); }
+
+	/**
+	 * Get the number of lookups answered from the cache.
+	 * @return	the hits
+	 */
+	public long getHits () { return hits; }
+
+	/**
+	 * Get the number of lookups not answered from the cache.
+	 * @return	the misses
+	 */
+	public long getMisses () { return misses; }
+
+	/**
+	 * Get the number of stale elements found again.
+	 * @return	the refinds
+	 */
+	public long getRefinds () { return refinds; }
+
+	/**
+	 * Get the number of times cached elements were dropped because the page changed.
+	 * @return	the invalidations
+	 */
+	public long getInvalidations () { return invalidations; }
+
+	/**
+	 * Get the counters.
+	 * @return	the String
+	 */
+	public String getStatus () {
+		return "ElementCache hits="+hits+" misses="+misses+" refinds="+refinds+ //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			" invalidations="+invalidations+" size="+elements.size(); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * A Locator and parent. Locators are equal by type and value, parents by
+	 * WebElement equality, which for remote elements compares their ids.
+	 */
+	static class Key {
+		final WebElement	parent;
+		final String		locator;
+
+		Key (WebElement parent, Locator locator) {
+			this.parent = parent;
+			this.locator = locator.getIdentifier()+"="+locator.getValue(); //$NON-NLS-1$
+		}
+
+		@Override
+		public boolean equals (Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return locator.equals(k.locator) &&
+				(parent == null ? k.parent == null : parent.equals(k.parent));
+		}
+
+		@Override
+		public int hashCode () {
+			return locator.hashCode() * 31 + (parent == null ? 0 : parent.hashCode());
+		}
+	}
+}
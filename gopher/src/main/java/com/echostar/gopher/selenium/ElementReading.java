@@ -0,0 +1,108 @@
+package com.echostar.gopher.selenium;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What {@link GopherDriver#readElements(org.openqa.selenium.WebElement, Map, java.util.List)
+ * readElements} read from one element: its text, attributes and whether it is displayed
+ * and enabled. An element not found has an error instead.
+ */
+public class ElementReading {
+
+	private String				name;
+	private boolean				found;
+	private String				text;
+	private boolean				displayed;
+	private boolean				enabled;
+	private Map<String, String>	attributes = new HashMap<String, String>();
+	private String				error;
+
+	/**
+	 * Construct a reading of a found element.
+	 *
+	 * @param name			the locator name
+	 * @param text			the visible text
+	 * @param displayed		displayed or not
+	 * @param enabled		enabled or not
+	 * @param attributes	map of attribute name to value
+	 */
+	public ElementReading (String name, String text, boolean displayed, boolean enabled,
+		Map<String, String> attributes) {
+		this.name = name;
+		this.found = true;
+		this.text = text;
+		this.displayed = displayed;
+		this.enabled = enabled;
+		if (attributes != null) {
+			this.attributes.putAll(attributes);
+		}
+	}
+
+	/**
+	 * Construct a reading of an element not found or not read.
+	 *
+	 * @param name		the locator name
+	 * @param error		why
+	 */
+	public ElementReading (String name, String error) {
+		this.name = name;
+		this.found = false;
+		this.error = error;
+	}
+
+	/**
+	 * Get the locator name.
+	 * @return	the name
+	 */
+	public String getName () { return name; }
+
+	/**
+	 * Get if the element was found.
+	 * @return	true if found
+	 */
+	public boolean isFound () { return found; }
+
+	/**
+	 * Get the visible text of the element.
+	 * @return	the text or null if not found
+	 */
+	public String getText () { return text; }
+
+	/**
+	 * Get if the element is displayed.
+	 * @return	true if displayed, false if not or not found
+	 */
+	public boolean isDisplayed () { return displayed; }
+
+	/**
+	 * Get if the element is enabled.
+	 * @return	true if enabled, false if not or not found
+	 */
+	public boolean isEnabled () { return enabled; }
+
+	/**
+	 * Get an attribute of the element.
+	 * @param attribute		the attribute name
+	 * @return				the value or null if the attribute was not read or not defined
+	 */
+	public String getAttribute (String attribute) { return attributes.get(attribute); }
+
+	/**
+	 * Get why the element was not read.
+	 * @return	the error or null if found
+	 */
+	public String getError () { return error; }
+
+	/**
+	 * Override Object to show what was read.
+	 * @return	the String
+	 */
+	public String toString () {
+		if (!found) {
+			return getClass().getSimpleName()+" ("+name+", "+error+")";
+		}
+		return getClass().getSimpleName()+" ("+name+", '"+text+"', displayed="+displayed+
+			", enabled="+enabled+", "+attributes+")";
+	}
+}
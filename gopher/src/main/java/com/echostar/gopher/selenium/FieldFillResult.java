@@ -0,0 +1,78 @@
+package com.echostar.gopher.selenium;
+
+/**
+ * How {@link GopherDriver#fillForm(org.openqa.selenium.WebElement, java.util.Map, java.util.Map)
+ * fillForm} filled one field, and how long it took.
+ */
+public class FieldFillResult {
+
+	/**
+	 * The field was filled by the injected script.
+	 */
+	public static final String SCRIPT = "script";
+
+	/**
+	 * The field was filled by WebDriver commands.
+	 */
+	public static final String NATIVE = "native";
+
+	private String	name;
+	private String	method;
+	private long	millis;
+	private String	error;
+
+	/**
+	 * Construct with all member data.
+	 *
+	 * @param name		the locator name of the field
+	 * @param method	{@link #SCRIPT SCRIPT} or {@link #NATIVE NATIVE}
+	 * @param millis	the time taken in ms
+	 * @param error		why the field was not filled, or null if it was
+	 */
+	public FieldFillResult (String name, String method, long millis, String error) {
+		this.name = name;
+		this.method = method;
+		this.millis = millis;
+		this.error = error;
+	}
+
+	/**
+	 * Get the locator name of the field.
+	 * @return	the name
+	 */
+	public String getName () { return name; }
+
+	/**
+	 * Get how the field was filled.
+	 * @return	{@link #SCRIPT SCRIPT} or {@link #NATIVE NATIVE}
+	 */
+	public String getMethod () { return method; }
+
+	/**
+	 * Get the time taken to fill the field in ms.
+	 * For fields filled by script this is the time in the browser.
+	 * @return	the time
+	 */
+	public long getMillis () { return millis; }
+
+	/**
+	 * Get if the field was filled.
+	 * @return	true if filled
+	 */
+	public boolean isFilled () { return error == null; }
+
+	/**
+	 * Get why the field was not filled.
+	 * @return	the error or null if filled
+	 */
+	public String getError () { return error; }
+
+	/**
+	 * Override Object to show the result.
+	 * @return	the String
+	 */
+	public String toString () {
+		return getClass().getSimpleName()+" ("+name+", "+method+", "+millis+" ms"+
+			(error == null ? "" : ", "+error)+")";
+	}
+}
@@ -4,6 +4,10 @@ import org.openqa.selenium.WebElement;
 import org.openqa.selenium.remote.RemoteWebDriver;
 
 import java.util.List;
+import java.util.Map;
+
+import com.echostar.gopher.persist.ElementLocator;
+import com.echostar.gopher.persist.TestCase;
 
 /**
  * This class handles the Selenium web driver functions.
@@ -50,6 +54,8 @@ public interface GopherDriver {
 
 	/**
 	 * Close and quit the browser.
+	 * A driver borrowed from the {@link GopherDriverPool GopherDriverPool}
+	 * is given back to the pool instead.
 	 * 
 	 * @throws Exception   on error
 	 * @author shekhar.bhardwaj
@@ -126,6 +132,16 @@ public interface GopherDriver {
 	 */
 	public WebElement getWebElement(WebElement parent, String[] locator) throws Exception;
 
+	/**
+	 * Find the WebElement for a compiled {@link Locator Locator}.
+	 * 
+	 * @param parent       the parent or null to search the page
+	 * @param locator      the Locator
+	 * @return             the web element or null if the locator type is unknown
+     * @throws Exception    on error
+	 */
+	public WebElement getWebElement(WebElement parent, Locator locator) throws Exception;
+
 	/**
 	 * Get the WebElements array based on the given UI element
 	 * identifier i.e. ID/Xpath/name.
@@ -138,6 +154,16 @@ public interface GopherDriver {
 	 */
 	public List<WebElement> getWebElements(WebElement parent, String[] locator) throws Exception;
 
+	/**
+	 * Get the WebElements for a compiled {@link Locator Locator}.
+	 * 
+	 * @param parent   the parent or null to search the page
+	 * @param locator  the Locator
+	 * @return         the list of web elements
+     * @throws Exception   on error
+	 */
+	public List<WebElement> getWebElements(WebElement parent, Locator locator) throws Exception;
+
 	/**
 	 * This method returns true/false based on the UI element diaplyed status.
 	 * 
@@ -149,6 +175,16 @@ public interface GopherDriver {
 	 */
 	public boolean isDisplayed(WebElement parent, String[] locator) throws Exception;
 
+	/**
+	 * Is the UI element for a compiled {@link Locator Locator} displayed?
+	 * 
+	 * @param parent       the parent or null to search the page
+	 * @param locator      the Locator
+	 * @return             true (displayed) or false
+	 * @throws Exception   on error
+	 */
+	public boolean isDisplayed(WebElement parent, Locator locator) throws Exception;
+
 	/**
 	 * Is the UI element enabled?
 	 * 
@@ -160,6 +196,16 @@ public interface GopherDriver {
 	 */
 	public boolean isEnabled(WebElement parent, String[] locator) throws Exception;
 
+	/**
+	 * Is the UI element for a compiled {@link Locator Locator} enabled?
+	 * 
+	 * @param parent       the parent or null to search the page
+	 * @param locator      the Locator
+	 * @return             true (Enabled) or false
+	 * @throws Exception   on error
+	 */
+	public boolean isEnabled(WebElement parent, Locator locator) throws Exception;
+
 	/**
 	 * This method used to verify the text in the webpage.
 	 * 
@@ -210,6 +256,31 @@ public interface GopherDriver {
 	 */
 	public void navigate2testsite(String url, String browserName) throws Exception;
 
+	/**
+	 * Get the requested url and wait until the page is ready according to a
+	 * {@link NavigationReadiness NavigationReadiness} rule.
+	 * 
+	 * @param url			the URL
+	 * @param browserName	the browser name
+	 * @param readiness		the rule, or null for the
+	 * 						{@link NavigationReadiness#getCurrent() current} rule
+	 * @throws Exception	on any error
+	 */
+	public void navigate2testsite(String url, String browserName,
+		NavigationReadiness readiness) throws Exception;
+
+	/**
+	 * Wait until the current page is ready according to a
+	 * {@link NavigationReadiness NavigationReadiness} rule.
+	 * Call after a click or other step that navigates.
+	 * 
+	 * @param readiness		the rule, or null for the
+	 * 						{@link NavigationReadiness#getCurrent() current} rule
+	 * @return				true if the page is ready, false on timeout
+	 * @throws Exception	if the default rule is not valid
+	 */
+	public boolean waitForNavigation(NavigationReadiness readiness) throws Exception;
+
 	/***
 	 * This Method gets the text in string format from GUI
 	 * 
@@ -222,6 +293,16 @@ public interface GopherDriver {
 
 	public String goGetText(WebElement parent, String[] locator) throws Exception;
 
+	/**
+	 * Get the text of the UI element for a compiled {@link Locator Locator}.
+	 * 
+	 * @param parent		the parent or null to search the page
+	 * @param locator		the Locator
+	 * @return				web element text or null
+     * @throws Exception   on error
+	 */
+	public String goGetText(WebElement parent, Locator locator) throws Exception;
+
 	/***
 	 * This function compares actual and expected values
 	 * 
@@ -244,6 +325,16 @@ public interface GopherDriver {
 	 */
 	public void goSendKeys(WebElement parent, String key, String[] locator) throws Exception;
 
+	/**
+	 * Send keys to the UI element for a compiled {@link Locator Locator}.
+	 * 
+	 * @param parent		the parent or null to search the page
+	 * @param key			the keys to send
+	 * @param locator		the Locator
+	 * @throws Exception	on any error
+	 */
+	public void goSendKeys(WebElement parent, String key, Locator locator) throws Exception;
+
 	/**
 	 * !! STOP !! Under construction kindly use driver to directly get the
 	 * attributes
@@ -257,6 +348,17 @@ public interface GopherDriver {
 	 */
 	public String goGetAttribute(WebElement parent, String attribute, String[] locator) throws Exception;
 
+	/**
+	 * Get an attribute of the UI element for a compiled {@link Locator Locator}.
+	 * 
+	 * @param parent		the parent or null to search the page
+	 * @param attribute		the attribute name
+	 * @param locator		the Locator
+	 * @return				the attribute value
+     * @throws Exception   on error
+	 */
+	public String goGetAttribute(WebElement parent, String attribute, Locator locator) throws Exception;
+
 	/***
 	 * Get the title text of current page.
 	 * 
@@ -386,6 +488,13 @@ public interface GopherDriver {
      */
     public RemoteWebDriver getRemoteWebDriver ();
 
+    /**
+     * Get the cache of elements found on the current page, with its hit and miss counters.
+     * See {@link ElementCache ElementCache}.
+     * @return  the cache or null if disabled by the property {@link ElementCache#ENABLED_PROP ENABLED_PROP}
+     */
+    public ElementCache getElementCache ();
+
     /***
      * Press enter or return key on a XPATH and only on a XPATH.
      * @param String[] locator
@@ -402,4 +511,77 @@ public interface GopherDriver {
      */
     public void goClearText(WebElement parent, String[] locator) throws Exception;
 
+	/**
+	 * Read the text, the given attributes and the displayed and enabled state
+	 * of many elements in one round trip to the browser.
+	 * An element not found is reported in its {@link ElementReading ElementReading}
+	 * and does not fail the others.
+	 *
+	 * @param parent		the parent or null to search the page
+	 * @param locators		map of name to Locator, read in order
+	 * @param attributes	the attribute names to read, or null for none
+	 * @return				map of name to ElementReading, in the order of the locators
+	 * @throws Exception	on error
+	 */
+	public Map<String, ElementReading> readElements(WebElement parent,
+		Map<String, Locator> locators, List<String> attributes) throws Exception;
+
+	/**
+	 * Read many {@link ElementLocator ElementLocators} in one round trip to the browser.
+	 *
+	 * @param parent			the parent or null to search the page
+	 * @param elementLocators	the ElementLocators
+	 * @param attributes		the attribute names to read, or null for none
+	 * @return					map of ElementLocator name to ElementReading
+	 * @throws Exception		on error
+	 */
+	public Map<String, ElementReading> readElements(WebElement parent,
+		List<ElementLocator> elementLocators, List<String> attributes) throws Exception;
+
+	/**
+	 * Read the ElementLocators of a {@link TestCase TestCase} with the given names
+	 * in one round trip to the browser.
+	 * A name not defined in the TestCase is reported in its ElementReading.
+	 *
+	 * @param parent		the parent or null to search the page
+	 * @param testCase		the TestCase
+	 * @param locatorNames	the ElementLocator names
+	 * @param attributes	the attribute names to read, or null for none
+	 * @return				map of ElementLocator name to ElementReading
+	 * @throws Exception	on error
+	 */
+	public Map<String, ElementReading> readElements(WebElement parent, TestCase testCase,
+		List<String> locatorNames, List<String> attributes) throws Exception;
+
+	/**
+	 * Fill form fields in order with as few round trips to the browser as possible.
+	 * An injected script sets text values, checks check boxes and radio buttons and
+	 * selects drop down items by visible text, firing input and change events.
+	 * A field the script can not fill (e.g. a file input or a field that is disabled,
+	 * read only or hidden) is filled with WebDriver commands, then the script resumes.
+	 * Check boxes take "true" or "false".
+	 * A field that is not filled is reported in its {@link FieldFillResult FieldFillResult}
+	 * and as a verification failure, and does not stop the others.
+	 *
+	 * @param parent		the parent or null to search the page
+	 * @param locators		map of field name to Locator
+	 * @param values		map of field name to value, filled in order
+	 * @return				map of field name to FieldFillResult, in the order of the values
+	 * @throws Exception	on error
+	 */
+	public Map<String, FieldFillResult> fillForm(WebElement parent,
+		Map<String, Locator> locators, Map<String, String> values) throws Exception;
+
+	/**
+	 * Fill the fields of a form located by the ElementLocators of a {@link TestCase TestCase}.
+	 * See {@link #fillForm(WebElement, Map, Map) fillForm}.
+	 *
+	 * @param parent		the parent or null to search the page
+	 * @param testCase		the TestCase
+	 * @param values		map of ElementLocator name to value, e.g. a TestData value, filled in order
+	 * @return				map of ElementLocator name to FieldFillResult
+	 * @throws Exception	on error
+	 */
+	public Map<String, FieldFillResult> fillForm(WebElement parent, TestCase testCase,
+		Map<String, String> values) throws Exception;
 }
\ No newline at end of file
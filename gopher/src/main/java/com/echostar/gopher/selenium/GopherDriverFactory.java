@@ -1,14 +1,70 @@
 package com.echostar.gopher.selenium;
 
+import com.echostar.gopher.persist.BrowserEnum;
+import com.echostar.gopher.persist.PlatformEnum;
+import com.echostar.gopher.persist.TestNode;
+
 public class GopherDriverFactory {
 
+	// The TestNode this thread's TestRun was given a slot on, if any.
+	private static final ThreadLocal<TestNode> assignedTestNode = new ThreadLocal<TestNode>();
+
 	protected GopherDriverFactory () {
 		
 	}
+
+	/**
+	 * Set the TestNode the TestRun running on this thread was given a slot on by the
+	 * {@link com.echostar.gopher.testng.TestRunScheduler TestRunScheduler}.
+	 * {@link #getGopherDriver(BrowserEnum, TestNode) getGopherDriver} starts the browser there,
+	 * whichever TestNode it is given.
+	 *
+	 * @param testNode	the TestNode, or null when the TestRun ends
+	 */
+	public static void setAssignedTestNode (TestNode testNode) {
+		if (testNode == null) {
+			assignedTestNode.remove();
+		} else {
+			assignedTestNode.set(testNode);
+		}
+	}
+
+	/**
+	 * Get the TestNode assigned to this thread's TestRun.
+	 * @return	the TestNode or null if none is assigned
+	 */
+	public static TestNode getAssignedTestNode () {
+		return assignedTestNode.get();
+	}
 	
 	public static GopherDriver getGopherDriver (String browserName,
             String platform, String nodeIp, String nodePort) throws Exception {
 
 		return new GopherDriverImpl (browserName, platform, nodeIp, nodePort);
 	}
+
+	/**
+	 * Get a GopherDriver for a browser on a {@link TestNode TestNode}.
+	 * If the {@link GopherDriverPool GopherDriverPool} is enabled, a warm driver
+	 * is borrowed from it and {@link GopherDriver#stopDriver() stopDriver} gives it back.
+	 * If a TestNode is {@link #setAssignedTestNode assigned} to this thread, the browser runs on it.
+	 *
+	 * @param browser		the browser
+	 * @param testNode		the TestNode, usually the TestRun's own
+	 * @return				the GopherDriver
+	 * @throws Exception	on any error
+	 */
+	public static GopherDriver getGopherDriver (BrowserEnum browser, TestNode testNode) throws Exception {
+
+		TestNode assigned = assignedTestNode.get();
+		if (assigned != null) {
+			testNode = assigned;
+		}
+		if (GopherDriverPool.isEnabled()) {
+			return GopherDriverPool.getInstance().borrow(browser, testNode);
+		}
+		return new GopherDriverImpl (browser.getValue(),
+			PlatformEnum.getOldValue(testNode.getPlatform()),
+			testNode.getNodeIP(), testNode.getNodePort());
+	}
 }
@@ -1,5 +1,8 @@
 package com.echostar.gopher.selenium;
 
+import com.deetysoft.exception.MissingPropertyException;
+import com.echostar.gopher.persist.ElementLocator;
+import com.echostar.gopher.persist.TestCase;
 import com.echostar.gopher.testng.ErrorUtil;
 import com.echostar.gopher.util.Config;
 import com.thoughtworks.selenium.webdriven.WebDriverBackedSelenium;
@@ -28,20 +31,104 @@ public class GopherDriverImpl implements GopherDriver {
 
     RemoteWebDriver driver = null;
 
-    private static Map<String, String> elementIdentifierMap;
-
 	private Logger log;
 
-	static {
-		elementIdentifierMap = new HashMap<>();
-		elementIdentifierMap.put("byName", "NAME"); //$NON-NLS-1$ //$NON-NLS-2$
-		elementIdentifierMap.put("byID", "ID"); //$NON-NLS-1$ //$NON-NLS-2$
-		elementIdentifierMap.put("byXpath", "XPATH"); //$NON-NLS-1$ //$NON-NLS-2$
-		elementIdentifierMap.put("byLinktext", "LINK"); //$NON-NLS-1$ //$NON-NLS-2$
-		elementIdentifierMap.put("byPLinktext", "PLINK"); //$NON-NLS-1$ //$NON-NLS-2$
-		elementIdentifierMap.put("byClassname", "CLASSNAME"); //$NON-NLS-1$ //$NON-NLS-2$
-		elementIdentifierMap.put("byTagname", "TAGNAME"); //$NON-NLS-1$ //$NON-NLS-2$
-	}
+	// Polls conditions in place of fixed sleeps.
+	private PollingWait pollingWait = new PollingWait();
+
+	// The pool this driver is borrowed from, if any.
+	GopherDriverPool pool = null;
+
+	// The elements found on the current page, or null if not caching.
+	private ElementCache elementCache = Config.getPropertyAsBoolean_S(ElementCache.ENABLED_PROP, true) ?
+		new ElementCache() : null;
+
+	/**
+	 * Script returning true when the document has loaded and no jQuery
+	 * requests or animations are running.
+	 */
+	static final String PAGE_QUIET_SCRIPT =
+		"return document.readyState === 'complete' && " + //$NON-NLS-1$
+		"(typeof jQuery === 'undefined' || (jQuery.active === 0 && jQuery(':animated').length === 0));"; //$NON-NLS-1$
+
+	/**
+	 * Script reading elements found by XPath relative to arguments[0] (or the document).
+	 * arguments[1] is the list of XPaths, arguments[2] the list of attribute names.
+	 * Returns a list of maps with found, text, displayed, enabled and attributes,
+	 * or found=false and retry=true if the XPath could not be evaluated.
+	 */
+	static final String READ_ELEMENTS_SCRIPT =
+		"var ctx = arguments[0] || document, xpaths = arguments[1], attrs = arguments[2], out = [];" + //$NON-NLS-1$
+		"for (var i = 0; i < xpaths.length; i++) {" + //$NON-NLS-1$
+		"  var el = null;" + //$NON-NLS-1$
+		"  try {" + //$NON-NLS-1$
+		"    el = document.evaluate(xpaths[i], ctx, null, XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue;" + //$NON-NLS-1$
+		"  } catch (e) { out.push({found: false, retry: true, error: String(e)}); continue; }" + //$NON-NLS-1$
+		"  if (!el) { out.push({found: false}); continue; }" + //$NON-NLS-1$
+		"  var style = window.getComputedStyle ? window.getComputedStyle(el) : el.currentStyle;" + //$NON-NLS-1$
+		"  var displayed = (el.offsetWidth > 0 || el.offsetHeight > 0 || el.getClientRects().length > 0) &&" + //$NON-NLS-1$
+		"    style.visibility !== 'hidden';" + //$NON-NLS-1$
+		"  var text = el.innerText !== undefined ? el.innerText : el.textContent;" + //$NON-NLS-1$
+		"  var values = {};" + //$NON-NLS-1$
+		"  for (var j = 0; j < attrs.length; j++) {" + //$NON-NLS-1$
+		"    var v = el[attrs[j]];" + //$NON-NLS-1$
+		"    if (v === undefined || v === null || typeof v === 'object' || typeof v === 'function') {" + //$NON-NLS-1$
+		"      v = el.getAttribute(attrs[j]);" + //$NON-NLS-1$
+		"    } else if (typeof v === 'boolean') { v = v ? 'true' : null; }" + //$NON-NLS-1$
+		"    values[attrs[j]] = v === null ? null : String(v);" + //$NON-NLS-1$
+		"  }" + //$NON-NLS-1$
+		"  out.push({found: true, text: displayed ? String(text).replace(/^\\s+|\\s+$/g, '') : ''," + //$NON-NLS-1$
+		"    displayed: displayed, enabled: !el.disabled, attributes: values});" + //$NON-NLS-1$
+		"}" + //$NON-NLS-1$
+		"return out;"; //$NON-NLS-1$
+
+	/**
+	 * Script filling fields found by XPath relative to arguments[0] (or the document).
+	 * arguments[1] is the list of XPaths, arguments[2] the list of values and
+	 * arguments[3] the index to start at.
+	 * Returns a list of maps with status 'done' or 'notFound' and ms, one per field filled.
+	 * It stops after a field with status 'native', which WebDriver must fill.
+	 */
+	static final String FILL_FORM_SCRIPT =
+		"var ctx = arguments[0] || document, xpaths = arguments[1], values = arguments[2], out = [];" + //$NON-NLS-1$
+		"var fire = function (el, name) {" + //$NON-NLS-1$
+		"  var ev = document.createEvent('HTMLEvents'); ev.initEvent(name, true, false); el.dispatchEvent(ev);" + //$NON-NLS-1$
+		"};" + //$NON-NLS-1$
+		"for (var i = arguments[3]; i < xpaths.length; i++) {" + //$NON-NLS-1$
+		"  var t0 = new Date().getTime(), el = null, v = values[i];" + //$NON-NLS-1$
+		"  try {" + //$NON-NLS-1$
+		"    el = document.evaluate(xpaths[i], ctx, null, XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue;" + //$NON-NLS-1$
+		"  } catch (e) { out.push({status: 'native'}); break; }" + //$NON-NLS-1$
+		"  if (!el) { out.push({status: 'notFound', ms: new Date().getTime() - t0}); continue; }" + //$NON-NLS-1$
+		"  var tag = el.tagName.toLowerCase(), type = String(el.type || '').toLowerCase();" + //$NON-NLS-1$
+		"  var visible = el.offsetWidth > 0 || el.offsetHeight > 0 || el.getClientRects().length > 0;" + //$NON-NLS-1$
+		"  if (el.disabled || el.readOnly || !visible || type === 'file') { out.push({status: 'native'}); break; }" + //$NON-NLS-1$
+		"  if (tag === 'select') {" + //$NON-NLS-1$
+		"    var option = null;" + //$NON-NLS-1$
+		"    for (var j = 0; j < el.options.length; j++) {" + //$NON-NLS-1$
+		"      if (String(el.options[j].text).replace(/^\\s+|\\s+$/g, '') === v) { option = el.options[j]; break; }" + //$NON-NLS-1$
+		"    }" + //$NON-NLS-1$
+		"    if (option === null) { out.push({status: 'native'}); break; }" + //$NON-NLS-1$
+		"    if (!option.selected) { option.selected = true; fire(el, 'input'); fire(el, 'change'); }" + //$NON-NLS-1$
+		"  } else if (type === 'checkbox' || type === 'radio') {" + //$NON-NLS-1$
+		"    var want = String(v).toLowerCase() === 'true';" + //$NON-NLS-1$
+		"    if (el.checked !== want && (want || type === 'checkbox')) { el.click(); }" + //$NON-NLS-1$
+		"  } else if (tag === 'input' || tag === 'textarea') {" + //$NON-NLS-1$
+		"    var proto = tag === 'textarea' ? HTMLTextAreaElement.prototype : HTMLInputElement.prototype;" + //$NON-NLS-1$
+		"    var setter = Object.getOwnPropertyDescriptor ? Object.getOwnPropertyDescriptor(proto, 'value') : null;" + //$NON-NLS-1$
+		"    el.focus();" + //$NON-NLS-1$
+		"    if (setter && setter.set) { setter.set.call(el, v); } else { el.value = v; }" + //$NON-NLS-1$
+		"    fire(el, 'input'); fire(el, 'change'); el.blur();" + //$NON-NLS-1$
+		"  } else { out.push({status: 'native'}); break; }" + //$NON-NLS-1$
+		"  out.push({status: 'done', ms: new Date().getTime() - t0});" + //$NON-NLS-1$
+		"}" + //$NON-NLS-1$
+		"return out;"; //$NON-NLS-1$
+
+	/**
+	 * Property enabling filling forms by script. The default is true.
+	 * If false, {@link #fillForm fillForm} fills every field with WebDriver commands.
+	 */
+	public static final String FILL_FORM_SCRIPT_PROP = "GopherDriver.fillForm.script"; //$NON-NLS-1$
 
 	/**
 	 * TBD
@@ -126,6 +213,12 @@ public class GopherDriverImpl implements GopherDriver {
 				cap.setBrowserName("iexplore"); //$NON-NLS-1$
 				cap.setPlatform(Platform.WIN8);
 			}
+			if (cap != null) {
+				// normal waits for the load event, eager for DOMContentLoaded, none for nothing.
+				// NavigationReadiness decides when the page is ready.
+				cap.setCapability("pageLoadStrategy", //$NON-NLS-1$
+					Config.getProperty_S(NavigationReadiness.PAGE_LOAD_STRATEGY_PROP, "normal")); //$NON-NLS-1$
+			}
 			float node_port = Float.parseFloat(nodePort);
 			int nodePort_ = (int) (node_port);
 			driver = new RemoteWebDriver(new URL("http://" + nodeIP + ":"+ nodePort_ + "/wd/hub"), cap); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
@@ -195,53 +288,33 @@ public class GopherDriverImpl implements GopherDriver {
 	 * This method will be used to pause the script until the given element to
 	 * be displayed.
 	 * 
-	 * @param maxTries     the maximum number of waits, each duration
-	 * 						sleep("Sleep.GopherDriver.waitForElementToBeVisible");
+	 * The element is polled with a {@link PollingWait PollingWait}.
+	 * 
+	 * @param maxTries     the timeout is maxTries times the property
+	 * 						"Sleep.GopherDriver.waitForElementToBeVisible" in ms
 	 * @param locator      array returned by {@link #getLocator getLocator}
 	 * @throws Exception   on error
 	 * @author shekhar.bhardwaj
 	 */
-	public void waitForElementToBeVisible(int maxTries, String[] locator) throws Exception {
+	public void waitForElementToBeVisible(int maxTries, final String[] locator) throws Exception {
 
         Assert.assertNotNull(locator, "The argument String[] locator is null."); //$NON-NLS-1$
 
         try {
 	        String elementName = locator[1];
 	        String elementIdentifier = locator[0];
-	        boolean flag = false;
-	        int count = 0;
-	        while (flag == false) {
-	            sleep("Sleep.GopherDriver.waitForElementToBeVisible"); //$NON-NLS-1$
-	            try {
-	                // WebElement element = getWebElement(driver,null, locator);
-	                if (isDisplayed(null, locator) == false) {
-	                    // while(!driver.findElement(By.id(elementID)).isDisplayed())
-	                    log.debug("Waiting for an element to be displayed"); //$NON-NLS-1$
-	                    count = count + 1;
-	                    if (count == maxTries) {
-	                        log.info("Element with " //$NON-NLS-1$
-								+ elementIdentifier + " " + elementName //$NON-NLS-1$
-								+ " is not displayed, timeout"); //$NON-NLS-1$
-	                        break;
-	                    }
-	                } else {
-	                    flag = true;
-	                }
-	            } catch (Exception e) {
-	                // Add the error to the list of errors.
-	                ErrorUtil.addVerificationFailure(e);
-
-	                log.error("Exception waiting for element to be visible: '"+e.getMessage()+"'."); //$NON-NLS-1$ //$NON-NLS-2$
-	                count = count + 1;
-	                if (count == maxTries) {
-	                    log.error("Element with " //$NON-NLS-1$
-							+ elementIdentifier + " " + elementName //$NON-NLS-1$
-							+ " is not displayed, max tries exceeded."); //$NON-NLS-1$
-	                    break;
-	                }
-	                
-	                throw e;
-	            }
+	        long timeout = maxTries * PollingWait.getTimeout("Sleep.GopherDriver.waitForElementToBeVisible"); //$NON-NLS-1$
+	        final Locator compiled = Locator.compile(locator, true);
+	        boolean displayed = pollingWait.until(new PollingWait.Condition() {
+	        	public boolean isTrue () throws Exception {
+	        		WebElement uiElement = findQuietly(null, compiled);
+	        		return uiElement != null && uiElement.isDisplayed();
+	        	}
+	        }, timeout);
+	        if (!displayed) {
+	            log.info("Element with " //$NON-NLS-1$
+					+ elementIdentifier + " " + elementName //$NON-NLS-1$
+					+ " is not displayed, timeout"); //$NON-NLS-1$
 	        }
 	    } catch (Exception e) {
             // Add the error to the list of errors.
@@ -320,6 +393,8 @@ public class GopherDriverImpl implements GopherDriver {
 
 	/**
 	 * Close and quit the browser.
+	 * A driver borrowed from the {@link GopherDriverPool GopherDriverPool}
+	 * is given back to the pool instead.
 	 * 
 	 * @throws Exception   on error
 	 * @author shekhar.bhardwaj
@@ -328,7 +403,18 @@ public class GopherDriverImpl implements GopherDriver {
 		if (driver == null) {
 			return;
 		}
-        sleep("Sleep.GopherDriver.stopDriver"); //$NON-NLS-1$
+		if (elementCache != null) {
+			log.debug(elementCache.getStatus());
+			elementCache.invalidate();
+		}
+		if (pool != null) {
+			GopherDriverPool borrowedFrom = pool;
+			pool = null;
+			borrowedFrom.giveBack(this);
+			return;
+		}
+        // Let any requests in progress finish.
+        waitForPageQuiet("Sleep.GopherDriver.stopDriver"); //$NON-NLS-1$
 		log.info("Closing the browser"); //$NON-NLS-1$
 		try {
 		     driver.close();
@@ -340,6 +426,77 @@ public class GopherDriverImpl implements GopherDriver {
 		}
 	}
 
+	/**
+	 * Wrap a started browser.
+	 * @param driver	the browser or null
+	 */
+	GopherDriverImpl (RemoteWebDriver driver) {
+		this.driver = driver;
+		log = Logger.getLogger (getClass().getName());
+	}
+
+	/**
+	 * Check the browser still responds.
+	 * @return	true if it does
+	 */
+	boolean isHealthy () {
+		if (driver == null) {
+			return false;
+		}
+		try {
+			driver.getWindowHandles();
+			driver.executeScript("return 1;"); //$NON-NLS-1$
+			return true;
+		} catch (Exception e) {
+			log.debug("Health check failed: '"+e.getMessage()+"'."); //$NON-NLS-1$ //$NON-NLS-2$
+			return false;
+		}
+	}
+
+	/**
+	 * Reset the browser for the next TestRun: close all windows but the first,
+	 * delete the cookies, clear local and session storage and load about:blank.
+	 * WebDriver can only delete the cookies and storage of the current page's domain.
+	 * @throws Exception	on error
+	 */
+	void resetBrowserState () throws Exception {
+		Set<String> handles = driver.getWindowHandles();
+		String first = null;
+		for (String handle : handles) {
+			if (first == null) {
+				first = handle;
+				continue;
+			}
+			driver.switchTo().window(handle);
+			driver.close();
+		}
+		driver.switchTo().window(first);
+		driver.manage().deleteAllCookies();
+		try {
+			driver.executeScript("window.localStorage.clear(); window.sessionStorage.clear();"); //$NON-NLS-1$
+		} catch (Exception e) {
+			// No storage on this page.
+			log.trace("Clearing storage failed: '"+e.getMessage()+"'."); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		driver.get("about:blank"); //$NON-NLS-1$
+		pageMayChange();
+	}
+
+	/**
+	 * Quit the browser, ending the session.
+	 */
+	void quit () {
+		if (driver == null) {
+			return;
+		}
+		try {
+			driver.quit();
+		} catch (Exception e) {
+			log.warn("Exception quitting the browser: '"+e.getMessage()+"'."); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		driver = null;
+	}
+
 	/**
 	 * This method will be used to check/uncheck the given check box.
 	 * 
@@ -558,83 +715,30 @@ public class GopherDriverImpl implements GopherDriver {
 	 */
 	public WebElement getWebElement(WebElement parent, String[] locator) throws Exception {
 
-        //Assert.assertNotNull(parent, "The argument WebElement parent is null.");
         Assert.assertNotNull(locator, "The argument String[] locator is null."); //$NON-NLS-1$
+		return getWebElement(parent, Locator.compile(locator, true));
+	}
 
-        WebElement uiElement = null;
-		String elementName = null;
-		String elementIdentifier = null;
+	/**
+	 * Implement {@link GopherDriver#getWebElement(WebElement, Locator) GopherDriver}.
+	 */
+	public WebElement getWebElement(WebElement parent, Locator locator) throws Exception {
 
-		try {
-	        elementName = (locator[1]).trim();
-	        elementIdentifier = (locator[0]).trim();
+        Assert.assertNotNull(locator, "The argument Locator locator is null."); //$NON-NLS-1$
 
-	        if ((elementIdentifierMap.get("byName")).equals(elementIdentifier)) { //$NON-NLS-1$
-				if (parent == null) {
-					uiElement = driver.findElement(By.name(elementName));
-				} else {
-					uiElement = parent.findElement(By.name(elementName));
-				}
-			} else if (elementIdentifierMap.get("byID").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiElement = driver.findElement(By.id(elementName));
-				} else {
-					uiElement = parent.findElement(By.id(elementName));
-				}
-			} else if (elementIdentifierMap.get("byXpath").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiElement = driver.findElement(By.xpath(elementName));
-				} else {
-					uiElement = parent.findElement(By.xpath(elementName));
-				}
-			} else if (elementIdentifierMap.get("byLinktext").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiElement = driver.findElement(By.linkText(elementName));
-				} else {
-					uiElement = parent.findElement(By.linkText(elementName));
-				}
-			} else if (elementIdentifierMap.get("byPLinktext").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiElement = driver.findElement(By
-							.partialLinkText(elementName));
-				} else {
-					uiElement = parent.findElement(By
-							.partialLinkText(elementName));
-				}
-			} else if (elementIdentifierMap.get("byClassname").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					// uiElement =
-					// driver.findElement(By.className(elementName));
-					uiElement = driver.findElement(By.xpath(elementName));
-				} else {
-					uiElement = parent.findElement(By.xpath(elementName));
-				}
-			} else if (elementIdentifierMap.get("byTagname").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiElement = driver.findElement(By.tagName(elementName));
-				} else {
-					uiElement = parent.findElement(By.tagName(elementName));
-				}
-			}
+        WebElement uiElement = null;
+		try {
+			uiElement = find(parent, locator, false);
 		} catch (Exception e) {
             // Add the error to the list of errors.
             ErrorUtil.addVerificationFailure(e);
 
             log.error("Exception trying to find the given element '" //$NON-NLS-1$
-				+ elementName + "' Identifier='" + elementIdentifier+"' : '"+ //$NON-NLS-1$ //$NON-NLS-2$
+				+ locator.getValue() + "' Identifier='" + locator.getIdentifier()+"' : '"+ //$NON-NLS-1$ //$NON-NLS-2$
 			    e.getMessage()+"'."); //$NON-NLS-1$
-            
             throw e;
 		}
-
 		return uiElement;
-
 	}
 
 	/**
@@ -649,67 +753,25 @@ public class GopherDriverImpl implements GopherDriver {
 	 */
 	public List<WebElement> getWebElements(WebElement parent, String[] locator) throws Exception {
 
-        //Assert.assertNotNull(parent, "The argument WebElement parent is null.");
         Assert.assertNotNull(locator, "The argument String[] locator is null."); //$NON-NLS-1$
+		return getWebElements(parent, Locator.compile(locator, true));
+	}
 
-        String elementName = null;
-		String elementIdentifier = null;
-		List<WebElement> uiElements = null;
+	/**
+	 * Implement {@link GopherDriver#getWebElements(WebElement, Locator) GopherDriver}.
+	 */
+	public List<WebElement> getWebElements(WebElement parent, Locator locator) throws Exception {
 
-		try {
-	        elementName = (locator[1]).trim();
-	        elementIdentifier = (locator[0]).trim();
-	        uiElements = new ArrayList<WebElement>();
+        Assert.assertNotNull(locator, "The argument Locator locator is null."); //$NON-NLS-1$
 
-	        if ((elementIdentifierMap.get("byName")).equals(elementIdentifier)) { //$NON-NLS-1$
-				if (parent == null) {
-					uiElements = driver.findElements(By.name(elementName));
-				} else {
-					uiElements = parent.findElements(By.name(elementName));
-				}
-			} else if (elementIdentifierMap.get("byID").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiElements = driver.findElements(By.id(elementName));
-				} else {
-					uiElements = parent.findElements(By.id(elementName));
-				}
-			} else if (elementIdentifierMap.get("byXpath").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiElements = driver.findElements(By.xpath(elementName));
-				} else {
-					uiElements = parent.findElements(By.xpath(elementName));
-				}
-			} else if (elementIdentifierMap.get("byLinktext").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiElements = driver.findElements(By.linkText(elementName));
-				} else {
-					uiElements = parent.findElements(By.linkText(elementName));
-				}
-			} else if (elementIdentifierMap.get("byPLinktext").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiElements = driver.findElements(By
-							.partialLinkText(elementName));
-				} else {
-					uiElements = parent.findElements(By
-							.partialLinkText(elementName));
-				}
-			} else if (elementIdentifierMap.get("byClassname").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiElements = driver.findElements(By.xpath(elementName));
-				} else {
-					uiElements = parent.findElements(By.xpath(elementName));
-				}
-			} else if (elementIdentifierMap.get("byTagname").equals( //$NON-NLS-1$
-					elementIdentifier)) {
+		List<WebElement> uiElements = new ArrayList<WebElement>();
+		try {
+			By by = locator.getBy();
+			if (by != null) {
 				if (parent == null) {
-					uiElements = driver.findElements(By.tagName(elementName));
+					uiElements = driver.findElements(by);
 				} else {
-					uiElements = parent.findElements(By.tagName(elementName));
+					uiElements = parent.findElements(by);
 				}
 			}
 		} catch (Exception e) {
@@ -717,9 +779,8 @@ public class GopherDriverImpl implements GopherDriver {
             ErrorUtil.addVerificationFailure(e);
 
             log.error("Exception trying to find the given element '" //$NON-NLS-1$
-				+ elementName + "' Identifier='" + elementIdentifier+"' : '"+ //$NON-NLS-1$ //$NON-NLS-2$
+				+ locator.getValue() + "' Identifier='" + locator.getIdentifier()+"' : '"+ //$NON-NLS-1$ //$NON-NLS-2$
 			    e.getMessage()+"'."); //$NON-NLS-1$
-            
             throw e;
 		}
 		return uiElements;
@@ -736,22 +797,26 @@ public class GopherDriverImpl implements GopherDriver {
 	 */
 	public boolean isDisplayed(WebElement parent, String[] locator) throws Exception {
 
-        //Assert.assertNotNull(parent, "The argument WebElement parent is null.");
         Assert.assertNotNull(locator, "The argument String[] locator is null."); //$NON-NLS-1$
+		return isDisplayed(parent, Locator.compile(locator, true));
+	}
+
+	/**
+	 * Implement {@link GopherDriver#isDisplayed(WebElement, Locator) GopherDriver}.
+	 */
+	public boolean isDisplayed(WebElement parent, Locator locator) throws Exception {
+
+        Assert.assertNotNull(locator, "The argument Locator locator is null."); //$NON-NLS-1$
 
-        String elementName = null;
-		String elementIdentifier = null;
 		boolean flag = false;
 		try {
-	        elementName = (locator[1]).trim();
-	        elementIdentifier = (locator[0]).trim();
 			WebElement uiElement = getWebElement(parent, locator);
 			if (uiElement.isDisplayed()) {
 				flag = true;
-				log.info("The UI element " + elementName //$NON-NLS-1$
+				log.info("The UI element " + locator.getValue() //$NON-NLS-1$
 						+ " is displayed"); //$NON-NLS-1$
 			} else {
-				log.error("The UI element " + elementName //$NON-NLS-1$
+				log.error("The UI element " + locator.getValue() //$NON-NLS-1$
 						+ " is not displayed"); //$NON-NLS-1$
 			}
 		} catch (Exception e) {
@@ -759,9 +824,9 @@ public class GopherDriverImpl implements GopherDriver {
             ErrorUtil.addVerificationFailure(e);
 
             log.error("Exception trying to find the given element '" //$NON-NLS-1$
-				+ elementName + "' Identifier='" + elementIdentifier+"' : '"+ //$NON-NLS-1$ //$NON-NLS-2$
+				+ locator.getValue() + "' Identifier='" + locator.getIdentifier()+"' : '"+ //$NON-NLS-1$ //$NON-NLS-2$
 			    e.getMessage()+"'."); //$NON-NLS-1$
-			throw e;
+            throw e;
 		}
 		return flag;
 	}
@@ -777,23 +842,26 @@ public class GopherDriverImpl implements GopherDriver {
 	 */
 	public boolean isEnabled(WebElement parent, String[] locator) throws Exception {
 
-        //Assert.assertNotNull(parent, "The argument WebElement parent is null.");
         Assert.assertNotNull(locator, "The argument String[] locator is null."); //$NON-NLS-1$
+		return isEnabled(parent, Locator.compile(locator, true));
+	}
 
-        String elementName = null;
-		String elementIdentifier = null;
-		boolean flag = false;
+	/**
+	 * Implement {@link GopherDriver#isEnabled(WebElement, Locator) GopherDriver}.
+	 */
+	public boolean isEnabled(WebElement parent, Locator locator) throws Exception {
+
+        Assert.assertNotNull(locator, "The argument Locator locator is null."); //$NON-NLS-1$
 
+		boolean flag = false;
 		try {
-	        elementName = (locator[1]).trim();
-	        elementIdentifier = (locator[0]).trim();
 			WebElement uiElement = getWebElement(parent, locator);
 			if (uiElement.isEnabled()) {
 				flag = true;
-				log.info("The UI element " + elementName //$NON-NLS-1$
+				log.info("The UI element " + locator.getValue() //$NON-NLS-1$
 						+ " is enabled"); //$NON-NLS-1$
 			} else {
-				log.error("The UI element " + elementName //$NON-NLS-1$
+				log.error("The UI element " + locator.getValue() //$NON-NLS-1$
 						+ " is not enabled"); //$NON-NLS-1$
 			}
 		} catch (Exception e) {
@@ -801,9 +869,9 @@ public class GopherDriverImpl implements GopherDriver {
             ErrorUtil.addVerificationFailure(e);
 
             log.error("Exception trying to find the given element '" //$NON-NLS-1$
-				+ elementName + "' Identifier='" + elementIdentifier+"' : '"+ //$NON-NLS-1$ //$NON-NLS-2$
-			    e.getMessage()+"'"); //$NON-NLS-1$
-			throw e;
+				+ locator.getValue() + "' Identifier='" + locator.getIdentifier()+"' : '"+ //$NON-NLS-1$ //$NON-NLS-2$
+			    e.getMessage()+"'."); //$NON-NLS-1$
+            throw e;
 		}
 		return flag;
 	}
@@ -866,7 +934,8 @@ public class GopherDriverImpl implements GopherDriver {
 				uiElement.sendKeys(Keys.TAB);
 				Actions action = new Actions(driver);
 				action.moveToElement(uiElement).perform();
-	            sleep("Sleep.GopherDriver.goPerformMouseOver"); //$NON-NLS-1$
+				pageMayChange();
+	            waitForPageQuiet("Sleep.GopherDriver.goPerformMouseOver"); //$NON-NLS-1$
 				log.info("The UI element with name " //$NON-NLS-1$
 						+ elementName + " is mouse over"); //$NON-NLS-1$
 			} else {
@@ -899,7 +968,8 @@ public class GopherDriverImpl implements GopherDriver {
 					+ "arguments[0].dispatchEvent(evObj);} else if(document.createEventObject) { arguments[0].fireEvent('onmouseover');}"; //$NON-NLS-1$
 			JavascriptExecutor jse = driver;
 			jse.executeScript(mouseOverjavascript, element);
-            sleep("Sleep.GopherDriver.goBuildMouseOverJavascriptExecutor"); //$NON-NLS-1$
+			pageMayChange();
+            waitForPageQuiet("Sleep.GopherDriver.goBuildMouseOverJavascriptExecutor"); //$NON-NLS-1$
 			log.info("The UI element with name " //$NON-NLS-1$
 					+ element + " is mouse over"); //$NON-NLS-1$
 		} catch (Exception e) {
@@ -939,7 +1009,8 @@ public class GopherDriverImpl implements GopherDriver {
 				Select dropdown = new Select(uiElement);
 				//dropdown.deselectAll();
 				dropdown.selectByVisibleText(itemTobe_selected);
-	            sleep("Sleep.GopherDriver.goSelectDropdown"); //$NON-NLS-1$
+				pageMayChange();
+	            waitForPageQuiet("Sleep.GopherDriver.goSelectDropdown"); //$NON-NLS-1$
 				log.info("The item " + itemTobe_selected //$NON-NLS-1$
 						+ "in UI element with name " + elementName //$NON-NLS-1$
 						+ " is selected"); //$NON-NLS-1$
@@ -969,12 +1040,19 @@ public class GopherDriverImpl implements GopherDriver {
 	 * @author shekhar.bhardwaj
 	 */
 	public void navigate2testsite(String url, String browserName) throws Exception {
+		navigate2testsite(url, browserName, null);
+	}
+
+	/**
+	 * Implement {@link GopherDriver#navigate2testsite(String, String, NavigationReadiness) GopherDriver}.
+	 */
+	public void navigate2testsite(String url, String browserName,
+		NavigationReadiness readiness) throws Exception {
 
         Assert.assertNotNull(url, "The argument String url is null."); //$NON-NLS-1$
         Assert.assertNotNull(browserName, "The argument String browserName is null."); //$NON-NLS-1$
 
         try {
-            sleep("Sleep.GopherDriver.navigate2testsite_1"); //$NON-NLS-1$
 	        Dimension targetSize;
 	        if (!(browserName.equals("safari"))) { //$NON-NLS-1$
 	            // Added the following code to maximize the browser window
@@ -986,8 +1064,10 @@ public class GopherDriverImpl implements GopherDriver {
 	        driver.manage().window().maximize();
 
 	        driver.get(url);
+	        pageMayChange();
 	        // driver.manage().window().maximize(); This works only for firefox so
 	        // added the above code
+	        waitForNavigation(readiness);
 
 	        String currentURL = goGetCurrentURL();
 	        log.info(""+currentURL); //$NON-NLS-1$
@@ -998,10 +1078,6 @@ public class GopherDriverImpl implements GopherDriver {
 	            log.info("Implicitly waiting for :" + browserName); //$NON-NLS-1$
 	            log.info("*************************************************************************"); //$NON-NLS-1$
 	            driver.manage().timeouts().implicitlyWait(20, TimeUnit.SECONDS);
-	        } else {
-	            log.info("Thread.sleep for :" + browserName); //$NON-NLS-1$
-	            log.info("*************************************************************************"); //$NON-NLS-1$
-	            sleep("Sleep.GopherDriver.navigate2testsite_2"); //$NON-NLS-1$
 	        }
 	        //DAnyUtil.qaDANYpopUP(driver, url);
 	        int testSiteStatusCode = getHTTPResponseStatusCode(url);
@@ -1017,6 +1093,16 @@ public class GopherDriverImpl implements GopherDriver {
 	    }
 	}
 
+	/**
+	 * Implement {@link GopherDriver#waitForNavigation(NavigationReadiness) GopherDriver}.
+	 */
+	public boolean waitForNavigation(NavigationReadiness readiness) throws Exception {
+		if (readiness == null) {
+			readiness = NavigationReadiness.getCurrent();
+		}
+		return readiness.await(driver, pollingWait);
+	}
+
 	/***
 	 * This Method gets the text in string format from GUI
 	 * 
@@ -1029,89 +1115,32 @@ public class GopherDriverImpl implements GopherDriver {
 
 	public String goGetText(WebElement parent, String[] locator) throws Exception {
 
-        //Assert.assertNotNull(parent, "The argument WebElement parent is null.");
         Assert.assertNotNull(locator, "The argument String[] locator is null."); //$NON-NLS-1$
+		return goGetText(parent, Locator.compile(locator));
+	}
 
-        String uiText = null;
-		String elementName = (locator[1]).trim();
-		String elementIdentifier = (locator[0]).trim();
+	/**
+	 * Implement {@link GopherDriver#goGetText(WebElement, Locator) GopherDriver}.
+	 */
+	public String goGetText(WebElement parent, Locator locator) throws Exception {
 
-		try {
-	        elementName = (locator[1]).trim();
-	        elementIdentifier = (locator[0]).trim();
+        Assert.assertNotNull(locator, "The argument Locator locator is null."); //$NON-NLS-1$
 
-	        if ((elementIdentifierMap.get("byName")).equals(elementIdentifier)) { //$NON-NLS-1$
-				if (parent == null) {
-					uiText = driver.findElement(By.name(elementName)).getText();
-				} else {
-					uiText = parent.findElement(By.name(elementName)).getText();
-				}
-			} else if (elementIdentifierMap.get("byID").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiText = driver.findElement(By.id(elementName)).getText();
-				} else {
-					uiText = parent.findElement(By.id(elementName)).getText();
-				}
-			} else if (elementIdentifierMap.get("byXpath").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiText = driver.findElement(By.xpath(elementName))
-							.getText();
-				} else {
-					uiText = parent.findElement(By.xpath(elementName))
-							.getText();
-				}
-			} else if (elementIdentifierMap.get("byLinktext").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiText = driver.findElement(By.linkText(elementName))
-							.getText();
-				} else {
-					uiText = parent.findElement(By.linkText(elementName))
-							.getText();
-				}
-			} else if (elementIdentifierMap.get("byPLinktext").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiText = driver
-							.findElement(By.partialLinkText(elementName))
-							.getText();
-				} else {
-					uiText = parent
-							.findElement(By.partialLinkText(elementName))
-							.getText();
-				}
-			} else if (elementIdentifierMap.get("byClassname").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiText = driver.findElement(By.className(elementName))
-							.getText();
-				} else {
-					uiText = parent.findElement(By.className(elementName))
-							.getText();
-				}
-			} else if (elementIdentifierMap.get("byTagname").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiText = driver.findElement(By.tagName(elementName))
-							.getText();
-				} else {
-					uiText = parent.findElement(By.tagName(elementName))
-							.getText();
-				}
+        String uiText = null;
+		try {
+			WebElement uiElement = getWebElement(parent, locator);
+			if (uiElement != null) {
+				uiText = uiElement.getText();
 			}
 		} catch (Exception e) {
             // Add the error to the list of errors.
             ErrorUtil.addVerificationFailure(e);
 
-            log.error("Exception trying to find the element '" //$NON-NLS-1$
-				+ elementName + "' Identifier='" + elementIdentifier+"' : '"+ //$NON-NLS-1$ //$NON-NLS-2$
+            log.error("Exception trying to find the given element '" //$NON-NLS-1$
+				+ locator.getValue() + "' Identifier='" + locator.getIdentifier()+"' : '"+ //$NON-NLS-1$ //$NON-NLS-2$
 			    e.getMessage()+"'."); //$NON-NLS-1$
-            
             throw e;
 		}
-
 		return uiText;
 	}
 
@@ -1161,76 +1190,32 @@ public class GopherDriverImpl implements GopherDriver {
 	 */
 	public void goSendKeys(WebElement parent, String key, String[] locator) throws Exception {
 
-        //Assert.assertNotNull(parent, "The argument WebElement parent is null.");
-        Assert.assertNotNull(key, "The argument String key is null."); //$NON-NLS-1$
         Assert.assertNotNull(locator, "The argument String[] locator is null."); //$NON-NLS-1$
+		goSendKeys(parent, key, Locator.compile(locator));
+	}
 
-        String elementName = null;
-		String elementIdentifier = null;
+	/**
+	 * Implement {@link GopherDriver#goSendKeys(WebElement, String, Locator) GopherDriver}.
+	 */
+	public void goSendKeys(WebElement parent, String key, Locator locator) throws Exception {
 
-		try {
-	        elementName = (locator[1]).trim();
-	        elementIdentifier = (locator[0]).trim();
+        Assert.assertNotNull(key, "The argument String key is null."); //$NON-NLS-1$
+        Assert.assertNotNull(locator, "The argument Locator locator is null."); //$NON-NLS-1$
 
-	        if ((elementIdentifierMap.get("byName")).equals(elementIdentifier)) { //$NON-NLS-1$
-				if (parent == null) {
-					driver.findElement(By.name(elementName)).sendKeys(key);
-				} else {
-					parent.findElement(By.tagName(elementName)).sendKeys(key);
-				}
-			} else if (elementIdentifierMap.get("byID").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					driver.findElement(By.id(elementName)).sendKeys(key);
-				} else {
-					parent.findElement(By.tagName(elementName)).sendKeys(key);
-				}
-			} else if (elementIdentifierMap.get("byXpath").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					driver.findElement(By.xpath(elementName)).sendKeys(key);
-				} else {
-					parent.findElement(By.tagName(elementName)).sendKeys(key);
-				}
-			} else if (elementIdentifierMap.get("byLinktext").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					driver.findElement(By.linkText(elementName)).sendKeys(key);
-				} else {
-					parent.findElement(By.tagName(elementName)).sendKeys(key);
-				}
-			} else if (elementIdentifierMap.get("byPLinktext").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					driver.findElement(By.partialLinkText(elementName)).sendKeys(key);
-				} else {
-					parent.findElement(By.tagName(elementName)).sendKeys(key);
-				}
-			} else if (elementIdentifierMap.get("byClassname").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					driver.findElement(By.className(elementName)).sendKeys(key);
-				} else {
-					parent.findElement(By.tagName(elementName)).sendKeys(key);
-				}
-			} else if (elementIdentifierMap.get("byTagname").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					driver.findElement(By.tagName(elementName)).sendKeys(key);
-				} else {
-					parent.findElement(By.tagName(elementName)).sendKeys(key);
-				}
+		try {
+			WebElement uiElement = getWebElement(parent, locator);
+			if (uiElement != null) {
+				uiElement.sendKeys(key);
 			}
 		} catch (Exception e) {
             // Add the error to the list of errors.
             ErrorUtil.addVerificationFailure(e);
 
             log.error("Exception trying to find the given element '" //$NON-NLS-1$
-				+ elementName + "' Identifier='" + elementIdentifier+"' : '"+ //$NON-NLS-1$ //$NON-NLS-2$
+				+ locator.getValue() + "' Identifier='" + locator.getIdentifier()+"' : '"+ //$NON-NLS-1$ //$NON-NLS-2$
 			    e.getMessage()+"'."); //$NON-NLS-1$
-			throw e;
+            throw e;
 		}
-
 	}
 
 	/**
@@ -1246,94 +1231,34 @@ public class GopherDriverImpl implements GopherDriver {
 	 */
 	public String goGetAttribute(WebElement parent, String attribute, String[] locator) throws Exception {
 
-        //Assert.assertNotNull(parent, "The argument WebElement parent is null.");
-        Assert.assertNotNull(attribute, "The argument String attribute is null."); //$NON-NLS-1$
         Assert.assertNotNull(locator, "The argument String[] locator is null."); //$NON-NLS-1$
+		return goGetAttribute(parent, attribute, Locator.compile(locator));
+	}
 
-        String uiText = null;
-		String elementName = null;
-		String elementIdentifier = null;
+	/**
+	 * Implement {@link GopherDriver#goGetAttribute(WebElement, String, Locator) GopherDriver}.
+	 */
+	public String goGetAttribute(WebElement parent, String attribute, Locator locator) throws Exception {
 
-		try {
-	        elementName = (locator[1]).trim();
-	        elementIdentifier = (locator[0]).trim();
+        Assert.assertNotNull(attribute, "The argument String attribute is null."); //$NON-NLS-1$
+        Assert.assertNotNull(locator, "The argument Locator locator is null."); //$NON-NLS-1$
 
-	        if ((elementIdentifierMap.get("byName")).equals(elementIdentifier)) { //$NON-NLS-1$
-				if (parent == null) {
-					uiText = driver.findElement(By.name(elementName))
-							.getAttribute(attribute);
-				} else {
-					uiText = parent.findElement(By.name(elementName))
-							.getAttribute(attribute);
-				}
-			} else if (elementIdentifierMap.get("byID").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiText = driver.findElement(By.name(elementName))
-							.getAttribute(attribute);
-				} else {
-					uiText = parent.findElement(By.name(elementName))
-							.getAttribute(attribute);
-				}
-			} else if (elementIdentifierMap.get("byXpath").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiText = driver.findElement(By.name(elementName))
-							.getAttribute(attribute);
-				} else {
-					uiText = parent.findElement(By.name(elementName))
-							.getAttribute(attribute);
-				}
-			} else if (elementIdentifierMap.get("byLinktext").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiText = driver.findElement(By.name(elementName))
-							.getAttribute(attribute);
-				} else {
-					uiText = parent.findElement(By.name(elementName))
-							.getAttribute(attribute);
-				}
-			} else if (elementIdentifierMap.get("byPLinktext").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiText = driver.findElement(By.name(elementName))
-							.getAttribute(attribute);
-				} else {
-					uiText = parent.findElement(By.name(elementName))
-							.getAttribute(attribute);
-				}
-			} else if (elementIdentifierMap.get("byClassname").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiText = driver.findElement(By.name(elementName))
-							.getAttribute(attribute);
-				} else {
-					uiText = parent.findElement(By.name(elementName))
-							.getAttribute(attribute);
-				}
-			} else if (elementIdentifierMap.get("byTagname").equals( //$NON-NLS-1$
-					elementIdentifier)) {
-				if (parent == null) {
-					uiText = driver.findElement(By.name(elementName))
-							.getAttribute(attribute);
-				} else {
-					uiText = parent.findElement(By.name(elementName))
-							.getAttribute(attribute);
-				}
+        String uiText = null;
+		try {
+			WebElement uiElement = getWebElement(parent, locator);
+			if (uiElement != null) {
+				uiText = uiElement.getAttribute(attribute);
 			}
 		} catch (Exception e) {
             // Add the error to the list of errors.
             ErrorUtil.addVerificationFailure(e);
 
             log.error("Exception trying to find the given element '" //$NON-NLS-1$
-			    + elementName + "' Identifier='" + elementIdentifier+"' : '"+ //$NON-NLS-1$ //$NON-NLS-2$
+				+ locator.getValue() + "' Identifier='" + locator.getIdentifier()+"' : '"+ //$NON-NLS-1$ //$NON-NLS-2$
 			    e.getMessage()+"'."); //$NON-NLS-1$
-            
             throw e;
 		}
-
 		return uiText;
-
 	}
 
 	/***
@@ -1344,26 +1269,26 @@ public class GopherDriverImpl implements GopherDriver {
 	 */
 	public String goGetTitle() throws Exception {
 
-	    int maxTries = Config.getPropertyAsInt_S("Sleep.GopherDriver.goGetTitle.maxTries"); //$NON-NLS-1$
-	    int waitTime = Config.getPropertyAsInt_S("Sleep.GopherDriver.goGetTitle.waitTime"); //$NON-NLS-1$
+	    // The names under Sleep.GopherDriverAPI are the ones in gopher.properties.
+	    int maxTries = Config.getPropertyAsInt_S("Sleep.GopherDriver.goGetTitle.maxTries", //$NON-NLS-1$
+	    	Config.getPropertyAsInt_S("Sleep.GopherDriverAPI.goGetTitle.maxTries", 3)); //$NON-NLS-1$
+	    int waitTime = Config.getPropertyAsInt_S("Sleep.GopherDriver.goGetTitle.waitTime", //$NON-NLS-1$
+	    	Config.getPropertyAsInt_S("Sleep.GopherDriverAPI.goGetTitle.waitTime", 5000)); //$NON-NLS-1$
 
-		String pageTitle = null;
+		final String[] pageTitle = new String[1];
 		try {
 			log.info("Looking for current page title."); //$NON-NLS-1$
-            Exception ex = null;
-			for (int i=0; i < maxTries; i++) {
-			    try {
-			        pageTitle = driver.getTitle();
-			        Thread.sleep(waitTime);
-		            Assert.assertNotNull(pageTitle, "The pageTitle is null."); //$NON-NLS-1$
-			        break;
-			    } catch (Exception e) {
-			        ex=e;
-			    }
-			}
-			if (ex != null) {
-			    throw ex;
+			boolean found = pollingWait.until(new PollingWait.Condition() {
+				public boolean isTrue () throws Exception {
+					pageTitle[0] = driver.getTitle();
+					return pageTitle[0] != null;
+				}
+			}, (long)maxTries * waitTime);
+			if (!found) {
+				// Let the driver report why.
+				pageTitle[0] = driver.getTitle();
 			}
+            Assert.assertNotNull(pageTitle[0], "The pageTitle is null."); //$NON-NLS-1$
 			log.info("Current page title found"); //$NON-NLS-1$
 		} catch (Exception e) {
             // Add the error to the list of errors.
@@ -1373,9 +1298,13 @@ public class GopherDriverImpl implements GopherDriver {
 				"Exception finding current page title:\n"+ //$NON-NLS-1$
 				e.getMessage()+"."); //$NON-NLS-1$
             
+            throw e;
+		} catch (AssertionError e) {
+            ErrorUtil.addVerificationFailure(e);
+            log.error("Exception finding current page title:\n"+e.getMessage()+"."); //$NON-NLS-1$ //$NON-NLS-2$
             throw e;
 		}
-		return pageTitle;
+		return pageTitle[0];
 	}
 
 	/**
@@ -1386,8 +1315,10 @@ public class GopherDriverImpl implements GopherDriver {
 	public void goBackJavaScriptExecuter() throws Exception {
 		try {
 			log.info("Navigating back to previous page <<<:"); //$NON-NLS-1$
+			String url = driver.getCurrentUrl();
 			driver.executeScript("window.history.go(-1)"); //$NON-NLS-1$
-            sleep("Sleep.GopherDriver.goBackJavaScriptExecuter"); //$NON-NLS-1$
+			pageMayChange();
+            waitForUrlChange(url, "Sleep.GopherDriver.goBackJavaScriptExecuter"); //$NON-NLS-1$
 			log.info("Navigated back to || :-" //$NON-NLS-1$
 					+ goGetTitle());
 		} catch (Exception e) {
@@ -1499,8 +1430,10 @@ public class GopherDriverImpl implements GopherDriver {
 
         try {
 	        driver.get(url);
+	        pageMayChange();
 	        // driver.manage().window().maximize(); This works only for firefox so
 	        // added the above code
+	        waitForNavigation(null);
 	        String currentURL = driver.getCurrentUrl();
             Assert.assertNotNull(currentURL, "The currentURL is null."); //$NON-NLS-1$
 	        log.info(""+currentURL); //$NON-NLS-1$
@@ -1727,6 +1660,7 @@ public class GopherDriverImpl implements GopherDriver {
         	boolean isdiaplyed = driver.findElement(By.xpath(elementName+id+elementName1)).isDisplayed();
         	if(isdiaplyed){
         	driver.findElement(By.xpath(elementName+id+elementName1)).click();
+        	pageMayChange();
         	}else{
         	  log.info("No element found with given xpath: "+elementName+id+elementName1);	 //$NON-NLS-1$
         	}
@@ -1744,14 +1678,13 @@ public class GopherDriverImpl implements GopherDriver {
      */
     public void gopherNavigateBack() throws InterruptedException{
     	
+    	waitForPageQuiet("Sleep.GopherDriver.goBackJavaScriptExecuter"); //$NON-NLS-1$
     	String store = driver.getCurrentUrl();
-    	Thread.sleep(5000);
     	try{
     	driver.navigate().back();
-    	Thread.sleep(5000);
+    	pageMayChange();
     	log.info("Navigating back<<"); //$NON-NLS-1$
-    	String store1 = driver.getCurrentUrl();
-    	if(!(store.equals(store1))){
+    	if(waitForUrlChange(store, "Sleep.GopherDriver.goBackJavaScriptExecuter")){ //$NON-NLS-1$
     		log.debug("Successfully navigated back"); //$NON-NLS-1$
     	}else{
     		log.warn("problem with back navigation !!, test might fail, trying again with java script"); //$NON-NLS-1$
@@ -1763,15 +1696,415 @@ public class GopherDriverImpl implements GopherDriver {
     	}
     }
 
+    /**
+     * Wait until the page has loaded and no jQuery requests or animations are running.
+     * @param timeoutPropertyName	the property defining the maximum wait in ms
+     * @return						true if the page became quiet, false on timeout
+     */
+    boolean waitForPageQuiet (String timeoutPropertyName) {
+    	boolean quiet = pollingWait.until(new PollingWait.Condition() {
+    		public boolean isTrue () throws Exception {
+    			return Boolean.TRUE.equals(driver.executeScript(PAGE_QUIET_SCRIPT));
+    		}
+    	}, PollingWait.getTimeout(timeoutPropertyName));
+    	if (!quiet) {
+    		log.debug("Page not quiet after "+timeoutPropertyName+"."); //$NON-NLS-1$ //$NON-NLS-2$
+    	}
+    	return quiet;
+    }
+
+    /**
+     * Wait until the current URL is no longer the given URL and the page has loaded.
+     * @param url					the URL before navigating
+     * @param timeoutPropertyName	the property defining the maximum wait in ms
+     * @return						true if the URL changed, false on timeout
+     */
+    boolean waitForUrlChange (final String url, String timeoutPropertyName) {
+    	return pollingWait.until(new PollingWait.Condition() {
+    		public boolean isTrue () throws Exception {
+    			return !driver.getCurrentUrl().equals(url) &&
+    				"complete".equals(driver.executeScript("return document.readyState;")); //$NON-NLS-1$ //$NON-NLS-2$
+    		}
+    	}, PollingWait.getTimeout(timeoutPropertyName));
+    }
+
+    /**
+     * Find an element without logging or recording a failure if it is not there.
+     * @param parent	the parent or null to search the page
+     * @param locator	the Locator
+     * @return			the first matching element or null
+     */
+    WebElement findQuietly (WebElement parent, Locator locator) {
+    	return find(parent, locator, true);
+    }
+
+    /**
+     * Find an element without the {@link ElementCache ElementCache} and without
+     * recording failures.
+     *
+     * @param parent	the parent or null to search the page
+     * @param locator	the Locator
+     * @return			the first matching element or null
+     */
+    WebElement findUncached (WebElement parent, Locator locator) {
+    	By by = locator.getBy();
+    	if (by == null) {
+    		return null;
+    	}
+    	List<WebElement> elements = parent == null ?
+    		driver.findElements(by) : parent.findElements(by);
+    	return elements.isEmpty() ? null : elements.get(0);
+    }
+
+    /**
+     * Find an element, from the {@link ElementCache ElementCache} if it was found
+     * on this page before. An element found is cached as a {@link CachedWebElement CachedWebElement}.
+     *
+     * @param parent	the parent or null to search the page
+     * @param locator	the Locator
+     * @param quietly	true to return null if not found, false to throw NoSuchElementException
+     * @return			the element, or null if the locator is unknown or not found quietly
+     */
+    WebElement find (WebElement parent, Locator locator, boolean quietly) {
+    	By by = locator.getBy();
+    	if (by == null) {
+    		return null;
+    	}
+    	if (elementCache == null || !verifyPage()) {
+    		if (quietly) {
+    			return findUncached(parent, locator);
+    		}
+    		return parent == null ? driver.findElement(by) : parent.findElement(by);
+    	}
+    	WebElement uiElement = elementCache.get(parent, locator);
+    	if (uiElement != null) {
+    		return uiElement;
+    	}
+    	WebElement found;
+    	if (quietly) {
+    		found = findUncached(parent, locator);
+    	} else {
+    		found = parent == null ? driver.findElement(by) : parent.findElement(by);
+    	}
+    	if (found == null) {
+    		return null;
+    	}
+    	uiElement = new CachedWebElement(this, elementCache, parent, locator, found);
+    	elementCache.put(parent, locator, uiElement);
+    	return uiElement;
+    }
+
+    /**
+     * Check the page identity if the page may have changed since the last check,
+     * clearing the {@link ElementCache ElementCache} if it did.
+     * @return	true if the cache can be used
+     */
+    private boolean verifyPage () {
+    	if (elementCache.isVerified()) {
+    		return true;
+    	}
+    	try {
+    		elementCache.verify((String) driver.executeScript(ElementCache.PAGE_SCRIPT));
+    		return true;
+    	} catch (Exception e) {
+    		log.trace("Checking the page identity failed: '"+e.getMessage()+"'."); //$NON-NLS-1$ //$NON-NLS-2$
+    		elementCache.invalidate();
+    		return false;
+    	}
+    }
+
+    /**
+     * Note the page may have changed, so the {@link ElementCache ElementCache}
+     * checks the page identity before its next hit.
+     */
+    private void pageMayChange () {
+    	if (elementCache != null) {
+    		elementCache.pageMayChange();
+    	}
+    }
+
+	/**
+	 * Implement {@link GopherDriver#readElements(WebElement, Map, List) GopherDriver}.
+	 */
+	public Map<String, ElementReading> readElements(WebElement parent,
+		Map<String, Locator> locators, List<String> attributes) throws Exception {
+
+        Assert.assertNotNull(locators, "The argument Map<String, Locator> locators is null."); //$NON-NLS-1$
+        if (attributes == null) {
+        	attributes = new ArrayList<String>();
+        }
+
+        // A null reading is read natively below.
+		Map<String, ElementReading> readings = new LinkedHashMap<String, ElementReading>();
+		List<String> names = new ArrayList<String>();
+		List<String> xpaths = new ArrayList<String>();
+		for (Map.Entry<String, Locator> entry : locators.entrySet()) {
+			readings.put(entry.getKey(), null);
+			Locator locator = entry.getValue();
+			if (locator == null) {
+				readings.put(entry.getKey(), new ElementReading (entry.getKey(), "Locator not defined.")); //$NON-NLS-1$
+			} else if (locator.getXPath() != null) {
+				names.add(entry.getKey());
+				xpaths.add(locator.getXPath());
+			}
+		}
+
+		if (!xpaths.isEmpty()) {
+			List<?> results = null;
+			try {
+				results = (List<?>) driver.executeScript(READ_ELEMENTS_SCRIPT, parent, xpaths, attributes);
+			} catch (Exception e) {
+				log.debug("Reading elements in one script failed, reading them one at a time: '"+ //$NON-NLS-1$
+					e.getMessage()+"'."); //$NON-NLS-1$
+			}
+			for (int i = 0; results != null && i < results.size(); i++) {
+				Map<?, ?> result = (Map<?, ?>) results.get(i);
+				String name = names.get(i);
+				if (Boolean.TRUE.equals(result.get("found"))) { //$NON-NLS-1$
+					Map<String, String> values = new HashMap<String, String>();
+					Map<?, ?> attributeValues = (Map<?, ?>) result.get("attributes"); //$NON-NLS-1$
+					for (String attribute : attributes) {
+						Object value = attributeValues == null ? null : attributeValues.get(attribute);
+						values.put(attribute, value == null ? null : value.toString());
+					}
+					readings.put(name, new ElementReading (name, (String) result.get("text"), //$NON-NLS-1$
+						Boolean.TRUE.equals(result.get("displayed")), //$NON-NLS-1$
+						Boolean.TRUE.equals(result.get("enabled")), values)); //$NON-NLS-1$
+				} else if (!Boolean.TRUE.equals(result.get("retry"))) { //$NON-NLS-1$
+					readings.put(name, new ElementReading (name, "Element "+locators.get(name)+" not found.")); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+		}
+
+		for (Map.Entry<String, ElementReading> entry : readings.entrySet()) {
+			if (entry.getValue() == null) {
+				entry.setValue(readElement (parent, entry.getKey(), locators.get(entry.getKey()), attributes));
+			}
+		}
+		return readings;
+	}
+
+	/**
+	 * Implement {@link GopherDriver#readElements(WebElement, List, List) GopherDriver}.
+	 */
+	public Map<String, ElementReading> readElements(WebElement parent,
+		List<ElementLocator> elementLocators, List<String> attributes) throws Exception {
+
+        Assert.assertNotNull(elementLocators, "The argument List<ElementLocator> elementLocators is null."); //$NON-NLS-1$
+
+        Map<String, Locator> locators = new LinkedHashMap<String, Locator>();
+		for (ElementLocator elementLocator : elementLocators) {
+			locators.put(elementLocator.getName(), elementLocator.getCompiledLocator());
+		}
+		return readElements(parent, locators, attributes);
+	}
+
+	/**
+	 * Implement {@link GopherDriver#readElements(WebElement, TestCase, List, List) GopherDriver}.
+	 */
+	public Map<String, ElementReading> readElements(WebElement parent, TestCase testCase,
+		List<String> locatorNames, List<String> attributes) throws Exception {
+
+        Assert.assertNotNull(testCase, "The argument TestCase testCase is null."); //$NON-NLS-1$
+        Assert.assertNotNull(locatorNames, "The argument List<String> locatorNames is null."); //$NON-NLS-1$
+
+        Map<String, Locator> locators = new LinkedHashMap<String, Locator>();
+		for (String name : locatorNames) {
+			try {
+				locators.put(name, testCase.getCompiledLocator(name));
+			} catch (MissingPropertyException e) {
+				locators.put(name, null);
+			}
+		}
+		return readElements(parent, locators, attributes);
+	}
+
+	/**
+	 * Implement {@link GopherDriver#fillForm(WebElement, Map, Map) GopherDriver}.
+	 */
+	public Map<String, FieldFillResult> fillForm(WebElement parent,
+		Map<String, Locator> locators, Map<String, String> values) throws Exception {
+
+        Assert.assertNotNull(locators, "The argument Map<String, Locator> locators is null."); //$NON-NLS-1$
+        Assert.assertNotNull(values, "The argument Map<String, String> values is null."); //$NON-NLS-1$
+
+		Map<String, FieldFillResult> results = new LinkedHashMap<String, FieldFillResult>();
+		List<String> names = new ArrayList<String>();
+		List<String> xpaths = new ArrayList<String>();
+		List<String> fieldValues = new ArrayList<String>();
+		for (Map.Entry<String, String> entry : values.entrySet()) {
+			Locator locator = locators.get(entry.getKey());
+			if (locator == null) {
+				results.put(entry.getKey(), new FieldFillResult (entry.getKey(), FieldFillResult.NATIVE, 0,
+					"Locator not defined.")); //$NON-NLS-1$
+				continue;
+			}
+			names.add(entry.getKey());
+			// A field without an XPath is filled natively.
+			xpaths.add(locator.getXPath() == null ? "" : locator.getXPath()); //$NON-NLS-1$
+			fieldValues.add(entry.getValue() == null ? "" : entry.getValue()); //$NON-NLS-1$
+		}
+
+		boolean useScript = Config.getPropertyAsBoolean_S(FILL_FORM_SCRIPT_PROP, true);
+		int next = 0;
+		while (next < names.size()) {
+			if (useScript && xpaths.get(next).length() > 0) {
+				List<?> filled = null;
+				try {
+					filled = (List<?>) driver.executeScript(FILL_FORM_SCRIPT, parent, xpaths,
+						fieldValues, Integer.valueOf(next));
+				} catch (Exception e) {
+					log.debug("Filling the form by script failed, filling natively: '"+ //$NON-NLS-1$
+						e.getMessage()+"'."); //$NON-NLS-1$
+					useScript = false;
+				}
+				for (int i = 0; filled != null && i < filled.size(); i++) {
+					Map<?, ?> result = (Map<?, ?>) filled.get(i);
+					String status = (String) result.get("status"); //$NON-NLS-1$
+					if ("native".equals(status)) { //$NON-NLS-1$
+						break;
+					}
+					String name = names.get(next);
+					long millis = result.get("ms") == null ? 0 : ((Number) result.get("ms")).longValue(); //$NON-NLS-1$ //$NON-NLS-2$
+					results.put(name, new FieldFillResult (name, FieldFillResult.SCRIPT, millis,
+						"done".equals(status) ? null : "Element "+locators.get(name)+" not found.")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					next++;
+				}
+				if (next >= names.size()) {
+					break;
+				}
+			}
+			// The script stopped at this field, or is not used.
+			String name = names.get(next);
+			results.put(name, fillField (parent, name, locators.get(name), fieldValues.get(next)));
+			next++;
+		}
+
+		// Change events may have changed the page.
+		pageMayChange();
+
+		// Keep the order of the values.
+		Map<String, FieldFillResult> ordered = new LinkedHashMap<String, FieldFillResult>();
+		for (String name : values.keySet()) {
+			FieldFillResult result = results.get(name);
+			ordered.put(name, result);
+			if (!result.isFilled()) {
+				ErrorUtil.addVerificationFailure(new Exception ("Field '"+name+"' not filled: "+ //$NON-NLS-1$ //$NON-NLS-2$
+					result.getError()));
+				log.error("Field '"+name+"' not filled: "+result.getError()); //$NON-NLS-1$ //$NON-NLS-2$
+			} else {
+				log.debug(result);
+			}
+		}
+		return ordered;
+	}
+
+	/**
+	 * Implement {@link GopherDriver#fillForm(WebElement, TestCase, Map) GopherDriver}.
+	 */
+	public Map<String, FieldFillResult> fillForm(WebElement parent, TestCase testCase,
+		Map<String, String> values) throws Exception {
+
+        Assert.assertNotNull(testCase, "The argument TestCase testCase is null."); //$NON-NLS-1$
+        Assert.assertNotNull(values, "The argument Map<String, String> values is null."); //$NON-NLS-1$
+
+        Map<String, Locator> locators = new HashMap<String, Locator>();
+		for (String name : values.keySet()) {
+			try {
+				locators.put(name, testCase.getCompiledLocator(name));
+			} catch (MissingPropertyException e) {
+				// Reported by fillForm.
+			}
+		}
+		return fillForm(parent, locators, values);
+	}
+
+	/**
+	 * Fill one field with WebDriver commands, without recording failures.
+	 * A drop down item is selected by visible text, a check box is set to the value
+	 * "true" or "false", any other field is cleared and sent the value as keys.
+	 *
+	 * @param parent	the parent or null to search the page
+	 * @param name		the field name
+	 * @param locator	the Locator
+	 * @param value		the value
+	 * @return			the FieldFillResult
+	 */
+	FieldFillResult fillField (WebElement parent, String name, Locator locator, String value) {
+		long start = System.currentTimeMillis();
+		try {
+			WebElement uiElement = findQuietly(parent, locator);
+			if (uiElement == null) {
+				return new FieldFillResult (name, FieldFillResult.NATIVE,
+					System.currentTimeMillis() - start, "Element "+locator+" not found."); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			String tag = uiElement.getTagName().toLowerCase();
+			String type = uiElement.getAttribute("type"); //$NON-NLS-1$
+			type = type == null ? "" : type.toLowerCase(); //$NON-NLS-1$
+			if (tag.equals("select")) { //$NON-NLS-1$
+				new Select(uiElement).selectByVisibleText(value);
+			} else if (type.equals("checkbox") || type.equals("radio")) { //$NON-NLS-1$ //$NON-NLS-2$
+				boolean want = Boolean.parseBoolean(value);
+				if (uiElement.isSelected() != want && (want || type.equals("checkbox"))) { //$NON-NLS-1$
+					uiElement.click();
+				}
+			} else {
+				if (!type.equals("file")) { //$NON-NLS-1$
+					uiElement.clear();
+				}
+				uiElement.sendKeys(value);
+			}
+			return new FieldFillResult (name, FieldFillResult.NATIVE, System.currentTimeMillis() - start, null);
+		} catch (Exception e) {
+			return new FieldFillResult (name, FieldFillResult.NATIVE, System.currentTimeMillis() - start,
+				e.getMessage());
+		}
+	}
+
+	/**
+	 * Read one element with WebDriver commands, without recording failures.
+	 *
+	 * @param parent		the parent or null to search the page
+	 * @param name			the locator name
+	 * @param locator		the Locator
+	 * @param attributes	the attribute names to read
+	 * @return				the ElementReading
+	 */
+	ElementReading readElement (WebElement parent, String name, Locator locator, List<String> attributes) {
+		try {
+			WebElement uiElement = findQuietly(parent, locator);
+			if (uiElement == null) {
+				return new ElementReading (name, "Element "+locator+" not found."); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			Map<String, String> values = new HashMap<String, String>();
+			for (String attribute : attributes) {
+				values.put(attribute, uiElement.getAttribute(attribute));
+			}
+			return new ElementReading (name, uiElement.getText(), uiElement.isDisplayed(),
+				uiElement.isEnabled(), values);
+		} catch (Exception e) {
+			return new ElementReading (name, e.getMessage());
+		}
+	}
+
     /**
      * Get the RemoteWebDriver used by this class.
      * @return  the driver
      * @author shekhar.bhardwaj
      */
     public RemoteWebDriver getRemoteWebDriver () {
+        // The caller may change the page.
+        pageMayChange();
         return driver;
     }
 
+	/**
+	 * Implement {@link GopherDriver#getElementCache() GopherDriver}.
+	 */
+	public ElementCache getElementCache () {
+		return elementCache;
+	}
+
     /***
      * Press enter or return key on a XPATH and only on a XPATH.
      * @param String[] locator
@@ -1780,6 +2113,7 @@ public class GopherDriverImpl implements GopherDriver {
     public void goPressReturn(String[] locator){
     	String xpath = locator[1];
     	driver.findElement(By.xpath(xpath)).sendKeys(Keys.ENTER);
+    	pageMayChange();
     }
     
     /**
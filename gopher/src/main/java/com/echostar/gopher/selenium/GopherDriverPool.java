@@ -0,0 +1,438 @@
+package com.echostar.gopher.selenium;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+import com.echostar.gopher.persist.Browser;
+import com.echostar.gopher.persist.BrowserEnum;
+import com.echostar.gopher.persist.GopherData;
+import com.echostar.gopher.persist.GopherDataFactory;
+import com.echostar.gopher.persist.PlatformEnum;
+import com.echostar.gopher.persist.TestNode;
+import com.echostar.gopher.util.Config;
+
+/**
+ * A pool of warm {@link GopherDriverImpl GopherDrivers} keyed by
+ * browser, platform and {@link TestNode TestNode}, so a TestRun does not
+ * launch a browser on the grid node.
+ * {@link GopherDriverFactory#getGopherDriver(BrowserEnum, TestNode) GopherDriverFactory}
+ * borrows a driver and {@link GopherDriver#stopDriver() stopDriver} gives it back.
+ * A driver given back has its browser state reset and is reused up to
+ * {@link #MAX_REUSE_PROP MAX_REUSE_PROP} times.
+ * A borrowed driver is health checked first. Drivers idle for
+ * {@link #MAX_IDLE_PROP MAX_IDLE_PROP} ms are quit.
+ */
+public class GopherDriverPool {
+
+	/**
+	 * Property enabling the pool. The default is false.
+	 */
+	public static final String ENABLED_PROP = "GopherDriverPool.enabled";
+
+	/**
+	 * Property defining the number of TestRuns a driver serves before it is quit.
+	 */
+	public static final String MAX_REUSE_PROP = "GopherDriverPool.maxReuse";
+
+	/**
+	 * Property defining the time in ms a driver may be idle before it is quit.
+	 */
+	public static final String MAX_IDLE_PROP = "GopherDriverPool.maxIdle";
+
+	/**
+	 * Property enabling starting a driver for every TestNode and supported Browser
+	 * when a Suite starts. The default is false.
+	 */
+	public static final String PREWARM_PROP = "GopherDriverPool.prewarm";
+
+	/**
+	 * Property defining the number of drivers started at once by {@link #prewarm() prewarm}.
+	 */
+	public static final String PREWARM_THREADS_PROP = "GopherDriverPool.prewarmThreads";
+
+	static final int DEFAULT_MAX_REUSE = 20;
+	static final int DEFAULT_MAX_IDLE = 300000;
+	static final int DEFAULT_PREWARM_THREADS = 4;
+
+	private static GopherDriverPool instance = null;
+
+	private Logger log = Logger.getLogger (getClass().getName());
+
+	private int				maxReuse;
+	private long			maxIdle;
+	private DriverStarter	starter;
+	private boolean			prewarmed = false;
+	private Thread			evictor;
+
+	// Idle drivers by key, the most recently given back first. Guarded by 'this'.
+	private Map<PoolKey, LinkedList<PooledDriver>>		idle = new HashMap<PoolKey, LinkedList<PooledDriver>>();
+	// Borrowed drivers. Guarded by 'this'.
+	private Map<GopherDriverImpl, PooledDriver>			borrowed = new IdentityHashMap<GopherDriverImpl, PooledDriver>();
+
+	/**
+	 * Get if the pool is enabled by the property {@link #ENABLED_PROP ENABLED_PROP}.
+	 * @return	true if enabled
+	 */
+	public static boolean isEnabled () {
+		return Config.getPropertyAsBoolean_S(ENABLED_PROP, false);
+	}
+
+	/**
+	 * Get the shared pool, creating it and starting its evictor on first use.
+	 * @return	the pool
+	 */
+	public static synchronized GopherDriverPool getInstance () {
+		if (instance == null) {
+			instance = new GopherDriverPool (
+				Config.getPropertyAsInt_S(MAX_REUSE_PROP, DEFAULT_MAX_REUSE),
+				Config.getPropertyAsInt_S(MAX_IDLE_PROP, DEFAULT_MAX_IDLE));
+			instance.startEvictor();
+			Runtime.getRuntime().addShutdownHook(new Thread("GopherDriverPool-shutdown") {
+				@Override
+				public void run () {
+					instance.close();
+				}
+			});
+		}
+		return instance;
+	}
+
+	/**
+	 * Construct with the limits, starting browsers on the grid. The evictor is not started.
+	 *
+	 * @param maxReuse	the number of TestRuns a driver serves before it is quit
+	 * @param maxIdle	the time in ms a driver may be idle before it is quit
+	 */
+	GopherDriverPool (int maxReuse, long maxIdle) {
+		this (maxReuse, maxIdle, new DriverStarter () {
+			public GopherDriverImpl start (PoolKey key) throws Exception {
+				return new GopherDriverImpl (key.browser.getValue(),
+					PlatformEnum.getOldValue(key.platform), key.nodeIP, key.nodePort);
+			}
+		});
+	}
+
+	/**
+	 * Construct with all member data. The evictor is not started.
+	 *
+	 * @param maxReuse	the number of TestRuns a driver serves before it is quit
+	 * @param maxIdle	the time in ms a driver may be idle before it is quit
+	 * @param starter	starts a driver for a key
+	 */
+	GopherDriverPool (int maxReuse, long maxIdle, DriverStarter starter) {
+		this.maxReuse = maxReuse;
+		this.maxIdle = maxIdle;
+		this.starter = starter;
+	}
+
+	/**
+	 * Borrow a driver, starting one if none is idle.
+	 * Give it back with {@link GopherDriver#stopDriver() stopDriver}.
+	 *
+	 * @param browser		the browser
+	 * @param testNode		the TestNode the browser runs on
+	 * @return				the driver
+	 * @throws Exception	if a driver can not be started
+	 */
+	public GopherDriverImpl borrow (BrowserEnum browser, TestNode testNode) throws Exception {
+
+		PoolKey key = new PoolKey (browser, testNode);
+		while (true) {
+			PooledDriver pooled = null;
+			synchronized (this) {
+				LinkedList<PooledDriver> drivers = idle.get(key);
+				if (drivers != null && !drivers.isEmpty()) {
+					pooled = drivers.removeFirst();
+				}
+			}
+			if (pooled == null) {
+				pooled = new PooledDriver (key, startDriver (key));
+			} else if (!pooled.driver.isHealthy()) {
+				log.info("Discarding unhealthy driver for "+key+".");
+				quit (pooled);
+				continue;
+			}
+			pooled.uses++;
+			synchronized (this) {
+				borrowed.put(pooled.driver, pooled);
+			}
+			pooled.driver.pool = this;
+			log.debug("Borrowed driver for "+key+", use "+pooled.uses+".");
+			return pooled.driver;
+		}
+	}
+
+	/**
+	 * Give back a borrowed driver. Reset its browser state and keep it idle,
+	 * or quit it if it has reached its maximum reuse or can not be reset.
+	 * @param driver	the driver
+	 */
+	void giveBack (GopherDriverImpl driver) {
+
+		PooledDriver pooled;
+		synchronized (this) {
+			pooled = borrowed.remove(driver);
+		}
+		if (pooled == null) {
+			log.warn("Driver given back was not borrowed, quitting it.");
+			driver.pool = null;
+			driver.quit();
+			return;
+		}
+		if (pooled.uses >= maxReuse) {
+			log.debug("Driver for "+pooled.key+" reached "+maxReuse+" uses.");
+			quit (pooled);
+			return;
+		}
+		try {
+			driver.resetBrowserState();
+		} catch (Exception e) {
+			log.info("Discarding driver for "+pooled.key+", reset failed: "+e.getMessage());
+			quit (pooled);
+			return;
+		}
+		pooled.idleSince = System.currentTimeMillis();
+		synchronized (this) {
+			LinkedList<PooledDriver> drivers = idle.get(pooled.key);
+			if (drivers == null) {
+				drivers = new LinkedList<PooledDriver>();
+				idle.put(pooled.key, drivers);
+			}
+			drivers.addFirst(pooled);
+		}
+	}
+
+	/**
+	 * Start a driver for every {@link TestNode TestNode} and supported
+	 * {@link Browser Browser} in the database, in parallel, without waiting.
+	 * Only the first call has an effect.
+	 */
+	public void prewarm () {
+
+		synchronized (this) {
+			if (prewarmed) {
+				return;
+			}
+			prewarmed = true;
+		}
+
+		List<PoolKey> keys = new ArrayList<PoolKey>();
+		GopherData gopherData = null;
+		try {
+			gopherData = GopherDataFactory.getGopherData();
+			for (TestNode testNode : gopherData.findTestNodes()) {
+				for (Browser browser : testNode.getSupportedBrowsers()) {
+					keys.add(new PoolKey (browser.getType(), testNode));
+				}
+			}
+		} catch (Exception e) {
+			log.error("Finding TestNodes to prewarm failed: "+e.getMessage());
+			return;
+		} finally {
+			if (gopherData != null) {
+				gopherData.close();
+			}
+		}
+
+		prewarm (keys, Config.getPropertyAsInt_S(PREWARM_THREADS_PROP, DEFAULT_PREWARM_THREADS));
+	}
+
+	/**
+	 * Start a driver for each key, a few at a time, without waiting.
+	 *
+	 * @param keys		the keys
+	 * @param threads	the number of drivers started at once
+	 * @return			the executor starting the drivers, already shut down
+	 */
+	ExecutorService prewarm (List<PoolKey> keys, int threads) {
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			private int count = 0;
+			public synchronized Thread newThread (Runnable r) {
+				Thread thread = new Thread(r, "GopherDriverPool-prewarm-"+(++count));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for (final PoolKey key : keys) {
+			executor.execute(new Runnable() {
+				public void run () {
+					try {
+						PooledDriver pooled = new PooledDriver (key, startDriver (key));
+						pooled.idleSince = System.currentTimeMillis();
+						synchronized (GopherDriverPool.this) {
+							LinkedList<PooledDriver> drivers = idle.get(key);
+							if (drivers == null) {
+								drivers = new LinkedList<PooledDriver>();
+								idle.put(key, drivers);
+							}
+							drivers.addLast(pooled);
+						}
+						log.info("Prewarmed driver for "+key+".");
+					} catch (Exception e) {
+						log.warn("Prewarming driver for "+key+" failed: "+e.getMessage());
+					}
+				}
+			});
+		}
+		// The threads end once the queued starts are done.
+		executor.shutdown();
+		return executor;
+	}
+
+	/**
+	 * Quit drivers idle for longer than the maximum idle time.
+	 */
+	void evictIdle () {
+
+		long now = System.currentTimeMillis();
+		List<PooledDriver> evicted = new ArrayList<PooledDriver>();
+		synchronized (this) {
+			for (LinkedList<PooledDriver> drivers : idle.values()) {
+				Iterator<PooledDriver> it = drivers.iterator();
+				while (it.hasNext()) {
+					PooledDriver pooled = it.next();
+					if (now - pooled.idleSince >= maxIdle) {
+						it.remove();
+						evicted.add(pooled);
+					}
+				}
+			}
+		}
+		for (PooledDriver pooled : evicted) {
+			log.debug("Evicting idle driver for "+pooled.key+".");
+			quit (pooled);
+		}
+	}
+
+	/**
+	 * Quit every idle driver.
+	 * Borrowed drivers are quit when given back.
+	 */
+	public void close () {
+
+		List<PooledDriver> closing = new ArrayList<PooledDriver>();
+		synchronized (this) {
+			for (LinkedList<PooledDriver> drivers : idle.values()) {
+				closing.addAll(drivers);
+			}
+			idle.clear();
+			maxReuse = 0;
+		}
+		for (PooledDriver pooled : closing) {
+			quit (pooled);
+		}
+	}
+
+	/**
+	 * Get the number of idle and borrowed drivers.
+	 * @return	the String
+	 */
+	public synchronized String getStatus () {
+		int idleCount = 0;
+		for (LinkedList<PooledDriver> drivers : idle.values()) {
+			idleCount += drivers.size();
+		}
+		return "GopherDriverPool idle="+idleCount+" borrowed="+borrowed.size();
+	}
+
+	private GopherDriverImpl startDriver (PoolKey key) throws Exception {
+		log.debug("Starting driver for "+key+".");
+		return starter.start(key);
+	}
+
+	private void quit (PooledDriver pooled) {
+		pooled.driver.pool = null;
+		pooled.driver.quit();
+	}
+
+	private void startEvictor () {
+		evictor = new Thread("GopherDriverPool-evictor") {
+			@Override
+			public void run () {
+				while (true) {
+					try {
+						Thread.sleep(Math.max(1000, maxIdle / 2));
+					} catch (InterruptedException e) {
+						return;
+					}
+					evictIdle ();
+				}
+			}
+		};
+		evictor.setDaemon(true);
+		evictor.start();
+	}
+
+	/**
+	 * Starts a driver for a key.
+	 */
+	interface DriverStarter {
+		GopherDriverImpl start (PoolKey key) throws Exception;
+	}
+
+	/**
+	 * The browser, platform and TestNode a driver runs on.
+	 */
+	static class PoolKey {
+		final BrowserEnum	browser;
+		final PlatformEnum	platform;
+		final Long			testNodeId;
+		final String		nodeIP;
+		final String		nodePort;
+
+		PoolKey (BrowserEnum browser, TestNode testNode) {
+			this.browser = browser;
+			this.platform = testNode.getPlatform();
+			this.testNodeId = testNode.getId();
+			this.nodeIP = testNode.getNodeIP();
+			this.nodePort = testNode.getNodePort();
+		}
+
+		@Override
+		public boolean equals (Object o) {
+			if (!(o instanceof PoolKey)) {
+				return false;
+			}
+			PoolKey k = (PoolKey) o;
+			return browser == k.browser && platform == k.platform &&
+				(testNodeId == null ? k.testNodeId == null : testNodeId.equals(k.testNodeId));
+		}
+
+		@Override
+		public int hashCode () {
+			return (browser.hashCode() * 31 + (platform == null ? 0 : platform.hashCode())) * 31 +
+				(testNodeId == null ? 0 : testNodeId.hashCode());
+		}
+
+		@Override
+		public String toString () {
+			return browser+"/"+platform+"/TestNode "+testNodeId+" ("+nodeIP+":"+nodePort+")";
+		}
+	}
+
+	/**
+	 * A driver with its key and usage.
+	 */
+	static class PooledDriver {
+		final PoolKey			key;
+		final GopherDriverImpl	driver;
+		int						uses = 0;
+		long					idleSince;
+
+		PooledDriver (PoolKey key, GopherDriverImpl driver) {
+			this.key = key;
+			this.driver = driver;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package com.echostar.gopher.selenium;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openqa.selenium.By;
+
+import com.echostar.gopher.persist.ElementLocator;
+import com.echostar.gopher.persist.ElementLocatorType;
+
+/**
+ * An immutable, compiled element locator: the locator type, its value and the
+ * Selenium By built from them.
+ * Locators of saved {@link ElementLocator ElementLocators} are compiled once
+ * per ElementLocator id and cached, see {@link #forElementLocator forElementLocator}.
+ * The old-style locator arrays are compiled by {@link #compile(String[]) compile}.
+ */
+public class Locator {
+
+	// Map of ElementLocator id to its compiled Locator.
+	private static Map<Long, Locator> cache = new ConcurrentHashMap<Long, Locator>();
+
+	private final String	identifier;
+	private final String	value;
+	private final By		by;
+	private final String	xpath;
+
+	/**
+	 * Construct with all member data.
+	 *
+	 * @param identifier	the locator type name, e.g. "XPATH"
+	 * @param value			the locator value
+	 * @param by			the By or null if the identifier is unknown
+	 * @param xpath			the equivalent XPath or null
+	 */
+	private Locator (String identifier, String value, By by, String xpath) {
+		this.identifier = identifier;
+		this.value = value;
+		this.by = by;
+		this.xpath = xpath;
+	}
+
+	/**
+	 * Get the compiled Locator of an ElementLocator.
+	 * A saved ElementLocator is compiled once and cached by id.
+	 * The cached Locator is replaced if the ElementLocator's type or value changed.
+	 *
+	 * @param elementLocator	the ElementLocator
+	 * @return					the Locator
+	 */
+	public static Locator forElementLocator (ElementLocator elementLocator) {
+
+		Long id = elementLocator.getId();
+		ElementLocatorType type = elementLocator.getLocatorType();
+		String value = elementLocator.getValue();
+		if (id == null) {
+			return compile (type.getValue(), value);
+		}
+		Locator locator = cache.get(id);
+		if (locator == null || !locator.identifier.equals(type.getValue()) ||
+			!locator.value.equals(value.trim())) {
+			locator = compile (type.getValue(), value);
+			cache.put(id, locator);
+		}
+		return locator;
+	}
+
+	/**
+	 * Compile an old-style locator array as made by
+	 * {@link ElementLocator#getLocator() ElementLocator.getLocator}.
+	 *
+	 * @param locator	the locator type name and the locator value
+	 * @return			the Locator
+	 */
+	public static Locator compile (String[] locator) {
+		return compile (locator[0], locator[1]);
+	}
+
+	/**
+	 * Compile an old-style locator array, optionally treating a CLASSNAME
+	 * locator's value as an XPath, as
+	 * {@link GopherDriverImpl#getWebElement(org.openqa.selenium.WebElement, String[]) getWebElement}
+	 * always has.
+	 *
+	 * @param locator			the locator type name and the locator value
+	 * @param classNameAsXPath	if true, a CLASSNAME value is an XPath
+	 * @return					the Locator
+	 */
+	public static Locator compile (String[] locator, boolean classNameAsXPath) {
+		if (classNameAsXPath && locator[0].trim().equals("CLASSNAME")) { //$NON-NLS-1$
+			String value = locator[1].trim();
+			return new Locator ("CLASSNAME", value, By.xpath(value), value); //$NON-NLS-1$
+		}
+		return compile (locator);
+	}
+
+	/**
+	 * Compile a locator type name and value.
+	 * A CLASSNAME locator's value is a single class name.
+	 * PARTIAL_LINK and the older PLINK are partial link text.
+	 *
+	 * @param identifier	the locator type name, e.g. "XPATH"
+	 * @param value			the locator value
+	 * @return				the Locator, whose By is null if the identifier is unknown
+	 */
+	public static Locator compile (String identifier, String value) {
+
+		identifier = identifier.trim();
+		value = value.trim();
+		By by = null;
+		String xpath = null;
+		if (identifier.equals("NAME")) { //$NON-NLS-1$
+			by = By.name(value);
+			xpath = ".//*[@name="+toXPathLiteral(value)+"]"; //$NON-NLS-1$ //$NON-NLS-2$
+		} else if (identifier.equals("ID")) { //$NON-NLS-1$
+			by = By.id(value);
+			xpath = ".//*[@id="+toXPathLiteral(value)+"]"; //$NON-NLS-1$ //$NON-NLS-2$
+		} else if (identifier.equals("XPATH")) { //$NON-NLS-1$
+			by = By.xpath(value);
+			xpath = value;
+		} else if (identifier.equals("CLASSNAME")) { //$NON-NLS-1$
+			by = By.className(value);
+			if (value.matches("[^\\s'\"]+")) { //$NON-NLS-1$
+				xpath = ".//*[contains(concat(' ',normalize-space(@class),' '),' "+value+" ')]"; //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		} else if (identifier.equals("LINK")) { //$NON-NLS-1$
+			by = By.linkText(value);
+			xpath = ".//a[normalize-space(.)="+toXPathLiteral(value)+"]"; //$NON-NLS-1$ //$NON-NLS-2$
+		} else if (identifier.equals("PARTIAL_LINK") || identifier.equals("PLINK")) { //$NON-NLS-1$ //$NON-NLS-2$
+			by = By.partialLinkText(value);
+			xpath = ".//a[contains(normalize-space(.),"+toXPathLiteral(value)+")]"; //$NON-NLS-1$ //$NON-NLS-2$
+		} else if (identifier.equals("TAGNAME")) { //$NON-NLS-1$
+			by = By.tagName(value);
+			if (value.matches("[A-Za-z][A-Za-z0-9_-]*")) { //$NON-NLS-1$
+				xpath = ".//"+value; //$NON-NLS-1$
+			}
+		}
+		return new Locator (identifier, value, by, xpath);
+	}
+
+	/**
+	 * Quote a String as an XPath literal.
+	 * @param value	the String
+	 * @return		the literal
+	 */
+	static String toXPathLiteral (String value) {
+		if (value.indexOf('\'') < 0) {
+			return "'"+value+"'"; //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		if (value.indexOf('"') < 0) {
+			return "\""+value+"\""; //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		StringBuilder literal = new StringBuilder("concat("); //$NON-NLS-1$
+		String[] parts = value.split("'", -1); //$NON-NLS-1$
+		for (int i = 0; i < parts.length; i++) {
+			if (i > 0) {
+				literal.append(",\"'\","); //$NON-NLS-1$
+			}
+			literal.append("'").append(parts[i]).append("'"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return literal.append(")").toString(); //$NON-NLS-1$
+	}
+
+	/**
+	 * Forget every cached Locator.
+	 */
+	public static void clearCache () {
+		cache.clear();
+	}
+
+	/**
+	 * Get the locator type name.
+	 * @return	the type name, e.g. "XPATH"
+	 */
+	public String getIdentifier () { return identifier; }
+
+	/**
+	 * Get the locator value.
+	 * @return	the value
+	 */
+	public String getValue () { return value; }
+
+	/**
+	 * Get the Selenium By.
+	 * @return	the By or null if the identifier is unknown
+	 */
+	public By getBy () { return by; }
+
+	/**
+	 * Get an XPath finding the same element in a script, relative to a parent
+	 * or the document. Link text is compared after normalizing white space.
+	 * @return	the XPath or null if the locator can not be expressed as one
+	 */
+	public String getXPath () { return xpath; }
+
+	/**
+	 * Override Object to show the type and value.
+	 * @return	the String
+	 */
+	public String toString () {
+		return identifier+"="+value; //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,283 @@
+package com.echostar.gopher.selenium;
+
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import com.echostar.gopher.util.Config;
+
+/**
+ * A rule deciding when a page is ready after navigating to it.
+ * A page is ready when document.readyState has reached the rule's ready state
+ * and, if the rule checks the network, no XHR or fetch calls have been in flight
+ * for the rule's quiet time. Calls are counted by a script injected into the page.
+ * Requests made before the script is injected are seen only through the
+ * resource timing of the page, which is why a quiet time is required.
+ * <p>
+ * A rule is defined by a spec of comma separated name=value pairs, e.g.
+ * "readyState=interactive,network=true,quiet=300,timeout=10000".
+ * Missing names take the value of the default rule
+ * defined by the {@link Config Config} property {@link #DEFAULT_PROP DEFAULT_PROP}.
+ * Specs are stored with {@link com.echostar.gopher.persist.TestRun TestRuns} and
+ * {@link com.echostar.gopher.persist.TestClassDecorator TestClassDecorators}.
+ */
+public class NavigationReadiness {
+
+	/**
+	 * Property defining the spec of the default rule.
+	 */
+	public static final String DEFAULT_PROP = "NavigationReadiness.default";
+
+	/**
+	 * Property defining the WebDriver page load strategy: normal, eager or none.
+	 */
+	public static final String PAGE_LOAD_STRATEGY_PROP = "GopherDriver.pageLoadStrategy";
+
+	static final String DEFAULT_SPEC = "readyState=complete,network=true,quiet=300,timeout=30000";
+
+	/**
+	 * Script installing the XHR and fetch counter if it is not installed and returning
+	 * [document.readyState, calls in flight, ms since the last network activity].
+	 */
+	static final String CHECK_SCRIPT =
+		"var w = window;" +
+		"if (!w.__gopherNet) {" +
+		"  var n = w.__gopherNet = {inflight: 0, last: new Date().getTime()};" +
+		"  var done = function () { n.inflight = Math.max(0, n.inflight - 1); n.last = new Date().getTime(); };" +
+		"  if (w.XMLHttpRequest) {" +
+		"    var send = XMLHttpRequest.prototype.send;" +
+		"    XMLHttpRequest.prototype.send = function () {" +
+		"      n.inflight++; n.last = new Date().getTime();" +
+		"      this.addEventListener('loadend', done);" +
+		"      return send.apply(this, arguments);" +
+		"    };" +
+		"  }" +
+		"  if (w.fetch) {" +
+		"    var f = w.fetch;" +
+		"    w.fetch = function () {" +
+		"      n.inflight++; n.last = new Date().getTime();" +
+		"      return f.apply(this, arguments).then(" +
+		"        function (r) { done(); return r; }, function (e) { done(); throw e; });" +
+		"    };" +
+		"  }" +
+		"}" +
+		"var last = w.__gopherNet.last;" +
+		"if (w.performance && performance.getEntriesByType && performance.timing) {" +
+		"  var r = performance.getEntriesByType('resource');" +
+		"  if (r.length > 0) {" +
+		"    last = Math.max(last, performance.timing.navigationStart + r[r.length - 1].responseEnd);" +
+		"  }" +
+		"}" +
+		"return [document.readyState, w.__gopherNet.inflight, new Date().getTime() - last];";
+
+	private static NavigationReadiness defaultReadiness = null;
+
+	// The rule of the TestRun running on this thread, if any.
+	private static final ThreadLocal<NavigationReadiness> current = new ThreadLocal<NavigationReadiness>();
+
+	private Logger	log = Logger.getLogger (getClass().getName());
+
+	private String	readyState;
+	private boolean	network;
+	private long	quiet;
+	private long	timeout;
+
+	/**
+	 * Construct with all member data.
+	 *
+	 * @param readyState	the document.readyState to wait for: loading, interactive or complete
+	 * @param network		wait for XHR and fetch calls to finish or not
+	 * @param quiet			the time in ms without network activity when network is true
+	 * @param timeout		the maximum wait in ms
+	 */
+	public NavigationReadiness (String readyState, boolean network, long quiet, long timeout) {
+		this.readyState = readyState;
+		this.network = network;
+		this.quiet = quiet;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Get the default rule defined by the property {@link #DEFAULT_PROP DEFAULT_PROP}.
+	 * @return				the default rule
+	 * @throws Exception	if the spec is not valid
+	 */
+	public static synchronized NavigationReadiness getDefault () throws Exception {
+		if (defaultReadiness == null) {
+			NavigationReadiness builtIn = parse (DEFAULT_SPEC, null);
+			defaultReadiness = parse (Config.getProperty_S(DEFAULT_PROP, DEFAULT_SPEC), builtIn);
+		}
+		return defaultReadiness;
+	}
+
+	/**
+	 * Set the rule of the TestRun running on this thread.
+	 * {@link GopherDriver#waitForNavigation(NavigationReadiness) waitForNavigation}
+	 * and {@link GopherDriver#navigate2testsite(String, String) navigate2testsite}
+	 * use it when not given a rule.
+	 *
+	 * @param readiness	the rule, or null to use the default rule
+	 */
+	public static void setCurrent (NavigationReadiness readiness) {
+		if (readiness == null) {
+			current.remove();
+		} else {
+			current.set(readiness);
+		}
+	}
+
+	/**
+	 * Get the rule of the TestRun running on this thread.
+	 * @return				the rule set by {@link #setCurrent setCurrent}, or the default rule
+	 * @throws Exception	if the default spec is not valid
+	 */
+	public static NavigationReadiness getCurrent () throws Exception {
+		NavigationReadiness readiness = current.get();
+		return readiness == null ? getDefault () : readiness;
+	}
+
+	/**
+	 * Get the rule for a spec. Missing names take the value of the default rule.
+	 *
+	 * @param spec			the spec, or null or empty for the default rule
+	 * @return				the rule
+	 * @throws Exception	if the spec is not valid
+	 */
+	public static NavigationReadiness parse (String spec) throws Exception {
+		if (spec == null || spec.trim().isEmpty()) {
+			return getDefault ();
+		}
+		return parse (spec, getDefault ());
+	}
+
+	/**
+	 * Get the rule for a spec.
+	 *
+	 * @param spec			the spec
+	 * @param base			the rule giving the value of missing names
+	 * @return				the rule
+	 * @throws Exception	if the spec is not valid
+	 */
+	static NavigationReadiness parse (String spec, NavigationReadiness base) throws Exception {
+
+		NavigationReadiness readiness = base == null ? new NavigationReadiness ("complete", false, 0, 0) :
+			new NavigationReadiness (base.readyState, base.network, base.quiet, base.timeout);
+
+		for (String pair : spec.split(",")) {
+			if (pair.trim().isEmpty()) {
+				continue;
+			}
+			String[] nameValue = pair.split("=", 2);
+			if (nameValue.length != 2) {
+				throw new Exception ("Readiness '"+pair+"' is not name=value in '"+spec+"'.");
+			}
+			String name = nameValue[0].trim();
+			String value = nameValue[1].trim();
+			try {
+				if (name.equals("readyState")) {
+					if (!value.equals("loading") && !value.equals("interactive") && !value.equals("complete")) {
+						throw new Exception ("readyState must be loading, interactive or complete");
+					}
+					readiness.readyState = value;
+				} else if (name.equals("network")) {
+					readiness.network = Boolean.parseBoolean(value);
+				} else if (name.equals("quiet")) {
+					readiness.quiet = Long.parseLong(value);
+				} else if (name.equals("timeout")) {
+					readiness.timeout = Long.parseLong(value);
+				} else {
+					throw new Exception ("unknown name");
+				}
+			} catch (Exception e) {
+				throw new Exception ("Readiness '"+pair+"' not valid in '"+spec+"': "+e.getMessage());
+			}
+		}
+		return readiness;
+	}
+
+	/**
+	 * Wait until the page loaded in the driver is ready.
+	 *
+	 * @param driver		the driver
+	 * @param pollingWait	the wait to poll with
+	 * @return				true if the page is ready, false on timeout
+	 */
+	public boolean await (final RemoteWebDriver driver, PollingWait pollingWait) {
+
+		long start = System.currentTimeMillis();
+		final Object[] state = new Object[1];
+		boolean ready = pollingWait.until(new PollingWait.Condition() {
+			public boolean isTrue () throws Exception {
+				List<?> result = (List<?>) driver.executeScript(CHECK_SCRIPT);
+				state[0] = result;
+				return isReady ((String)result.get(0), ((Number)result.get(1)).longValue(),
+					((Number)result.get(2)).longValue());
+			}
+		}, timeout);
+		if (ready) {
+			log.debug("Page ready in "+(System.currentTimeMillis()-start)+" ms.");
+		} else {
+			log.warn("Page not ready after "+timeout+" ms "+this+", last state "+state[0]+".");
+		}
+		return ready;
+	}
+
+	/**
+	 * Decide if a page is ready.
+	 *
+	 * @param documentReadyState	the document.readyState
+	 * @param inflight				the number of XHR and fetch calls in flight
+	 * @param idle					the time in ms since the last network activity
+	 * @return						true if ready
+	 */
+	boolean isReady (String documentReadyState, long inflight, long idle) {
+		if (rank (documentReadyState) < rank (readyState)) {
+			return false;
+		}
+		return !network || (inflight == 0 && idle >= quiet);
+	}
+
+	private static int rank (String readyState) {
+		if ("complete".equals(readyState)) {
+			return 2;
+		}
+		if ("interactive".equals(readyState)) {
+			return 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Get the document.readyState waited for.
+	 * @return	loading, interactive or complete
+	 */
+	public String getReadyState () { return readyState; }
+
+	/**
+	 * Get if XHR and fetch calls are waited for.
+	 * @return	true if they are
+	 */
+	public boolean isNetwork () { return network; }
+
+	/**
+	 * Get the time in ms without network activity.
+	 * @return	the quiet time
+	 */
+	public long getQuiet () { return quiet; }
+
+	/**
+	 * Get the maximum wait in ms.
+	 * @return	the timeout
+	 */
+	public long getTimeout () { return timeout; }
+
+	/**
+	 * Override Object to show the spec.
+	 * @return	the String
+	 */
+	public String toString () {
+		return getClass().getSimpleName()+" (readyState="+readyState+",network="+network+
+			",quiet="+quiet+",timeout="+timeout+")";
+	}
+}
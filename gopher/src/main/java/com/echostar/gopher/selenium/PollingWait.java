@@ -0,0 +1,109 @@
+package com.echostar.gopher.selenium;
+
+import org.apache.log4j.Logger;
+
+import com.echostar.gopher.util.Config;
+
+/**
+ * Wait for a condition by polling it, instead of sleeping a fixed time.
+ * The condition is checked at once, then after an interval that starts at
+ * {@link #INITIAL_INTERVAL_PROP INITIAL_INTERVAL_PROP} ms and doubles up to
+ * {@link #MAX_INTERVAL_PROP MAX_INTERVAL_PROP} ms, until it is true or the timeout elapses.
+ * A condition that throws is treated as not yet true.
+ */
+public class PollingWait {
+
+	/**
+	 * A condition to wait for.
+	 */
+	public interface Condition {
+		/**
+		 * @return				true when the wait is over
+		 * @throws Exception	treated as false
+		 */
+		public boolean isTrue () throws Exception;
+	}
+
+	/**
+	 * Property defining the first poll interval in ms.
+	 */
+	public static final String INITIAL_INTERVAL_PROP = "Sleep.GopherDriver.pollInitialInterval";
+
+	/**
+	 * Property defining the longest poll interval in ms.
+	 */
+	public static final String MAX_INTERVAL_PROP = "Sleep.GopherDriver.pollMaxInterval";
+
+	static final int DEFAULT_INITIAL_INTERVAL = 50;
+	static final int DEFAULT_MAX_INTERVAL = 500;
+
+	// Default timeout in ms when a timeout property is not defined.
+	static final int DEFAULT_TIMEOUT = 1000;
+
+	private long	initialInterval;
+	private long	maxInterval;
+	private Logger	log = Logger.getLogger (getClass().getName());
+
+	/**
+	 * Construct with the intervals defined by the {@link Config Config} properties.
+	 */
+	public PollingWait () {
+		this (Config.getPropertyAsInt_S(INITIAL_INTERVAL_PROP, DEFAULT_INITIAL_INTERVAL),
+			Config.getPropertyAsInt_S(MAX_INTERVAL_PROP, DEFAULT_MAX_INTERVAL));
+	}
+
+	/**
+	 * Construct with all member data.
+	 *
+	 * @param initialInterval	the first poll interval in ms
+	 * @param maxInterval		the longest poll interval in ms
+	 */
+	public PollingWait (long initialInterval, long maxInterval) {
+		this.initialInterval = Math.max(1, initialInterval);
+		this.maxInterval = Math.max(this.initialInterval, maxInterval);
+	}
+
+	/**
+	 * Poll the condition until it is true or the timeout elapses.
+	 *
+	 * @param condition		the condition
+	 * @param timeout		the maximum time to wait in ms
+	 * @return				true if the condition became true, false on timeout
+	 */
+	public boolean until (Condition condition, long timeout) {
+
+		long deadline = System.currentTimeMillis() + timeout;
+		long interval = initialInterval;
+		while (true) {
+			try {
+				if (condition.isTrue()) {
+					return true;
+				}
+			} catch (Exception e) {
+				log.trace("Condition not met: "+e.getMessage());
+			}
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return false;
+			}
+			try {
+				Thread.sleep(Math.min(interval, remaining));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			interval = Math.min(interval * 2, maxInterval);
+		}
+	}
+
+	/**
+	 * Get a timeout in ms from a {@link Config Config} property.
+	 * The Sleep.GopherDriver.* properties, once fixed sleeps, are maximum waits.
+	 *
+	 * @param propertyName	the property name
+	 * @return				the timeout, or 1000 ms if the property is not defined
+	 */
+	public static long getTimeout (String propertyName) {
+		return Config.getPropertyAsInt_S(propertyName, DEFAULT_TIMEOUT);
+	}
+}
@@ -11,13 +11,25 @@ import com.jcraft.jsch.Session;
 
 import java.io.*;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.log4j.Logger;
 
 /**
  * Start or stop the Selenium webdriver nodes from a windows machine.
+ * <p>
+ * Nodes are started and their browser caches cleared in parallel, on up to
+ * {@link #PARALLELISM_PROP PARALLELISM_PROP} threads. Instead of sleeping, the hub is polled
+ * until each node registers its browsers. A node not up within
+ * {@link #NODE_TIMEOUT_PROP NODE_TIMEOUT_PROP} ms is reported and the others go on.
  * 
  * @author Sathish DS
  * @author charles.young	enhancements from the original
@@ -25,7 +37,41 @@ import org.apache.log4j.Logger;
  */
 public class SetupGrid {
 
+	/**
+	 * Property defining the number of nodes started at once.
+	 */
+	public static final String PARALLELISM_PROP = "SetupGrid.parallelism";
+
+	/**
+	 * Property defining the time in ms a node may take to start and clear its caches.
+	 */
+	public static final String NODE_TIMEOUT_PROP = "SetupGrid.nodeTimeout";
+
+	/**
+	 * Property defining the maximum wait in ms for the hub to answer.
+	 */
+	public static final String HUB_WAIT_PROP = "Sleep.SetupGrid.startHub";
+
+	/**
+	 * Property defining the maximum wait in ms for a node to register with the hub.
+	 */
+	public static final String NODE_WAIT_PROP = "Sleep.SetupGrid.nodeRegistration";
+
+	/**
+	 * Property defining the maximum wait in ms for each clear cache command.
+	 */
+	public static final String CLEAR_CACHE_WAIT_PROP = "Sleep.SetupGrid.clearBrowserCache";
+
+	static final int DEFAULT_PARALLELISM = 8;
+	static final int DEFAULT_NODE_TIMEOUT = 180000;
+	static final int DEFAULT_HUB_WAIT = 30000;
+	static final int DEFAULT_NODE_WAIT = 60000;
+	static final int DEFAULT_CLEAR_CACHE_WAIT = 30000;
+
 	private static Logger log = Logger.getLogger (SetupGrid.class.getName());
+
+	// Polls the hub and commands. Hub and node start up take seconds.
+	private static PollingWait pollingWait = new PollingWait (250, 2000);
 	
 	public static void main(String[] args) {
 
@@ -74,9 +120,10 @@ public class SetupGrid {
 	 * @param nodePort					the node port
 	 * @param nodeUsername				the user account name on the node
 	 * @param nodePassword				the user password
+	 * @return							true if the node registered with the hub
 	 * @throws Exception				on any error
 	 */
-	public static void startNode_Windows(String psExePath, String hubIP,
+	public static boolean startNode_Windows(String psExePath, String hubIP,
 		String hubPort, String browserName, String seleniumJarLocation,
 		String seleniumDriverLocation, String nodeIP, String nodePort,
 		String nodeUsername, String nodePassword) throws Exception {
@@ -110,12 +157,7 @@ public class SetupGrid {
 		log.debug(command_full);
 		try {
 			p = Runtime.getRuntime().exec(command_full);
-			Thread.sleep(30000);
-			try {
-				returnvalue = p.exitValue();
-			} catch (Exception e) {
-				returnvalue = 0;
-			}
+			drain (p, nodeIP);
 		} catch (Exception e) {
 			log.error("Error executing command to start the windows node "+
 				nodeIP);
@@ -123,7 +165,17 @@ public class SetupGrid {
 			throw e;
 		}
 
-		getNodeStatus(nodeIP, nodePort, returnvalue);
+		// The command runs as long as the node. If it ends in error, stop waiting.
+		final Process process = p;
+		boolean registered = waitForNode(nodeIP, nodePort, browserName, new PollingWait.Condition() {
+			public boolean isTrue () throws Exception {
+				return !process.isAlive() && process.exitValue() != 0;
+			}
+		});
+		if (!registered && !p.isAlive()) {
+			returnvalue = p.exitValue();
+		}
+		return getNodeStatus(nodeIP, nodePort, returnvalue, registered);
 	}
 
 	/**
@@ -170,18 +222,15 @@ public class SetupGrid {
 		}
 
 		try {
-			log.debug("Executing \""+command_IEfull+"\".");
-			Runtime.getRuntime().exec(command_IEfull);
-			Thread.sleep(20000);
-			log.info("IE cache is cleared");
-			log.debug("Executing \""+command_Chromefull+"\".");
-			Runtime.getRuntime().exec(command_Chromefull);
-			Thread.sleep(10000);
-			log.info("Chrome cache is cleared");
-			log.debug("Executing \""+command_Firefoxfull+"\".");
-			Runtime.getRuntime().exec(command_Firefoxfull);
-			Thread.sleep(10000);
-			log.info("Firefox cache is cleared");
+			if (runCommand(command_IEfull, nodeIP)) {
+				log.info("IE cache is cleared");
+			}
+			if (runCommand(command_Chromefull, nodeIP)) {
+				log.info("Chrome cache is cleared");
+			}
+			if (runCommand(command_Firefoxfull, nodeIP)) {
+				log.info("Firefox cache is cleared");
+			}
 		} catch (Exception e) {
 			log.error("Error occoured while executing command to clear cache.");
 			log.error(e.getMessage());
@@ -241,7 +290,13 @@ public class SetupGrid {
 					}
 					ChannelExec_1.setCommand(command);
 					ChannelExec_1.connect();
-					Thread.sleep(2000);
+					final ChannelExec channel = ChannelExec_1;
+					// Wait for the script to finish.
+					pollingWait.until(new PollingWait.Condition() {
+						public boolean isTrue () throws Exception {
+							return channel.isClosed();
+						}
+					}, Config.getPropertyAsInt_S(CLEAR_CACHE_WAIT_PROP, DEFAULT_CLEAR_CACHE_WAIT));
 					exitStatus = ChannelExec_1.getExitStatus();
 					ChannelExec_1.disconnect();
 					if (exitStatus < 0) {
@@ -251,7 +306,6 @@ public class SetupGrid {
 					} else {
 						log.info("Cache clear returned 0 - ok.");
 					}
-					Thread.sleep(3000);
 					if (j == 0) {
 						log.info("Safari cache is cleared");
 					} else if (j == 1) {
@@ -286,6 +340,7 @@ public class SetupGrid {
 	/**
 	 * Start the Selenium hub on the localhost.
 	 * @param seleniumJarLocation	the path to the Selenium jar file
+	 * The hub is polled until it answers, up to {@link #HUB_WAIT_PROP HUB_WAIT_PROP} ms.
 	 * @return						true if started
 	 * @throws Exception			on any error
 	 */
@@ -299,11 +354,18 @@ public class SetupGrid {
 		log.info(command);
 		try {
 			p = Runtime.getRuntime().exec(command);
-			Thread.sleep(10000);
-			try {
+			drain (p, "hub");
+			final Process process = p;
+			final String request = "http://" + Config.getHubIP() + ":" +
+				Config.getProperty_S("hubPort").trim() + "/grid/console";
+			pollingWait.until(new PollingWait.Condition() {
+				public boolean isTrue () throws Exception {
+					// The hub exited, or answers.
+					return !process.isAlive() || sendUrlRequestQuietly(request) != null;
+				}
+			}, Config.getPropertyAsInt_S(HUB_WAIT_PROP, DEFAULT_HUB_WAIT));
+			if (!p.isAlive()) {
 				returnvalue = p.exitValue();
-			} catch (Exception e) {
-				returnvalue = 0;
 			}
 		} catch (Exception e) {
 			log.error("Error occoured while starting the Hub server.");
@@ -326,13 +388,15 @@ public class SetupGrid {
 	// Created Date : 07/10/2014
 	// Modified Date :
 	// Modified By :
+	// Returns true if the node registered with the hub.
 	// ****************************************
-	public static void startNode_Mac(String hubIP, String hubPort,
+	public static boolean startNode_Mac(String hubIP, String hubPort,
 		String browserName, String seleniumJarLocation,
 		String seleniumDriverLocation, String nodeIP, String nodePort,
 		String nodeUsername, String nodePassword) throws Exception {
 
 		int exitStatus = 0;
+		boolean registered = false;
 		log.info("Starting node on mac machine with IP : "+ nodeIP);
 		try {
 			Session session = null;
@@ -375,17 +439,22 @@ public class SetupGrid {
 						.openChannel("exec");
 				ChannelExec_1.setCommand(command);
 				ChannelExec_1.connect();
-				Thread.sleep(2000);
+				// The command runs as long as the node. If it ends in error, stop waiting.
+				final ChannelExec channel = ChannelExec_1;
+				registered = waitForNode(nodeIP, nodePort, browserName, new PollingWait.Condition() {
+					public boolean isTrue () throws Exception {
+						return channel.isClosed() && channel.getExitStatus() > 0;
+					}
+				});
 				exitStatus = ChannelExec_1.getExitStatus();
 				ChannelExec_1.disconnect();
 				if (exitStatus < 0) {
-					log.warn("Cache clear returned "+exitStatus+" < 0.");
+					log.debug("Start node is running.");
 				} else if (exitStatus > 0) {
-					log.error("Cache clear returned "+exitStatus+" > 0.");
+					log.error("Start node returned "+exitStatus+" > 0.");
 				} else {
-					log.info("Cache clear returned 0 - ok.");
+					log.info("Start node returned 0 - ok.");
 				}
-				Thread.sleep(10000);
 				session.disconnect();
 			} else {
 				log.error("Could not connect to the node");
@@ -395,7 +464,7 @@ public class SetupGrid {
 			log.error(e.getMessage());
 			throw e;
 		}
-		getNodeStatus(nodeIP, nodePort, 0);
+		return getNodeStatus(nodeIP, nodePort, exitStatus > 0 ? exitStatus : 0, registered);
 	}
 
 	// ****************************************
@@ -463,21 +532,33 @@ public class SetupGrid {
 	// Created Date : 07/16/2014
 	// Modified Date :31/10/2014
 	// Modified By :Sathish DS
+	// The hub is polled until the node registers, up to
+	// Sleep.SetupGrid.nodeRegistration ms.
 	// ****************************************
 	public static boolean getNodeStatus(String nodeIP, String nodePort,
 		int returnvalue) throws Exception {
+		boolean registered = returnvalue == 0 && waitForNode(nodeIP, nodePort, "", null);
+		return getNodeStatus(nodeIP, nodePort, returnvalue, registered);
+	}
+
+	/**
+	 * Log the node status after waiting for it to register.
+	 *
+	 * @param nodeIP		the node ip
+	 * @param nodePort		the node port
+	 * @param returnvalue	the start node command exit value, 0 if running
+	 * @param registered	if the node registered
+	 * @return				true if the node is running
+	 */
+	private static boolean getNodeStatus(String nodeIP, String nodePort,
+		int returnvalue, boolean registered) {
 
-		String hubIP = Config.getHubIP();
-		String hubPort = Config.getProperty_S("hubPort").trim();
-		String request = "http://" + hubIP + ":" + hubPort
-			+ "/grid/api/proxy?id=" + "http://" + nodeIP + ":" + nodePort;
 		log.info("Retriving the node status on machine with IP : "+ nodeIP);
 		
 		if (returnvalue == 0) {
 			log.info("Start node command is executed successfully on machine with IP : "
 				+ nodeIP);
-			Thread.sleep(5000);
-			if((sendUrlRequest(request)).contains("Cannot find proxy") == true) {
+			if(!registered) {
 				log.error("Node is not started on machine with IP : "
 					+ nodeIP+ " Please check the node IP address on hub machine UI");
 				return false;
@@ -582,6 +663,137 @@ public class SetupGrid {
 		return response;
 	}
 
+	/**
+	 * Send an http request, returning null on error.
+	 * @param urlString	the URL
+	 * @return			the response or null
+	 */
+	static String sendUrlRequestQuietly(String urlString) {
+		try {
+			return sendUrlRequest(urlString);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Poll the hub until the node has registered its browsers, up to
+	 * {@link #NODE_WAIT_PROP NODE_WAIT_PROP} ms.
+	 *
+	 * @param nodeIP		the node ip
+	 * @param nodePort		the node port
+	 * @param browserNames	the browser names the node was started with, separated by "::", or ""
+	 * @param failed		true if the start node command failed, or null
+	 * @return				true if registered
+	 * @throws Exception	if the hub ip is not known
+	 */
+	static boolean waitForNode(final String nodeIP, final String nodePort,
+		final String browserNames, final PollingWait.Condition failed) throws Exception {
+
+		final String request = "http://" + Config.getHubIP() + ":" + Config.getProperty_S("hubPort").trim()
+			+ "/grid/api/proxy?id=" + "http://" + nodeIP + ":" + nodePort;
+		final boolean[] registered = new boolean[1];
+		long start = System.currentTimeMillis();
+		pollingWait.until(new PollingWait.Condition() {
+			public boolean isTrue () throws Exception {
+				if (failed != null && failed.isTrue()) {
+					return true;
+				}
+				registered[0] = isNodeRegistered(sendUrlRequestQuietly(request), browserNames);
+				return registered[0];
+			}
+		}, Config.getPropertyAsInt_S(NODE_WAIT_PROP, DEFAULT_NODE_WAIT));
+		log.debug("Node "+nodeIP+":"+nodePort+(registered[0] ? " registered" : " not registered")+
+			" after "+(System.currentTimeMillis()-start)+" ms.");
+		return registered[0];
+	}
+
+	/**
+	 * Decide from the hub's proxy status response if a node has registered its browsers.
+	 *
+	 * @param response		the response of /grid/api/proxy, or null
+	 * @param browserNames	the browser names the node was started with, separated by "::", or ""
+	 * @return				true if registered
+	 */
+	static boolean isNodeRegistered(String response, String browserNames) {
+		if (response == null || response.contains("Cannot find proxy") ||
+			!response.replace(" ", "").contains("\"success\":true") ||
+			!response.contains("browserName")) {
+			return false;
+		}
+		for (String browserName : browserNames.split("::")) {
+			if (browserName.length() != 0 && !response.contains(browserName)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Run a command and wait for it to end, up to
+	 * {@link #CLEAR_CACHE_WAIT_PROP CLEAR_CACHE_WAIT_PROP} ms.
+	 *
+	 * @param command		the command
+	 * @param name			the name to log the output with
+	 * @return				true if it ended with exit value 0
+	 * @throws Exception	on any error
+	 */
+	private static boolean runCommand(String command, String name) throws Exception {
+		log.debug("Executing \""+command+"\".");
+		Process p = Runtime.getRuntime().exec(command);
+		drain (p, name);
+		if (!p.waitFor(Config.getPropertyAsInt_S(CLEAR_CACHE_WAIT_PROP, DEFAULT_CLEAR_CACHE_WAIT),
+			TimeUnit.MILLISECONDS)) {
+			log.warn("Command \""+command+"\" did not end in time.");
+			return false;
+		}
+		if (p.exitValue() != 0) {
+			log.warn("Command \""+command+"\" returned "+p.exitValue()+".");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Log the output of a process, so it does not block on a full pipe.
+	 * @param p		the process
+	 * @param name	the name to log the output with
+	 */
+	private static void drain(Process p, String name) {
+		drain (p.getInputStream(), name);
+		drain (p.getErrorStream(), name);
+	}
+
+	/**
+	 * Log a process output stream on a daemon thread until it ends.
+	 * @param in	the stream
+	 * @param name	the name to log the output with
+	 */
+	private static void drain(final InputStream in, final String name) {
+		Thread thread = new Thread("SetupGrid-output-"+name) {
+			@Override
+			public void run () {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						log.trace(name+": "+line);
+					}
+				} catch (IOException e) {
+					// The process ended.
+				} finally {
+					try {
+						reader.close();
+					} catch (IOException e) {
+						// Ignore.
+					}
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
 	// ****************************************
 	// Method :
 	// Author : Sathish DS
@@ -593,9 +805,13 @@ public class SetupGrid {
 	// Modified By :
 	// ****************************************
 
+	// Nodes are started in parallel, see startNodes.
+	// Returns true if the hub and every node came up.
 	public static boolean setupSeleniumGrid() throws Exception {
 
 		log.info("Starting grid setup.");
+		// Connect to the DB while the hub starts.
+		GopherDataFactory.warmUp();
 		String hubIP = Config.getHubIP();
 		String hubPort = Config.getProperty_S("hubPort");
 		String hubSeleniumServerLocation =
@@ -608,45 +824,27 @@ public class SetupGrid {
 			if (startHub(hubSeleniumServerLocation)) {
 				gopherData = GopherDataFactory.getGopherData();
 				List<TestNode> testNodes = gopherData.findTestNodes();
+				List<NodeStartup> startups = new ArrayList<NodeStartup>();
 				for (TestNode testNode : testNodes) {
-					String nodeIP = testNode.getNodeIP();
-					String nodePort = testNode.getNodePort();
-					PlatformEnum osName = testNode.getPlatform();
-					String nodeUserName = testNode.getUserName();
 					String nodePassword = testNode.getPassword();
 					if (nodePassword == null) {
-						// Get the password from the user.
-						nodePassword = getPassword (nodeIP);
-					}
-					String installDir = testNode.getInstallDir();
-					String seleniumServer = testNode.getSeleniumServer();
-					String seleniumClearCacheScriptPath = installDir;
-					String seleniumServerPath = installDir+"//"+seleniumServer;
-					String seleniumDriverPath = installDir;
-
-					log.debug ("installDir \""+installDir+"\"");
-					log.debug ("seleniumServer \""+seleniumServer+"\"");
-					log.debug ("seleniumClearCacheScriptPath \""+seleniumClearCacheScriptPath+"\"");
-					log.debug ("seleniumDriverPath \""+seleniumDriverPath+"\"");
-
-					if (osName.isWindows()) {
-						startNode_Windows(hubPowerShellLocation, hubIP,
-							hubPort, browserNames,
-							seleniumServerPath, seleniumDriverPath,
-							nodeIP, nodePort, nodeUserName,
-							nodePassword);
-						clearBrowserCache(osName, nodeIP, nodePort,nodeUserName,nodePassword,seleniumClearCacheScriptPath);
-					} else if (osName.isMac()) {
-						startNode_Mac(hubIP, hubPort, browserNames,
-							seleniumServerPath, seleniumDriverPath,
-							nodeIP, nodePort, nodeUserName,
-							nodePassword);
-						clearBrowserCache(osName, nodeIP, nodePort,nodeUserName,nodePassword,seleniumClearCacheScriptPath);
-					} else {
-						log.error("Unsupported OS while starting the node");
+						// Get the password from the user, before starting in parallel.
+						nodePassword = getPassword (testNode.getNodeIP());
 					}
+					startups.add(new NodeStartup (testNode, nodePassword, hubPowerShellLocation,
+						hubIP, hubPort, browserNames));
 				}
-				return true;
+				List<NodeReport> reports = startNodes (startups,
+					Config.getPropertyAsInt_S(PARALLELISM_PROP, DEFAULT_PARALLELISM),
+					Config.getPropertyAsInt_S(NODE_TIMEOUT_PROP, DEFAULT_NODE_TIMEOUT));
+				boolean allUp = true;
+				StringBuilder report = new StringBuilder("Grid setup report:");
+				for (NodeReport nodeReport : reports) {
+					report.append("\n  ").append(nodeReport);
+					allUp &= nodeReport.isUp();
+				}
+				log.info(report);
+				return allUp;
 			}
 			log.error("The Hub is not started.");
 			return false;
@@ -660,6 +858,199 @@ public class SetupGrid {
 		}
 	}
 
+	/**
+	 * Start nodes and clear their browser caches in parallel.
+	 * A node taking longer than the timeout is reported as {@link NodeReport#TIMEOUT TIMEOUT}
+	 * and its thread interrupted.
+	 *
+	 * @param startups		the nodes to start
+	 * @param parallelism	the number of nodes started at once
+	 * @param timeout		the time in ms each node may take
+	 * @return				a NodeReport for each node, in the order started
+	 */
+	static List<NodeReport> startNodes(List<NodeStartup> startups, int parallelism, long timeout) {
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism), new ThreadFactory() {
+			private int count = 0;
+			public synchronized Thread newThread (Runnable r) {
+				Thread thread = new Thread(r, "SetupGrid-node-"+(++count));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		List<Future<NodeReport>> futures = new ArrayList<Future<NodeReport>>();
+		List<NodeReport> reports = new ArrayList<NodeReport>();
+		try {
+			for (NodeStartup startup : startups) {
+				futures.add(executor.submit(startup));
+			}
+			for (int i = 0; i < startups.size(); i++) {
+				NodeStartup startup = startups.get(i);
+				Future<NodeReport> future = futures.get(i);
+				try {
+					// The clock starts when the node does. A node waits for a thread
+					// no longer than it may take itself, in case the threads hang.
+					long remaining;
+					synchronized (startup) {
+						long deadline = System.currentTimeMillis() + timeout;
+						while (startup.started == 0 && System.currentTimeMillis() < deadline) {
+							startup.wait(Math.max(1, deadline - System.currentTimeMillis()));
+						}
+						remaining = startup.started == 0 ? 0 :
+							startup.started + timeout - System.currentTimeMillis();
+					}
+					reports.add(future.get(Math.max(1, remaining), TimeUnit.MILLISECONDS));
+				} catch (TimeoutException e) {
+					future.cancel(true);
+					reports.add(new NodeReport (startup.nodeIP, startup.nodePort, startup.platform,
+						NodeReport.TIMEOUT, timeout, "not up in "+timeout+" ms"));
+				} catch (Exception e) {
+					reports.add(new NodeReport (startup.nodeIP, startup.nodePort, startup.platform,
+						NodeReport.FAILED, 0, e.getMessage()));
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return reports;
+	}
+
+	/**
+	 * Start one node and clear its browser caches.
+	 */
+	static class NodeStartup implements java.util.concurrent.Callable<NodeReport> {
+		final String		nodeIP;
+		final String		nodePort;
+		final PlatformEnum	platform;
+		final String		nodeUserName;
+		final String		nodePassword;
+		final String		installDir;
+		final String		seleniumServer;
+		final String		psExePath;
+		final String		hubIP;
+		final String		hubPort;
+		final String		browserNames;
+		// When the node started, 0 until then. Guarded by 'this'.
+		long				started = 0;
+
+		NodeStartup (TestNode testNode, String nodePassword, String psExePath,
+			String hubIP, String hubPort, String browserNames) {
+			this.nodeIP = testNode.getNodeIP();
+			this.nodePort = testNode.getNodePort();
+			this.platform = testNode.getPlatform();
+			this.nodeUserName = testNode.getUserName();
+			this.nodePassword = nodePassword;
+			this.installDir = testNode.getInstallDir();
+			this.seleniumServer = testNode.getSeleniumServer();
+			this.psExePath = psExePath;
+			this.hubIP = hubIP;
+			this.hubPort = hubPort;
+			this.browserNames = browserNames;
+		}
+
+		public NodeReport call () throws Exception {
+
+			synchronized (this) {
+				started = System.currentTimeMillis();
+				notifyAll();
+			}
+			String seleniumClearCacheScriptPath = installDir;
+			String seleniumServerPath = installDir+"//"+seleniumServer;
+			String seleniumDriverPath = installDir;
+
+			log.debug ("installDir \""+installDir+"\"");
+			log.debug ("seleniumServer \""+seleniumServer+"\"");
+			log.debug ("seleniumClearCacheScriptPath \""+seleniumClearCacheScriptPath+"\"");
+			log.debug ("seleniumDriverPath \""+seleniumDriverPath+"\"");
+
+			boolean up;
+			try {
+				if (platform.isWindows()) {
+					up = startNode_Windows(psExePath, hubIP,
+						hubPort, browserNames,
+						seleniumServerPath, seleniumDriverPath,
+						nodeIP, nodePort, nodeUserName,
+						nodePassword);
+				} else if (platform.isMac()) {
+					up = startNode_Mac(hubIP, hubPort, browserNames,
+						seleniumServerPath, seleniumDriverPath,
+						nodeIP, nodePort, nodeUserName,
+						nodePassword);
+				} else {
+					log.error("Unsupported OS while starting the node");
+					return new NodeReport (nodeIP, nodePort, platform, NodeReport.FAILED, 0,
+						"unsupported OS");
+				}
+				clearBrowserCache(platform, nodeIP, nodePort,nodeUserName,nodePassword,seleniumClearCacheScriptPath);
+			} catch (Exception e) {
+				return new NodeReport (nodeIP, nodePort, platform, NodeReport.FAILED,
+					System.currentTimeMillis() - started, e.getMessage());
+			}
+			return new NodeReport (nodeIP, nodePort, platform, up ? NodeReport.UP : NodeReport.DOWN,
+				System.currentTimeMillis() - started, up ? null : "not registered with the hub");
+		}
+	}
+
+	/**
+	 * How one node came up during grid setup.
+	 */
+	public static class NodeReport {
+
+		public static final String UP = "UP";
+		public static final String DOWN = "DOWN";
+		public static final String TIMEOUT = "TIMEOUT";
+		public static final String FAILED = "FAILED";
+
+		private String			nodeIP;
+		private String			nodePort;
+		private PlatformEnum	platform;
+		private String			status;
+		private long			millis;
+		private String			message;
+
+		/**
+		 * Construct with all member data.
+		 *
+		 * @param nodeIP	the node ip
+		 * @param nodePort	the node port
+		 * @param platform	the node platform
+		 * @param status	UP, DOWN, TIMEOUT or FAILED
+		 * @param millis	the time taken in ms
+		 * @param message	why the node is not up, or null
+		 */
+		public NodeReport (String nodeIP, String nodePort, PlatformEnum platform,
+			String status, long millis, String message) {
+			this.nodeIP = nodeIP;
+			this.nodePort = nodePort;
+			this.platform = platform;
+			this.status = status;
+			this.millis = millis;
+			this.message = message;
+		}
+
+		public String getNodeIP () { return nodeIP; }
+		public String getNodePort () { return nodePort; }
+		public PlatformEnum getPlatform () { return platform; }
+		public String getStatus () { return status; }
+		public long getMillis () { return millis; }
+		public String getMessage () { return message; }
+
+		/**
+		 * Get if the node came up.
+		 * @return	true if up
+		 */
+		public boolean isUp () { return UP.equals(status); }
+
+		/**
+		 * Override Object to show the report.
+		 * @return	the String
+		 */
+		public String toString () {
+			return nodeIP+":"+nodePort+" "+platform+" "+status+" in "+millis+" ms"+
+				(message == null ? "" : " ("+message+")");
+		}
+	}
+
 	// ****************************************
 	// Method :
 	// Author : Sathish DS
@@ -0,0 +1,407 @@
+package com.echostar.gopher.selenium;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+import org.hibernate.Transaction;
+
+import com.echostar.gopher.persist.GopherData;
+import com.echostar.gopher.persist.GopherDataFactory;
+import com.echostar.gopher.persist.TestNode;
+import com.echostar.gopher.persist.TestNodeHealth;
+import com.echostar.gopher.util.Config;
+
+/**
+ * Check every {@link TestNode TestNode} in the background by requesting its
+ * /wd/hub/status, with short timeouts.
+ * Each check is kept in memory, where {@link #isAvailable(TestNode) isAvailable} answers
+ * without a request, and written to the database as a {@link TestNodeHealth TestNodeHealth}.
+ * Recorded checks older than {@link #RETENTION_PROP RETENTION_PROP} hours are deleted as new ones are written.
+ * A node is down if it does not answer within {@link #TIMEOUT_PROP TIMEOUT_PROP} ms or
+ * answers with an error. A node answering that it is not ready, or whose status lists
+ * no free session slot, is saturated. Nodes not checked yet are assumed available.
+ */
+public class TestNodeMonitor {
+
+	/**
+	 * Property enabling the monitor. The default is false.
+	 */
+	public static final String ENABLED_PROP = "TestNodeMonitor.enabled";
+
+	/**
+	 * Property defining the time in ms between checks of all nodes.
+	 */
+	public static final String INTERVAL_PROP = "TestNodeMonitor.interval";
+
+	/**
+	 * Property defining the connect and read timeout in ms of a check.
+	 */
+	public static final String TIMEOUT_PROP = "TestNodeMonitor.timeout";
+
+	/**
+	 * Property enabling writing checks to the database. The default is true.
+	 */
+	public static final String RECORD_PROP = "TestNodeMonitor.record";
+
+	/**
+	 * Property defining the hours recorded checks are kept. 0 or less keeps them all.
+	 */
+	public static final String RETENTION_PROP = "TestNodeMonitor.retentionHours";
+
+	static final int DEFAULT_INTERVAL = 30000;
+	static final int DEFAULT_TIMEOUT = 2000;
+	static final int DEFAULT_RETENTION = 168;
+
+	// The longest message recorded.
+	static final int MAX_MESSAGE_LEN = 1000;
+
+	private static final Pattern FREE_SLOT = Pattern.compile("\"session\"\\s*:\\s*null");
+	private static final Pattern NOT_READY = Pattern.compile("\"ready\"\\s*:\\s*false");
+
+	private static TestNodeMonitor instance = null;
+
+	private Logger log = Logger.getLogger (getClass().getName());
+
+	private long		interval;
+	private int			timeout;
+	private boolean		record;
+	private long		retention;
+	private Thread		checker;
+
+	// The latest check of each TestNode by id.
+	private Map<Long, NodeHealth>	health = new ConcurrentHashMap<Long, NodeHealth>();
+
+	/**
+	 * Get if the monitor is enabled by the property {@link #ENABLED_PROP ENABLED_PROP}.
+	 * @return	true if enabled
+	 */
+	public static boolean isEnabled () {
+		return Config.getPropertyAsBoolean_S(ENABLED_PROP, false);
+	}
+
+	/**
+	 * Get the shared monitor, creating it and starting its checks on first use.
+	 * @return	the monitor
+	 */
+	public static synchronized TestNodeMonitor getInstance () {
+		if (instance == null) {
+			instance = new TestNodeMonitor (
+				Config.getPropertyAsInt_S(INTERVAL_PROP, DEFAULT_INTERVAL),
+				Config.getPropertyAsInt_S(TIMEOUT_PROP, DEFAULT_TIMEOUT),
+				Config.getPropertyAsBoolean_S(RECORD_PROP, true),
+				Config.getPropertyAsInt_S(RETENTION_PROP, DEFAULT_RETENTION) * 3600000L);
+			instance.start();
+		}
+		return instance;
+	}
+
+	/**
+	 * Construct with all member data. The checks are not started.
+	 *
+	 * @param interval	the time in ms between checks of all nodes
+	 * @param timeout	the connect and read timeout in ms of a check
+	 * @param record		write checks to the database or not
+	 * @param retention	the time in ms recorded checks are kept, 0 or less to keep them all
+	 */
+	TestNodeMonitor (long interval, int timeout, boolean record, long retention) {
+		this.interval = interval;
+		this.timeout = timeout;
+		this.record = record;
+		this.retention = retention;
+	}
+
+	/**
+	 * Start checking the TestNodes in the database in the background.
+	 */
+	synchronized void start () {
+		if (checker != null && checker.isAlive()) {
+			return;
+		}
+		checker = new Thread("TestNodeMonitor-checker") {
+			@Override
+			public void run () {
+				while (true) {
+					try {
+						checkAll ();
+					} catch (Exception e) {
+						log.error("Checking TestNodes failed: "+e.getMessage());
+					}
+					try {
+						Thread.sleep(interval);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		};
+		checker.setDaemon(true);
+		checker.start();
+	}
+
+	/**
+	 * Stop checking.
+	 */
+	synchronized void stop () {
+		if (checker != null) {
+			checker.interrupt();
+			checker = null;
+		}
+	}
+
+	/**
+	 * Check every TestNode in the database once, record the checks and delete the expired ones.
+	 * @throws Exception	on a database error
+	 */
+	void checkAll () throws Exception {
+
+		GopherData gopherData = null;
+		Transaction tran = null;
+		try {
+			gopherData = GopherDataFactory.getGopherData();
+			List<TestNode> testNodes = gopherData.findTestNodes();
+			List<NodeHealth> checks = check (testNodes);
+			if (record) {
+				tran = gopherData.getHibernateSession().beginTransaction();
+				for (int i = 0; i < testNodes.size(); i++) {
+					NodeHealth nodeHealth = checks.get(i);
+					gopherData.createTestNodeHealth(testNodes.get(i), new Date(nodeHealth.checkTime),
+						nodeHealth.up, nodeHealth.latency, nodeHealth.freeSlots, nodeHealth.message);
+				}
+				if (retention > 0) {
+					gopherData.deleteTestNodeHealth(new Date(System.currentTimeMillis() - retention));
+				}
+				tran.commit();
+			}
+		} finally {
+			if (tran != null && !tran.wasCommitted()) {
+				tran.rollback();
+			}
+			if (gopherData != null) {
+				gopherData.close();
+			}
+		}
+	}
+
+	/**
+	 * Check TestNodes in parallel, one thread each, and keep the checks in memory.
+	 *
+	 * @param testNodes		the TestNodes
+	 * @return				the checks, in the order of the TestNodes
+	 */
+	List<NodeHealth> check (List<TestNode> testNodes) {
+
+		final NodeHealth[] checks = new NodeHealth[testNodes.size()];
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < testNodes.size(); i++) {
+			final int index = i;
+			final TestNode testNode = testNodes.get(i);
+			Thread thread = new Thread("TestNodeMonitor-"+testNode.getNodeIP()) {
+				@Override
+				public void run () {
+					checks[index] = check (testNode);
+				}
+			};
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			try {
+				// Each check ends within its connect and read timeouts.
+				thread.join(2L * timeout + 1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		List<NodeHealth> result = new ArrayList<NodeHealth>();
+		for (int i = 0; i < checks.length; i++) {
+			NodeHealth nodeHealth = checks[i];
+			if (nodeHealth == null) {
+				nodeHealth = new NodeHealth (testNodes.get(i).getId(), System.currentTimeMillis(),
+					false, 2L * timeout, 0, "check did not end");
+				health.put(nodeHealth.testNodeId, nodeHealth);
+			}
+			result.add(nodeHealth);
+		}
+		return result;
+	}
+
+	/**
+	 * Check one TestNode and keep the check in memory.
+	 *
+	 * @param testNode	the TestNode
+	 * @return			the check
+	 */
+	NodeHealth check (TestNode testNode) {
+
+		long start = System.currentTimeMillis();
+		boolean up = false;
+		int freeSlots = 0;
+		String message = null;
+		HttpURLConnection connection = null;
+		try {
+			URL url = new URL("http://"+testNode.getNodeIP()+":"+testNode.getNodePort()+"/wd/hub/status");
+			connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(timeout);
+			connection.setReadTimeout(timeout);
+			int code = connection.getResponseCode();
+			if (code == HttpURLConnection.HTTP_OK) {
+				up = true;
+				freeSlots = parseFreeSlots (read (connection.getInputStream()));
+			} else {
+				message = "HTTP "+code;
+			}
+		} catch (Exception e) {
+			message = e.getClass().getSimpleName()+": "+e.getMessage();
+		} finally {
+			if (connection != null) {
+				connection.disconnect();
+			}
+		}
+		if (message != null && message.length() > MAX_MESSAGE_LEN) {
+			message = message.substring(0, MAX_MESSAGE_LEN);
+		}
+		NodeHealth nodeHealth = new NodeHealth (testNode.getId(), start, up,
+			System.currentTimeMillis() - start, freeSlots, message);
+		NodeHealth previous = health.put(testNode.getId(), nodeHealth);
+		if (previous == null || previous.up != up) {
+			log.info(testNode+(up ? " is up." : " is down: "+message));
+		}
+		return nodeHealth;
+	}
+
+	/**
+	 * Get the number of free session slots from a status response.
+	 * A status listing slots (Selenium 4) counts the slots without a session.
+	 * A status saying the node is not ready has none. Older nodes do not tell.
+	 *
+	 * @param status	the status response
+	 * @return			the number of free slots, or -1 if not known
+	 */
+	static int parseFreeSlots (String status) {
+		if (status.contains("\"slots\"")) {
+			int free = 0;
+			Matcher matcher = FREE_SLOT.matcher(status);
+			while (matcher.find()) {
+				free++;
+			}
+			return free;
+		}
+		if (NOT_READY.matcher(status).find()) {
+			return 0;
+		}
+		return -1;
+	}
+
+	private static String read (InputStream in) throws IOException {
+		try {
+			StringBuilder buffer = new StringBuilder();
+			byte[] bytes = new byte[4096];
+			int read;
+			while ((read = in.read(bytes)) != -1) {
+				buffer.append(new String(bytes, 0, read, "UTF-8"));
+			}
+			return buffer.toString();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Get if a TestNode can take a TestRun: it is up and not saturated,
+	 * or it has not been checked yet.
+	 *
+	 * @param testNode	the TestNode
+	 * @return			true if available
+	 */
+	public boolean isAvailable (TestNode testNode) {
+		NodeHealth nodeHealth = getHealth (testNode);
+		return nodeHealth == null || nodeHealth.isAvailable();
+	}
+
+	/**
+	 * Get if a TestNode is known to be down.
+	 *
+	 * @param testNode	the TestNode
+	 * @return			true if its latest check failed
+	 */
+	public boolean isDown (TestNode testNode) {
+		NodeHealth nodeHealth = getHealth (testNode);
+		return nodeHealth != null && !nodeHealth.up;
+	}
+
+	/**
+	 * Get the latest check of a TestNode.
+	 *
+	 * @param testNode	the TestNode
+	 * @return			the check or null if not checked yet
+	 */
+	public NodeHealth getHealth (TestNode testNode) {
+		return testNode.getId() == null ? null : health.get(testNode.getId());
+	}
+
+	/**
+	 * Get the latest check of every TestNode checked.
+	 * @return	map of TestNode id to its latest check
+	 */
+	public Map<Long, NodeHealth> getHealth () {
+		return Collections.unmodifiableMap(new HashMap<Long, NodeHealth>(health));
+	}
+
+	/**
+	 * An immutable check of one TestNode.
+	 */
+	public static class NodeHealth {
+		final Long		testNodeId;
+		final long		checkTime;
+		final boolean	up;
+		final long		latency;
+		final int		freeSlots;
+		final String	message;
+
+		NodeHealth (Long testNodeId, long checkTime, boolean up, long latency,
+			int freeSlots, String message) {
+			this.testNodeId = testNodeId;
+			this.checkTime = checkTime;
+			this.up = up;
+			this.latency = latency;
+			this.freeSlots = freeSlots;
+			this.message = message;
+		}
+
+		public Long getTestNodeId () { return testNodeId; }
+		public long getCheckTime () { return checkTime; }
+		public boolean isUp () { return up; }
+		public long getLatency () { return latency; }
+		public int getFreeSlots () { return freeSlots; }
+		public String getMessage () { return message; }
+
+		/**
+		 * Get if the node is up and has a free slot or does not tell.
+		 * @return	true if available
+		 */
+		public boolean isAvailable () { return up && freeSlots != 0; }
+
+		/**
+		 * Override Object to show the check.
+		 * @return	the String
+		 */
+		public String toString () {
+			return "TestNode "+testNodeId+(up ? " up" : " down")+" "+latency+" ms freeSlots="+freeSlots+
+				(message == null ? "" : " ("+message+")");
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package com.echostar.gopher.testng;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+import org.apache.log4j.Logger;
+import org.testng.IAnnotationTransformer2;
+import org.testng.annotations.IConfigurationAnnotation;
+import org.testng.annotations.IDataProviderAnnotation;
+import org.testng.annotations.IFactoryAnnotation;
+import org.testng.annotations.ITestAnnotation;
+
+import com.echostar.gopher.util.Config;
+
+/**
+ * Run {@link TestNGClassBase#doDataProvider doDataProvider} rows in parallel
+ * when the {@link Config Config} property {@link #PARALLEL_PROP PARALLEL_PROP} is true.
+ * An annotation attribute can not be switched by configuration,
+ * so register this class as a listener in the suite XML file.
+ * The number of threads is the suite's data-provider-thread-count.
+ * <p>
+ * When the {@link TestRunQueue TestRunQueue} is enabled, switch the data provider of
+ * {@link TestNGClassBase#wrapDoTest wrapDoTest} to {@link TestNGClassBase#doQueueDataProvider
+ * doQueueDataProvider}, which is never parallel: TestNG would take every row before running any.
+ */
+public class DataProviderTransformer implements IAnnotationTransformer2 {
+
+	/**
+	 * Property enabling parallel data providers. The default is false.
+	 */
+	public static final String PARALLEL_PROP = "TestNGClassBase.parallelDataProvider";
+
+	private Logger log = Logger.getLogger (getClass().getName());
+
+	@Override
+	public void transform(IDataProviderAnnotation annotation, Method method) {
+		if (method.getDeclaringClass().equals(TestNGClassBase.class) &&
+			!method.getName().equals("doQueueDataProvider") &&
+			Config.getPropertyAsBoolean_S(PARALLEL_PROP, false)) {
+			log.debug("Running "+method.getName()+" in parallel.");
+			annotation.setParallel(true);
+		}
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void transform(ITestAnnotation annotation, Class testClass,
+		Constructor testConstructor, Method testMethod) {
+		if (testMethod != null && testMethod.getDeclaringClass().equals(TestNGClassBase.class) &&
+			"doDataProvider".equals(annotation.getDataProvider()) && TestRunQueue.isEnabled()) {
+			log.debug("Taking "+testMethod.getName()+" rows from the TestRunQueue.");
+			annotation.setDataProvider("doQueueDataProvider");
+		}
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void transform(IConfigurationAnnotation annotation, Class testClass,
+		Constructor testConstructor, Method testMethod) {
+	}
+
+	@Override
+	public void transform(IFactoryAnnotation annotation, Method method) {
+	}
+}
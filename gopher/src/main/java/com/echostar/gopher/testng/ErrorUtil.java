@@ -1,35 +1,71 @@
 package com.echostar.gopher.testng;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.testng.ITestResult;
 import org.testng.Reporter;
 
+/**
+ * Collect verification failures for the test method running on the current thread.
+ * Failures are kept per ITestResult, so test methods may run in parallel.
+ * Call {@link #clear(ITestResult) clear} when a result is complete.
+ */
 public class ErrorUtil {
-	private static Map<ITestResult, List<Throwable>> verificationFailuresMap = new HashMap<ITestResult, List<Throwable>>();
+	private static ConcurrentHashMap<ITestResult, List<Throwable>> verificationFailuresMap = new ConcurrentHashMap<ITestResult, List<Throwable>>();
+	// Failures added outside of any test result, e.g. before TestNG sets one.
+	private static List<Throwable> noResultFailures = Collections.synchronizedList(new ArrayList<Throwable>());
 	//private static Map<ITestResult, List<Throwable>> skipMap = new HashMap<ITestResult, List<Throwable>>();
 
 	public static void addVerificationFailure(Throwable e) {
-		List<Throwable> verificationFailures = getVerificationFailures();
-		if (verificationFailures.contains(e)) {
-			return;
+		ITestResult result = Reporter.getCurrentTestResult();
+		List<Throwable> verificationFailures = getVerificationFailures(result);
+		if (result != null) {
+			List<Throwable> existing = verificationFailuresMap.putIfAbsent(result, verificationFailures);
+			if (existing != null) {
+				verificationFailures = existing;
+			}
+		}
+		synchronized (verificationFailures) {
+			if (verificationFailures.contains(e)) {
+				return;
+			}
+			verificationFailures.add(e);
 		}
-		verificationFailuresMap.put(Reporter.getCurrentTestResult(),
-				verificationFailures);
-		verificationFailures.add(e);
 	}
 
 	public static List<Throwable> getVerificationFailures() {
-		List<Throwable> verificationFailures = verificationFailuresMap.get(Reporter
-				.getCurrentTestResult());
-		return verificationFailures == null ? new ArrayList<Throwable>()
-				: verificationFailures;
+		return getVerificationFailures(Reporter.getCurrentTestResult());
+	}
+
+	/**
+	 * Get the verification failures of a test result.
+	 * @param result	the test result
+	 * @return			the failures, or a new empty list if there are none
+	 */
+	public static List<Throwable> getVerificationFailures(ITestResult result) {
+		if (result == null) {
+			return noResultFailures;
+		}
+		List<Throwable> verificationFailures = verificationFailuresMap.get(result);
+		return verificationFailures == null ?
+			Collections.synchronizedList(new ArrayList<Throwable>()) : verificationFailures;
+	}
+
+	/**
+	 * Forget the verification failures of a completed test result.
+	 * @param result	the test result
+	 */
+	public static void clear (ITestResult result) {
+		if (result != null) {
+			verificationFailuresMap.remove(result);
+		}
 	}
 
 	public static void clear () {
 		verificationFailuresMap.clear();
+		noResultFailures.clear();
 	}
 }
@@ -0,0 +1,181 @@
+package com.echostar.gopher.testng;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.testng.ISuite;
+
+import com.echostar.gopher.persist.BrowserEnum;
+import com.echostar.gopher.persist.ElementLocator;
+import com.echostar.gopher.persist.GopherData;
+import com.echostar.gopher.persist.GopherDataFactory;
+import com.echostar.gopher.persist.TestCase;
+import com.echostar.gopher.persist.TestData;
+import com.echostar.gopher.persist.TestRun;
+import com.echostar.gopher.persist.TestRunResult;
+import com.echostar.gopher.persist.TestSuite;
+import com.echostar.gopher.util.Config;
+
+/**
+ * Skip TestRuns whose inputs have not changed since they last passed.
+ * <p>
+ * The fingerprint of a TestRun is a SHA-256 of its TestCase name and version, TestData values,
+ * ElementLocator values, URL, browser and the build id of the system under test, the 'buildId'
+ * parameter of the Suite XML file or {@link #BUILD_ID_PROP BUILD_ID_PROP}.
+ * Every {@link TestRunResult TestRunResult} records its fingerprint, enabled or not. A TestRun with a fingerprint
+ * that passed within {@link #TTL_PROP TTL_PROP} hours, when run, is not run again: it is recorded
+ * as a {@link TestRunResult#getCached() cached} pass. A cached pass does not extend the TTL.
+ * The passing fingerprints of a TestSuite are loaded once per suite with a single query.
+ */
+public class IncrementalRun {
+
+	/**
+	 * Property enabling incremental runs. The default is false.
+	 */
+	public static final String ENABLED_PROP = "IncrementalRun.enabled";
+
+	/**
+	 * Property defining how long in hours a pass is reused.
+	 */
+	public static final String TTL_PROP = "IncrementalRun.ttlHours";
+
+	/**
+	 * Property defining the build id of the system under test of Suites without a 'buildId' parameter.
+	 */
+	public static final String BUILD_ID_PROP = "IncrementalRun.buildId";
+
+	/**
+	 * The message of a cached pass.
+	 */
+	public static final String CACHED_MESSAGE = "cached pass";
+
+	static final int DEFAULT_TTL = 24;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private Logger log = Logger.getLogger (getClass().getName());
+
+	// Map of fingerprint to the start time of its latest pass.
+	private final Map<String, Date>	passes;
+	private final long				ttl;
+
+	/**
+	 * Get if incremental runs are enabled by the property {@link #ENABLED_PROP ENABLED_PROP}.
+	 * @return	true if enabled
+	 */
+	public static boolean isEnabled () {
+		return Config.getPropertyAsBoolean_S(ENABLED_PROP, false);
+	}
+
+	/**
+	 * Load the fingerprints of the TestRuns of a TestSuite that passed within the TTL.
+	 *
+	 * @param testSuite		the TestSuite
+	 * @return				the incremental run
+	 * @throws Exception	on a database error
+	 */
+	public static IncrementalRun load (TestSuite testSuite) throws Exception {
+
+		long ttl = Config.getPropertyAsInt_S(TTL_PROP, DEFAULT_TTL) * 60L * 60 * 1000;
+		GopherData gopherData = null;
+		try {
+			gopherData = GopherDataFactory.getGopherData();
+			Map<String, Date> passes = gopherData.findPassingFingerprints(testSuite.getId(),
+				new Date(System.currentTimeMillis() - ttl));
+			Logger.getLogger (IncrementalRun.class.getName()).debug("Loaded "+passes.size()+
+				" passing fingerprints of TestSuite '"+testSuite.getName()+"'.");
+			return new IncrementalRun (passes, ttl);
+		} finally {
+			if (gopherData != null) {
+				gopherData.close();
+			}
+		}
+	}
+
+	/**
+	 * Construct with all member data.
+	 *
+	 * @param passes	map of fingerprint to the start time of its latest pass
+	 * @param ttl		how long in ms a pass is reused
+	 */
+	IncrementalRun (Map<String, Date> passes, long ttl) {
+		this.passes = passes;
+		this.ttl = ttl;
+	}
+
+	/**
+	 * Get the build id of the system under test.
+	 * @param isuite	a TestNG suite
+	 * @return			the build id or null
+	 */
+	public static String getBuildId (ISuite isuite) {
+		String buildId = isuite == null ? null : isuite.getParameter("buildId");
+		return buildId != null ? buildId : Config.getProperty_S(BUILD_ID_PROP, null);
+	}
+
+	/**
+	 * Get the fingerprint of a TestRun's inputs.
+	 * The TestData and ElementLocators are in a canonical order.
+	 *
+	 * @param testRun	the TestRun
+	 * @param testCase	its TestCase
+	 * @param url		the URL it tests or null
+	 * @param browser	the browser it runs on or null
+	 * @param buildId	the build id of the system under test or null
+	 * @return			the SHA-256 in hex
+	 */
+	public static String fingerprint (TestRun testRun, TestCase testCase, String url,
+		BrowserEnum browser, String buildId) {
+
+		StringBuilder inputs = new StringBuilder();
+		inputs.append("testRun=").append(testRun.getId()).append('\n');
+		inputs.append("testCase=").append(testCase.getName()).append('|').append(testCase.getVersion()).append('\n');
+		List<String> lines = new ArrayList<String>();
+		for (TestData testData : testCase.getTestData()) {
+			lines.add("testData="+(testData.getTestDataType() == null ? null :
+				testData.getTestDataType().getDataName())+"|"+testData.getDataValue());
+		}
+		for (ElementLocator elementLocator : testCase.getElementLocators()) {
+			lines.add("locator="+elementLocator.getName()+"|"+elementLocator.getLocatorType()+
+				"|"+elementLocator.getValue());
+		}
+		Collections.sort(lines);
+		for (String line : lines) {
+			inputs.append(line).append('\n');
+		}
+		inputs.append("url=").append(url).append('\n');
+		inputs.append("browser=").append(browser).append('\n');
+		inputs.append("buildId=").append(buildId).append('\n');
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(inputs.toString().getBytes("UTF-8"));
+			char[] hex = new char[digest.length * 2];
+			for (int i = 0; i < digest.length; i++) {
+				hex[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+				hex[2 * i + 1] = HEX[digest[i] & 0xf];
+			}
+			return new String(hex);
+		} catch (Exception e) {
+			// SHA-256 and UTF-8 are always supported.
+			throw new IllegalStateException (e);
+		}
+	}
+
+	/**
+	 * Get if a fingerprint passed within the TTL.
+	 * @param fingerprint	the fingerprint
+	 * @return				true if the TestRun need not run
+	 */
+	public boolean isFresh (String fingerprint) {
+		Date passed = passes.get(fingerprint);
+		boolean fresh = passed != null && System.currentTimeMillis() - passed.getTime() < ttl;
+		if (fresh) {
+			log.debug("Fingerprint "+fingerprint+" passed at "+passed+".");
+		}
+		return fresh;
+	}
+}
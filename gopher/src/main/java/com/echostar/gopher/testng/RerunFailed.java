@@ -0,0 +1,215 @@
+package com.echostar.gopher.testng;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.testng.ISuite;
+
+import com.echostar.gopher.persist.GopherData;
+import com.echostar.gopher.persist.GopherDataFactory;
+import com.echostar.gopher.persist.Suite;
+import com.echostar.gopher.persist.SuiteInstance;
+import com.echostar.gopher.persist.TestRun;
+import com.echostar.gopher.util.Config;
+
+/**
+ * Rerun only the TestRuns that failed in a {@link SuiteInstance SuiteInstance}.
+ * <p>
+ * The SuiteInstance is the 'rerunOf' parameter of the Suite XML file or {@link #SUITE_INSTANCE_PROP
+ * SUITE_INSTANCE_PROP}: a SuiteInstance id of the same Suite, or "latest" for the one of the Suite started last.
+ * A TestRun failed if its latest result in the SuiteInstance or in an earlier rerun of it is false.
+ * {@link TestNGClassBase#doDataProvider doDataProvider} leaves out the other TestRuns,
+ * and the new SuiteInstance is {@link SuiteInstance#getRerunOf() linked} to the original
+ * so reports show the final result of every TestRun.
+ * Rerunning a rerun reruns the original.
+ */
+public class RerunFailed {
+
+	/**
+	 * Property defining the SuiteInstance id, or "latest", of Suites without a 'rerunOf' parameter.
+	 * Not defined or empty, the default, is a full run.
+	 */
+	public static final String SUITE_INSTANCE_PROP = "RerunFailed.suiteInstance";
+
+	/**
+	 * The value selecting the SuiteInstance of the Suite started last.
+	 */
+	public static final String LATEST = "latest";
+
+	// The rerun of each Suite, by SuiteListenerAdaptor.key.
+	private static Map<String, RerunFailed> reruns = new HashMap<String, RerunFailed>();
+
+	private final Long			suiteInstanceId;
+	private final Set<Long>		failed;
+
+	/**
+	 * Get the rerun the ISuite runs in, finding the failed TestRuns on first use in its Suite.
+	 * Call before the new SuiteInstance is created, so "latest" is the previous one.
+	 *
+	 * @param isuite		a TestNG suite
+	 * @return				the rerun or null if a full run
+	 * @throws Exception	if the SuiteInstance is not found or not of the Suite, or on a database error
+	 */
+	public static RerunFailed getRerun (ISuite isuite) throws Exception {
+
+		String spec = isuite.getParameter("rerunOf");
+		if (spec == null) {
+			spec = Config.getProperty_S(SUITE_INSTANCE_PROP, null);
+		}
+		if (spec == null || spec.trim().isEmpty()) {
+			return null;
+		}
+		spec = spec.trim();
+		String suiteName = isuite.getParameter("suiteName");
+		String suiteVersion = isuite.getParameter("suiteVersion");
+		if (suiteName == null) {
+			Logger.getLogger (RerunFailed.class.getName()).warn(
+				"Not rerunning SuiteInstance "+spec+", suite "+isuite.getName()+" has no suiteName parameter.");
+			return null;
+		}
+		String key = SuiteListenerAdaptor.key(suiteName, suiteVersion);
+		synchronized (reruns) {
+			RerunFailed rerun = reruns.get(key);
+			if (rerun == null) {
+				rerun = load (spec, suiteName, suiteVersion, Shard.getRunKey(isuite));
+				reruns.put(key, rerun);
+			}
+			return rerun;
+		}
+	}
+
+	/**
+	 * Forget the rerun of a Suite, when it ends.
+	 *
+	 * @param suiteName		the Suite name
+	 * @param suiteVersion	the Suite version
+	 */
+	public static void discard (String suiteName, String suiteVersion) {
+		synchronized (reruns) {
+			reruns.remove(SuiteListenerAdaptor.key(suiteName, suiteVersion));
+		}
+	}
+
+	/**
+	 * Find the TestRuns that failed in a SuiteInstance of a Suite.
+	 *
+	 * @param spec			the SuiteInstance id or "latest"
+	 * @param suiteName		the Suite name
+	 * @param suiteVersion	the Suite version
+	 * @param runKey		the run key of the new SuiteInstance, left out of "latest", or null
+	 * @return				the rerun
+	 * @throws Exception	if the SuiteInstance is not found or not of the Suite, or on a database error
+	 */
+	static RerunFailed load (String spec, String suiteName, String suiteVersion, String runKey)
+		throws Exception {
+
+		Logger log = Logger.getLogger (RerunFailed.class.getName());
+		GopherData gopherData = null;
+		try {
+			gopherData = GopherDataFactory.getGopherData();
+			SuiteInstance suiteInstance;
+			if (LATEST.equalsIgnoreCase(spec)) {
+				Suite suite = gopherData.findSuiteByNameAndVersion(suiteName, suiteVersion);
+				if (suite == null) {
+					throw new Exception ("Rerun Suite "+suiteName+" version "+suiteVersion+" not found.");
+				}
+				suiteInstance = gopherData.findLatestSuiteInstance(suite.getId(), runKey);
+			} else {
+				try {
+					suiteInstance = gopherData.findSuiteInstanceById(Long.valueOf(spec));
+				} catch (NumberFormatException e) {
+					throw new Exception ("Rerun SuiteInstance '"+spec+"' is not an id or '"+LATEST+"'.");
+				}
+			}
+			if (suiteInstance == null) {
+				throw new Exception ("Rerun SuiteInstance '"+spec+"' of Suite "+suiteName+" not found.");
+			}
+			checkSuite (suiteInstance, suiteName, suiteVersion);
+			if (suiteInstance.getRerunOf() != null) {
+				suiteInstance = suiteInstance.getRerunOf();
+			}
+			Map<Long, Boolean> results = gopherData.findFinalTestRunResults(suiteInstance.getId());
+			RerunFailed rerun = new RerunFailed (suiteInstance.getId(), failed (results));
+			log.info("Rerunning "+rerun.failed.size()+" of "+results.size()+
+				" TestRuns, the ones that failed in SuiteInstance "+suiteInstance.getId()+".");
+			return rerun;
+		} finally {
+			if (gopherData != null) {
+				gopherData.close();
+			}
+		}
+	}
+
+	/**
+	 * Check that a SuiteInstance is of a Suite.
+	 *
+	 * @param suiteInstance	the SuiteInstance to rerun
+	 * @param suiteName		the Suite name
+	 * @param suiteVersion	the Suite version
+	 * @throws Exception	if the SuiteInstance is of another Suite
+	 */
+	static void checkSuite (SuiteInstance suiteInstance, String suiteName, String suiteVersion)
+		throws Exception {
+
+		Suite suite = suiteInstance.getSuite();
+		if (!suite.getName().equals(suiteName) ||
+			(suiteVersion != null && !suiteVersion.equals(suite.getVersion()))) {
+			throw new Exception ("Rerun SuiteInstance "+suiteInstance.getId()+" is of Suite "+suite.getName()+
+				" version "+suite.getVersion()+", not "+suiteName+" version "+suiteVersion+".");
+		}
+	}
+
+	/**
+	 * Get the TestRuns whose result is false.
+	 * @param results	map of TestRun id to result
+	 * @return			the TestRun ids
+	 */
+	static Set<Long> failed (Map<Long, Boolean> results) {
+		Set<Long> failed = new HashSet<Long>();
+		for (Map.Entry<Long, Boolean> entry : results.entrySet()) {
+			if (!Boolean.TRUE.equals(entry.getValue())) {
+				failed.add(entry.getKey());
+			}
+		}
+		return failed;
+	}
+
+	/**
+	 * Construct with all member data.
+	 *
+	 * @param suiteInstanceId	the id of the SuiteInstance rerun
+	 * @param failed			the ids of the TestRuns that failed in it
+	 */
+	RerunFailed (Long suiteInstanceId, Set<Long> failed) {
+		this.suiteInstanceId = suiteInstanceId;
+		this.failed = failed;
+	}
+
+	/**
+	 * Get the id of the SuiteInstance rerun.
+	 * @return	the SuiteInstance id
+	 */
+	public Long getSuiteInstanceId () {
+		return suiteInstanceId;
+	}
+
+	/**
+	 * Get the TestRuns to rerun.
+	 * @param testRuns	the TestRuns
+	 * @return			the TestRuns that failed, in the same order
+	 */
+	public List<TestRun> filter (List<TestRun> testRuns) {
+		List<TestRun> result = new ArrayList<TestRun>();
+		for (TestRun testRun : testRuns) {
+			if (failed.contains(testRun.getId())) {
+				result.add(testRun);
+			}
+		}
+		return result;
+	}
+}
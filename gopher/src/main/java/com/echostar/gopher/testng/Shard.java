@@ -0,0 +1,314 @@
+package com.echostar.gopher.testng;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.testng.ISuite;
+
+import com.echostar.gopher.persist.GopherData;
+import com.echostar.gopher.persist.GopherDataFactory;
+import com.echostar.gopher.persist.SuiteInstance;
+import com.echostar.gopher.persist.TestCase;
+import com.echostar.gopher.persist.TestClass;
+import com.echostar.gopher.persist.TestRun;
+import com.echostar.gopher.persist.TestSuite;
+import com.echostar.gopher.util.Config;
+
+/**
+ * One of several processes running a Suite, each on a share of its TestRuns.
+ * <p>
+ * The shard is the 'shardIndex' and 'shardCount' parameters of the Suite XML file, written by
+ * {@link TestNGSuiteWriter TestNGSuiteWriter} when {@link TestNGSuiteWriter#SHARDS_PROP SHARDS_PROP}
+ * is set, or {@link #INDEX_PROP INDEX_PROP} and {@link #COUNT_PROP COUNT_PROP}. The index is from 0.
+ * A TestRun is in shard id modulo count, or, when weighted by the 'shardWeighted' parameter or
+ * {@link #WEIGHTED_PROP WEIGHTED_PROP}, in the shard with the least expected work when the
+ * TestRuns of the TestSuite are dealt out longest first. Either way every shard computes the
+ * same split on its own: weights are the {@link TestRunDurations TestRunDurations} of results
+ * that started before the shared SuiteInstance.
+ * <p>
+ * The shards of a run share one SuiteInstance, found or created by the run key, the 'shardRun'
+ * parameter or {@link #RUN_PROP RUN_PROP}, which must differ from run to run.
+ */
+public class Shard {
+
+	/**
+	 * Property defining the shard index of Suites without a 'shardIndex' parameter.
+	 */
+	public static final String INDEX_PROP = "Shard.index";
+
+	/**
+	 * Property defining the number of shards of Suites without a 'shardCount' parameter.
+	 * The default, 1, is no sharding.
+	 */
+	public static final String COUNT_PROP = "Shard.count";
+
+	/**
+	 * Property splitting by expected duration when a Suite has no 'shardWeighted' parameter.
+	 * The default is false.
+	 */
+	public static final String WEIGHTED_PROP = "Shard.weighted";
+
+	/**
+	 * Property defining the run key of Suites without a 'shardRun' parameter.
+	 */
+	public static final String RUN_PROP = "Shard.run";
+
+	// The shard of each ISuite.
+	private static Map<ISuite, Shard> shards = new HashMap<ISuite, Shard>();
+
+	private final int					index;
+	private final int					count;
+	// Map of TestRun id to shard index, or null to split by id.
+	private final Map<Long, Integer>	assignment;
+
+	/**
+	 * Get the shard the ISuite runs, splitting its TestRuns on first use.
+	 *
+	 * @param isuite		a TestNG suite
+	 * @return				the shard or null if the Suite is not sharded
+	 * @throws Exception	if the index is not a shard or on a database error
+	 */
+	public static Shard getShard (ISuite isuite) throws Exception {
+
+		int count = parameter (isuite, "shardCount", COUNT_PROP, 1);
+		if (count <= 1) {
+			return null;
+		}
+		int index = parameter (isuite, "shardIndex", INDEX_PROP, 0);
+		if (index < 0 || index >= count) {
+			throw new Exception ("Shard index "+index+" is not from 0 to "+(count-1)+".");
+		}
+		synchronized (shards) {
+			Shard shard = shards.get(isuite);
+			if (shard == null) {
+				String weighted = isuite.getParameter("shardWeighted");
+				if (weighted == null ? Config.getPropertyAsBoolean_S(WEIGHTED_PROP, false) :
+					Boolean.parseBoolean(weighted.trim())) {
+					shard = load (isuite, index, count);
+				} else {
+					shard = new Shard (index, count, null);
+				}
+				shards.put(isuite, shard);
+			}
+			return shard;
+		}
+	}
+
+	/**
+	 * Forget the shard of the ISuite, when it finishes.
+	 * @param isuite	a TestNG suite
+	 */
+	public static void discard (ISuite isuite) {
+		synchronized (shards) {
+			shards.remove(isuite);
+		}
+	}
+
+	/**
+	 * Get the key the shards of a run, or the executors pulling from its {@link TestRunQueue
+	 * TestRunQueue}, share their SuiteInstance by.
+	 *
+	 * @param isuite		a TestNG suite
+	 * @return				the run key or null if the Suite is neither sharded nor queued
+	 * @throws Exception	if the Suite is sharded or queued without a run key
+	 */
+	public static String getRunKey (ISuite isuite) throws Exception {
+
+		if (parameter (isuite, "shardCount", COUNT_PROP, 1) <= 1 && !TestRunQueue.isEnabled()) {
+			return null;
+		}
+		String runKey = isuite.getParameter("shardRun");
+		if (runKey == null) {
+			runKey = Config.getProperty_S(RUN_PROP, null);
+		}
+		if (runKey == null || runKey.trim().isEmpty()) {
+			throw new Exception ("A sharded or queued Suite needs a 'shardRun' parameter or "+RUN_PROP+
+				" to share its SuiteInstance.");
+		}
+		return runKey.trim();
+	}
+
+	private static int parameter (ISuite isuite, String name, String prop, int defaultValue) {
+		String value = isuite.getParameter(name);
+		if (value == null) {
+			return Config.getPropertyAsInt_S(prop, defaultValue);
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			Logger.getLogger(Shard.class).warn("Suite parameter '"+name+"' value '"+value+
+				"' is not a number. Using "+prop+".");
+			return Config.getPropertyAsInt_S(prop, defaultValue);
+		}
+	}
+
+	/**
+	 * Split the TestRuns of the ISuite's TestSuite by expected duration.
+	 * Without a SuiteInstance to bound the history, split by id.
+	 *
+	 * @param isuite		a TestNG suite
+	 * @param index			the shard index
+	 * @param count			the number of shards
+	 * @return				the shard
+	 * @throws Exception	on a database error
+	 */
+	static Shard load (ISuite isuite, int index, int count) throws Exception {
+
+		Logger log = Logger.getLogger (Shard.class.getName());
+		Long suiteInstanceId = SuiteListenerAdaptor.getSuiteInstanceId(isuite);
+		if (suiteInstanceId == null) {
+			log.warn("Suite '"+isuite.getName()+"' has no SuiteInstance. Splitting by TestRun id.");
+			return new Shard (index, count, null);
+		}
+
+		SuiteCatalog catalog = SuiteCatalog.getCatalog(isuite);
+		TestSuite testSuite = catalog.getTestSuite();
+		List<TestRun> testRuns = new ArrayList<TestRun>();
+		for (TestClass testClass : testSuite.getTestClasses()) {
+			for (TestCase testCase : catalog.getTestCases(testClass)) {
+				testRuns.addAll(testCase.getTestRuns());
+			}
+		}
+
+		Map<Long, List<Long>> durations;
+		GopherData gopherData = null;
+		try {
+			gopherData = GopherDataFactory.getGopherData();
+			SuiteInstance suiteInstance = gopherData.findSuiteInstanceById(suiteInstanceId);
+			// Results of this run are not history. Every shard sees the same results.
+			Date until = suiteInstance.getStartTime();
+			long days = Config.getPropertyAsInt_S(TestRunDurations.DAYS_PROP, TestRunDurations.DEFAULT_DAYS);
+			durations = gopherData.findTestRunDurationsByTestSuite(testSuite.getId(),
+				new Date(until.getTime() - days * 24L * 60 * 60 * 1000), until);
+		} finally {
+			if (gopherData != null) {
+				gopherData.close();
+			}
+		}
+		Map<Long, Integer> assignment = assign (testRuns,
+			TestRunDurations.estimate(durations,
+				Config.getPropertyAsInt_S(TestRunDurations.HISTORY_PROP, TestRunDurations.DEFAULT_HISTORY),
+				Config.getPropertyAsInt_S(TestRunDurations.WEIGHT_PROP, TestRunDurations.DEFAULT_WEIGHT)),
+			Config.getPropertyAsInt_S(TestRunDurations.DEFAULT_DURATION_PROP,
+				TestRunDurations.DEFAULT_DEFAULT_DURATION), count);
+		log.info("Shard "+index+" of "+count+" of TestSuite '"+testSuite.getName()+"' split "+
+			assignment.size()+" TestRuns by expected duration.");
+		return new Shard (index, count, assignment);
+	}
+
+	/**
+	 * Deal TestRuns out longest first, each to the shard with the least expected work,
+	 * the lowest index of equals. TestRuns expected to take as long go in id order.
+	 * TestRuns without results are expected to take the mean of the others.
+	 *
+	 * @param testRuns			the TestRuns, in any order, possibly repeated
+	 * @param expected			map of TestRun id to expected duration in ms
+	 * @param defaultDuration	the expected duration in ms if no TestRun has one
+	 * @param count				the number of shards
+	 * @return					map of TestRun id to shard index
+	 */
+	static Map<Long, Integer> assign (List<TestRun> testRuns, Map<Long, Long> expected,
+		long defaultDuration, int count) {
+
+		final Map<Long, Long> durations = new HashMap<Long, Long>();
+		long total = 0;
+		int known = 0;
+		for (TestRun testRun : testRuns) {
+			Long duration = expected.get(testRun.getId());
+			if (duration != null && !durations.containsKey(testRun.getId())) {
+				total += duration;
+				known++;
+			}
+			durations.put(testRun.getId(), duration);
+		}
+		long mean = known == 0 ? defaultDuration : total / known;
+		List<Long> ids = new ArrayList<Long>(durations.keySet());
+		for (Long id : ids) {
+			if (durations.get(id) == null) {
+				durations.put(id, mean);
+			}
+		}
+
+		Collections.sort(ids, new Comparator<Long>() {
+			public int compare (Long a, Long b) {
+				int c = durations.get(b).compareTo(durations.get(a));
+				return c != 0 ? c : a.compareTo(b);
+			}
+		});
+		long[] load = new long[count];
+		Map<Long, Integer> assignment = new HashMap<Long, Integer>();
+		for (Long id : ids) {
+			int least = 0;
+			for (int i = 1; i < count; i++) {
+				if (load[i] < load[least]) {
+					least = i;
+				}
+			}
+			load[least] += durations.get(id);
+			assignment.put(id, least);
+		}
+		return assignment;
+	}
+
+	/**
+	 * Construct with all member data.
+	 *
+	 * @param index			the shard index, from 0
+	 * @param count			the number of shards
+	 * @param assignment	map of TestRun id to shard index, or null to split by id
+	 */
+	Shard (int index, int count, Map<Long, Integer> assignment) {
+		this.index = index;
+		this.count = count;
+		this.assignment = assignment;
+	}
+
+	/**
+	 * Get the shard index.
+	 * @return	the index, from 0
+	 */
+	public int getIndex () {
+		return index;
+	}
+
+	/**
+	 * Get the number of shards.
+	 * @return	the count
+	 */
+	public int getCount () {
+		return count;
+	}
+
+	/**
+	 * Get the shard a TestRun is in.
+	 * A TestRun not in the split, of a TestClass outside the TestSuite, is split by id.
+	 *
+	 * @param testRun	the TestRun
+	 * @return			the shard index
+	 */
+	public int shardOf (TestRun testRun) {
+		Integer shard = assignment == null ? null : assignment.get(testRun.getId());
+		return shard != null ? shard : (int) (testRun.getId() % count);
+	}
+
+	/**
+	 * Get the TestRuns in this shard.
+	 * @param testRuns	the TestRuns
+	 * @return			the TestRuns in this shard, in the same order
+	 */
+	public List<TestRun> filter (List<TestRun> testRuns) {
+		List<TestRun> result = new ArrayList<TestRun>();
+		for (TestRun testRun : testRuns) {
+			if (shardOf (testRun) == index) {
+				result.add(testRun);
+			}
+		}
+		return result;
+	}
+}
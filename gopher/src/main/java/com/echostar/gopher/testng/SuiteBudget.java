@@ -0,0 +1,447 @@
+package com.echostar.gopher.testng;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.testng.ISuite;
+
+import com.echostar.gopher.persist.DeferredTestRun;
+import com.echostar.gopher.persist.GopherData;
+import com.echostar.gopher.persist.GopherDataFactory;
+import com.echostar.gopher.persist.SuiteInstance;
+import com.echostar.gopher.persist.TestCase;
+import com.echostar.gopher.persist.TestRun;
+import com.echostar.gopher.persist.TestRunResult;
+import com.echostar.gopher.persist.TestSuite;
+import com.echostar.gopher.util.Config;
+
+/**
+ * Run the TestRuns of a Suite worth the most that fit in a wall-clock budget.
+ * <p>
+ * The budget is the 'budget' parameter of the Suite XML file or {@link #BUDGET_PROP BUDGET_PROP},
+ * in ms, shared by 'budgetSlots' or {@link #SLOTS_PROP SLOTS_PROP} browser slots.
+ * When a {@link SuiteInstance SuiteInstance} is created, every TestRun of the Suite is valued
+ * from its recent {@link TestRunResult TestRunResults}: its failure rate and the time since it last ran. A TestRun that never ran, as the
+ * TestRuns of a new TestCase version, is worth {@link #NEW_WEIGHT_PROP NEW_WEIGHT_PROP}.
+ * TestRuns are packed onto the slots by value per expected ms while they end within the budget.
+ * The others are recorded as {@link DeferredTestRun DeferredTestRuns} of the SuiteInstance
+ * in the transaction creating the SuiteInstance, and left out of
+ * {@link TestNGClassBase#doDataProvider doDataProvider}. The shards and queue executors
+ * that join the SuiteInstance leave out the same TestRuns.
+ * The history window and expected durations are those of {@link TestRunDurations TestRunDurations}.
+ */
+public class SuiteBudget {
+
+	/**
+	 * Property defining the budget in ms of Suites without a 'budget' parameter. 0, the default, is none.
+	 */
+	public static final String BUDGET_PROP = "SuiteBudget.budget";
+
+	/**
+	 * Property defining the browser slots of Suites without a 'budgetSlots' parameter.
+	 */
+	public static final String SLOTS_PROP = "SuiteBudget.slots";
+
+	/**
+	 * Property defining the value of a TestRun failing every time.
+	 */
+	public static final String FAILURE_WEIGHT_PROP = "SuiteBudget.failureWeight";
+
+	/**
+	 * Property defining the value of a TestRun not run for {@link TestRunDurations#DAYS_PROP days}.
+	 */
+	public static final String STALE_WEIGHT_PROP = "SuiteBudget.staleWeight";
+
+	/**
+	 * Property defining the value of a TestRun that never ran.
+	 */
+	public static final String NEW_WEIGHT_PROP = "SuiteBudget.newWeight";
+
+	static final int DEFAULT_SLOTS = 1;
+	static final int DEFAULT_FAILURE_WEIGHT = 60;
+	static final int DEFAULT_STALE_WEIGHT = 20;
+	static final int DEFAULT_NEW_WEIGHT = 100;
+
+	// The budget of each SuiteInstance by id.
+	private static Map<Long, SuiteBudget> budgets = new HashMap<Long, SuiteBudget>();
+
+	private Logger log = Logger.getLogger (getClass().getName());
+
+	private final long	budget;
+	private final int	slots;
+	private final int	failureWeight;
+	private final int	staleWeight;
+	private final int	newWeight;
+	private final int	history;
+	private final int	days;
+	private final int	durationWeight;
+	private final long	defaultDuration;
+
+	// Set by select.
+	private Set<Long>			considered = new HashSet<Long>();
+	private Set<Long>			selected = new HashSet<Long>();
+	private List<Candidate>		deferred = new ArrayList<Candidate>();
+	private long				expectedMakespan = 0;
+
+	/**
+	 * Select the TestRuns of a SuiteInstance being created and record the deferred ones
+	 * in the transaction creating it. Called once per SuiteInstance, by the process that
+	 * creates it, so the shards and queue executors of a run share one selection.
+	 *
+	 * @param gopherData	the GopherData creating the SuiteInstance
+	 * @param suiteInstance	the SuiteInstance, not yet committed
+	 * @param isuite		the TestNG suite or null
+	 * @throws Exception	on a database error
+	 */
+	public static void select (GopherData gopherData, SuiteInstance suiteInstance, ISuite isuite)
+		throws Exception {
+
+		SuiteBudget suiteBudget = configure (isuite);
+		if (suiteBudget == null) {
+			return;
+		}
+		suiteBudget.load(gopherData, suiteInstance);
+		synchronized (budgets) {
+			budgets.put(suiteInstance.getId(), suiteBudget);
+		}
+	}
+
+	/**
+	 * Get the budget of the SuiteInstance the ISuite runs in. In the process that created
+	 * the SuiteInstance it is the selection made then. In the others, the shards and queue
+	 * executors that joined it, it is read from its {@link DeferredTestRun DeferredTestRuns}.
+	 *
+	 * @param isuite		a TestNG suite
+	 * @return				the budget or null if not running in a Suite with a budget
+	 * @throws Exception	on a database error
+	 */
+	public static SuiteBudget getBudget (ISuite isuite) throws Exception {
+
+		Long suiteInstanceId = SuiteListenerAdaptor.getSuiteInstanceId(isuite);
+		if (suiteInstanceId == null) {
+			return null;
+		}
+		synchronized (budgets) {
+			SuiteBudget suiteBudget = budgets.get(suiteInstanceId);
+			if (suiteBudget == null) {
+				suiteBudget = configure (isuite);
+				if (suiteBudget == null) {
+					return null;
+				}
+				GopherData gopherData = null;
+				try {
+					gopherData = GopherDataFactory.getGopherData();
+					suiteBudget.join(gopherData.findDeferredTestRuns(suiteInstanceId));
+				} finally {
+					if (gopherData != null) {
+						gopherData.close();
+					}
+				}
+				suiteBudget.log.info("SuiteInstance "+suiteInstanceId+" joined with "+
+					suiteBudget.deferred.size()+" TestRuns deferred.");
+				budgets.put(suiteInstanceId, suiteBudget);
+			}
+			return suiteBudget;
+		}
+	}
+
+	/**
+	 * Construct the budget of the Suite the ISuite runs in. Nothing is selected.
+	 * @param isuite	a TestNG suite or null
+	 * @return			the budget or null if the Suite has none
+	 */
+	private static SuiteBudget configure (ISuite isuite) {
+		if (isuite == null) {
+			return null;
+		}
+		long budget = parameter (isuite, "budget", BUDGET_PROP, 0);
+		if (budget <= 0) {
+			return null;
+		}
+		return new SuiteBudget (budget,
+			(int) parameter (isuite, "budgetSlots", SLOTS_PROP, DEFAULT_SLOTS),
+			Config.getPropertyAsInt_S(FAILURE_WEIGHT_PROP, DEFAULT_FAILURE_WEIGHT),
+			Config.getPropertyAsInt_S(STALE_WEIGHT_PROP, DEFAULT_STALE_WEIGHT),
+			Config.getPropertyAsInt_S(NEW_WEIGHT_PROP, DEFAULT_NEW_WEIGHT),
+			Config.getPropertyAsInt_S(TestRunDurations.HISTORY_PROP, TestRunDurations.DEFAULT_HISTORY),
+			Config.getPropertyAsInt_S(TestRunDurations.DAYS_PROP, TestRunDurations.DEFAULT_DAYS),
+			Config.getPropertyAsInt_S(TestRunDurations.WEIGHT_PROP, TestRunDurations.DEFAULT_WEIGHT),
+			Config.getPropertyAsInt_S(TestRunDurations.DEFAULT_DURATION_PROP,
+				TestRunDurations.DEFAULT_DEFAULT_DURATION));
+	}
+
+	/**
+	 * Forget the budget of a SuiteInstance.
+	 * @param suiteInstanceId	the SuiteInstance id
+	 */
+	public static void discard (Long suiteInstanceId) {
+		synchronized (budgets) {
+			budgets.remove(suiteInstanceId);
+		}
+	}
+
+	private static long parameter (ISuite isuite, String name, String prop, int defaultValue) {
+		String value = isuite.getParameter(name);
+		if (value == null) {
+			return Config.getPropertyAsInt_S(prop, defaultValue);
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			Logger.getLogger(SuiteBudget.class).warn("Suite parameter '"+name+"' value '"+value+
+				"' is not a number. Using "+prop+".");
+			return Config.getPropertyAsInt_S(prop, defaultValue);
+		}
+	}
+
+	/**
+	 * Construct with all member data. Nothing is selected.
+	 *
+	 * @param budget			the budget in ms
+	 * @param slots				the number of browser slots
+	 * @param failureWeight		the value of a TestRun failing every time
+	 * @param staleWeight		the value of a TestRun not run for days
+	 * @param newWeight			the value of a TestRun that never ran
+	 * @param history			the number of latest TestRunResults of a TestRun to use
+	 * @param days				the age in days of the oldest TestRunResult to use
+	 * @param durationWeight	the weight in percent of the newer duration in the average
+	 * @param defaultDuration	the expected duration in ms of a TestRun when none ran
+	 */
+	SuiteBudget (long budget, int slots, int failureWeight, int staleWeight, int newWeight,
+		int history, int days, int durationWeight, long defaultDuration) {
+		this.budget = budget;
+		this.slots = Math.max(1, slots);
+		this.failureWeight = failureWeight;
+		this.staleWeight = staleWeight;
+		this.newWeight = newWeight;
+		this.history = history;
+		this.days = days;
+		this.durationWeight = durationWeight;
+		this.defaultDuration = defaultDuration;
+	}
+
+	/**
+	 * Select the TestRuns of the Suite of a SuiteInstance and record the deferred ones
+	 * not recorded yet. The caller commits.
+	 *
+	 * @param gopherData		the GopherData
+	 * @param suiteInstance		the SuiteInstance
+	 * @throws Exception		on a database error
+	 */
+	private void load (GopherData gopherData, SuiteInstance suiteInstance) throws Exception {
+
+		long start = System.currentTimeMillis();
+		Date since = new Date(start - days * 24L * 60 * 60 * 1000);
+		List<TestRun> testRuns = new ArrayList<TestRun>();
+		Set<Long> testRunIds = new HashSet<Long>();
+		Map<Long, List<TestRunResult>> outcomes = new HashMap<Long, List<TestRunResult>>();
+		for (TestSuite testSuite : suiteInstance.getSuite().getTestSuites()) {
+			for (TestCase testCase : gopherData.findTestCasesByTestSuite(testSuite.getId())) {
+				if (!testCase.getRunmode() || !testCase.getTestClass().getRunmode()) {
+					continue;
+				}
+				for (TestRun testRun : testCase.getTestRuns()) {
+					// A TestClass may be in more than one TestSuite.
+					if (testRun.getRunmode() && testRunIds.add(testRun.getId())) {
+						testRuns.add(testRun);
+					}
+				}
+			}
+			outcomes.putAll(gopherData.findTestRunOutcomesByTestSuite(testSuite.getId(), since));
+		}
+		select (testRuns, outcomes, start);
+
+		Set<Long> recorded = new HashSet<Long>();
+		for (DeferredTestRun deferredTestRun : gopherData.findDeferredTestRuns(suiteInstance.getId())) {
+			recorded.add(deferredTestRun.getTestRun().getId());
+		}
+		for (Candidate candidate : deferred) {
+			if (recorded.add(candidate.testRun.getId())) {
+				gopherData.createDeferredTestRun(suiteInstance, candidate.testRun, candidate.value,
+					candidate.duration, "over budget");
+			}
+		}
+		log.info("SuiteInstance "+suiteInstance.getId()+" "+this+" Selected in "+
+			(System.currentTimeMillis()-start)+" ms.");
+	}
+
+	/**
+	 * Take the selection made by the process that created the SuiteInstance:
+	 * the TestRuns deferred are left out and every other runs.
+	 *
+	 * @param deferredTestRuns	the DeferredTestRuns of the SuiteInstance
+	 */
+	void join (List<DeferredTestRun> deferredTestRuns) {
+		for (DeferredTestRun deferredTestRun : deferredTestRuns) {
+			TestRun testRun = deferredTestRun.getTestRun();
+			if (considered.add(testRun.getId())) {
+				deferred.add(new Candidate (testRun, deferredTestRun.getValue(),
+					deferredTestRun.getExpectedDuration()));
+			}
+		}
+	}
+
+	/**
+	 * Value TestRuns and pack them onto the slots, the most value per expected ms first,
+	 * while they end within the budget.
+	 *
+	 * @param testRuns		the TestRuns
+	 * @param outcomes		map of TestRun id to TestRunResults, newest first
+	 * @param now			the current time
+	 */
+	void select (List<TestRun> testRuns, Map<Long, List<TestRunResult>> outcomes, long now) {
+
+		Map<Long, List<Long>> durations = new HashMap<Long, List<Long>>();
+		for (Map.Entry<Long, List<TestRunResult>> entry : outcomes.entrySet()) {
+			List<Long> testRunDurations = new ArrayList<Long>();
+			for (TestRunResult testRunResult : entry.getValue()) {
+				if (testRunResult.getStartTime() != null && testRunResult.getEndTime() != null) {
+					testRunDurations.add(testRunResult.getEndTime().getTime() - testRunResult.getStartTime().getTime());
+				}
+			}
+			durations.put(entry.getKey(), testRunDurations);
+		}
+		Map<Long, Long> expected = TestRunDurations.estimate(durations, history, durationWeight);
+		long unknownDuration = defaultDuration;
+		if (!expected.isEmpty()) {
+			long total = 0;
+			for (Long duration : expected.values()) {
+				total += duration;
+			}
+			unknownDuration = total / expected.size();
+		}
+
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		for (TestRun testRun : testRuns) {
+			considered.add(testRun.getId());
+			Long duration = expected.get(testRun.getId());
+			candidates.add(new Candidate (testRun, value (outcomes.get(testRun.getId()), now),
+				duration == null ? unknownDuration : duration));
+		}
+		Collections.sort(candidates, new Comparator<Candidate>() {
+			public int compare (Candidate a, Candidate b) {
+				int c = Double.compare(b.value / Math.max(1, b.duration), a.value / Math.max(1, a.duration));
+				return c != 0 ? c : Double.compare(b.value, a.value);
+			}
+		});
+
+		PriorityQueue<Long> ends = new PriorityQueue<Long>();
+		for (int i = 0; i < slots; i++) {
+			ends.add(0L);
+		}
+		for (Candidate candidate : candidates) {
+			long end = ends.peek() + candidate.duration;
+			if (end <= budget) {
+				ends.poll();
+				ends.add(end);
+				selected.add(candidate.testRun.getId());
+				expectedMakespan = Math.max(expectedMakespan, end);
+			} else {
+				deferred.add(candidate);
+			}
+		}
+	}
+
+	/**
+	 * Get the value of running a TestRun.
+	 *
+	 * @param outcomes	its TestRunResults, newest first, or null
+	 * @param now		the current time
+	 * @return			the value
+	 */
+	double value (List<TestRunResult> outcomes, long now) {
+		if (outcomes == null || outcomes.isEmpty()) {
+			return newWeight;
+		}
+		int count = Math.min(history, outcomes.size());
+		int failures = 0;
+		for (int i = 0; i < count; i++) {
+			if (!Boolean.TRUE.equals(outcomes.get(i).getResult())) {
+				failures++;
+			}
+		}
+		double stale = 1;
+		Date lastRun = outcomes.get(0).getStartTime();
+		if (lastRun != null && days > 0) {
+			stale = Math.min(1, (now - lastRun.getTime()) / (days * 24.0 * 60 * 60 * 1000));
+		}
+		return failureWeight * failures / (double) count + staleWeight * stale;
+	}
+
+	/**
+	 * Get if a TestRun is to run. TestRuns not in the Suite when selected run.
+	 * @param testRun	the TestRun
+	 * @return			true if selected
+	 */
+	public boolean isSelected (TestRun testRun) {
+		return selected.contains(testRun.getId()) || !considered.contains(testRun.getId());
+	}
+
+	/**
+	 * Get the TestRuns to run.
+	 * @param testRuns	the TestRuns
+	 * @return			the selected TestRuns in the same order
+	 */
+	public List<TestRun> filter (List<TestRun> testRuns) {
+		List<TestRun> result = new ArrayList<TestRun>();
+		for (TestRun testRun : testRuns) {
+			if (isSelected (testRun)) {
+				result.add(testRun);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the TestRuns deferred, the most value per expected ms first.
+	 * @return	the TestRuns
+	 */
+	public List<TestRun> getDeferred () {
+		List<TestRun> result = new ArrayList<TestRun>();
+		for (Candidate candidate : deferred) {
+			result.add(candidate.testRun);
+		}
+		return result;
+	}
+
+	/**
+	 * Get the time in ms the selected TestRuns are expected to take on the slots.
+	 * @return	the makespan
+	 */
+	public long getExpectedMakespan () {
+		return expectedMakespan;
+	}
+
+	/**
+	 * Override Object to show the selection.
+	 * @return	the String
+	 */
+	public String toString () {
+		return "Budget "+budget+" ms on "+slots+" slots: "+selected.size()+" TestRuns selected, expected to take "+
+			expectedMakespan+" ms, "+deferred.size()+" deferred.";
+	}
+
+	/**
+	 * A TestRun with its value and expected duration.
+	 */
+	private static class Candidate {
+		final TestRun	testRun;
+		final double	value;
+		final long		duration;
+
+		Candidate (TestRun testRun, double value, long duration) {
+			this.testRun = testRun;
+			this.value = value;
+			this.duration = duration;
+		}
+	}
+}
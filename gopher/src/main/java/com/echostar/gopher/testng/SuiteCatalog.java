@@ -0,0 +1,216 @@
+package com.echostar.gopher.testng;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.testng.ISuite;
+
+import com.echostar.gopher.persist.GopherData;
+import com.echostar.gopher.persist.GopherDataFactory;
+import com.echostar.gopher.persist.TestCase;
+import com.echostar.gopher.persist.TestClass;
+import com.echostar.gopher.persist.TestSuite;
+
+/**
+ * A snapshot of the catalog a TestNG suite runs:
+ * the {@link TestSuite TestSuite}, its {@link TestClass TestClasses} and their
+ * {@link TestCase TestCases} with TestRuns, TestData and ElementLocators.
+ * The snapshot is loaded once per ISuite with a few set-based queries
+ * so every {@link TestNGClassBase#doDataProvider doDataProvider} in the suite
+ * is served from memory.
+ * Call {@link #discard(ISuite) discard} when the suite finishes.
+ */
+public class SuiteCatalog {
+
+	// Map of ISuite to its catalog.
+	private static Map<ISuite, SuiteCatalog> catalogs = new HashMap<ISuite, SuiteCatalog>();
+
+	private TestSuite						testSuite;
+	// Map of TestClass className to TestClass.
+	private Map<String, TestClass>			testClasses = new HashMap<String, TestClass>();
+	// Map of TestClass id to its TestCases.
+	private Map<Long, List<TestCase>>		testCases = new HashMap<Long, List<TestCase>>();
+	// The expected durations of the TestRuns, loaded on first use.
+	private TestRunDurations				durations;
+	// The passing fingerprints of the TestRuns, loaded on first use.
+	private IncrementalRun					incrementalRun;
+
+	/**
+	 * Get the catalog for the ISuite, loading it on first use.
+	 *
+	 * @param isuite		the TestNG suite
+	 * @return				the catalog
+	 * @throws Exception	if the TestSuite is not found or on any error
+	 */
+	public static SuiteCatalog getCatalog (ISuite isuite) throws Exception {
+
+		synchronized (catalogs) {
+			SuiteCatalog catalog = catalogs.get(isuite);
+			if (catalog == null) {
+				catalog = load (isuite.getName());
+				catalogs.put(isuite, catalog);
+			}
+			return catalog;
+		}
+	}
+
+	/**
+	 * Forget the catalog for the ISuite.
+	 * @param isuite	the TestNG suite
+	 * @return			the catalog or null if not loaded
+	 */
+	public static SuiteCatalog discard (ISuite isuite) {
+		synchronized (catalogs) {
+			return catalogs.remove(isuite);
+		}
+	}
+
+	/**
+	 * Load the catalog for the TestSuite with the given name.
+	 *
+	 * @param testSuiteName		the TestSuite name
+	 * @return					the catalog
+	 * @throws Exception		if the TestSuite is not found or on any error
+	 */
+	static SuiteCatalog load (String testSuiteName) throws Exception {
+
+		Logger log = Logger.getLogger (SuiteCatalog.class.getName());
+		long start = System.currentTimeMillis();
+
+		GopherData gopherData = null;
+		SuiteCatalog catalog = null;
+		try {
+			gopherData = GopherDataFactory.getGopherData();
+
+			TestSuite testSuite = gopherData.findTestSuiteByName (testSuiteName);
+
+			if (testSuite == null) {
+				throw new Exception ("TestSuite with name '"+testSuiteName+"' not found.");
+			}
+
+			List<TestCase> testCases = gopherData.findTestCasesByTestSuite(testSuite.getId());
+			catalog = build (testSuite, testCases);
+			log.debug("Loaded catalog for TestSuite '"+testSuiteName+"' with "+
+				catalog.testClasses.size()+" TestClasses and "+testCases.size()+
+				" TestCases in "+(System.currentTimeMillis()-start)+" ms.");
+		} finally {
+			if (gopherData != null) {
+				gopherData.close();
+			}
+		}
+		return catalog;
+	}
+
+	/**
+	 * Build the catalog of a TestSuite from the TestCases of its TestClasses.
+	 *
+	 * @param testSuite		the TestSuite
+	 * @param testCases		the TestCases, in order, possibly repeated
+	 * @return				the catalog
+	 */
+	static SuiteCatalog build (TestSuite testSuite, List<TestCase> testCases) {
+
+		SuiteCatalog catalog = new SuiteCatalog ();
+		catalog.testSuite = testSuite;
+
+		// A TestClass may be in the suite more than once.
+		Map<Long, Set<TestCase>> classCases = new HashMap<Long, Set<TestCase>>();
+		for (TestClass testClass : testSuite.getTestClasses()) {
+			catalog.testClasses.put(testClass.getClassName(), testClass);
+			classCases.put(testClass.getId(), new LinkedHashSet<TestCase>());
+		}
+		for (TestCase testCase : testCases) {
+			classCases.get(testCase.getTestClass().getId()).add(testCase);
+		}
+		for (Map.Entry<Long, Set<TestCase>> entry : classCases.entrySet()) {
+			catalog.testCases.put(entry.getKey(), new ArrayList<TestCase>(entry.getValue()));
+		}
+		return catalog;
+	}
+
+	/**
+	 * Get the TestSuite.
+	 * @return	the TestSuite
+	 */
+	public TestSuite getTestSuite () {
+		return testSuite;
+	}
+
+	/**
+	 * Get the expected durations of the TestRuns of the TestSuite, loading them on first use.
+	 * @return				the durations
+	 * @throws Exception	on a database error
+	 */
+	public synchronized TestRunDurations getDurations () throws Exception {
+		if (durations == null) {
+			durations = TestRunDurations.load(testSuite);
+		}
+		return durations;
+	}
+
+	/**
+	 * Get the fingerprints of the TestRuns of the TestSuite that passed recently,
+	 * loading them on first use.
+	 * @return				the incremental run
+	 * @throws Exception	on a database error
+	 */
+	public synchronized IncrementalRun getIncrementalRun () throws Exception {
+		if (incrementalRun == null) {
+			incrementalRun = IncrementalRun.load(testSuite);
+		}
+		return incrementalRun;
+	}
+
+	/**
+	 * Get if the expected durations are loaded.
+	 * @return	true if loaded
+	 */
+	public synchronized boolean hasDurations () {
+		return durations != null;
+	}
+
+	/**
+	 * Get a TestClass by class name.
+	 * A TestClass not in the TestSuite is looked up and added to the catalog.
+	 *
+	 * @param className		the fully qualified class name
+	 * @return				the TestClass or null if not found
+	 * @throws Exception	on any error
+	 */
+	public synchronized TestClass getTestClass (String className) throws Exception {
+
+		if (!testClasses.containsKey(className)) {
+			GopherData gopherData = null;
+			try {
+				gopherData = GopherDataFactory.getGopherData();
+				TestClass testClass = gopherData.findTestClassByClassName(className);
+				testClasses.put(className, testClass);
+				if (testClass != null) {
+					testCases.put(testClass.getId(),
+						gopherData.findTestCasesByTestClass(testClass.getId()));
+				}
+			} finally {
+				if (gopherData != null) {
+					gopherData.close();
+				}
+			}
+		}
+		return testClasses.get(className);
+	}
+
+	/**
+	 * Get the TestCases of a TestClass.
+	 *
+	 * @param testClass		a TestClass returned by {@link #getTestClass(String) getTestClass}
+	 * @return				the TestCases
+	 */
+	public synchronized List<TestCase> getTestCases (TestClass testClass) {
+		List<TestCase> classCases = testCases.get(testClass.getId());
+		return classCases == null ? new ArrayList<TestCase>() : classCases;
+	}
+}
@@ -1,10 +1,13 @@
 package com.echostar.gopher.testng;
 
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
+import org.hibernate.exception.ConstraintViolationException;
 import org.testng.Assert;
 import org.testng.ISuite;
 import org.testng.ISuiteListener;
@@ -12,6 +15,7 @@ import com.echostar.gopher.persist.GopherData;
 import com.echostar.gopher.persist.GopherDataFactory;
 import com.echostar.gopher.persist.Suite;
 import com.echostar.gopher.persist.SuiteInstance;
+import com.echostar.gopher.selenium.GopherDriverPool;
 import com.echostar.gopher.util.ExceptionUtil;
 
 /**
@@ -23,16 +27,51 @@ public class SuiteListenerAdaptor implements ISuiteListener {
 
 	private Logger log = Logger.getLogger (getClass().getName());
 
-	// Our SuiteInstance if any. Currently, the only way to know if we are running
+	// Our SuiteInstances if any. Currently, the only way to know if we are running
 	// in a Suite (as opposed to a TestSuite) is to set a parameter 'suiteName' in the suite XML file.
 	// ISuiteListener is invoked after all the test methods have finished,
 	// making it impossible to know the suite before test methods.
 	// Hence, the need for a work-around.
-	// Parallel suites are not supported.
-	private static Long	suiteInstanceId = null;
+	// Map of Suite name and version (see key(String, String)) to SuiteInstance id.
+	// Suites running in parallel each have an entry.
+	private static Map<String, Long>	suiteInstanceIds = new ConcurrentHashMap<String, Long>();
+
+	// The id of the SuiteInstance created last, for callers that do not name their suite.
+	private static volatile Long		lastSuiteInstanceId = null;
 
 	public static SuiteInstance createSuiteInstance(String suiteName, String suiteVersion,
 		Logger log) throws Exception {
+		return createSuiteInstance(suiteName, suiteVersion, null, null, log);
+	}
+
+	public static SuiteInstance createSuiteInstance(String suiteName, String suiteVersion,
+		Long rerunOfId, Logger log) throws Exception {
+		return createSuiteInstance(suiteName, suiteVersion, rerunOfId, null, log);
+	}
+
+	public static SuiteInstance createSuiteInstance(String suiteName, String suiteVersion,
+		Long rerunOfId, String runKey, Logger log) throws Exception {
+		return createSuiteInstance(suiteName, suiteVersion, rerunOfId, runKey, null, log);
+	}
+
+	/**
+	 * Create the SuiteInstance of a Suite if this is the first call for the Suite.
+	 * With a run key, the processes running shards of the Suite share one SuiteInstance:
+	 * the first to insert it creates it and the others find it.
+	 * The process that creates it selects the TestRuns of its {@link SuiteBudget SuiteBudget}
+	 * in the same transaction, so the others find the selection with the SuiteInstance.
+	 *
+	 * @param suiteName		the Suite name
+	 * @param suiteVersion	the Suite version
+	 * @param rerunOfId		the id of the SuiteInstance whose failed TestRuns this one reruns, or null
+	 * @param runKey		the {@link Shard#getRunKey(ISuite) run key} of a sharded Suite, or null
+	 * @param isuite		the TestNG suite, for the Suite parameters, or null
+	 * @param log			the Logger
+	 * @return				the SuiteInstance
+	 * @throws Exception	on any error
+	 */
+	public static SuiteInstance createSuiteInstance(String suiteName, String suiteVersion,
+		Long rerunOfId, String runKey, ISuite isuite, Logger log) throws Exception {
 
 		Assert.assertNotNull(suiteName);
 		Assert.assertNotNull(suiteVersion);
@@ -40,36 +79,78 @@ public class SuiteListenerAdaptor implements ISuiteListener {
 		GopherData gopherData = null;
 		Transaction tran = null;
 		SuiteInstance suiteInstance = null;
-		try {
-			gopherData =GopherDataFactory.getGopherData();
-			if (suiteInstanceId != null) {
-				log.trace("Getting SuiteInstance.");
-				return getSuiteInstance(gopherData);
-			}
-            log.trace("Finding Suite with name '"+suiteName+"'.");
-			Suite suite = gopherData.findSuiteByNameAndVersion (suiteName, suiteVersion);
-	        log.trace("Found Suite.");
-			log.trace("Creating SuiteInstance for Suite '"+suite.getName()+"'.");
-			Session hibernateSession = gopherData.getHibernateSession();
-			tran = hibernateSession.beginTransaction();
-			suiteInstance = gopherData.createSuiteInstance(suite);
-			suiteInstanceId = suiteInstance.getId();
-			tran.commit();
-			log.trace("Created SuiteInstance for Suite '"+suite.getName()+"'.");
-		} finally {
-			if (tran != null && !tran.wasCommitted()) {
-				tran.rollback();
-			}
-			if (gopherData != null) {
-				gopherData.close();
+		String key = key (suiteName, suiteVersion);
+		// Every TestSuite of a Suite calls this. Only the first creates the SuiteInstance.
+		synchronized (suiteInstanceIds) {
+			try {
+				gopherData =GopherDataFactory.getGopherData();
+				Long suiteInstanceId = suiteInstanceIds.get(key);
+				if (suiteInstanceId != null) {
+					log.trace("Getting SuiteInstance.");
+					return gopherData.findSuiteInstanceById (suiteInstanceId);
+				}
+				log.trace("Finding Suite with name '"+suiteName+"'.");
+				Suite suite = gopherData.findSuiteByNameAndVersion (suiteName, suiteVersion);
+				log.trace("Found Suite.");
+				if (runKey != null) {
+					suiteInstance = gopherData.findSuiteInstanceByRunKey (suite.getId(), runKey);
+				}
+				if (suiteInstance == null) {
+					log.trace("Creating SuiteInstance for Suite '"+suite.getName()+"'.");
+					Session hibernateSession = gopherData.getHibernateSession();
+					tran = hibernateSession.beginTransaction();
+					try {
+						suiteInstance = gopherData.createSuiteInstance(suite, runKey);
+						if (rerunOfId != null) {
+							suiteInstance.setRerunOf(gopherData.findSuiteInstanceById(rerunOfId));
+							hibernateSession.update(suiteInstance);
+						}
+						SuiteBudget.select(gopherData, suiteInstance, isuite);
+						tran.commit();
+						log.trace("Created SuiteInstance for Suite '"+suite.getName()+"'.");
+					} catch (ConstraintViolationException e) {
+						// Another shard created it first. The session is unusable after the failure.
+						log.debug("SuiteInstance of run '"+runKey+"' created by another shard.");
+						tran.rollback();
+						if (suiteInstance != null) {
+							SuiteBudget.discard(suiteInstance.getId());
+						}
+						gopherData.close();
+						gopherData = GopherDataFactory.getGopherData();
+						suiteInstance = gopherData.findSuiteInstanceByRunKey (suite.getId(), runKey);
+						if (suiteInstance == null) {
+							throw e;
+						}
+					}
+				} else {
+					log.debug("Joining SuiteInstance "+suiteInstance.getId()+" of run '"+runKey+"'.");
+				}
+				suiteInstanceIds.put(key, suiteInstance.getId());
+				lastSuiteInstanceId = suiteInstance.getId();
+			} finally {
+				if (tran != null && tran.isActive()) {
+					tran.rollback();
+				}
+				if (gopherData != null) {
+					gopherData.close();
+				}
 			}
 		}
 		return suiteInstance;
 	}
 
+	/**
+	 * Get the SuiteInstance created last if any.
+	 * Use {@link #getSuiteInstance(GopherData, ISuite)} when suites run in parallel.
+	 *
+	 * @param gopherData	the GopherData to find the SuiteInstance with
+	 * @return				the SuiteInstance or null if not running in a Suite
+	 * @throws Exception	on any error
+	 */
 	public static SuiteInstance getSuiteInstance(GopherData gopherData)
 		throws Exception {
 
+		Long suiteInstanceId = lastSuiteInstanceId;
 		if (suiteInstanceId == null) {
 			return null;
 		}
@@ -78,16 +159,76 @@ public class SuiteListenerAdaptor implements ISuiteListener {
 		return suiteInstance;
 	}
 
+	/**
+	 * Get the SuiteInstance of the Suite the ISuite is running in if any.
+	 *
+	 * @param gopherData	the GopherData to find the SuiteInstance with
+	 * @param isuite		a TestNG suite
+	 * @return				the SuiteInstance or null if not running in a Suite
+	 * @throws Exception	on any error
+	 */
+	public static SuiteInstance getSuiteInstance(GopherData gopherData, ISuite isuite)
+		throws Exception {
+
+		Long suiteInstanceId = getSuiteInstanceId (isuite);
+		if (suiteInstanceId == null) {
+			return null;
+		}
+		return gopherData.findSuiteInstanceById (suiteInstanceId);
+	}
+
+	/**
+	 * Get the id of the SuiteInstance created last if any.
+	 * Use {@link #getSuiteInstanceId(ISuite)} when suites run in parallel.
+	 * @return	the SuiteInstance id or null if not running in a Suite
+	 */
+	public static Long getSuiteInstanceId () {
+		return lastSuiteInstanceId;
+	}
+
+	/**
+	 * Get the id of the SuiteInstance of the Suite the ISuite is running in if any.
+	 * The Suite is named by the 'suiteName' and 'suiteVersion' parameters
+	 * a TestSuite inherits from its Suite XML file.
+	 *
+	 * @param isuite	a TestNG suite
+	 * @return			the SuiteInstance id or null if not running in a Suite
+	 */
+	public static Long getSuiteInstanceId (ISuite isuite) {
+		if (isuite == null) {
+			return null;
+		}
+		String suiteName = isuite.getParameter("suiteName");
+		if (suiteName == null) {
+			return null;
+		}
+		return suiteInstanceIds.get(key (suiteName, isuite.getParameter("suiteVersion")));
+	}
+
 	public static void clearSuiteInstance () {
-		suiteInstanceId = null;
+		suiteInstanceIds.clear();
+		lastSuiteInstanceId = null;
+	}
+
+	/**
+	 * Make the key of {@link #suiteInstanceIds suiteInstanceIds}.
+	 * @param suiteName		the Suite name
+	 * @param suiteVersion	the Suite version
+	 * @return				the key
+	 */
+	static String key (String suiteName, String suiteVersion) {
+		return suiteName+"|"+suiteVersion;
 	}
+
 	public void onStart(ISuite suite) {
 		log.info ("Suite start "+suite.getName());
 	}
 
 	/**
 	 * Determine when the Suite (as opposed to TestSuite)
-	 * has ended and update the end time.
+	 * has ended, wait for any queued TestRunResults to be written,
+	 * report the expected and actual makespan when TestRuns ran longest first
+	 * and update the end time.
 	 */
 	public void onFinish(ISuite isuite) {
 		log.info ("Suite onFinish ISuite name '"+isuite.getName()+"'.");
@@ -96,11 +237,38 @@ public class SuiteListenerAdaptor implements ISuiteListener {
 		Transaction tran = null;
 
 		try {
+			// Make sure every TestRunResult of this Suite is written.
+			TestRunResultRecorder.getInstance().drain();
+
+			Shard.discard(isuite);
+			SuiteCatalog catalog = SuiteCatalog.discard(isuite);
+			if (catalog != null && catalog.hasDurations()) {
+				log.info("Suite '"+isuite.getName()+"' "+catalog.getDurations().getMakespanReport());
+			}
+
 			gopherData = GopherDataFactory.getGopherData();
 
-			SuiteInstance suiteInstance = gopherData.findSuiteInstanceById(suiteInstanceId);
+			// The Suite (as opposed to a TestSuite) is named by its own XML file.
+			String key = key (isuite.getName(), isuite.getParameter("suiteVersion"));
+			Long suiteInstanceId = suiteInstanceIds.get(key);
+			if (suiteInstanceId == null) {
+				// The version parameter may not be visible here. Match the name alone.
+				for (Map.Entry<String, Long> entry : suiteInstanceIds.entrySet()) {
+					if (entry.getKey().startsWith(isuite.getName()+"|")) {
+						key = entry.getKey();
+						suiteInstanceId = entry.getValue();
+						break;
+					}
+				}
+			}
+			SuiteInstance suiteInstance = suiteInstanceId == null ? null :
+				gopherData.findSuiteInstanceById(suiteInstanceId);
 
 			if (suiteInstance != null && isuite.getName().equals(suiteInstance.getSuite().getName())) {
+				suiteInstanceIds.remove(key);
+				SuiteBudget.discard(suiteInstanceId);
+				RerunFailed.discard(suiteInstance.getSuite().getName(), suiteInstance.getSuite().getVersion());
+				// The shards of a run each set the end time. The last to finish sets it last.
 				suiteInstance.setEndTime(new Date());
 				Session hibernateSession=gopherData.getHibernateSession();
 				tran=hibernateSession.beginTransaction();
@@ -120,6 +288,10 @@ public class SuiteListenerAdaptor implements ISuiteListener {
 				log.debug("Closing gopherData.");
 				gopherData.close();
 			}
+			log.debug(GopherDataFactory.getConnectionPoolStatus());
+			if (GopherDriverPool.isEnabled()) {
+				log.debug(GopherDriverPool.getInstance().getStatus());
+			}
 			log.debug("Leaving onFinish ISuite name'"+isuite.getName()+"'.");
 		}
 	}
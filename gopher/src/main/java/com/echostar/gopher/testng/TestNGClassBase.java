@@ -1,14 +1,20 @@
 package com.echostar.gopher.testng;
 
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
 import org.testng.ISuite;
 import org.testng.ITestContext;
+import org.testng.ITestResult;
 import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.AfterSuite;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.BeforeSuite;
@@ -23,11 +29,17 @@ import com.echostar.gopher.persist.GopherData;
 import com.echostar.gopher.persist.GopherDataFactory;
 import com.echostar.gopher.persist.SuiteInstance;
 import com.echostar.gopher.persist.TestClass;
+import com.echostar.gopher.persist.TestClassDecorator;
 import com.echostar.gopher.persist.TestCase;
+import com.echostar.gopher.persist.TestNode;
 import com.echostar.gopher.persist.TestRun;
 import com.echostar.gopher.persist.TestRunResult;
 import com.echostar.gopher.persist.TestSuite;
 import com.echostar.gopher.persist.TestSuiteInstance;
+import com.echostar.gopher.selenium.GopherDriverFactory;
+import com.echostar.gopher.selenium.GopherDriverPool;
+import com.echostar.gopher.selenium.NavigationReadiness;
+import com.echostar.gopher.selenium.TestNodeMonitor;
 import com.echostar.gopher.util.Config;
 import com.echostar.gopher.util.ExceptionUtil;
 
@@ -46,7 +58,7 @@ public class TestNGClassBase {
 
 	// Map of ISuite to Long id of TestSuiteInstance
 	protected static Map<ISuite, Long> testSuiteInstanceMap =
-		new HashMap<ISuite, Long>();
+		new ConcurrentHashMap<ISuite, Long>();
 
 	protected Config			config;
 	// URL provided by TestNG as a Parameter
@@ -54,13 +66,20 @@ public class TestNGClassBase {
 	// Browser provided by TestNG as a Parameter
 	protected BrowserEnum		browser;
 
+	// The TestRunScheduler Lease of the TestRun running on this thread, if any.
+	private static final ThreadLocal<TestRunScheduler.Lease> lease = new ThreadLocal<TestRunScheduler.Lease>();
+
 	protected TestNGClassBase () throws Exception {
-		config = new Config();
+		// The singleton holds the same files, so do not read them again for each class.
+		config = Config.getDefault();
+		if (config == null) {
+			config = new Config();
+		}
 	}
 
 	/**
 	 * Wrap the test method {@link #doTest doTest} with exception handling.
-	 * Insert a {@link TestRunResult TestRunResult}.
+	 * Record a {@link TestRunResult TestRunResult} with the {@link TestRunResultRecorder TestRunResultRecorder}.
 	 * Over-riding methods must not catch exceptions or insert a result.
 	 *
 	 * @param testSuite			the testSuite
@@ -88,38 +107,55 @@ public class TestNGClassBase {
 		if ((testSuite != null && !testSuite.getRunmode()) || !testClass.getRunmode() ||
 			!testCase.getRunmode() || !testRun.getRunmode()) {
 			log.info("TestClass "+testClass.getName() + " Skipped.");
+			unplan (testRun);
+			completeQueued (testRun, testng_suite);
 			throw new SkipException("Skipped");
 		}
 
-		// Get a Hibernate Session. If this fails, this test can not continue.
-		GopherData gopherData = null;
-		Session hibernateSession = null;
-		Transaction tran = null;
-		Throwable e = null;
-		try {
-			gopherData = GopherDataFactory.getGopherData();
-			hibernateSession = gopherData.getHibernateSession();
-
-			// TBD - remove this work-around to prevent dirty reads and writes.
-			gopherData.getHibernateSession().beginTransaction().commit();
+		// Do not run a TestRun whose inputs passed recently. The fingerprint is recorded
+		// with every result, so passes are fresh once IncrementalRun is enabled.
+		String fingerprint = fingerprint (testRun, testCase, testSuite, testng_suite);
+		if (IncrementalRun.isEnabled()) {
+			if (SuiteCatalog.getCatalog(testng_suite).getIncrementalRun().isFresh(fingerprint)) {
+				log.info("TestRun "+testRun.getId()+" Skipped, "+IncrementalRun.CACHED_MESSAGE+".");
+				Date now = new Date();
+				TestRunResultRecorder.getInstance().record(true, IncrementalRun.CACHED_MESSAGE, now, now,
+					System.getProperty("user.name"), url, testRun.getId(),
+					SuiteListenerAdaptor.getSuiteInstanceId(testng_suite),
+					testSuiteInstanceMap.get(testng_suite), null, fingerprint, true, null);
+				unplan (testRun);
+				completeQueued (testRun, testng_suite);
+				throw new SkipException(IncrementalRun.CACHED_MESSAGE);
+			}
 		}
-		catch (Throwable ex) {
-			e = ex;
-			log.error(ExceptionUtil.getStackTraceString(ex, 10000));
-			// Stop the suite.
-			throw ex;
-		} finally {
-			if (e != null && gopherData != null) {
-				gopherData.close();
+
+		// Wait for a slot on a TestNode that can run this TestRun.
+		if (TestRunScheduler.isEnabled()) {
+			TestRunScheduler.Lease testRunLease = TestRunScheduler.getInstance().acquire(testRun);
+			if (testRunLease != null) {
+				lease.set(testRunLease);
+				// Start the browser on the node the slot is on.
+				GopherDriverFactory.setAssignedTestNode(testRunLease.getTestNode());
 			}
-			log.debug("Done refreshing arguments.");
 		}
 
+		// Do not wait for a dead TestNode to time out.
+		TestNode testNode = determineTestNode (testRun);
+		if (testNode != null && TestNodeMonitor.isEnabled() &&
+			TestNodeMonitor.getInstance().isDown(testNode)) {
+			log.warn("TestRun "+testRun.getId()+" Skipped, "+
+				TestNodeMonitor.getInstance().getHealth(testNode)+".");
+			releaseLease ();
+			completeQueued (testRun, testng_suite);
+			throw new SkipException("TestNode down");
+		}
+
+		Throwable e = null;
 		Date startTime = new Date();
 
 		try {
 			// Do actual test stuff here.
-			doTest (testRun, testCase, testClass, testSuite);
+			runDoTest (testRun, testCase, testClass, testSuite);
 		} catch (AssertionError err) {
 			// Preserve the exception.
 			e = err;
@@ -144,6 +180,9 @@ public class TestNGClassBase {
 			// Stop the suite.
 			throw ex;
 		} finally {
+			releaseLease ();
+			completeQueued (testRun, testng_suite);
+
 			// Do reporting.
 			boolean result = true;
 			String message = "success";
@@ -162,66 +201,65 @@ public class TestNGClassBase {
 			}
 
 			try {
-				// TBD - remove this work-around to prevent dirty reads and writes.
-				//gopherData.getHibernateSession().beginTransaction().commit();
-
-				// Get the TestSuiteInstance.
-				TestSuiteInstance testSuiteInstance = null;
+				// Get the TestSuiteInstance id.
 				Long testSuiteInstanceId = testSuiteInstanceMap.get(testng_suite);
 				if (testSuiteInstanceId == null) {
 					log.debug ("TestSuiteInstance for testng_suite '"+testng_suite+
 						"' not found in map.");
-				} else {
-					testSuiteInstance = gopherData.findTestSuiteInstanceById(testSuiteInstanceId);
-
-					if (testSuiteInstance == null) {
-						Exception nfe = new Exception ("TestSuiteInstance with id "+testSuiteInstanceId+
-								"' not found.");
-						log.error(nfe);
-						throw nfe;
-					}
 				}
-				// Get the SuiteInstance if any.
-				SuiteInstance suiteInstance = SuiteListenerAdaptor.getSuiteInstance(gopherData);
 
-				// Create a TestRunResult.
-				log.debug("Creating TestRunResult.");
+				// Queue a TestRunResult on the TestNode it ran on, the leased one if any.
+				// The recorder writes it in the background.
+				log.debug("Recording TestRunResult.");
 				String user = System.getProperty("user.name");
-				synchronized (this) {
-					tran = hibernateSession.beginTransaction();
-					//String url = determineUrl (testSuite, testRun);
-					TestRunResult testRunResult = gopherData.createTestRunResult
-						(result, message, startTime, endTime, user, url, testRun,
-						suiteInstance, testSuiteInstance);
-
-					// Preserve any exceptions.
-					List<Throwable> exceptions = ErrorUtil.getVerificationFailures ();
-					if (exceptions != null && exceptions.size() > 0) {
-						for (Throwable t : exceptions) {
-							gopherData.createTestException (t, 10000, testRunResult);
-						}
-					}
-					tran.commit();
+				TestRunResultRecorder.getInstance().record(result, message, startTime, endTime,
+					user, url, testRun.getId(), SuiteListenerAdaptor.getSuiteInstanceId(testng_suite),
+					testSuiteInstanceId, ErrorUtil.getVerificationFailures (), fingerprint, false,
+					testNode == null ? null : testNode.getId());
+				log.debug("Recorded TestRunResult.");
+
+				if (TestRunDurations.isEnabled()) {
+					SuiteCatalog.getCatalog(testng_suite).getDurations().record(testRun, startTime, endTime);
 				}
-				log.debug("Created TestRunResult.");
 			} catch (Throwable t) {
 				// Log this exception.
 				log.error(ExceptionUtil.getStackTraceString(t, 10000));
-			} finally {
-				if (tran != null && !tran.wasCommitted()) {
-					tran.rollback();
-				}
 			}
 
-			if (gopherData != null) {
-				log.trace("closing gopherData");
-				gopherData.close();
-			}
 			log.debug("Leaving wrapDoTest testRun "+testRun.getId()+" testCase "+testCase.getName()+
 					" testClass "+testClass.getName()+" ITestContext "+context+".");
 		}
 	}
 
+	/**
+	 * Call {@link #doTest doTest} with the TestRun's
+	 * {@link #determineReadiness NavigationReadiness} rule as the current rule,
+	 * so navigations that are not given a rule wait by it.
+	 *
+	 * @param testSuite		the testSuite
+	 * @param testClass		the testClass
+	 * @param testCase		the TestCase
+	 * @param testRun		the TestRun
+	 * @throws Exception	on any error, a TestException if the rule is not valid
+	 */
+	protected void runDoTest (TestRun testRun, TestCase testCase, TestClass testClass,
+		TestSuite testSuite) throws Exception {
+
+		NavigationReadiness readiness;
+		try {
+			readiness = determineReadiness (testSuite, testRun);
+		} catch (Exception e) {
+			throw new TestException ("Readiness rule of TestRun "+testRun.getId()+
+				" not valid: "+e.getMessage(), e);
+		}
+		NavigationReadiness.setCurrent(readiness);
+		try {
+			doTest (testRun, testCase, testClass, testSuite);
+		} finally {
+			NavigationReadiness.setCurrent(null);
+		}
+	}
+
 	/**
 	 * Override this method and do actual test.
 	 *
@@ -240,6 +278,8 @@ public class TestNGClassBase {
 	 * A TestNG DataProvider.
 	 * Build the array needed by the TestClass.
 	 * This method should be suitable for all production TestClass.
+	 * It runs in parallel when {@link DataProviderTransformer DataProviderTransformer} is a listener
+	 * and {@link DataProviderTransformer#PARALLEL_PROP parallel data providers} are enabled.
 	 *
 	 * @param context		the TestNG context
 	 * @return				a two dimensional array where the number of rows is equal to the sum of
@@ -247,86 +287,183 @@ public class TestNGClassBase {
 	 * 						The first column is our class name, the second is a TestCase, and the third column is a TestRun.
 	 * @throws Exception	on any error
 	 */
-	@DataProvider//(parallel = true)
+	@DataProvider
 	public Object[][] doDataProvider (ITestContext context) throws Exception {
 
 		String className = getClass().getName();
 		Logger log = Logger.getLogger (className);
 		log.debug("In "+className+"#doDataProvider ITestContext "+context+".");
 
-		GopherData gopherData = null;
-		Transaction tran = null;
 		Object[][] returnValues = null;
 
 		try {
-			gopherData = GopherDataFactory.getGopherData();
+			if (TestRunQueue.isEnabled()) {
+				throw new Exception ("The TestRunQueue needs the DataProviderTransformer listener.");
+			}
+
+			// The return array is of size testRunCount by 4.
+			// It is 4 wide because we are going to add the TestSuite(if any), our class name, the TestCase and TestRun.
+			Map<Long, Object[]> rows = rows (context, false);
+			returnValues = rows.values().toArray(new Object[rows.size()][]);
+		} catch (Exception e) {			
+			log.error(ExceptionUtil.getStackTraceString(e, 10000));
+			throw e;
+		} finally {
+			log.debug("Leaving "+className+"#doDataProvider ITestContext "+context+".");
+		}
 
-			ISuite suite = context.getSuite();
-			String suiteName = suite.getName();
+	    return returnValues;
+	}
 
-			// TBD - remove this work-around to prevent dirty reads and writes.
-			gopherData.getHibernateSession().beginTransaction().commit();
+	/**
+	 * A TestNG DataProvider taking rows from the {@link TestRunQueue TestRunQueue} as TestNG runs them.
+	 * {@link DataProviderTransformer DataProviderTransformer} makes it the data provider of
+	 * {@link #wrapDoTest wrapDoTest} when the queue is enabled.
+	 * Without a SuiteInstance to queue in, every row is returned.
+	 *
+	 * @param context		the TestNG context
+	 * @return				the rows of {@link #doDataProvider doDataProvider} claimed by this executor
+	 * @throws Exception	on any error
+	 */
+	@DataProvider
+	public Iterator<Object[]> doQueueDataProvider (ITestContext context) throws Exception {
 
-			TestSuite testSuite = gopherData.findTestSuiteByName (suiteName);
+		String className = getClass().getName();
+		Logger log = Logger.getLogger (className);
+		log.debug("In "+className+"#doQueueDataProvider ITestContext "+context+".");
 
-			if (testSuite == null){
-				throw new Exception ("TestSuite with name '"+suiteName+"' not found.");					
+		try {
+			Map<Long, Object[]> rows = rows (context, true);
+			Long suiteInstanceId = SuiteListenerAdaptor.getSuiteInstanceId(context.getSuite());
+			if (suiteInstanceId == null) {
+				log.warn("Suite '"+context.getSuite().getName()+"' has no SuiteInstance to queue in. "+
+					"Running every TestRun.");
+				return rows.values().iterator();
 			}
+			return TestRunQueue.getInstance().pull(suiteInstanceId, rows);
+		} catch (Exception e) {			
+			log.error(ExceptionUtil.getStackTraceString(e, 10000));
+			throw e;
+		} finally {
+			log.debug("Leaving "+className+"#doQueueDataProvider ITestContext "+context+".");
+		}
+	}
 
-			// TBD - remove this work-around to prevent dirty reads and writes.
-			gopherData.getHibernateSession().beginTransaction().commit();
+	/**
+	 * Build the data provider rows of the TestRuns of this TestClass that the Suite runs, in order.
+	 *
+	 * @param context		the TestNG context
+	 * @param queued		true if executors share the rows through the {@link TestRunQueue TestRunQueue},
+	 * 						rather than each running its {@link Shard Shard}
+	 * @return				map of TestRun id to its row: the TestRun, TestCase, TestClass and TestSuite
+	 * @throws Exception	on any error
+	 */
+	Map<Long, Object[]> rows (ITestContext context, boolean queued) throws Exception {
 
-			// Find the TestClass by our class name.
-			TestClass testClass = gopherData.findTestClassByClassName(className);
+		String className = getClass().getName();
 
-			if (testClass == null){
-				throw new Exception ("TestClass with member className '"+className+"' not found.");
-			}
+		// The catalog is loaded once per suite and shared by every TestClass in it.
+		SuiteCatalog catalog = SuiteCatalog.getCatalog(context.getSuite());
 
-			// TBD - remove this work-around to prevent dirty reads and writes.
-			gopherData.getHibernateSession().beginTransaction().commit();
+		TestSuite testSuite = catalog.getTestSuite();
 
-			// Find the TestCase(s) for this TestClass.
-			// TestCases define what we are expected to do.
-			List<TestCase> testCases = gopherData.findTestCasesByTestClass(testClass.getId());
+		// Find the TestClass by our class name.
+		TestClass testClass = catalog.getTestClass(className);
 
-			// Count the number of TestRuns.
-			int testRunCount = 0;
-			for (TestCase testCase : testCases) {
-			    List<TestRun> testRuns = testCase.getTestRuns();
-				testRunCount += testRuns.size();
-			}
+		if (testClass == null){
+			throw new Exception ("TestClass with member className '"+className+"' not found.");
+		}
 
-			// The return array is of size testRunCount by 4.
-			// It is 4 wide because we are going to add the TestSuite(if any), our class name, the TestCase and TestRun.
-			returnValues = new Object[testRunCount][4];
-
-			// For every TestCase
-			int testRunNumber = 0;
-			for (TestCase testCase : testCases) {
-				// For every TestRun
-				for (TestRun testRun : testCase.getTestRuns ()) {
-					// Add the TestCase and TestRun to the array.
-					returnValues[testRunNumber][0] = testRun;
-					returnValues[testRunNumber][1] = testCase;
-					returnValues[testRunNumber][2] = testClass;
-					returnValues[testRunNumber++][3] = testSuite;
-				}
+		// Find the TestCase(s) for this TestClass.
+		// TestCases define what we are expected to do.
+		List<TestCase> testCases = catalog.getTestCases(testClass);
+
+		// For every TestCase
+		List<TestRun> allTestRuns = new ArrayList<TestRun>();
+		Map<TestRun, TestCase> testRunCases = new IdentityHashMap<TestRun, TestCase>();
+		for (TestCase testCase : testCases) {
+			// For every TestRun
+			for (TestRun testRun : testCase.getTestRuns ()) {
+				allTestRuns.add(testRun);
+				testRunCases.put(testRun, testCase);
 			}
-		} catch (Exception e) {			
-			log.error(ExceptionUtil.getStackTraceString(e, 10000));
-			throw e;
-		} finally {
-			if (tran != null && !tran.wasCommitted()) {
-				log.debug("Rolling back transaction.");
-				tran.rollback();
-			}
-			if (gopherData != null) {
-				gopherData.close();
-			}
-			log.debug("Leaving "+className+"#doDataProvider ITestContext "+context+".");		}
+		}
 
-	    return returnValues;
+		// Run only this process's share of a sharded Suite.
+		// Queued executors share every TestRun instead.
+		Shard shard = queued ? null : Shard.getShard(context.getSuite());
+		if (shard != null) {
+			allTestRuns = shard.filter(allTestRuns);
+		}
+
+		// Rerun only the TestRuns that failed.
+		RerunFailed rerun = RerunFailed.getRerun(context.getSuite());
+		if (rerun != null) {
+			allTestRuns = rerun.filter(allTestRuns);
+		}
+
+		// Leave out the TestRuns that do not fit in the Suite's time budget.
+		SuiteBudget suiteBudget = SuiteBudget.getBudget(context.getSuite());
+		if (suiteBudget != null) {
+			allTestRuns = suiteBudget.filter(allTestRuns);
+		}
+
+		// Start the longest TestRuns first.
+		if (TestRunDurations.isEnabled()) {
+			allTestRuns = catalog.getDurations().longestFirst(allTestRuns);
+		}
+
+		// Order the TestRuns so every TestNode gets work at once, keeping each node's order.
+		// Queued TestRuns are not planned on a node, as another executor may claim them.
+		if (TestRunScheduler.isEnabled()) {
+			allTestRuns = queued ? TestRunScheduler.getInstance().order(allTestRuns) :
+				TestRunScheduler.getInstance().plan(allTestRuns);
+		}
+
+		Map<Long, Object[]> rows = new LinkedHashMap<Long, Object[]>();
+		for (TestRun testRun : allTestRuns) {
+			// Add the TestCase and TestRun to the row.
+			rows.put(testRun.getId(), new Object[] {testRun, testRunCases.get(testRun), testClass, testSuite});
+		}
+		return rows;
+	}
+
+	/**
+	 * Release the {@link TestRunScheduler TestRunScheduler} slot of the TestRun running on this thread, if any.
+	 */
+	private static void releaseLease () {
+		TestRunScheduler.Lease testRunLease = lease.get();
+		if (testRunLease != null) {
+			testRunLease.release();
+			lease.remove();
+			GopherDriverFactory.setAssignedTestNode(null);
+		}
+	}
+
+	/**
+	 * Take a TestRun that is skipped off the {@link TestRunScheduler TestRunScheduler} node it was planned on.
+	 * @param testRun		the TestRun
+	 * @throws Exception	on a database error
+	 */
+	private static void unplan (TestRun testRun) throws Exception {
+		if (TestRunScheduler.isEnabled()) {
+			TestRunScheduler.getInstance().unplan(testRun);
+		}
+	}
+
+	/**
+	 * Mark a TestRun taken from the {@link TestRunQueue TestRunQueue} done.
+	 *
+	 * @param testRun	the TestRun
+	 * @param isuite	the TestNG suite
+	 */
+	private static void completeQueued (TestRun testRun, ISuite isuite) {
+		if (TestRunQueue.isEnabled()) {
+			Long suiteInstanceId = SuiteListenerAdaptor.getSuiteInstanceId(isuite);
+			if (suiteInstanceId != null) {
+				TestRunQueue.getInstance().complete(suiteInstanceId, testRun);
+			}
+		}
 	}
 
 	/**
@@ -370,10 +507,26 @@ public class TestNGClassBase {
 			// (if the suiteName parameter was defined)
 			SuiteInstance suiteInstance = null;
 			if (suiteName != null) {
+				// Find the failed TestRuns to rerun before the new SuiteInstance is the latest.
+				RerunFailed rerun = RerunFailed.getRerun(context.getSuite());
+
 				// Create a SuiteInstance.
-				// The adaptor will insure this only happens once per Suite.
+				// The adaptor will insure this only happens once per Suite,
+				// and once per run when the shards of a Suite run in several processes.
 				suiteInstance = SuiteListenerAdaptor.createSuiteInstance(suiteName,
-					suiteVersion, log);
+					suiteVersion, rerun == null ? null : rerun.getSuiteInstanceId(),
+					Shard.getRunKey(context.getSuite()), context.getSuite(), log);
+
+				// Check the TestNodes from the start of the Suite.
+				if (TestNodeMonitor.isEnabled()) {
+					TestNodeMonitor.getInstance();
+				}
+
+				// Start browsers while the TestSuites set up.
+				if (GopherDriverPool.isEnabled() &&
+					Config.getPropertyAsBoolean_S(GopherDriverPool.PREWARM_PROP, false)) {
+					GopherDriverPool.getInstance().prewarm();
+				}
 			}
 
 			gopherData = GopherDataFactory.getGopherData();
@@ -384,39 +537,42 @@ public class TestNGClassBase {
 			// in a Suite.
 			// If the map does not contain this ISuite
 			ISuite isuite = context.getSuite();
-			if (!testSuiteInstanceMap.containsKey(isuite)) {
-				String testSuiteName = isuite.getName();
+			// Suites running in parallel must not both create a TestSuiteInstance.
+			synchronized (testSuiteInstanceMap) {
+				if (!testSuiteInstanceMap.containsKey(isuite)) {
+					String testSuiteName = isuite.getName();
 
-				// TBD - remove this work-around.
-				gopherData.getHibernateSession().beginTransaction().commit();
+					// TBD - remove this work-around.
+					gopherData.getHibernateSession().beginTransaction().commit();
 
-				log.trace("Finding TestSuite named '"+testSuiteName+"'.");
-				TestSuite testSuite = gopherData.findTestSuiteByName (testSuiteName);
+					log.trace("Finding TestSuite named '"+testSuiteName+"'.");
+					TestSuite testSuite = gopherData.findTestSuiteByName (testSuiteName);
 
-				if (testSuite == null) {
-					throw new Exception ("TestSuite with name '"+testSuiteName+
-						"' not found.");
-				}
-				log.trace("Found TestSuite.");
+					if (testSuite == null) {
+						throw new Exception ("TestSuite with name '"+testSuiteName+
+							"' not found.");
+					}
+					log.trace("Found TestSuite.");
 
-				log.debug("Creating TestSuiteInstance for TestSuite named '"+testSuiteName+"'.");
+					log.debug("Creating TestSuiteInstance for TestSuite named '"+testSuiteName+"'.");
 
-				tran = gopherData.getHibernateSession().beginTransaction();
+					tran = gopherData.getHibernateSession().beginTransaction();
 
-				TestSuiteInstance testSuiteInstance = gopherData.createTestSuiteInstance
-					(testSuite, suiteInstance);
+					TestSuiteInstance testSuiteInstance = gopherData.createTestSuiteInstance
+						(testSuite, suiteInstance);
 
-				tran.commit();
+					tran.commit();
 
-				Long testSuiteInstanceId = testSuiteInstance.getId();
-				log.debug("Created TestSuiteInstance with id "+testSuiteInstanceId+".");
+					Long testSuiteInstanceId = testSuiteInstance.getId();
+					log.debug("Created TestSuiteInstance with id "+testSuiteInstanceId+".");
 
-				testSuiteInstanceMap.put (isuite, testSuiteInstanceId);
-				log.debug("Mapped ISuite "+isuite+" to TestSuiteInstance id "+
-					testSuiteInstanceId+".");
-			}
-			else {
-				log.debug("ISuite '"+isuite+"' in map.");
+					testSuiteInstanceMap.put (isuite, testSuiteInstanceId);
+					log.debug("Mapped ISuite "+isuite+" to TestSuiteInstance id "+
+						testSuiteInstanceId+".");
+				}
+				else {
+					log.debug("ISuite '"+isuite+"' in map.");
+				}
 			}
 		} catch (Exception e) {			
 			log.error(ExceptionUtil.getStackTraceString(e, 10000));
@@ -450,7 +606,9 @@ public class TestNGClassBase {
 	}
 
 	/**
-	 * Update the TestSuiteInstance with the end time.
+	 * Wait for any queued TestRunResults to be written,
+	 * update the TestSuiteInstance with the end time
+	 * and discard the {@link SuiteCatalog SuiteCatalog}.
 	 * @param suiteName		the Suite name parameter if any
 	 * @param suiteVersion	the Suite version if any
 	 * @param context		the TestNG context
@@ -469,6 +627,11 @@ public class TestNGClassBase {
 		Transaction tran = null;
 
 		try {
+			// Make sure every TestRunResult of this TestSuite is written.
+			TestRunResultRecorder.getInstance().drain();
+
+			SuiteCatalog.discard(context.getSuite());
+
 			gopherData = GopherDataFactory.getGopherData();
 
 			// Maintain a map of ISuite to TestSuiteInstance id.
@@ -520,11 +683,25 @@ public class TestNGClassBase {
 		log.warn("mockData not over-ridden");
 	}
 
-	@BeforeSuite
+	/**
+	 * Clear all verification failures.
+	 * This is no longer done before every suite, as suites may run in parallel.
+	 * Failures are cleared per test result by {@link #clearVerificationFailures(ITestResult)
+	 * clearVerificationFailures}.
+	 */
 	public static void clearValidationExceptions () {
 		ErrorUtil.clear();
 	}
 
+	/**
+	 * Forget the verification failures of a completed test method.
+	 * @param result	the test result
+	 */
+	@AfterMethod(alwaysRun = true)
+	public void clearVerificationFailures (ITestResult result) {
+		ErrorUtil.clear(result);
+	}
+
 	/**
 	 * Determine the URL given the
 	 * {@link com.echostar.gopher.persist.TestSuite TestSuite} and
@@ -548,6 +725,74 @@ public class TestNGClassBase {
 		throw new Exception ("Test URL not defined in SuiteDecorator, TestSuiteDecorator, TestClassDecorator or TestRun.");
 	}
 
+	/**
+	 * Determine the {@link NavigationReadiness NavigationReadiness} rule given the
+	 * {@link com.echostar.gopher.persist.TestSuite TestSuite} and
+	 * {@link com.echostar.gopher.persist.TestRun TestRun}.
+	 * The TestRun's rule takes precedence over the TestClassDecorator's.
+	 * @param testSuite		the TestSuite
+	 * @param testRun		the TestRun
+	 * @return				the rule, the default rule if neither defines one
+	 * @throws Exception	if a rule is not valid
+	 */
+	public NavigationReadiness determineReadiness (TestSuite testSuite, TestRun testRun) throws Exception {
+		String readiness = testRun.getReadiness();
+		if (readiness == null && testSuite != null && testSuite.getTestClassDecorators() != null) {
+			TestClass testClass = testRun.getTestCase().getTestClass();
+			for (TestClassDecorator testClassDecorator : testSuite.getTestClassDecorators()) {
+				if (testClassDecorator.getTestClass().getId().equals(testClass.getId())) {
+					readiness = testClassDecorator.getReadiness();
+					break;
+				}
+			}
+		}
+		return NavigationReadiness.parse(readiness);
+	}
+
+	/**
+	 * Get the fingerprint of a TestRun's inputs for {@link IncrementalRun IncrementalRun}.
+	 * The URL and browser are those determined for the TestRun, if any.
+	 * @param testRun		the TestRun
+	 * @param testCase		the TestCase
+	 * @param testSuite		the TestSuite
+	 * @param isuite		the TestNG suite
+	 * @return				the fingerprint
+	 */
+	protected String fingerprint (TestRun testRun, TestCase testCase, TestSuite testSuite, ISuite isuite) {
+		String testUrl = null;
+		BrowserEnum testBrowser = null;
+		try {
+			testUrl = determineUrl (testSuite, testRun);
+		} catch (Exception e) {
+			// No URL is an input too.
+		}
+		try {
+			testBrowser = determineBrowser (testSuite, testRun);
+		} catch (Exception e) {
+			// No browser is an input too.
+		}
+		return IncrementalRun.fingerprint(testRun, testCase, testUrl, testBrowser,
+			IncrementalRun.getBuildId(isuite));
+	}
+
+	/**
+	 * Determine the {@link TestNode TestNode} to run a
+	 * {@link com.echostar.gopher.persist.TestRun TestRun} on.
+	 * When the {@link TestRunScheduler TestRunScheduler} is enabled it is the node leased
+	 * for the TestRun running on this thread, which may not be the TestRun's own, and
+	 * {@link GopherDriverFactory#getGopherDriver(BrowserEnum, TestNode) GopherDriverFactory}
+	 * starts the browser there.
+	 * @param testRun		the TestRun
+	 * @return				the TestNode or null if the TestRun has none
+	 */
+	public TestNode determineTestNode (TestRun testRun) {
+		TestRunScheduler.Lease testRunLease = lease.get();
+		if (testRunLease != null) {
+			return testRunLease.getTestNode();
+		}
+		return testRun.getTestNode();
+	}
+
 	/**
 	 * Determine the browser given the
 	 * {@link com.echostar.gopher.persist.TestSuite TestSuite} and
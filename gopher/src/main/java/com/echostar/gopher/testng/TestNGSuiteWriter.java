@@ -3,6 +3,7 @@ package com.echostar.gopher.testng;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,6 +17,7 @@ import com.echostar.gopher.persist.TestSuiteDecorator;
 import com.echostar.gopher.persist.TestClass;
 import com.echostar.gopher.persist.TestSuite;
 import com.echostar.gopher.persist.TestClassDecorator;
+import com.echostar.gopher.util.Config;
 
 /**
  * Create the suite XML files needed by TestNG.
@@ -28,6 +30,36 @@ import com.echostar.gopher.persist.TestClassDecorator;
  */
 public class TestNGSuiteWriter {
 
+	/**
+	 * Property defining the TestNG parallel mode of generated test suites:
+	 * false, methods, tests, classes or instances. The default is false.
+	 */
+	public static final String PARALLEL_PROP = "TestNGSuiteWriter.parallel";
+
+	/**
+	 * Property defining the thread-count of parallel test suites. The default is 5.
+	 */
+	public static final String THREAD_COUNT_PROP = "TestNGSuiteWriter.threadCount";
+
+	/**
+	 * Property defining the data-provider-thread-count of generated test suites.
+	 * If not defined, TestNG's default is used.
+	 */
+	public static final String DATA_PROVIDER_THREAD_COUNT_PROP = "TestNGSuiteWriter.dataProviderThreadCount";
+
+	/**
+	 * Property defining the number of {@link Shard shard} files written for every Suite.
+	 * The default, 1, writes one file without shard parameters.
+	 * With more than 1, the shard files leave out the grid startup and shutdown, which are
+	 * written to a "_gridStartup" file to run before every shard and a "_gridShutdown" file
+	 * to run after them.
+	 */
+	public static final String SHARDS_PROP = "TestNGSuiteWriter.shards";
+
+	// The names of the TestSuites starting and stopping the grid.
+	static final String STARTUP_GRID_SUITE = "StartupGrid_Suite";
+	static final String SHUTDOWN_GRID_SUITE = "ShutdownGrid_Suite";
+
 	private GopherData gopherData;
 	// Path to the dir to contain the generated suite files
 	private String     suiteDirPath = "src/test/resources/suites";
@@ -40,6 +72,17 @@ public class TestNGSuiteWriter {
 	 * @throws IOException
 	 */
 	public TestNGSuiteWriter (String suiteDirPath) throws IOException {
+		this (suiteDirPath, GopherDataFactory.getGopherData());
+	}
+
+	/**
+	 * Create the suites directory if it does not exist.
+	 *
+	 * @param suiteDirPath	path to directory to contain the generated suite files
+	 * @param gopherData	the GopherData to read decorators from
+	 * @throws IOException
+	 */
+	TestNGSuiteWriter (String suiteDirPath, GopherData gopherData) throws IOException {
 	    if (suiteDirPath != null) {
 	        this.suiteDirPath = suiteDirPath;
 	    }
@@ -47,7 +90,7 @@ public class TestNGSuiteWriter {
 	    if (!suiteDir.exists()) {
 	    	suiteDir.mkdir();
 	    }
-		gopherData = GopherDataFactory.getGopherData();
+		this.gopherData = gopherData;
 	}
 
 	/**
@@ -96,14 +139,16 @@ public class TestNGSuiteWriter {
 
 		String header = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"+
 				"<!DOCTYPE suite SYSTEM \"http://testng.org/testng-1.0.dtd\">\n\n"+
-				"<suite name=\""+testSuite.getName()+"\">\n";
-				//"<suite name=\""+testSuite.getName()+"\" parallel=\"tests\" thread-count=\"2\">\n";
+				"<suite name=\""+testSuite.getName()+"\""+getParallelAttributes()+">\n";
 
 		writer.write(header, 0, header.length());
 		
 		for (TestClass testClass : testClasses) {
 			String listeners = "	<listeners>\n"+
 					"		<listener class-name=\"com.echostar.gopher.testng.TestsListenerAdapter\"/>\n"+
+					(Config.getPropertyAsBoolean_S(DataProviderTransformer.PARALLEL_PROP, false) ||
+						TestRunQueue.isEnabled() ?
+					"		<listener class-name=\"com.echostar.gopher.testng.DataProviderTransformer\"/>\n" : "")+
 					"	</listeners>\n";
 
 			writer.write(listeners, 0, listeners.length());
@@ -138,40 +183,153 @@ public class TestNGSuiteWriter {
 		writer.close();
 	}
 
+	/**
+	 * Get the parallel attributes of a test suite element from the {@link Config Config}
+	 * properties {@link #PARALLEL_PROP PARALLEL_PROP}, {@link #THREAD_COUNT_PROP THREAD_COUNT_PROP}
+	 * and {@link #DATA_PROVIDER_THREAD_COUNT_PROP DATA_PROVIDER_THREAD_COUNT_PROP}.
+	 * @return	the attributes, each preceded by a space, or an empty string
+	 */
+	String getParallelAttributes () {
+		StringBuilder sb = new StringBuilder();
+		String parallel = Config.getProperty_S(PARALLEL_PROP, "false");
+		if (!parallel.equals("false") && !parallel.equals("none")) {
+			sb.append(" parallel=\"").append(parallel).append("\"");
+			sb.append(" thread-count=\"").append(Config.getPropertyAsInt_S(THREAD_COUNT_PROP, 5)).append("\"");
+		}
+		int dataProviderThreadCount = Config.getPropertyAsInt_S(DATA_PROVIDER_THREAD_COUNT_PROP, 0);
+		if (dataProviderThreadCount > 0) {
+			sb.append(" data-provider-thread-count=\"").append(dataProviderThreadCount).append("\"");
+		}
+		return sb.toString();
+	}
+
 	/**
 	 * Write a TestNG suite file for the given suite.
 	 * The file name is "test-data/suites/" plus the {@link com.echostar.gopher.persist.Suite Suite} name
 	 * plus ".xml".
+	 * When {@link #SHARDS_PROP SHARDS_PROP} is more than 1, write a file for every shard
+	 * with "_shard" and the shard index before ".xml", and the grid startup and shutdown
+	 * to files of their own with "_gridStartup" and "_gridShutdown" before ".xml".
+	 * Run the startup file before every shard and the shutdown file after them all,
+	 * so no shard starts the grid again or stops it under the others.
 	 * @param suite			the Suite
 	 * @param suiteDecorator		the SuiteDecorator if any
 	 * @throws Exception	on any error
 	 */
 	public void writeSuiteFile (Suite suite, SuiteDecorator suiteDecorator) throws Exception {
+		writeSuiteFile (suite, suiteDecorator, Config.getPropertyAsInt_S(SHARDS_PROP, 1));
+	}
+
+	/**
+	 * Write the TestNG suite files for the given suite and number of shards.
+	 * @param suite			the Suite
+	 * @param suiteDecorator		the SuiteDecorator if any
+	 * @param shardCount	the number of shards
+	 * @throws Exception	on any error
+	 */
+	void writeSuiteFile (Suite suite, SuiteDecorator suiteDecorator, int shardCount) throws Exception {
+		if (shardCount <= 1) {
+			writeSuiteFile (suite, suiteDecorator, 0, 1);
+			return;
+		}
+		for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+			writeSuiteFile (suite, suiteDecorator, shardIndex, shardCount);
+		}
+		String fileName = getFileName (suite, suiteDecorator);
+		for (TestSuite testSuite : suite.getTestSuites()) {
+			if (testSuite.getName().equals(STARTUP_GRID_SUITE)) {
+				writeGridSuiteFile (fileName+"_gridStartup", suite.getName(), testSuite);
+			} else if (testSuite.getName().equals(SHUTDOWN_GRID_SUITE)) {
+				writeGridSuiteFile (fileName+"_gridShutdown", suite.getName(), testSuite);
+			}
+		}
+	}
+
+	/**
+	 * Get the file name, without ".xml", of the suite file of a Suite.
+	 * @param suite				the Suite
+	 * @param suiteDecorator	the SuiteDecorator if any
+	 * @return					the file name
+	 */
+	private static String getFileName (Suite suite, SuiteDecorator suiteDecorator) {
+		String fileName = suite.getName();
+		if (suiteDecorator != null) {
+			fileName += "_"+suiteDecorator.getName();
+		}
+		return fileName;
+	}
+
+	/**
+	 * Write a TestNG suite file running only the grid startup or shutdown of a sharded Suite.
+	 * @param fileName		the file name without ".xml"
+	 * @param suiteName		the Suite name
+	 * @param testSuite		the startup or shutdown TestSuite
+	 * @throws Exception	on any error
+	 */
+	private void writeGridSuiteFile (String fileName, String suiteName, TestSuite testSuite) throws Exception {
+
+		File f = new File (suiteDirPath+"/"+fileName+".xml");
+		System.out.println ("Suite \""+f.getPath()+"\"");
+		FileWriter writer = new FileWriter (f);
+
+		String content = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"+
+				"<!DOCTYPE suite SYSTEM \"http://testng.org/testng-1.0.dtd\">\n\n"+
+				"<suite name=\""+suiteName+"_"+testSuite.getName()+"\">\n\n"+
+				"	<listeners>\n"+
+				"		<listener class-name=\"com.echostar.gopher.testng.TestsListenerAdapter\"/>\n"+
+				"	</listeners>\n"+
+				"	<suite-files>\n"+
+				"		<suite-file path=\""+testSuite.getName()+".xml\"/>\n"+
+				"	</suite-files>\n\n</suite>";
+		writer.write(content, 0, content.length());
+		writer.flush();
+		writer.close();
+	}
+
+	/**
+	 * Write a TestNG suite file for one shard of the given suite.
+	 * The 'shardIndex' and 'shardCount' parameters are written if the shard count is more than 1,
+	 * and then the grid startup and shutdown are left out.
+	 * @param suite			the Suite
+	 * @param suiteDecorator		the SuiteDecorator if any
+	 * @param shardIndex	the shard index, from 0
+	 * @param shardCount	the number of shards
+	 * @throws Exception	on any error
+	 */
+	public void writeSuiteFile (Suite suite, SuiteDecorator suiteDecorator, int shardIndex,
+		int shardCount) throws Exception {
 
 		String suiteName = suite.getName();
 		String suiteVersion = suite.getVersion();
 
-		File f = null;
-		if (suiteDecorator != null) {
-			f = new File (suiteDirPath+"/"+suiteName+"_"+suiteDecorator.getName()+".xml");
-		} else {
-			f = new File (suiteDirPath+"/"+suiteName+".xml");			
+		String fileName = getFileName (suite, suiteDecorator);
+		if (shardCount > 1) {
+			fileName += "_shard"+shardIndex;
 		}
+		File f = new File (suiteDirPath+"/"+fileName+".xml");
 		System.out.println ("Suite \""+f.getPath()+"\"");
 		FileWriter writer = new FileWriter (f);
 
-		List<TestSuite> testSuites = suite.getTestSuites();
+		// A copy, as the grid startup and shutdown are removed below.
+		List<TestSuite> testSuites = new ArrayList<TestSuite>(suite.getTestSuites());
 
 		// Find the grid startup and shutdown.
 		TestSuite startupTestSuite = null;
 		TestSuite shutdownTestSuite = null;
 		for (TestSuite testSuite : testSuites) {
-			if (testSuite.getName().equals("StartupGrid_Suite")) {
+			if (testSuite.getName().equals(STARTUP_GRID_SUITE)) {
 				startupTestSuite = testSuite;
-			} else if (testSuite.getName().equals("ShutdownGrid_Suite")) {
+			} else if (testSuite.getName().equals(SHUTDOWN_GRID_SUITE)) {
 				shutdownTestSuite = testSuite;
 			}
 		}
+		// A shard runs neither. They are in files of their own, run once for all the shards.
+		if (shardCount > 1) {
+			testSuites.remove(startupTestSuite);
+			startupTestSuite = null;
+			testSuites.remove(shutdownTestSuite);
+			shutdownTestSuite = null;
+		}
 		// If there is a shutdown test, remove it from the set and write it last.
 		if (shutdownTestSuite != null) {
 			testSuites.remove(shutdownTestSuite);
@@ -249,6 +407,12 @@ public class TestNGSuiteWriter {
 				p =
 						"		<parameter name=\"suiteVersion\"  value=\""+suiteVersion+"\"/>\n";
 				writer.write(p, 0, p.length());
+				if (shardCount > 1) {
+					p =
+						"		<parameter name=\"shardIndex\"  value=\""+shardIndex+"\"/>\n"+
+						"		<parameter name=\"shardCount\"  value=\""+shardCount+"\"/>\n";
+					writer.write(p, 0, p.length());
+				}
 			}
 
 			String testSuiteElement =
@@ -0,0 +1,291 @@
+package com.echostar.gopher.testng;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.echostar.gopher.persist.GopherData;
+import com.echostar.gopher.persist.GopherDataFactory;
+import com.echostar.gopher.persist.TestRun;
+import com.echostar.gopher.persist.TestRunResult;
+import com.echostar.gopher.persist.TestSuite;
+import com.echostar.gopher.util.Config;
+
+/**
+ * The expected durations of the {@link TestRun TestRuns} of a {@link TestSuite TestSuite},
+ * an exponentially weighted moving average of their latest {@link TestRunResult TestRunResults}.
+ * {@link #longestFirst(List) longestFirst} orders TestRuns so the longest start first and
+ * do not drag out the end of the suite. TestRuns without results are expected to take the
+ * mean of the other TestRuns ordered with them, the TestRuns of their TestClass,
+ * or {@link #DEFAULT_DURATION_PROP DEFAULT_DURATION_PROP} ms if none have results.
+ * The TestRuns run are {@link #record recorded} to compare the expected and actual
+ * makespan when the suite ends.
+ */
+public class TestRunDurations {
+
+	/**
+	 * Property enabling longest first ordering. The default is false.
+	 */
+	public static final String ENABLED_PROP = "TestRunDurations.enabled";
+
+	/**
+	 * Property defining the number of latest TestRunResults of a TestRun to average.
+	 */
+	public static final String HISTORY_PROP = "TestRunDurations.history";
+
+	/**
+	 * Property defining the age in days of the oldest TestRunResult to average.
+	 */
+	public static final String DAYS_PROP = "TestRunDurations.days";
+
+	/**
+	 * Property defining the weight in percent of the newer TestRunResult in the average.
+	 */
+	public static final String WEIGHT_PROP = "TestRunDurations.weight";
+
+	/**
+	 * Property defining the expected duration in ms of TestRuns of a TestClass without results.
+	 */
+	public static final String DEFAULT_DURATION_PROP = "TestRunDurations.defaultDuration";
+
+	static final int DEFAULT_HISTORY = 10;
+	static final int DEFAULT_DAYS = 30;
+	static final int DEFAULT_WEIGHT = 30;
+	static final int DEFAULT_DEFAULT_DURATION = 60000;
+
+	private Logger log = Logger.getLogger (getClass().getName());
+
+	// The expected duration in ms by TestRun id, of TestRuns with results.
+	private final Map<Long, Long>	expected;
+	private final long				defaultDuration;
+
+	// The expected duration in ms by TestRun id, of TestRuns ordered without results. Guarded by 'this'.
+	private Map<Long, Long>			assumed = new HashMap<Long, Long>();
+	// The TestRuns run. Guarded by 'this'.
+	private List<Run>				runs = new ArrayList<Run>();
+
+	/**
+	 * Get if longest first ordering is enabled by the property {@link #ENABLED_PROP ENABLED_PROP}.
+	 * @return	true if enabled
+	 */
+	public static boolean isEnabled () {
+		return Config.getPropertyAsBoolean_S(ENABLED_PROP, false);
+	}
+
+	/**
+	 * Load the expected durations of the TestRuns of a TestSuite with a single query.
+	 *
+	 * @param testSuite		the TestSuite
+	 * @return				the durations
+	 * @throws Exception	on a database error
+	 */
+	public static TestRunDurations load (TestSuite testSuite) throws Exception {
+
+		Logger log = Logger.getLogger (TestRunDurations.class.getName());
+		long start = System.currentTimeMillis();
+		long days = Config.getPropertyAsInt_S(DAYS_PROP, DEFAULT_DAYS);
+		Date since = new Date(start - days * 24L * 60 * 60 * 1000);
+
+		GopherData gopherData = null;
+		Map<Long, List<Long>> durations;
+		try {
+			gopherData = GopherDataFactory.getGopherData();
+			durations = gopherData.findTestRunDurationsByTestSuite(testSuite.getId(), since);
+		} finally {
+			if (gopherData != null) {
+				gopherData.close();
+			}
+		}
+		TestRunDurations testRunDurations = new TestRunDurations (
+			estimate (durations, Config.getPropertyAsInt_S(HISTORY_PROP, DEFAULT_HISTORY),
+				Config.getPropertyAsInt_S(WEIGHT_PROP, DEFAULT_WEIGHT)),
+			Config.getPropertyAsInt_S(DEFAULT_DURATION_PROP, DEFAULT_DEFAULT_DURATION));
+		log.debug("Loaded durations of "+durations.size()+" TestRuns of TestSuite '"+
+			testSuite.getName()+"' in "+(System.currentTimeMillis()-start)+" ms.");
+		return testRunDurations;
+	}
+
+	/**
+	 * Construct with all member data.
+	 *
+	 * @param expected			the expected duration in ms by TestRun id, of TestRuns with results
+	 * @param defaultDuration	the expected duration in ms of TestRuns of a TestClass without results
+	 */
+	TestRunDurations (Map<Long, Long> expected, long defaultDuration) {
+		this.expected = expected;
+		this.defaultDuration = defaultDuration;
+	}
+
+	/**
+	 * Average the latest durations of each TestRun, weighting newer durations more.
+	 *
+	 * @param durations		map of TestRun id to durations in ms, newest first
+	 * @param history		the number of latest durations to average
+	 * @param weight		the weight in percent of the newer duration
+	 * @return				map of TestRun id to expected duration in ms
+	 */
+	static Map<Long, Long> estimate (Map<Long, List<Long>> durations, int history, int weight) {
+
+		Map<Long, Long> expected = new HashMap<Long, Long>();
+		for (Map.Entry<Long, List<Long>> entry : durations.entrySet()) {
+			List<Long> latest = entry.getValue();
+			if (latest.isEmpty()) {
+				continue;
+			}
+			int count = Math.min(history, latest.size());
+			// Oldest first, so the newest has the most weight.
+			double average = latest.get(count - 1);
+			for (int i = count - 2; i >= 0; i--) {
+				average = (weight * latest.get(i) + (100 - weight) * average) / 100;
+			}
+			expected.put(entry.getKey(), Math.round(average));
+		}
+		return expected;
+	}
+
+	/**
+	 * Get the expected duration of a TestRun.
+	 *
+	 * @param testRun	the TestRun
+	 * @return			the duration in ms, or -1 if it has no results and was not ordered
+	 */
+	public synchronized long getExpected (TestRun testRun) {
+		Long duration = expected.get(testRun.getId());
+		if (duration == null) {
+			duration = assumed.get(testRun.getId());
+		}
+		return duration == null ? -1 : duration;
+	}
+
+	/**
+	 * Order TestRuns longest first. The order of TestRuns expected to take as long is kept.
+	 *
+	 * @param testRuns	the TestRuns of one TestClass
+	 * @return			the TestRuns longest first
+	 */
+	public synchronized List<TestRun> longestFirst (List<TestRun> testRuns) {
+
+		long total = 0;
+		int known = 0;
+		for (TestRun testRun : testRuns) {
+			Long duration = expected.get(testRun.getId());
+			if (duration != null) {
+				total += duration;
+				known++;
+			}
+		}
+		long classDuration = known == 0 ? defaultDuration : total / known;
+
+		final Map<TestRun, Long> durations = new HashMap<TestRun, Long>();
+		for (TestRun testRun : testRuns) {
+			Long duration = expected.get(testRun.getId());
+			if (duration == null) {
+				duration = classDuration;
+				assumed.put(testRun.getId(), duration);
+			}
+			durations.put(testRun, duration);
+		}
+
+		List<TestRun> ordered = new ArrayList<TestRun>(testRuns);
+		Collections.sort(ordered, new Comparator<TestRun>() {
+			public int compare (TestRun a, TestRun b) {
+				return durations.get(b).compareTo(durations.get(a));
+			}
+		});
+		log.debug("Ordered "+ordered.size()+" TestRuns longest first, "+(ordered.size()-known)+
+			" without results expected to take "+classDuration+" ms.");
+		return ordered;
+	}
+
+	/**
+	 * Record a TestRun run on this thread.
+	 *
+	 * @param testRun		the TestRun
+	 * @param startTime		when it started
+	 * @param endTime		when it ended
+	 */
+	public synchronized void record (TestRun testRun, Date startTime, Date endTime) {
+		runs.add(new Run (getExpected (testRun), startTime.getTime(), endTime.getTime(),
+			Thread.currentThread().getId()));
+	}
+
+	/**
+	 * Get the makespan of durations dispatched longest first to the next free worker.
+	 *
+	 * @param durations		the durations in ms
+	 * @param workers		the number of workers
+	 * @return				the makespan in ms
+	 */
+	static long makespan (List<Long> durations, int workers) {
+		List<Long> longestFirst = new ArrayList<Long>(durations);
+		Collections.sort(longestFirst, Collections.reverseOrder());
+		PriorityQueue<Long> ends = new PriorityQueue<Long>();
+		for (int i = 0; i < Math.max(1, workers); i++) {
+			ends.add(0L);
+		}
+		long makespan = 0;
+		for (Long duration : longestFirst) {
+			long end = ends.poll() + duration;
+			makespan = Math.max(makespan, end);
+			ends.add(end);
+		}
+		return makespan;
+	}
+
+	/**
+	 * Compare the expected makespan of the TestRuns recorded on the threads that ran them
+	 * with the actual one.
+	 * @return	the report
+	 */
+	public synchronized String getMakespanReport () {
+		if (runs.isEmpty()) {
+			return "No TestRuns recorded.";
+		}
+		List<Long> durations = new ArrayList<Long>();
+		Set<Long> threads = new HashSet<Long>();
+		long first = Long.MAX_VALUE;
+		long last = Long.MIN_VALUE;
+		long actualTotal = 0;
+		int unknown = 0;
+		for (Run run : runs) {
+			if (run.expected < 0) {
+				unknown++;
+			} else {
+				durations.add(run.expected);
+			}
+			threads.add(run.threadId);
+			first = Math.min(first, run.startTime);
+			last = Math.max(last, run.endTime);
+			actualTotal += run.endTime - run.startTime;
+		}
+		return "Expected makespan "+makespan (durations, threads.size())+" ms, actual "+(last-first)+
+			" ms, for "+runs.size()+" TestRuns on "+threads.size()+" threads ("+unknown+
+			" not ordered, "+actualTotal+" ms run in all).";
+	}
+
+	/**
+	 * A TestRun run.
+	 */
+	private static class Run {
+		final long expected;
+		final long startTime;
+		final long endTime;
+		final long threadId;
+
+		Run (long expected, long startTime, long endTime, long threadId) {
+			this.expected = expected;
+			this.startTime = startTime;
+			this.endTime = endTime;
+			this.threadId = threadId;
+		}
+	}
+}
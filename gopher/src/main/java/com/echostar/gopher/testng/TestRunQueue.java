@@ -0,0 +1,392 @@
+package com.echostar.gopher.testng;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import org.apache.log4j.Logger;
+import org.hibernate.Transaction;
+
+import com.echostar.gopher.persist.GopherData;
+import com.echostar.gopher.persist.GopherDataFactory;
+import com.echostar.gopher.persist.QueuedTestRun;
+import com.echostar.gopher.persist.SuiteInstance;
+import com.echostar.gopher.persist.TestRun;
+import com.echostar.gopher.util.Config;
+
+/**
+ * A work queue in the database the executors of a {@link SuiteInstance SuiteInstance} pull
+ * TestRuns from, so a fast executor takes more and an executor started mid-suite
+ * takes work at once.
+ * <p>
+ * Every executor queues the TestRuns of a TestClass, in order, as {@link QueuedTestRun QueuedTestRuns}.
+ * A TestRun is queued once. {@link TestNGClassBase#doQueueDataProvider doQueueDataProvider}
+ * then claims them {@link #BATCH_PROP BATCH_PROP} at a time as TestNG asks for rows.
+ * A claim is a lease for {@link #LEASE_PROP LEASE_PROP} ms, renewed in the background
+ * while the executor lives and released when it shuts down. The TestRuns of an executor
+ * that dies are claimed by another when their leases expire.
+ * <p>
+ * The executors share the SuiteInstance by the run key of {@link Shard#getRunKey Shard}.
+ * TestNG asks for the next row only when the last one ran, unless the data provider is parallel,
+ * so {@link DataProviderTransformer DataProviderTransformer} must be a listener, to switch
+ * the data provider, and the queued data provider does not run in parallel.
+ */
+public class TestRunQueue {
+
+	/**
+	 * Property enabling the work queue. The default is false.
+	 */
+	public static final String ENABLED_PROP = "TestRunQueue.enabled";
+
+	/**
+	 * Property defining the number of TestRuns claimed at a time.
+	 */
+	public static final String BATCH_PROP = "TestRunQueue.batch";
+
+	/**
+	 * Property defining the time in ms a claim lasts unless renewed.
+	 */
+	public static final String LEASE_PROP = "TestRunQueue.lease";
+
+	/**
+	 * Property naming this executor. The default is the process id and host name.
+	 * Executors must not share a name.
+	 */
+	public static final String OWNER_PROP = "TestRunQueue.owner";
+
+	static final int DEFAULT_BATCH = 2;
+	static final int DEFAULT_LEASE = 300000;
+
+	private static TestRunQueue instance = null;
+
+	private Logger log = Logger.getLogger (getClass().getName());
+
+	private final Store		store;
+	private final String	owner;
+	private final int		batch;
+	private final long		lease;
+	private Thread			renewer;
+
+	/**
+	 * The queue table, apart for tests.
+	 */
+	interface Store {
+
+		/**
+		 * Queue TestRuns not queued yet. See {@link GopherData#enqueueTestRuns GopherData}.
+		 * @param suiteInstanceId	the SuiteInstance id
+		 * @param testRunIds		the TestRun ids, in order
+		 * @throws Exception		on any error
+		 */
+		void enqueue (Long suiteInstanceId, List<Long> testRunIds) throws Exception;
+
+		/**
+		 * Claim TestRuns. See {@link GopherData#claimQueuedTestRuns GopherData}.
+		 * @param suiteInstanceId	the SuiteInstance id
+		 * @param testRunIds		the TestRun ids to claim from
+		 * @param owner				the executor claiming
+		 * @param max				the most TestRuns to claim
+		 * @param now				the current time in ms
+		 * @param leaseUntil		when the leases expire in ms
+		 * @return					the TestRun ids claimed, in queue order
+		 * @throws Exception		on any error
+		 */
+		List<Long> claim (Long suiteInstanceId, Collection<Long> testRunIds, String owner, int max,
+			long now, long leaseUntil) throws Exception;
+
+		/**
+		 * Renew the leases of an executor. See {@link GopherData#renewQueuedTestRuns GopherData}.
+		 * @param owner			the executor
+		 * @param leaseUntil	when the leases expire in ms
+		 * @return				the number renewed
+		 * @throws Exception	on any error
+		 */
+		int renew (String owner, long leaseUntil) throws Exception;
+
+		/**
+		 * Mark a TestRun done. See {@link GopherData#completeQueuedTestRun GopherData}.
+		 * @param suiteInstanceId	the SuiteInstance id
+		 * @param testRunId			the TestRun id
+		 * @param owner				the executor
+		 * @return					false if the lease was lost
+		 * @throws Exception		on any error
+		 */
+		boolean complete (Long suiteInstanceId, Long testRunId, String owner) throws Exception;
+
+		/**
+		 * Release the TestRuns of an executor. See {@link GopherData#releaseQueuedTestRuns GopherData}.
+		 * @param owner			the executor
+		 * @return				the number released
+		 * @throws Exception	on any error
+		 */
+		int release (String owner) throws Exception;
+	}
+
+	/**
+	 * Get if the work queue is enabled by the property {@link #ENABLED_PROP ENABLED_PROP}.
+	 * @return	true if enabled
+	 */
+	public static boolean isEnabled () {
+		return Config.getPropertyAsBoolean_S(ENABLED_PROP, false);
+	}
+
+	/**
+	 * Get the queue of this executor, starting lease renewal on first use.
+	 * @return	the queue
+	 */
+	public static synchronized TestRunQueue getInstance () {
+		if (instance == null) {
+			String owner = Config.getProperty_S(OWNER_PROP, null);
+			if (owner == null || owner.isEmpty()) {
+				// pid@host, and a suffix in case a pid is reused on the host within a lease.
+				owner = ManagementFactory.getRuntimeMXBean().getName()+"-"+
+					UUID.randomUUID().toString().substring(0, 8);
+			}
+			instance = new TestRunQueue (new DBStore (), owner,
+				Config.getPropertyAsInt_S(BATCH_PROP, DEFAULT_BATCH),
+				Config.getPropertyAsInt_S(LEASE_PROP, DEFAULT_LEASE));
+			instance.start();
+			final TestRunQueue queue = instance;
+			Runtime.getRuntime().addShutdownHook(new Thread("TestRunQueue-release") {
+				@Override
+				public void run () {
+					queue.stop();
+					queue.release();
+				}
+			});
+		}
+		return instance;
+	}
+
+	/**
+	 * Construct with all member data. Lease renewal is not started.
+	 *
+	 * @param store		the queue table
+	 * @param owner		the name of this executor
+	 * @param batch		the number of TestRuns claimed at a time
+	 * @param lease		the time in ms a claim lasts unless renewed
+	 */
+	TestRunQueue (Store store, String owner, int batch, long lease) {
+		this.store = store;
+		this.owner = owner;
+		this.batch = Math.max(1, batch);
+		this.lease = lease;
+	}
+
+	/**
+	 * Get the name of this executor.
+	 * @return	the owner of its claims
+	 */
+	public String getOwner () {
+		return owner;
+	}
+
+	/**
+	 * Start renewing the leases of this executor in the background, three times a lease.
+	 */
+	synchronized void start () {
+		if (renewer != null && renewer.isAlive()) {
+			return;
+		}
+		renewer = new Thread("TestRunQueue-renewer") {
+			@Override
+			public void run () {
+				while (true) {
+					try {
+						Thread.sleep(lease / 3);
+					} catch (InterruptedException e) {
+						return;
+					}
+					renew ();
+				}
+			}
+		};
+		renewer.setDaemon(true);
+		renewer.start();
+	}
+
+	/**
+	 * Stop renewing leases.
+	 */
+	synchronized void stop () {
+		if (renewer != null) {
+			renewer.interrupt();
+			renewer = null;
+		}
+	}
+
+	/**
+	 * Renew the leases of this executor.
+	 */
+	void renew () {
+		try {
+			int renewed = store.renew(owner, System.currentTimeMillis() + lease);
+			log.trace("Renewed "+renewed+" leases of "+owner+".");
+		} catch (Exception e) {
+			log.error("Renewing the leases of "+owner+" failed: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Return the TestRuns this executor claimed and did not run to the queue.
+	 */
+	void release () {
+		try {
+			int released = store.release(owner);
+			if (released > 0) {
+				log.info("Released "+released+" TestRuns claimed by "+owner+".");
+			}
+		} catch (Exception e) {
+			log.error("Releasing the TestRuns of "+owner+" failed: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Queue TestRuns and get the rows of the ones this executor claims, claiming as rows are taken.
+	 * The iterator ends when no TestRun is left to claim.
+	 *
+	 * @param suiteInstanceId	the SuiteInstance id
+	 * @param rows				the data provider row of each TestRun id, in order
+	 * @return					the rows claimed
+	 * @throws Exception		on a database error
+	 */
+	public Iterator<Object[]> pull (final Long suiteInstanceId, final Map<Long, Object[]> rows)
+		throws Exception {
+
+		store.enqueue(suiteInstanceId, new ArrayList<Long>(rows.keySet()));
+		return new Iterator<Object[]>() {
+
+			private LinkedList<Long>	claimed = new LinkedList<Long>();
+			private boolean				ended = false;
+
+			public boolean hasNext () {
+				if (claimed.isEmpty() && !ended) {
+					try {
+						long now = System.currentTimeMillis();
+						claimed.addAll(store.claim(suiteInstanceId, rows.keySet(), owner, batch,
+							now, now + lease));
+						log.debug(owner+" claimed TestRuns "+claimed+".");
+					} catch (Exception e) {
+						// The TestRuns left are run by other executors.
+						log.error("Claiming TestRuns failed: "+e.getMessage());
+					}
+					ended = claimed.isEmpty();
+				}
+				return !claimed.isEmpty();
+			}
+
+			public Object[] next () {
+				if (!hasNext ()) {
+					throw new NoSuchElementException();
+				}
+				return rows.get(claimed.removeFirst());
+			}
+
+			public void remove () {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Mark a TestRun this executor ran, or skipped, done.
+	 *
+	 * @param suiteInstanceId	the SuiteInstance id
+	 * @param testRun			the TestRun
+	 */
+	public void complete (Long suiteInstanceId, TestRun testRun) {
+		try {
+			if (!store.complete(suiteInstanceId, testRun.getId(), owner)) {
+				log.warn("TestRun "+testRun.getId()+" lease lost by "+owner+
+					". Another executor may run it again.");
+			}
+		} catch (Exception e) {
+			log.error("Completing TestRun "+testRun.getId()+" failed: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * The queue table in the database, each call in its own transaction.
+	 */
+	static class DBStore implements Store {
+
+		/**
+		 * A unit of work in a transaction.
+		 */
+		private interface Work<T> {
+			T run (GopherData gopherData) throws Exception;
+		}
+
+		private <T> T transact (Work<T> work) throws Exception {
+			GopherData gopherData = null;
+			Transaction tran = null;
+			try {
+				gopherData = GopherDataFactory.getGopherData();
+				tran = gopherData.getHibernateSession().beginTransaction();
+				T result = work.run(gopherData);
+				tran.commit();
+				return result;
+			} finally {
+				if (tran != null && !tran.wasCommitted()) {
+					tran.rollback();
+				}
+				if (gopherData != null) {
+					gopherData.close();
+				}
+			}
+		}
+
+		public void enqueue (final Long suiteInstanceId, final List<Long> testRunIds) throws Exception {
+			transact (new Work<Integer>() {
+				public Integer run (GopherData gopherData) throws Exception {
+					return gopherData.enqueueTestRuns(suiteInstanceId, testRunIds);
+				}
+			});
+		}
+
+		public List<Long> claim (final Long suiteInstanceId, final Collection<Long> testRunIds,
+			final String owner, final int max, final long now, final long leaseUntil) throws Exception {
+			if (testRunIds.isEmpty()) {
+				return new ArrayList<Long>();
+			}
+			return transact (new Work<List<Long>>() {
+				public List<Long> run (GopherData gopherData) throws Exception {
+					return gopherData.claimQueuedTestRuns(suiteInstanceId, testRunIds, owner, max,
+						new Date(now), new Date(leaseUntil));
+				}
+			});
+		}
+
+		public int renew (final String owner, final long leaseUntil) throws Exception {
+			return transact (new Work<Integer>() {
+				public Integer run (GopherData gopherData) throws Exception {
+					return gopherData.renewQueuedTestRuns(owner, new Date(leaseUntil));
+				}
+			});
+		}
+
+		public boolean complete (final Long suiteInstanceId, final Long testRunId, final String owner)
+			throws Exception {
+			return transact (new Work<Boolean>() {
+				public Boolean run (GopherData gopherData) throws Exception {
+					return gopherData.completeQueuedTestRun(suiteInstanceId, testRunId, owner);
+				}
+			});
+		}
+
+		public int release (final String owner) throws Exception {
+			return transact (new Work<Integer>() {
+				public Integer run (GopherData gopherData) throws Exception {
+					return gopherData.releaseQueuedTestRuns(owner);
+				}
+			});
+		}
+	}
+}
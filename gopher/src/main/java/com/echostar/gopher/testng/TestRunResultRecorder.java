@@ -0,0 +1,347 @@
+package com.echostar.gopher.testng;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.log4j.Logger;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+import com.echostar.gopher.persist.GopherData;
+import com.echostar.gopher.persist.GopherDataFactory;
+import com.echostar.gopher.persist.SuiteInstance;
+import com.echostar.gopher.persist.TestException;
+import com.echostar.gopher.persist.TestNode;
+import com.echostar.gopher.persist.TestRun;
+import com.echostar.gopher.persist.TestRunResult;
+import com.echostar.gopher.persist.TestSuiteInstance;
+import com.echostar.gopher.util.Config;
+import com.echostar.gopher.util.ExceptionUtil;
+
+/**
+ * Record {@link TestRunResult TestRunResults} and their
+ * {@link TestException TestExceptions} off the test thread.
+ * Test methods {@link #record record} a result into a bounded queue and return.
+ * A background writer takes whatever is queued, up to a batch size, and inserts
+ * the batch in a single transaction.
+ * When the queue is full, {@link #record record} blocks until the writer catches up.
+ * Call {@link #drain() drain} before anything reads the results back,
+ * e.g. at the end of a TestSuite or Suite.
+ */
+public class TestRunResultRecorder {
+
+	/**
+	 * Property defining the maximum number of results waiting to be written.
+	 */
+	public static final String QUEUE_CAPACITY_PROP = "TestRunResultRecorder.queueCapacity";
+
+	/**
+	 * Property defining the maximum number of results written in one transaction.
+	 */
+	public static final String BATCH_SIZE_PROP = "TestRunResultRecorder.batchSize";
+
+	/**
+	 * Property defining the maximum time in ms {@link #drain() drain} waits.
+	 */
+	public static final String DRAIN_TIMEOUT_PROP = "TestRunResultRecorder.drainTimeout";
+
+	static final int DEFAULT_QUEUE_CAPACITY = 1000;
+	static final int DEFAULT_BATCH_SIZE = 50;
+	static final long DEFAULT_DRAIN_TIMEOUT = 60000;
+
+	// The maximum length of a TestException stacktrace.
+	static final int MAX_TRACE_LEN = 10000;
+
+	private static TestRunResultRecorder instance = null;
+
+	private Logger log = Logger.getLogger (getClass().getName());
+
+	private BlockingQueue<PendingResult>	queue;
+	private int								batchSize;
+	private long							drainTimeout;
+	private Thread							writer;
+
+	// Results recorded but not yet written (or abandoned).
+	// Guarded by 'this'.
+	private long							pendingCount = 0;
+
+	/**
+	 * Get the shared recorder, creating it and starting its writer on first use.
+	 * @return	the recorder
+	 */
+	public static synchronized TestRunResultRecorder getInstance () {
+		if (instance == null) {
+			instance = new TestRunResultRecorder (
+				Config.getPropertyAsInt_S (QUEUE_CAPACITY_PROP, DEFAULT_QUEUE_CAPACITY),
+				Config.getPropertyAsInt_S (BATCH_SIZE_PROP, DEFAULT_BATCH_SIZE),
+				Config.getPropertyAsInt_S (DRAIN_TIMEOUT_PROP, (int)DEFAULT_DRAIN_TIMEOUT));
+			instance.start();
+			Runtime.getRuntime().addShutdownHook(new Thread("TestRunResultRecorder-shutdown") {
+				@Override
+				public void run () {
+					instance.drain();
+				}
+			});
+		}
+		return instance;
+	}
+
+	/**
+	 * Construct with all member data. The writer is not started.
+	 *
+	 * @param queueCapacity		the maximum number of results waiting to be written
+	 * @param batchSize			the maximum number of results written in one transaction
+	 * @param drainTimeout		the maximum time in ms {@link #drain() drain} waits
+	 */
+	TestRunResultRecorder (int queueCapacity, int batchSize, long drainTimeout) {
+		this.queue = new ArrayBlockingQueue<PendingResult>(queueCapacity);
+		this.batchSize = batchSize;
+		this.drainTimeout = drainTimeout;
+	}
+
+	/**
+	 * Start the background writer.
+	 */
+	synchronized void start () {
+		if (writer != null && writer.isAlive()) {
+			return;
+		}
+		writer = new Thread("TestRunResultRecorder-writer") {
+			@Override
+			public void run () {
+				writeLoop ();
+			}
+		};
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Queue a TestRunResult and its exceptions for writing.
+	 * Block while the queue is full.
+	 *
+	 * @param result				true (success) or false (failure)
+	 * @param message				a message describing the failure
+	 * @param startTime				the start time of the run
+	 * @param endTime				the end time of the run
+	 * @param user					the name of the user running the TestClass
+	 * @param url					the url used in the test
+	 * @param testRunId				the id of the TestRun
+	 * @param suiteInstanceId		the id of the SuiteInstance if any
+	 * @param testSuiteInstanceId	the id of the TestSuiteInstance if any
+	 * @param exceptions			the exceptions to record as TestExceptions if any
+	 * @throws InterruptedException	if interrupted while waiting for space in the queue
+	 */
+	public void record (boolean result, String message, Date startTime, Date endTime,
+		String user, String url, Long testRunId, Long suiteInstanceId,
+		Long testSuiteInstanceId, List<Throwable> exceptions) throws InterruptedException {
+		record (result, message, startTime, endTime, user, url, testRunId, suiteInstanceId,
+			testSuiteInstanceId, exceptions, null, false, null);
+	}
+
+	/**
+	 * Queue a TestRunResult with the fingerprint of its inputs, the TestNode it ran on
+	 * and its exceptions for writing.
+	 * Block while the queue is full.
+	 *
+	 * @param result				true (success) or false (failure)
+	 * @param message				a message describing the failure
+	 * @param startTime				the start time of the run
+	 * @param endTime				the end time of the run
+	 * @param user					the name of the user running the TestClass
+	 * @param url					the url used in the test
+	 * @param testRunId				the id of the TestRun
+	 * @param suiteInstanceId		the id of the SuiteInstance if any
+	 * @param testSuiteInstanceId	the id of the TestSuiteInstance if any
+	 * @param exceptions			the exceptions to record as TestExceptions if any
+	 * @param fingerprint			the fingerprint of the TestRun's inputs if any
+	 * @param cached				true if not run because it passed recently with the same fingerprint
+	 * @param testNodeId			the id of the TestNode it ran on if any
+	 * @throws InterruptedException	if interrupted while waiting for space in the queue
+	 */
+	public void record (boolean result, String message, Date startTime, Date endTime,
+		String user, String url, Long testRunId, Long suiteInstanceId,
+		Long testSuiteInstanceId, List<Throwable> exceptions, String fingerprint,
+		boolean cached, Long testNodeId) throws InterruptedException {
+
+		PendingResult pending = new PendingResult (result, message, startTime, endTime,
+			user, url, testRunId, suiteInstanceId, testSuiteInstanceId,
+			exceptions == null ? new ArrayList<Throwable>() : new ArrayList<Throwable>(exceptions),
+			fingerprint, cached, testNodeId);
+
+		synchronized (this) {
+			pendingCount++;
+		}
+		if (!queue.offer(pending)) {
+			log.debug("Result queue full, waiting for the writer.");
+			try {
+				queue.put(pending);
+			} catch (InterruptedException e) {
+				written (1);
+				throw e;
+			}
+		}
+		// The writer may have died on an Error.
+		if (writer == null || !writer.isAlive()) {
+			start ();
+		}
+	}
+
+	/**
+	 * Wait until every recorded result has been written,
+	 * or the drain timeout has elapsed.
+	 * @return	true if every result was written
+	 */
+	public boolean drain () {
+		long deadline = System.currentTimeMillis() + drainTimeout;
+		synchronized (this) {
+			while (pendingCount > 0) {
+				long wait = deadline - System.currentTimeMillis();
+				if (wait <= 0) {
+					log.error("Timed out draining results, "+pendingCount+" not written.");
+					return false;
+				}
+				try {
+					wait (wait);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Take batches off the queue and write them until interrupted.
+	 */
+	void writeLoop () {
+		List<PendingResult> batch = new ArrayList<PendingResult>(batchSize);
+		while (true) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			queue.drainTo(batch, batchSize - 1);
+			try {
+				writeBatch (batch);
+			} catch (Throwable t) {
+				log.error("Writing a batch of "+batch.size()+" results failed, writing them one at a time.");
+				log.error(ExceptionUtil.getStackTraceString(t, MAX_TRACE_LEN));
+				for (PendingResult pending : batch) {
+					List<PendingResult> single = new ArrayList<PendingResult>(1);
+					single.add(pending);
+					try {
+						writeBatch (single);
+					} catch (Throwable t2) {
+						log.error("Result for TestRun "+pending.testRunId+" not written.");
+						log.error(ExceptionUtil.getStackTraceString(t2, MAX_TRACE_LEN));
+					}
+				}
+			} finally {
+				written (batch.size());
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Insert the results and their exceptions in one transaction.
+	 * The TestRun, SuiteInstance, TestSuiteInstance and TestNode are referenced by id
+	 * and are not read.
+	 *
+	 * @param batch			the results to write
+	 * @throws Exception	on any error
+	 */
+	void writeBatch (List<PendingResult> batch) throws Exception {
+		GopherData gopherData = null;
+		Transaction tran = null;
+		try {
+			gopherData = GopherDataFactory.getGopherData();
+			Session hibernateSession = gopherData.getHibernateSession();
+			tran = hibernateSession.beginTransaction();
+			for (PendingResult pending : batch) {
+				TestRun testRun = (TestRun) hibernateSession.load(TestRun.class, pending.testRunId);
+				SuiteInstance suiteInstance = pending.suiteInstanceId == null ? null :
+					(SuiteInstance) hibernateSession.load(SuiteInstance.class, pending.suiteInstanceId);
+				TestSuiteInstance testSuiteInstance = pending.testSuiteInstanceId == null ? null :
+					(TestSuiteInstance) hibernateSession.load(TestSuiteInstance.class, pending.testSuiteInstanceId);
+
+				TestRunResult testRunResult = new TestRunResult (pending.result, pending.message,
+					pending.startTime, pending.endTime, pending.user, pending.url, testRun,
+					suiteInstance, testSuiteInstance);
+				testRunResult.setFingerprint(pending.fingerprint);
+				if (pending.testNodeId != null) {
+					testRunResult.setTestNode((TestNode) hibernateSession.load(TestNode.class, pending.testNodeId));
+				}
+				if (pending.cached) {
+					testRunResult.setCached(true);
+				}
+				Long id = (Long) hibernateSession.save(testRunResult);
+				testRunResult.setId(id);
+
+				for (Throwable t : pending.exceptions) {
+					TestException testException = new TestException (t, MAX_TRACE_LEN, testRunResult);
+					Long exceptionId = (Long) hibernateSession.save(testException);
+					testException.setId(exceptionId);
+				}
+			}
+			tran.commit();
+			log.debug("Wrote "+batch.size()+" results.");
+		} finally {
+			if (tran != null && !tran.wasCommitted()) {
+				tran.rollback();
+			}
+			if (gopherData != null) {
+				gopherData.close();
+			}
+		}
+	}
+
+	private synchronized void written (int count) {
+		pendingCount -= count;
+		notifyAll();
+	}
+
+	/**
+	 * A TestRunResult waiting to be written.
+	 */
+	static class PendingResult {
+		final boolean			result;
+		final String			message;
+		final Date				startTime;
+		final Date				endTime;
+		final String			user;
+		final String			url;
+		final Long				testRunId;
+		final Long				suiteInstanceId;
+		final Long				testSuiteInstanceId;
+		final List<Throwable>	exceptions;
+		final String			fingerprint;
+		final boolean			cached;
+		final Long				testNodeId;
+
+		PendingResult (boolean result, String message, Date startTime, Date endTime,
+			String user, String url, Long testRunId, Long suiteInstanceId,
+			Long testSuiteInstanceId, List<Throwable> exceptions, String fingerprint,
+			boolean cached, Long testNodeId) {
+			this.result = result;
+			this.message = message;
+			this.startTime = startTime;
+			this.endTime = endTime;
+			this.user = user;
+			this.url = url;
+			this.testRunId = testRunId;
+			this.suiteInstanceId = suiteInstanceId;
+			this.testSuiteInstanceId = testSuiteInstanceId;
+			this.exceptions = exceptions;
+			this.fingerprint = fingerprint;
+			this.cached = cached;
+			this.testNodeId = testNodeId;
+		}
+	}
+}
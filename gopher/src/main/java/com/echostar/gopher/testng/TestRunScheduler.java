@@ -0,0 +1,501 @@
+package com.echostar.gopher.testng;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.echostar.gopher.persist.Browser;
+import com.echostar.gopher.persist.BrowserEnum;
+import com.echostar.gopher.persist.GopherData;
+import com.echostar.gopher.persist.GopherDataFactory;
+import com.echostar.gopher.persist.TestNode;
+import com.echostar.gopher.persist.TestRun;
+import com.echostar.gopher.selenium.TestNodeMonitor;
+import com.echostar.gopher.util.Config;
+
+/**
+ * Dispatch {@link TestRun TestRuns} to {@link TestNode TestNodes} by capacity.
+ * <p>
+ * Each TestNode has a number of concurrent session slots per browser, defined by its
+ * {@link TestNode#getSlots() slots} or {@link #DEFAULT_SLOTS_PROP DEFAULT_SLOTS_PROP}.
+ * A TestRun may run on any TestNode of the platform of its own TestNode that supports its browser.
+ * {@link #plan plan} queues each TestRun on the least loaded node and orders the TestRuns
+ * so every node gets work at once. A TestRun planned and then not run is {@link #unplan unplanned}.
+ * {@link #order order} orders TestRuns the same way without queuing them, for TestRuns
+ * other executors may run. {@link #acquire acquire} takes a slot on the planned node
+ * when it has one free. When it does not, a node with more free slots than TestRuns queued
+ * for it steals the TestRun, so nodes that drain early help the others.
+ * Otherwise the TestRun waits for a slot to be {@link Lease#release() released}.
+ * Nodes the {@link TestNodeMonitor TestNodeMonitor} finds down have no free slots, and
+ * nodes reporting their free slots have no more than that.
+ */
+public class TestRunScheduler {
+
+	/**
+	 * Property enabling the scheduler. The default is false.
+	 */
+	public static final String ENABLED_PROP = "TestRunScheduler.enabled";
+
+	/**
+	 * Property defining the slots per browser of a TestNode that does not define its slots.
+	 */
+	public static final String DEFAULT_SLOTS_PROP = "TestRunScheduler.defaultSlots";
+
+	/**
+	 * Property defining the maximum time in ms a TestRun waits for a slot.
+	 * After that it runs on its own TestNode.
+	 */
+	public static final String ACQUIRE_TIMEOUT_PROP = "TestRunScheduler.acquireTimeout";
+
+	static final int DEFAULT_SLOTS = 1;
+	static final int DEFAULT_ACQUIRE_TIMEOUT = 600000;
+
+	// How often a waiting TestRun looks again, as node health changes without notice.
+	static final long RECHECK_INTERVAL = 1000;
+
+	private static TestRunScheduler instance = null;
+
+	private Logger log = Logger.getLogger (getClass().getName());
+
+	private int				defaultSlots;
+	private long			acquireTimeout;
+	private TestNodeMonitor	monitor;
+
+	// The nodes by TestNode id. Guarded by 'this'.
+	private Map<Long, NodeQueue>	nodes = new LinkedHashMap<Long, NodeQueue>();
+	// The node each planned TestRun is queued on, by TestRun id. Guarded by 'this'.
+	private Map<Long, NodeQueue>	planned = new HashMap<Long, NodeQueue>();
+	private long					dispatched = 0;
+	private long					steals = 0;
+	private long					timeouts = 0;
+
+	/**
+	 * Get if the scheduler is enabled by the property {@link #ENABLED_PROP ENABLED_PROP}.
+	 * @return	true if enabled
+	 */
+	public static boolean isEnabled () {
+		return Config.getPropertyAsBoolean_S(ENABLED_PROP, false);
+	}
+
+	/**
+	 * Get the shared scheduler, creating it with the TestNodes in the database on first use.
+	 * @return				the scheduler
+	 * @throws Exception	on a database error
+	 */
+	public static synchronized TestRunScheduler getInstance () throws Exception {
+		if (instance == null) {
+			TestRunScheduler scheduler = new TestRunScheduler (
+				Config.getPropertyAsInt_S(DEFAULT_SLOTS_PROP, DEFAULT_SLOTS),
+				Config.getPropertyAsInt_S(ACQUIRE_TIMEOUT_PROP, DEFAULT_ACQUIRE_TIMEOUT),
+				TestNodeMonitor.isEnabled() ? TestNodeMonitor.getInstance() : null);
+			GopherData gopherData = null;
+			try {
+				gopherData = GopherDataFactory.getGopherData();
+				scheduler.configure(gopherData.findTestNodes());
+			} finally {
+				if (gopherData != null) {
+					gopherData.close();
+				}
+			}
+			instance = scheduler;
+		}
+		return instance;
+	}
+
+	/**
+	 * Construct with all member data. There are no nodes until {@link #configure configured}.
+	 *
+	 * @param defaultSlots		the slots per browser of a TestNode that does not define its slots
+	 * @param acquireTimeout	the maximum time in ms a TestRun waits for a slot
+	 * @param monitor			the TestNodeMonitor or null
+	 */
+	TestRunScheduler (int defaultSlots, long acquireTimeout, TestNodeMonitor monitor) {
+		this.defaultSlots = defaultSlots;
+		this.acquireTimeout = acquireTimeout;
+		this.monitor = monitor;
+	}
+
+	/**
+	 * Add TestNodes to schedule on. TestNodes already known are kept as they are.
+	 * The TestNodes' supported browsers must be loaded.
+	 * @param testNodes	the TestNodes
+	 */
+	synchronized void configure (Collection<TestNode> testNodes) {
+		for (TestNode testNode : testNodes) {
+			if (nodes.containsKey(testNode.getId())) {
+				continue;
+			}
+			Map<BrowserEnum, Integer> capacity;
+			try {
+				capacity = parseSlots (testNode.getSlots(), testNode.getSupportedBrowsers(), defaultSlots);
+			} catch (Exception e) {
+				log.error(testNode+" slots not valid, using "+defaultSlots+" per browser: "+e.getMessage());
+				capacity = parseSlots (testNode.getSupportedBrowsers(), defaultSlots);
+			}
+			nodes.put(testNode.getId(), new NodeQueue (testNode, capacity));
+			log.debug(testNode+" slots "+capacity+".");
+		}
+	}
+
+	/**
+	 * Get the slots per browser of a TestNode.
+	 *
+	 * @param spec				comma separated browser=slots pairs, e.g. "firefox=5,chrome=5", or null
+	 * @param supportedBrowsers	the browsers the TestNode supports
+	 * @param defaultSlots		the slots of a supported browser not in the spec
+	 * @return					map of browser to slots
+	 * @throws Exception		if the spec is not valid
+	 */
+	static Map<BrowserEnum, Integer> parseSlots (String spec, List<Browser> supportedBrowsers,
+		int defaultSlots) throws Exception {
+
+		Map<BrowserEnum, Integer> capacity = parseSlots (supportedBrowsers, defaultSlots);
+		if (spec == null) {
+			return capacity;
+		}
+		for (String pair : spec.split(",")) {
+			if (pair.trim().isEmpty()) {
+				continue;
+			}
+			String[] nameValue = pair.split("=", 2);
+			if (nameValue.length != 2) {
+				throw new Exception ("Slots '"+pair+"' is not browser=slots in '"+spec+"'.");
+			}
+			BrowserEnum browser = null;
+			for (BrowserEnum b : BrowserEnum.values()) {
+				if (b.getValue().equalsIgnoreCase(nameValue[0].trim()) || b.name().equalsIgnoreCase(nameValue[0].trim())) {
+					browser = b;
+				}
+			}
+			if (browser == null) {
+				throw new Exception ("Unknown browser '"+nameValue[0].trim()+"' in '"+spec+"'.");
+			}
+			try {
+				capacity.put(browser, Integer.valueOf(nameValue[1].trim()));
+			} catch (NumberFormatException e) {
+				throw new Exception ("Slots '"+pair+"' is not a number in '"+spec+"'.");
+			}
+		}
+		return capacity;
+	}
+
+	private static Map<BrowserEnum, Integer> parseSlots (List<Browser> supportedBrowsers, int defaultSlots) {
+		Map<BrowserEnum, Integer> capacity = new HashMap<BrowserEnum, Integer>();
+		for (Browser browser : supportedBrowsers) {
+			capacity.put(browser.getType(), defaultSlots);
+		}
+		return capacity;
+	}
+
+	/**
+	 * Queue TestRuns on the least loaded nodes that can run them and order them
+	 * taking from each node's queue in turn.
+	 * TestRuns no node can run keep their place after the others and run on their own TestNode.
+	 *
+	 * @param testRuns	the TestRuns
+	 * @return			the TestRuns in the order to run them
+	 */
+	public synchronized List<TestRun> plan (List<TestRun> testRuns) {
+
+		Map<NodeQueue, List<TestRun>> queues = new LinkedHashMap<NodeQueue, List<TestRun>>();
+		List<TestRun> unplanned = new ArrayList<TestRun>();
+		for (TestRun testRun : testRuns) {
+			NodeQueue node = testRun.getId() == null ? null : leastLoaded (testRun, true, false);
+			if (node == null) {
+				unplanned.add(testRun);
+				continue;
+			}
+			node.queue(testRun.getBrowser(), 1);
+			planned.put(testRun.getId(), node);
+			List<TestRun> queue = queues.get(node);
+			if (queue == null) {
+				queue = new ArrayList<TestRun>();
+				queues.put(node, queue);
+			}
+			queue.add(testRun);
+		}
+
+		List<TestRun> ordered = new ArrayList<TestRun>();
+		for (int i = 0; ordered.size() < testRuns.size() - unplanned.size(); i++) {
+			for (List<TestRun> queue : queues.values()) {
+				if (i < queue.size()) {
+					ordered.add(queue.get(i));
+				}
+			}
+		}
+		ordered.addAll(unplanned);
+		return ordered;
+	}
+
+	/**
+	 * Order TestRuns as {@link #plan plan} does without queuing them on the nodes.
+	 * A TestRun ordered and not planned takes any free slot when acquired.
+	 *
+	 * @param testRuns	the TestRuns
+	 * @return			the TestRuns in the order to run them
+	 */
+	public synchronized List<TestRun> order (List<TestRun> testRuns) {
+		List<TestRun> ordered = plan (testRuns);
+		for (TestRun testRun : testRuns) {
+			unplan (testRun);
+		}
+		return ordered;
+	}
+
+	/**
+	 * Take a planned TestRun that will not run off its node's queue,
+	 * so the node does not wait for it. A TestRun not planned is ignored.
+	 * @param testRun	the TestRun
+	 */
+	public synchronized void unplan (TestRun testRun) {
+		NodeQueue own = testRun.getId() == null ? null : planned.remove(testRun.getId());
+		if (own != null) {
+			own.queue(testRun.getBrowser(), -1);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Take a slot for a TestRun, waiting for one if every node that may run it is busy.
+	 *
+	 * @param testRun		the TestRun
+	 * @return				the Lease, or null if the TestRun is not scheduled (no TestNode or
+	 * 						browser, no node can run it, or no slot freed in time)
+	 * @throws InterruptedException	if interrupted while waiting
+	 */
+	public synchronized Lease acquire (TestRun testRun) throws InterruptedException {
+
+		if (testRun.getTestNode() == null || testRun.getBrowser() == null) {
+			return null;
+		}
+		BrowserEnum browser = testRun.getBrowser();
+		NodeQueue own = testRun.getId() == null ? null : planned.get(testRun.getId());
+		long deadline = System.currentTimeMillis() + acquireTimeout;
+		while (true) {
+			NodeQueue node = null;
+			boolean stolen = false;
+			if (own != null && own.free(browser) > 0) {
+				node = own;
+			} else {
+				node = leastLoaded (testRun, false, own != null);
+				stolen = node != null && own != null;
+			}
+			if (node != null) {
+				if (own != null) {
+					own.queue(browser, -1);
+					planned.remove(testRun.getId());
+				}
+				node.take(browser, 1);
+				dispatched++;
+				if (stolen) {
+					steals++;
+					log.debug("TestRun "+testRun.getId()+" stolen from "+own.testNode+" by "+node.testNode+".");
+				}
+				return new Lease (node, browser, stolen);
+			}
+			if (own == null && !canEverRun (testRun)) {
+				return null;
+			}
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				timeouts++;
+				log.warn("No slot for TestRun "+testRun.getId()+" in "+acquireTimeout+
+					" ms, running on its own TestNode. "+getStatus());
+				if (own != null) {
+					own.queue(browser, -1);
+					planned.remove(testRun.getId());
+				}
+				return null;
+			}
+			wait(Math.min(remaining, RECHECK_INTERVAL));
+		}
+	}
+
+	/**
+	 * Release a slot.
+	 * @param lease	the Lease
+	 */
+	synchronized void release (Lease lease) {
+		lease.node.take(lease.browser, -1);
+		notifyAll();
+	}
+
+	/**
+	 * Find the node with the lowest load that can run a TestRun.
+	 * The load is the slots taken and TestRuns queued over the slots.
+	 *
+	 * @param testRun	the TestRun
+	 * @param planning	true to take any node that is up, false to take only nodes with a free slot
+	 * @param stealing	true to take only nodes with a free slot not needed by their queue
+	 * @return			the node or null
+	 */
+	private NodeQueue leastLoaded (TestRun testRun, boolean planning, boolean stealing) {
+		BrowserEnum browser = testRun.getBrowser();
+		NodeQueue best = null;
+		double bestLoad = Double.MAX_VALUE;
+		for (NodeQueue node : nodes.values()) {
+			if (!canRun (node, testRun)) {
+				continue;
+			}
+			if (planning) {
+				if (!isUp (node)) {
+					continue;
+				}
+			} else {
+				int free = node.free(browser);
+				if (free <= (stealing ? node.queued(browser) : 0)) {
+					continue;
+				}
+			}
+			double load = (node.taken(browser) + node.queued(browser) + 1.0) / node.capacity(browser);
+			if (load < bestLoad) {
+				best = node;
+				bestLoad = load;
+			}
+		}
+		return best;
+	}
+
+	private boolean canRun (NodeQueue node, TestRun testRun) {
+		return node.capacity(testRun.getBrowser()) > 0 &&
+			node.testNode.getPlatform() == testRun.getTestNode().getPlatform();
+	}
+
+	private boolean canEverRun (TestRun testRun) {
+		for (NodeQueue node : nodes.values()) {
+			if (canRun (node, testRun)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isUp (NodeQueue node) {
+		return monitor == null || !monitor.isDown(node.testNode);
+	}
+
+	/**
+	 * Get the slots taken and TestRuns queued per node, and the dispatch counters.
+	 * @return	the String
+	 */
+	public synchronized String getStatus () {
+		StringBuilder status = new StringBuilder("TestRunScheduler dispatched="+dispatched+
+			" steals="+steals+" timeouts="+timeouts);
+		for (NodeQueue node : nodes.values()) {
+			status.append("\n  ").append(node);
+		}
+		return status.toString();
+	}
+
+	/**
+	 * A slot taken on a TestNode. {@link #release() Release} it when the TestRun ends.
+	 */
+	public class Lease {
+		private final NodeQueue		node;
+		private final BrowserEnum	browser;
+		private final boolean		stolen;
+		private boolean				released = false;
+
+		Lease (NodeQueue node, BrowserEnum browser, boolean stolen) {
+			this.node = node;
+			this.browser = browser;
+			this.stolen = stolen;
+		}
+
+		/**
+		 * Get the TestNode to run on.
+		 * @return	the TestNode
+		 */
+		public TestNode getTestNode () { return node.testNode; }
+
+		/**
+		 * Get if the TestRun was planned on another node.
+		 * @return	true if stolen
+		 */
+		public boolean isStolen () { return stolen; }
+
+		/**
+		 * Release the slot. Only the first call has an effect.
+		 */
+		public void release () {
+			synchronized (TestRunScheduler.this) {
+				if (released) {
+					return;
+				}
+				released = true;
+				TestRunScheduler.this.release(this);
+			}
+		}
+	}
+
+	/**
+	 * A TestNode with its slots, the slots taken and the TestRuns queued, per browser.
+	 * Guarded by the scheduler.
+	 */
+	class NodeQueue {
+		final TestNode						testNode;
+		final Map<BrowserEnum, Integer>		capacity;
+		final Map<BrowserEnum, Integer>		taken = new HashMap<BrowserEnum, Integer>();
+		final Map<BrowserEnum, Integer>		queued = new HashMap<BrowserEnum, Integer>();
+
+		NodeQueue (TestNode testNode, Map<BrowserEnum, Integer> capacity) {
+			this.testNode = testNode;
+			this.capacity = capacity;
+		}
+
+		int capacity (BrowserEnum browser) {
+			Integer slots = capacity.get(browser);
+			return slots == null ? 0 : slots;
+		}
+
+		int taken (BrowserEnum browser) {
+			Integer count = taken.get(browser);
+			return count == null ? 0 : count;
+		}
+
+		int queued (BrowserEnum browser) {
+			Integer count = queued.get(browser);
+			return count == null ? 0 : count;
+		}
+
+		void take (BrowserEnum browser, int delta) {
+			taken.put(browser, Math.max(0, taken(browser) + delta));
+		}
+
+		void queue (BrowserEnum browser, int delta) {
+			queued.put(browser, Math.max(0, queued(browser) + delta));
+		}
+
+		/**
+		 * Get the free slots, none if the node is down and no more than it reports.
+		 * @param browser	the browser
+		 * @return			the free slots
+		 */
+		int free (BrowserEnum browser) {
+			int free = capacity(browser) - taken(browser);
+			if (monitor != null) {
+				TestNodeMonitor.NodeHealth health = monitor.getHealth(testNode);
+				if (health != null) {
+					if (!health.isUp()) {
+						return 0;
+					}
+					if (health.getFreeSlots() >= 0) {
+						free = Math.min(free, health.getFreeSlots());
+					}
+				}
+			}
+			return free;
+		}
+
+		@Override
+		public String toString () {
+			return testNode.getNodeIP()+":"+testNode.getNodePort()+" slots="+capacity+
+				" taken="+taken+" queued="+queued;
+		}
+	}
+}
@@ -59,7 +59,8 @@ public class TestsListenerAdapter implements IInvokedMethodListener {
 
 				}
 			}
-
+			// The failures are now on the result.
+			ErrorUtil.clear(result);
 		}
 	}
 
@@ -4,10 +4,13 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.net.InetAddress;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 
 import com.deetysoft.config.ConfigProperties;
+import com.deetysoft.util.HierarchyCache;
 import com.deetysoft.util.HierarchyNode;
 
 /**
@@ -31,8 +34,24 @@ public class Config {
 	 */
 	public static final String GOPHER_USER = "GOPHER_USER";
 
+	/**
+	 * Property to parse the XML files under 'Config' in parallel. The default is false.
+	 */
+	public static final String PARALLEL_PARSE_PROP = "Config.parallelParse";
+
+	/**
+	 * Property naming a directory to cache the parsed XML files in,
+	 * relative to 'user.dir' if not absolute. The default is no cache.
+	 * @see com.deetysoft.util.HierarchyCache
+	 */
+	public static final String HIERARCHY_CACHE_DIR_PROP = "HierarchyCache.dir";
+
 	protected static Config defaultConfig = null;
 
+	// One cache for each directory, so the hit counts are shared.
+	private static final Map<String, HierarchyCache> hierarchyCaches =
+		new HashMap<String, HierarchyCache>();
+
 	protected com.deetysoft.config.Config deetyConfig = null;
 	protected ConfigProperties deetyProperties = null;
 
@@ -78,8 +97,21 @@ public class Config {
 			log.debug(f.getAbsolutePath());
 		}
 		String[] xmlFilePaths = getPaths(xmlFiles);
+		// The properties are read, but this is not yet the default Config.
+		boolean parallel = false;
+		try {
+			parallel = Boolean.parseBoolean(deetyProperties.getProperty(PARALLEL_PARSE_PROP).trim());
+		} catch (Exception e) {
+			log.debug(PARALLEL_PARSE_PROP+" is not defined.");
+		}
+		String cacheDir = null;
+		try {
+			cacheDir = deetyProperties.getProperty(HIERARCHY_CACHE_DIR_PROP);
+		} catch (Exception e) {
+			log.debug(HIERARCHY_CACHE_DIR_PROP+" is not defined.");
+		}
 		deetyConfig = new com.deetysoft.config.Config(xmlFilePaths,
-			new String[xmlFilePaths.length]);
+			new String[xmlFilePaths.length], parallel, getHierarchyCache(cacheDir));
 
 		log.debug("Leaving Config().");
 	}
@@ -108,6 +140,46 @@ public class Config {
 		deetyProperties = new ConfigProperties(filePaths);
 	}
 
+	/**
+	 * Get the Config singleton.
+	 * @return	the singleton or null if it could not be created
+	 */
+	public static Config getDefault () {
+		return defaultConfig;
+	}
+
+	/**
+	 * Get the cache of parsed XML files named by {@link #HIERARCHY_CACHE_DIR_PROP
+	 * HIERARCHY_CACHE_DIR_PROP}.
+	 * @return	the cache or null if the property is not defined
+	 */
+	public static HierarchyCache getHierarchyCache () {
+		return getHierarchyCache(getProperty_S(HIERARCHY_CACHE_DIR_PROP, null));
+	}
+
+	/**
+	 * Get the cache for a directory, relative to 'user.dir' if not absolute.
+	 * @param dirName	the directory name or null
+	 * @return			the cache or null if dirName is null or empty
+	 */
+	static HierarchyCache getHierarchyCache (String dirName) {
+		if (dirName == null || dirName.trim().length() == 0) {
+			return null;
+		}
+		File dir = new File (dirName.trim());
+		if (!dir.isAbsolute()) {
+			dir = new File (System.getProperty("user.dir"), dirName.trim());
+		}
+		synchronized (hierarchyCaches) {
+			HierarchyCache cache = hierarchyCaches.get(dir.getAbsolutePath());
+			if (cache == null) {
+				cache = new HierarchyCache(dir);
+				hierarchyCaches.put(dir.getAbsolutePath(), cache);
+			}
+			return cache;
+		}
+	}
+
 	/**
 	 * Merge the property file names under 'configDirName' and 'configDirName'/'userName
 	 * into a single array of file paths.
@@ -207,6 +279,58 @@ public class Config {
         return Integer.parseInt(defaultConfig.getProperty(key));
     }
 
+    /**
+     * Get a property, or a default value if the property is not defined.
+     *
+     * @param key			the property name
+     * @param defaultValue	the value to return if the property is not defined
+     * @return				the property value or the default value
+     */
+    public static String getProperty_S(String key, String defaultValue) {
+        try {
+            String value = defaultConfig.getProperty(key);
+            return value == null ? defaultValue : value.trim();
+        } catch (Exception e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get a property as an int, or a default value if the property is not defined or not an int.
+     *
+     * @param key			the property name
+     * @param defaultValue	the value to return if the property is not usable
+     * @return				the property value or the default value
+     */
+    public static int getPropertyAsInt_S(String key, int defaultValue) {
+        String value = getProperty_S(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            Logger.getLogger(Config.class).warn("Property '"+key+"' value '"+value+
+                "' is not an int. Using "+defaultValue+".");
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get a property as a boolean, or a default value if the property is not defined.
+     *
+     * @param key			the property name
+     * @param defaultValue	the value to return if the property is not defined
+     * @return				true if the property value is "true" ignoring case
+     */
+    public static boolean getPropertyAsBoolean_S(String key, boolean defaultValue) {
+        String value = getProperty_S(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value);
+    }
+
     /**
      * Get the IP address of the Selenium hub.
      * If "hubIP" is defined in a property file, return that value.
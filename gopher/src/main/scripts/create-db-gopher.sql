@@ -29,7 +29,13 @@ CREATE TABLE suite_instance (
 	start_time TIMESTAMP NOT NULL,
 	#End time for suite
 	end_time TIMESTAMP NOT NULL,
+	#Foreign key into suite_instance, the instance whose failed test runs this one reran
+	rerun_of_id INT,
+	#Key shared by the processes running shards of the suite, null if not sharded
+	run_key VARCHAR(128),
+	UNIQUE KEY suite_instance_run_key (suite_id, run_key),
 	FOREIGN KEY(suite_id) REFERENCES suite(id),
+	FOREIGN KEY(rerun_of_id) REFERENCES suite_instance(id),
 	PRIMARY KEY (id)
 );
 
@@ -211,6 +217,8 @@ CREATE TABLE test_node (
 	install_dir VARCHAR(80) NOT NULL,
 	#The name of the Selenium server file
 	selenium_server VARCHAR(80) NOT NULL,
+	#The concurrent sessions per browser, e.g. firefox=5,chrome=5
+	slots VARCHAR(200),
 	PRIMARY KEY (id)
 );
 
@@ -261,6 +269,8 @@ CREATE TABLE test_class_decorator (
 	browser VARCHAR(80),
 	#Allow this run or not (y or n) defaults to yes
 	runmode BOOLEAN,
+	#The page readiness rule (see NavigationReadiness.java), null for the default
+	readiness VARCHAR(255),
 	#Foreign key into test_suite
 	test_suite_id INT,
 	#Foreign key into test_class
@@ -282,6 +292,9 @@ CREATE TABLE test_run (
 	browser VARCHAR(80),
 	#Allow this run or not (y or n) defaults to yes
 	runmode BOOLEAN,
+	#The page readiness rule (see NavigationReadiness.java).
+	#This is optional and may be defined on a test_class_decorator.
+	readiness VARCHAR(255),
 	#Foreign key into test_case
 	test_case_id INT,
 	#Foreign key into test_node
@@ -313,9 +326,17 @@ CREATE TABLE test_run_result (
 	user VARCHAR(80),
 	#The URL used for the test
 	url VARCHAR(80),
+	#SHA-256 of the test run inputs, for incremental runs
+	fingerprint VARCHAR(64),
+	#Not run because it passed recently with the same fingerprint: cached=1
+	cached BOOLEAN,
+	#Foreign key into test_node, the node the test ran on
+	test_node_id INT,
 	FOREIGN KEY(suite_instance_id) REFERENCES suite_instance(id),
 	FOREIGN KEY(test_suite_instance_id) REFERENCES test_suite_instance(id),
 	FOREIGN KEY(test_run_id) REFERENCES test_run(id),
+	FOREIGN KEY(test_node_id) REFERENCES test_node(id),
+	INDEX test_run_result_fingerprint (fingerprint, start_time),
 	PRIMARY KEY (id)
 );
 
@@ -340,6 +361,28 @@ CREATE TABLE test_node_browser (
 	FOREIGN KEY(browser_id) REFERENCES browser(id)
 );
 
+# A test node health check. A test_node has many test_node_health.
+CREATE TABLE test_node_health (
+	#The primary key
+	id INT auto_increment NOT NULL UNIQUE,
+	#Foreign key into test_node
+	test_node_id INT,
+	#When the node was checked
+	check_time TIMESTAMP NOT NULL,
+	#If the node answered: up=1, down=0
+	up BOOLEAN NOT NULL,
+	#The time in ms the node took to answer or fail
+	latency BIGINT NOT NULL,
+	#The number of free sessions, -1 if not known
+	free_slots INT NOT NULL,
+	#Why the node is down
+	message VARCHAR(1000),
+	FOREIGN KEY(test_node_id) REFERENCES test_node(id),
+	INDEX test_node_health_time (test_node_id, check_time),
+	INDEX test_node_health_expiry (check_time),
+	PRIMARY KEY (id)
+);
+
 # A test exception.
 CREATE TABLE test_exception (
 	#The primary key
@@ -355,3 +398,49 @@ CREATE TABLE test_exception (
 	FOREIGN KEY(test_run_result_id) REFERENCES test_run_result(id),
 	PRIMARY KEY (id)
 );
+
+# A test run a suite instance did not run within its time budget.
+# A suite_instance has many deferred_test_run.
+CREATE TABLE deferred_test_run (
+	#The primary key
+	id INT auto_increment NOT NULL UNIQUE,
+	#Foreign key into suite_instance
+	suite_instance_id INT,
+	#Foreign key into test_run
+	test_run_id INT,
+	#The value of running the test run
+	run_value DOUBLE NOT NULL,
+	#The time in ms the test run was expected to take
+	expected_duration BIGINT NOT NULL,
+	#Why the test run was deferred
+	reason VARCHAR(200),
+	UNIQUE KEY deferred_test_run_key (suite_instance_id, test_run_id),
+	FOREIGN KEY(suite_instance_id) REFERENCES suite_instance(id),
+	FOREIGN KEY(test_run_id) REFERENCES test_run(id),
+	PRIMARY KEY (id)
+);
+
+# A test run waiting in the work queue the executors of a suite instance pull from.
+# Pending with no owner, leased to its owner until lease_until, or done.
+# A suite_instance has many test_run_queue.
+CREATE TABLE test_run_queue (
+	#The primary key, the queue order
+	id INT auto_increment NOT NULL UNIQUE,
+	#Foreign key into suite_instance
+	suite_instance_id INT NOT NULL,
+	#Foreign key into test_run
+	test_run_id INT NOT NULL,
+	#The executor that claimed the test run, null if pending
+	owner VARCHAR(128),
+	#When the lease of the owner expires unless renewed
+	lease_until TIMESTAMP NULL,
+	#The test run ran
+	done BOOLEAN NOT NULL,
+	#The number of times the test run was claimed
+	claims INT NOT NULL,
+	UNIQUE KEY test_run_queue_test_run (suite_instance_id, test_run_id),
+	INDEX test_run_queue_owner (owner),
+	FOREIGN KEY(suite_instance_id) REFERENCES suite_instance(id),
+	FOREIGN KEY(test_run_id) REFERENCES test_run(id),
+	PRIMARY KEY (id)
+);
@@ -0,0 +1,117 @@
+package com.deetysoft.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test that {@link HierarchyCache HierarchyCache} returns the tree parsing
+ * would, and parses again when a file changes.
+ */
+public class HierarchyCache_Test {
+
+	@Test
+	public static void testCache () throws Exception {
+
+		File dir = Files.createTempDirectory("HierarchyCache_Test").toFile();
+		try {
+			File xml = new File (dir, "a.xml");
+			write (xml, "<a><b>1</b><c><d>x</d></c><b>1</b><e/></a>");
+			long modified = xml.lastModified();
+			HierarchyCache cache = new HierarchyCache (new File (dir, "cache"));
+
+			HierarchyNode parsed = cache.get(xml, null);
+			Assert.assertEquals(cache.getMisses(), 1);
+			HierarchyNode cached = cache.get(xml, null);
+			Assert.assertEquals(cache.getHits(), 1, "Unchanged, from the cache.");
+			Assert.assertEquals(cached.toString(), parsed.toString());
+			Assert.assertEquals(cached, parsed);
+
+			// The same size and time, but not the same content.
+			write (xml, "<a><b>2</b><c><d>x</d></c><b>1</b><e/></a>");
+			xml.setLastModified(modified);
+			HierarchyNode changed = cache.get(xml, null);
+			Assert.assertEquals(cache.getMisses(), 2, "Changed, parsed again.");
+			Assert.assertEquals(changed.getNodeByName("b").getValue(), "2");
+
+			// An entry that does not read is parsed again.
+			File[] entries = new File (dir, "cache").listFiles();
+			Assert.assertEquals(entries.length, 1);
+			RandomAccessFile entry = new RandomAccessFile (entries[0], "rw");
+			try {
+				entry.setLength(entry.length() - 3);
+			} finally {
+				entry.close();
+			}
+			Assert.assertEquals(cache.get(xml, null), changed);
+			Assert.assertEquals(cache.getMisses(), 3, "Truncated, parsed again.");
+			Assert.assertEquals(cache.get(xml, null), changed);
+			Assert.assertEquals(cache.getHits(), 2, "Written again.");
+		} finally {
+			delete (dir);
+		}
+	}
+
+	@Test
+	public static void testBuild () throws Exception {
+
+		List<File> files = new ArrayList<File>();
+		for (String path : Hierarchy_Test.ingestPaths) {
+			String[] names = new File (path).list();
+			Arrays.sort(names);
+			for (String name : names) {
+				if (name.endsWith(".xml") && !name.endsWith("Suite.xml")) {
+					files.add(new File (path, name));
+				}
+			}
+		}
+		URL dtd = new File (Hierarchy_Test.dtdName).toURI().toURL();
+		List<URL> dtds = new ArrayList<URL>();
+		for (int i = 0; i < files.size(); i++) {
+			dtds.add(dtd);
+		}
+
+		File dir = Files.createTempDirectory("HierarchyCache_Test").toFile();
+		try {
+			HierarchyNode parsed = Hierarchy.buildFromXmlFiles(files, dtds, false, false, null);
+			HierarchyCache cache = new HierarchyCache (dir);
+			for (boolean parallel : new boolean[] {false, true}) {
+				HierarchyNode cached = Hierarchy.buildFromXmlFiles(files, dtds, false, parallel, cache);
+				Assert.assertEquals(cached.toString(), parsed.toString());
+				Assert.assertEquals(cached, parsed);
+			}
+			Assert.assertEquals(cache.getMisses(), files.size());
+			Assert.assertEquals(cache.getHits(), files.size());
+		} finally {
+			delete (dir);
+		}
+	}
+
+	private static void write (File file, String content) throws Exception {
+		OutputStream out = new FileOutputStream (file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void delete (File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete (child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,116 @@
+package com.deetysoft.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Measure the heap retained per {@link HierarchyNode HierarchyNode} of a built tree.
+ * Not a test, run by hand:
+ * <pre>
+ * java -cp target/classes:target/test-classes com.deetysoft.util.HierarchyNodeBenchmark [records | file ...]
+ * </pre>
+ * With a number, or no argument, build a tree of that many generated gopher-data
+ * test-case records, 20000 by default. With files, build the tree of the files as
+ * ingest does, without the DTD. The heap is measured after full collections
+ * before and after the build, so run with no other work in the JVM.
+ */
+public class HierarchyNodeBenchmark {
+
+	private static final int DEFAULT_RECORDS = 20000;
+
+	public static void main (String[] args) throws Exception {
+
+		List<byte[]> documents = new ArrayList<byte[]>();
+		if (args.length == 0 || args[0].matches("[0-9]+")) {
+			documents.add(generate (args.length == 0 ? DEFAULT_RECORDS : Integer.parseInt(args[0])));
+		} else {
+			for (String arg : args) {
+				documents.add(read (new File (arg)));
+			}
+		}
+
+		long before = usedHeap ();
+		HierarchyNode root = build (documents);
+		long after = usedHeap ();
+
+		long nodes = 0;
+		for (Iterator<HierarchyNode> i = Hierarchy.getDepthFirstIterator(root); i.hasNext(); i.next()) {
+			nodes++;
+		}
+		long bytes = after - before;
+		System.out.println ("Nodes:          "+nodes);
+		System.out.println ("Retained bytes: "+bytes);
+		System.out.println ("Bytes per node: "+(nodes == 0 ? 0 : bytes / nodes));
+		// Keep the tree reachable until measured.
+		System.out.println ("Root:           "+root.getName());
+	}
+
+	private static HierarchyNode build (List<byte[]> documents) throws Exception {
+		List<InputStream> streams = new ArrayList<InputStream>();
+		List<java.net.URL> dtds = new ArrayList<java.net.URL>();
+		for (byte[] document : documents) {
+			streams.add(new ByteArrayInputStream (document));
+			dtds.add(null);
+		}
+		return Hierarchy.buildFromXml(streams, dtds, false);
+	}
+
+	/**
+	 * Generate gopher-data with the element names and value sizes of ingest files.
+	 */
+	private static byte[] generate (int records) throws Exception {
+		StringBuilder xml = new StringBuilder ("<?xml version=\"1.0\"?>\n<gopher-data>\n");
+		for (int i = 0; i < records; i++) {
+			xml.append("<test-case>")
+				.append("<id>test case ").append(i).append("</id>")
+				.append("<name>case ").append(i).append("</name>")
+				.append("<version>1.0</version>")
+				.append("<runmode>true</runmode>")
+				.append("<test-class-id>test class ").append(i % 100).append("</test-class-id>");
+			for (int j = 0; j < 3; j++) {
+				xml.append("<test-data-id>test data ").append((i * 3 + j) % 5000).append("</test-data-id>");
+			}
+			xml.append("</test-case>\n");
+		}
+		xml.append("</gopher-data>\n");
+		return xml.toString().getBytes("UTF-8");
+	}
+
+	private static byte[] read (File file) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		InputStream in = new FileInputStream (file);
+		try {
+			byte[] buffer = new byte[32768];
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+				out.write(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Get the used heap after collecting until it stops shrinking.
+	 */
+	private static long usedHeap () throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 10; i++) {
+			System.gc();
+			Thread.sleep(50);
+			long now = runtime.totalMemory() - runtime.freeMemory();
+			if (now >= used) {
+				return now;
+			}
+			used = now;
+		}
+		return used;
+	}
+}
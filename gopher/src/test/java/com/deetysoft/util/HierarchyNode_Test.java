@@ -0,0 +1,117 @@
+package com.deetysoft.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.deetysoft.exception.StringFormatException;
+
+/**
+ * Test the lookups of {@link HierarchyNode HierarchyNode} by name and by
+ * {@link HierarchyPath HierarchyPath}.
+ */
+public class HierarchyNode_Test {
+
+	@Test
+	public static void testIndex () throws Exception {
+
+		// Enough children for an index, names repeated and interleaved.
+		HierarchyNode root = new HierarchyNode ("root");
+		for (int i = 0; i < HierarchyNode.INDEX_THRESHOLD * 2; i++) {
+			root.addChild(new HierarchyNode (i % 3 == 0 ? "a" : "b"+i, "v"+i));
+		}
+
+		Assert.assertEquals(values (root.getNodesByName("a")), Arrays.asList("v0", "v3", "v6", "v9", "v12", "v15"));
+		Assert.assertEquals(root.getNodeByName("a").getValue(), "v0", "The first in child order.");
+		Assert.assertEquals(root.getChild("a", "v9").getValue(), "v9");
+		Assert.assertNull(root.getChild("a", "v1"));
+		Assert.assertNull(root.getNodeByName("c"));
+		Assert.assertEquals(root.getNodesByName("c").size(), 0);
+
+		// The collection returned is the caller's.
+		root.getNodesByName("a").clear();
+		Assert.assertEquals(root.getNodesByName("a").size(), 6);
+
+		// Adding children drops the index.
+		root.addChild(new HierarchyNode ("c", "v16"));
+		root.addChildren(Arrays.asList(new HierarchyNode ("a", "v17")));
+		Assert.assertEquals(root.getNodeByName("c").getValue(), "v16");
+		Assert.assertEquals(values (root.getNodesByName("a")).get(6), "v17");
+	}
+
+	@Test
+	public static void testPath () throws Exception {
+
+		HierarchyNode root = new HierarchyNode ("root");
+		for (int i = 0; i < HierarchyNode.INDEX_THRESHOLD + 2; i++) {
+			HierarchyNode branch = new HierarchyNode (i % 2 == 0 ? "even" : "odd");
+			branch.addChild(new HierarchyNode ("leaf", "l"+i));
+			branch.addChild(new HierarchyNode ("leaf", "m"+i));
+			root.addChild(branch);
+		}
+		root.addChild(new HierarchyNode ("odd", "no children"));
+
+		HierarchyPath path = new HierarchyPath ("even/leaf");
+		Assert.assertEquals(values (root.getNodesByPath(path)),
+			Arrays.asList("l0", "m0", "l2", "m2", "l4", "m4", "l6", "m6", "l8", "m8"));
+		Assert.assertEquals(values (root.getNodesByPath("even/leaf")), values (root.getNodesByPath(path)));
+		Assert.assertEquals(root.getNodesByPath("odd").size(), 6);
+		Assert.assertEquals(values (root.getNodesByPath("odd/")).get(5), "no children");
+		Assert.assertEquals(root.getNodesByPath("").size(), 0);
+		Assert.assertEquals(root.getNodesByPath((String) null).size(), 0);
+		Assert.assertEquals(root.getNodesByPath("none/leaf").size(), 0);
+		Assert.assertNull(root.getValue("even/leaf"), "No unique node.");
+		Assert.assertEquals(root.getNodeByName("even").getValue(new HierarchyPath ("none")), null);
+
+		expectFormatError (root, "/even");
+		expectFormatError (root, "even//leaf");
+		// A malformed path is an error only when a match reaches it.
+		Assert.assertEquals(root.getNodesByPath("none//leaf").size(), 0);
+	}
+
+	@Test
+	public static void testCompact () throws Exception {
+
+		HierarchyNode a = new HierarchyNode (new String ("id"), "1");
+		HierarchyNode b = new HierarchyNode (new String ("id"), "2");
+		Assert.assertSame(a.getName(), b.getName(), "Names are interned.");
+
+		// A leaf has no children, but its child list is still the node's to add to.
+		Assert.assertFalse(a.hasChildren());
+		Assert.assertEquals(a.getChildren().size(), 0);
+		Assert.assertEquals(a, new HierarchyNode ("id", "1"));
+		HierarchyNode leaf = new HierarchyNode ("leaf");
+		leaf.getChildren().add(b);
+		Assert.assertTrue(leaf.hasChildren());
+		Assert.assertSame(leaf.getNodeByName("id"), b);
+
+		HierarchyNode root = new HierarchyNode ("root");
+		root.addChild(a);
+		root.addChild(b);
+		root.compact();
+		Assert.assertEquals(values (root.getChildren()), Arrays.<Object>asList("1", "2"));
+		root.addChild(new HierarchyNode ("id", "3"));
+		Assert.assertEquals(values (root.getNodesByName("id")), Arrays.<Object>asList("1", "2", "3"),
+			"A compacted node still takes children.");
+	}
+
+	private static void expectFormatError (HierarchyNode root, String path) {
+		try {
+			root.getNodesByPath(path);
+			Assert.fail("Path '"+path+"' is not valid.");
+		} catch (StringFormatException e) {
+		}
+	}
+
+	private static List<Object> values (Collection<HierarchyNode> nodes) {
+		List<Object> values = new ArrayList<Object>();
+		for (HierarchyNode node : nodes) {
+			values.add(node.getValue());
+		}
+		return values;
+	}
+}
@@ -0,0 +1,91 @@
+package com.deetysoft.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+/**
+ * Test the parallel build of {@link Hierarchy Hierarchy} against the sequential build.
+ */
+public class Hierarchy_Test {
+
+	final static String dtdName = "src/main/java/gopher-data.dtd";
+
+	// The ingest directories and files, parsed in this order.
+	final static String[] ingestPaths = {
+		"src/test/resources/ingest",
+		"src/test/resources/ingest/greg",
+		"src/test/resources/ingest/raj",
+		"src/test/resources/ingest/shekhar",
+		"src/test/resources/com/echostar/gopher/persist/util/GopherDataIngest_Test"
+	};
+
+	@Test
+	public static void testParallel () throws Exception {
+
+		List<File> files = new ArrayList<File>();
+		for (String path : ingestPaths) {
+			String[] names = new File (path).list();
+			Arrays.sort(names);
+			for (String name : names) {
+				if (name.endsWith(".xml") && !name.endsWith("Suite.xml")) {
+					files.add(new File (path, name));
+				}
+			}
+		}
+		Assert.assertTrue(files.size() > 2, "Found the ingest files.");
+
+		for (boolean replace : new boolean[] {false, true}) {
+			HierarchyNode sequential = build (files, replace, false);
+			HierarchyNode parallel = build (files, replace, true);
+			Assert.assertEquals(parallel.toString(), sequential.toString(),
+				"The parallel build is the same, in the same order, with replace "+replace+".");
+			Assert.assertEquals(parallel, sequential);
+		}
+	}
+
+	@Test
+	public static void testParallelError () throws Exception {
+
+		List<InputStream> streams = new ArrayList<InputStream>();
+		List<URL> dtds = new ArrayList<URL>();
+		String[] documents = {"<a><b>1</b></a>", "<a><b>2</a>", "<a><c>3</c></a>"};
+		for (String document : documents) {
+			streams.add(new ByteArrayInputStream(document.getBytes("UTF-8")));
+			dtds.add(null);
+		}
+		try {
+			Hierarchy.buildFromXml(streams, dtds, true, true);
+			Assert.fail("A document that does not parse fails the build.");
+		} catch (SAXException e) {
+		}
+	}
+
+	private static HierarchyNode build (List<File> files, boolean replace, boolean parallel)
+		throws Exception {
+
+		URL dtd = new File (dtdName).toURI().toURL();
+		List<InputStream> streams = new ArrayList<InputStream>();
+		List<URL> dtds = new ArrayList<URL>();
+		try {
+			for (File file : files) {
+				streams.add(new FileInputStream (file));
+				dtds.add(dtd);
+			}
+			return Hierarchy.buildFromXml(streams, dtds, replace, parallel);
+		} finally {
+			for (InputStream stream : streams) {
+				stream.close();
+			}
+		}
+	}
+}
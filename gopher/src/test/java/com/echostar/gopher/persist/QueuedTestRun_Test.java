@@ -0,0 +1,107 @@
+package com.echostar.gopher.persist;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.hibernate.Transaction;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test claiming {@link QueuedTestRun QueuedTestRuns} from two sessions, as two executors do.
+ */
+public class QueuedTestRun_Test extends TestClassBase {
+
+	private static final long LEASE = 60000;
+
+	@Test
+	public static void testClaim () throws Exception {
+
+		cleanDB ();
+		GopherData first = GopherDataFactory.getGopherData();
+		final GopherData second = GopherDataFactory.getGopherData();
+		try {
+			// More TestRuns than one INSERT queues.
+			Transaction tran = first.getHibernateSession().beginTransaction();
+			TestClass testClass = first.createTestClass("AnExampleTestClass", "a version",
+				"com.echostar.gopher.dany.AnExampleTestClass", "an example TestClass", Boolean.TRUE, "a Jira issue");
+			TestCase testCase = first.createTestCase ("A case name", "a version", true, testClass, null);
+			TestNode testNode = first.createTestNode (PlatformEnum.WIN7, "10.79.82.141", "4444",
+				"a user", "a password", "an install dir", "the selenium server");
+			final List<Long> testRunIds = new ArrayList<Long>();
+			for (int i = 0; i < GopherDataImpl.ENQUEUE_CHUNK + 5; i++) {
+				testRunIds.add(first.createTestRun("a url", BrowserEnum.FIREFOX, true, testCase, testNode).getId());
+			}
+			Suite suite = first.createSuite("name", "version", "description", true, new ArrayList<TestSuite>());
+			final Long suiteInstanceId = first.createSuiteInstance(suite).getId();
+			Assert.assertEquals(first.enqueueTestRuns(suiteInstanceId, testRunIds), testRunIds.size());
+			Assert.assertEquals(first.enqueueTestRuns(suiteInstanceId, testRunIds), 0, "Queued once.");
+			tran.commit();
+
+			// The second waits for the first's claims to commit, then claims past them.
+			final Date now = new Date();
+			tran = first.getHibernateSession().beginTransaction();
+			List<Long> firstClaims = first.claimQueuedTestRuns(suiteInstanceId, testRunIds, "first", 3,
+				now, new Date(now.getTime() + LEASE));
+			Assert.assertEquals(firstClaims, testRunIds.subList(0, 3));
+			final List<Long> secondClaims = new ArrayList<Long>();
+			final Exception[] failure = new Exception[1];
+			Thread executor = new Thread("second") {
+				@Override
+				public void run () {
+					Transaction secondTran = second.getHibernateSession().beginTransaction();
+					try {
+						secondClaims.addAll(second.claimQueuedTestRuns(suiteInstanceId, testRunIds,
+							"second", 3, now, new Date(now.getTime() + LEASE)));
+						secondTran.commit();
+					} catch (Exception e) {
+						failure[0] = e;
+						secondTran.rollback();
+					}
+				}
+			};
+			executor.start();
+			executor.join(500);
+			Assert.assertTrue(executor.isAlive(), "The second waits for the first.");
+			tran.commit();
+			executor.join(10000);
+			Assert.assertNull(failure[0]);
+			Assert.assertEquals(secondClaims, testRunIds.subList(3, 6));
+
+			// Taking turns, every TestRun is claimed once and claiming ends.
+			Set<Long> claimed = new HashSet<Long>(firstClaims);
+			claimed.addAll(secondClaims);
+			int passes = 0;
+			for (boolean ended = false; !ended; passes++) {
+				ended = true;
+				for (GopherData executorData : Arrays.asList(first, second)) {
+					tran = executorData.getHibernateSession().beginTransaction();
+					List<Long> claims = executorData.claimQueuedTestRuns(suiteInstanceId, testRunIds,
+						executorData == first ? "first" : "second", 50, now, new Date(now.getTime() + LEASE));
+					tran.commit();
+					for (Long testRunId : claims) {
+						Assert.assertTrue(claimed.add(testRunId), "TestRun "+testRunId+" claimed twice.");
+					}
+					ended &= claims.isEmpty();
+				}
+				Assert.assertTrue(passes < testRunIds.size(), "Claiming did not end.");
+			}
+			Assert.assertEquals(claimed, new HashSet<Long>(testRunIds));
+
+			// A lease that expired is claimed again.
+			Date later = new Date(now.getTime() + 2 * LEASE);
+			tran = second.getHibernateSession().beginTransaction();
+			List<Long> expired = second.claimQueuedTestRuns(suiteInstanceId, firstClaims, "second", 10,
+				later, new Date(later.getTime() + LEASE));
+			tran.commit();
+			Assert.assertEquals(expired, firstClaims);
+		} finally {
+			first.close();
+			second.close();
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package com.echostar.gopher.persist.util;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.testng.Assert;
@@ -8,8 +10,12 @@ import org.testng.annotations.Test;
 import com.echostar.gopher.persist.ElementLocator;
 import com.echostar.gopher.persist.GopherData;
 import com.echostar.gopher.persist.GopherDataFactory;
+import com.echostar.gopher.persist.Suite;
 import com.echostar.gopher.persist.TestCase;
+import com.echostar.gopher.persist.TestClass;
 import com.echostar.gopher.persist.TestData;
+import com.echostar.gopher.persist.TestDataType;
+import com.echostar.gopher.persist.TestSuite;
 
 /**
  * Test the Gopher XML data ingester {@link GopherDataIngest GopherDataIngest}.
@@ -123,4 +129,86 @@ public class GopherDataIngest_Test {
 			}
 		}
 	}
-}
\ No newline at end of file
+
+	@Test
+	public static void testStream () throws Exception {
+
+		final String[] xmlPaths = {
+			"src/test/resources/com/echostar/gopher/persist/util/GopherDataIngest_Test/testElementLocator.xml",
+			"src/test/resources/com/echostar/gopher/persist/util/GopherDataIngest_Test/testTestData.xml"
+		};
+
+		GopherData gopherData = null;
+		try {
+			gopherData = GopherDataFactory.getGopherData();
+			for (String xmlPath : xmlPaths) {
+				gopherData.cleanDB();
+				GopherDataIngest ingestor = new GopherDataIngest();
+				try {
+					ingestor.ingest(xmlPath, dtdName);
+				} finally {
+					ingestor.close();
+				}
+				List<String> tree = describe (gopherData);
+
+				gopherData.cleanDB();
+				GopherDataStreamIngest streamIngestor = new GopherDataStreamIngest();
+				try {
+					streamIngestor.ingest(xmlPath);
+				} finally {
+					streamIngestor.close();
+				}
+				List<String> streamed = describe (gopherData);
+
+				Assert.assertTrue(tree.size() > 0, xmlPath);
+				Assert.assertEquals(streamed, tree, "The stream ingest of "+xmlPath+" persists what the tree ingest does.");
+			}
+		} finally {
+			if (gopherData!=null) {
+				gopherData.close();
+			}
+		}
+	}
+
+	/**
+	 * Describe the persisted TestClasses, TestCases and Suites without their ids, sorted.
+	 */
+	private static List<String> describe (GopherData gopherData) throws Exception {
+
+		List<String> result = new ArrayList<String>();
+		for (TestClass testClass : gopherData.findAllTestClasses()) {
+			List<String> types = new ArrayList<String>();
+			for (TestDataType type : testClass.getTestDataTypes()) {
+				types.add(type.getDataName()+"/"+type.getDataType()+"/"+type.getRole());
+			}
+			Collections.sort(types);
+			result.add("class "+testClass.getName()+"|"+testClass.getVersion()+"|"+testClass.getClassName()
+				+"|"+testClass.getDescription()+"|"+testClass.getRunmode()+"|"+testClass.getJiraIssue()+"|"+types);
+		}
+		for (TestCase testCase : gopherData.findTestCases()) {
+			List<String> data = new ArrayList<String>();
+			for (TestData testData : testCase.getTestData()) {
+				data.add(testData.getDataValue()+"/"+testData.getTestDataType().getDataName());
+			}
+			Collections.sort(data);
+			List<String> locators = new ArrayList<String>();
+			for (ElementLocator locator : testCase.getElementLocators()) {
+				locators.add(locator.getName()+"/"+locator.getValue());
+			}
+			Collections.sort(locators);
+			result.add("case "+testCase.getName()+"|"+testCase.getVersion()+"|"+testCase.getRunmode()
+				+"|"+testCase.getTestClass().getName()+"|"+data+"|"+locators);
+		}
+		for (Suite suite : gopherData.findAllSuites()) {
+			List<String> testSuites = new ArrayList<String>();
+			for (TestSuite testSuite : suite.getTestSuites()) {
+				testSuites.add(testSuite.getName()+"/"+testSuite.getVersion());
+			}
+			Collections.sort(testSuites);
+			result.add("suite "+suite.getName()+"|"+suite.getVersion()+"|"+suite.getDescription()
+				+"|"+suite.getRunmode()+"|"+testSuites);
+		}
+		Collections.sort(result);
+		return result;
+	}
+}
@@ -0,0 +1,72 @@
+package com.echostar.gopher.persist.util;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test the reader of {@link GopherDataStreamIngest GopherDataStreamIngest} without a database.
+ */
+public class GopherDataStreamIngest_Test {
+
+	private static final String XML =
+		"<?xml version=\"1.0\"?>\n"+
+		"<!DOCTYPE gopher-data SYSTEM \"gopher-data.dtd\">\n"+
+		"<gopher-data>\n"+
+		"  <test-class>\n"+
+		"    <id>class 1</id>\n"+
+		"    <name> Class One </name>\n"+
+		"    <description></description>\n"+
+		"    <runmode>y</runmode>\n"+
+		"    <test-data-type-id>type 1</test-data-type-id>\n"+
+		"    <test-data-type-id>type 2</test-data-type-id>\n"+
+		"  </test-class>\n"+
+		"  <test-case>\n"+
+		"    <id>case 1</id>\n"+
+		"    <name><![CDATA[a <b> case]]></name>\n"+
+		"    <test-class-id>class 1</test-class-id>\n"+
+		"  </test-case>\n"+
+		"  <test-data-type>\n"+
+		"    <id>type 1</id>\n"+
+		"  </test-data-type>\n"+
+		"</gopher-data>\n";
+
+	@Test
+	public static void testRead () throws Exception {
+
+		final List<GopherDataStreamIngest.Record> records = new ArrayList<GopherDataStreamIngest.Record>();
+		GopherDataStreamIngest.Handler handler = new GopherDataStreamIngest.Handler () {
+			public void handle (GopherDataStreamIngest.Record record) {
+				records.add(record);
+			}
+		};
+		GopherDataStreamIngest.read(new ByteArrayInputStream(XML.getBytes("UTF-8")), "test.xml",
+			new HashSet<String>(Arrays.asList("test-class", "test-case")), handler);
+
+		Assert.assertEquals(records.size(), 2, "Only the types of the pass are read.");
+		GopherDataStreamIngest.Record testClass = records.get(0);
+		Assert.assertEquals(testClass.getType(), "test-class");
+		Assert.assertEquals(testClass.getSource(), "test.xml:4");
+		Assert.assertEquals(testClass.get("name"), "Class One");
+		Assert.assertNull(testClass.get("description"), "An empty value is null.");
+		Assert.assertNull(testClass.get("version"));
+		Assert.assertTrue(testClass.requireBoolean("runmode"));
+		Assert.assertEquals(testClass.getAll("test-data-type-id"), Arrays.asList("type 1", "type 2"));
+		Assert.assertEquals(testClass.getAll("test-data-id").size(), 0);
+		try {
+			testClass.require("version");
+			Assert.fail("A missing required value is an error.");
+		} catch (Exception e) {
+			Assert.assertTrue(e.getMessage().contains("test.xml:4"), e.getMessage());
+		}
+
+		GopherDataStreamIngest.Record testCase = records.get(1);
+		Assert.assertEquals(testCase.get("name"), "a <b> case");
+		Assert.assertEquals(testCase.require("test-class-id"), "class 1");
+	}
+}
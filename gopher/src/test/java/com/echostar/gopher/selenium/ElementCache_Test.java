@@ -0,0 +1,89 @@
+package com.echostar.gopher.selenium;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.openqa.selenium.WebElement;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test {@link ElementCache ElementCache}.
+ */
+public class ElementCache_Test {
+
+	@Test
+	public static void testHitsAndMisses () throws Exception {
+
+		ElementCache cache = new ElementCache ();
+		cache.verify("http://a/ 1");
+		Locator login = Locator.compile("ID", "login");
+		WebElement element = element ();
+		WebElement parent = element ();
+
+		Assert.assertNull(cache.get(null, login));
+		cache.put(null, login, element);
+		Assert.assertSame(cache.get(null, Locator.compile(" ID ", "login")), element);
+		Assert.assertNull(cache.get(parent, login));
+		Assert.assertEquals(cache.getHits(), 1);
+		Assert.assertEquals(cache.getMisses(), 2);
+	}
+
+	@Test
+	public static void testPageChange () throws Exception {
+
+		ElementCache cache = new ElementCache ();
+		Locator login = Locator.compile("ID", "login");
+		Assert.assertFalse(cache.isVerified());
+		cache.verify("http://a/ 1");
+		cache.put(null, login, element ());
+
+		// Same page after a click.
+		cache.pageMayChange();
+		Assert.assertFalse(cache.isVerified());
+		cache.verify("http://a/ 1");
+		Assert.assertTrue(cache.isVerified());
+		Assert.assertNotNull(cache.get(null, login));
+
+		// The page was reloaded.
+		cache.pageMayChange();
+		cache.verify("http://a/ 2");
+		Assert.assertNull(cache.get(null, login));
+		Assert.assertEquals(cache.getInvalidations(), 1);
+
+		cache.refound();
+		Assert.assertFalse(cache.isVerified());
+		Assert.assertEquals(cache.getRefinds(), 1);
+	}
+
+	@Test
+	public static void testMaxSize () throws Exception {
+
+		ElementCache cache = new ElementCache ();
+		cache.verify("http://a/ 1");
+		for (int i = 0; i <= ElementCache.MAX_SIZE; i++) {
+			cache.put(null, Locator.compile("ID", "e"+i), element ());
+		}
+		Assert.assertEquals(cache.size(), 1);
+	}
+
+	/**
+	 * Make a WebElement that is only ever compared.
+	 * @return	the WebElement
+	 */
+	private static WebElement element () {
+		return (WebElement) Proxy.newProxyInstance(WebElement.class.getClassLoader(),
+			new Class<?>[] {WebElement.class}, new InvocationHandler() {
+				public Object invoke (Object proxy, Method method, Object[] args) {
+					if (method.getName().equals("equals")) {
+						return proxy == args[0];
+					}
+					if (method.getName().equals("hashCode")) {
+						return System.identityHashCode(proxy);
+					}
+					throw new UnsupportedOperationException (method.getName());
+				}
+			});
+	}
+}
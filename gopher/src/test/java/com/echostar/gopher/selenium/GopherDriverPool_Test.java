@@ -0,0 +1,174 @@
+package com.echostar.gopher.selenium;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.echostar.gopher.persist.BrowserEnum;
+import com.echostar.gopher.persist.PlatformEnum;
+import com.echostar.gopher.persist.TestNode;
+import com.echostar.gopher.selenium.GopherDriverPool.PoolKey;
+
+/**
+ * Test {@link GopherDriverPool GopherDriverPool} with drivers that have no browser.
+ */
+public class GopherDriverPool_Test {
+
+	@Test
+	public static void testMaxReuse () throws Exception {
+
+		FakeStarter starter = new FakeStarter (0);
+		GopherDriverPool pool = new GopherDriverPool (2, 60000, starter);
+		TestNode testNode = testNode (1);
+
+		GopherDriverImpl first = pool.borrow(BrowserEnum.FIREFOX, testNode);
+		pool.giveBack(first);
+		Assert.assertSame(pool.borrow(BrowserEnum.FIREFOX, testNode), first, "Reused.");
+		Assert.assertEquals(((FakeDriver) first).resets, 1);
+
+		// The second use is the last.
+		pool.giveBack(first);
+		Assert.assertEquals(((FakeDriver) first).quits, 1);
+		GopherDriverImpl second = pool.borrow(BrowserEnum.FIREFOX, testNode);
+		Assert.assertNotSame(second, first);
+		Assert.assertEquals(starter.started.size(), 2);
+
+		// Another browser or node has its own drivers.
+		Assert.assertNotSame(pool.borrow(BrowserEnum.CHROME, testNode), second);
+		Assert.assertNotSame(pool.borrow(BrowserEnum.FIREFOX, testNode (2)), second);
+		Assert.assertEquals(starter.started.size(), 4);
+	}
+
+	@Test
+	public static void testHealthCheck () throws Exception {
+
+		FakeStarter starter = new FakeStarter (0);
+		GopherDriverPool pool = new GopherDriverPool (10, 60000, starter);
+		TestNode testNode = testNode (1);
+
+		FakeDriver sick = (FakeDriver) pool.borrow(BrowserEnum.FIREFOX, testNode);
+		pool.giveBack(sick);
+		sick.healthy = false;
+		GopherDriverImpl borrowed = pool.borrow(BrowserEnum.FIREFOX, testNode);
+		Assert.assertNotSame(borrowed, sick, "An unhealthy driver is not lent.");
+		Assert.assertEquals(sick.quits, 1);
+
+		// A driver that can not be reset is quit, not kept.
+		((FakeDriver) borrowed).resetFails = true;
+		pool.giveBack(borrowed);
+		Assert.assertEquals(((FakeDriver) borrowed).quits, 1);
+		Assert.assertTrue(pool.getStatus().contains("idle=0"), pool.getStatus());
+	}
+
+	@Test
+	public static void testEvictIdle () throws Exception {
+
+		FakeStarter starter = new FakeStarter (0);
+		GopherDriverPool pool = new GopherDriverPool (10, 200, starter);
+		TestNode testNode = testNode (1);
+
+		FakeDriver old = (FakeDriver) pool.borrow(BrowserEnum.FIREFOX, testNode);
+		FakeDriver recent = (FakeDriver) pool.borrow(BrowserEnum.FIREFOX, testNode);
+		pool.giveBack(old);
+		Thread.sleep(300);
+		pool.giveBack(recent);
+
+		pool.evictIdle();
+		Assert.assertEquals(old.quits, 1, "Idle too long.");
+		Assert.assertEquals(recent.quits, 0);
+		Assert.assertSame(pool.borrow(BrowserEnum.FIREFOX, testNode), recent);
+	}
+
+	@Test
+	public static void testPrewarm () throws Exception {
+
+		FakeStarter starter = new FakeStarter (100);
+		GopherDriverPool pool = new GopherDriverPool (10, 60000, starter);
+		List<PoolKey> keys = new ArrayList<PoolKey>();
+		for (long id = 1; id <= 8; id++) {
+			keys.add(new PoolKey (BrowserEnum.FIREFOX, testNode (id)));
+		}
+
+		ExecutorService executor = pool.prewarm(keys, 3);
+		Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		Assert.assertEquals(starter.started.size(), 8);
+		Assert.assertTrue(starter.maxRunning <= 3, "Started "+starter.maxRunning+" at once.");
+		Assert.assertTrue(pool.getStatus().contains("idle=8"), pool.getStatus());
+
+		// A prewarmed driver is lent without starting another.
+		pool.borrow(BrowserEnum.FIREFOX, testNode (5));
+		Assert.assertEquals(starter.started.size(), 8);
+	}
+
+	private static TestNode testNode (long id) {
+		TestNode testNode = new TestNode (PlatformEnum.WIN7, "127.0.0."+id, "5555", "user", "pw", "C:\\grid", "selenium.jar");
+		testNode.setId(id);
+		return testNode;
+	}
+
+	/**
+	 * A driver without a browser that counts resets and quits.
+	 */
+	static class FakeDriver extends GopherDriverImpl {
+		volatile boolean	healthy = true;
+		volatile boolean	resetFails = false;
+		int					resets = 0;
+		int					quits = 0;
+
+		FakeDriver () {
+			super ((RemoteWebDriver) null);
+		}
+
+		@Override
+		boolean isHealthy () {
+			return healthy;
+		}
+
+		@Override
+		void resetBrowserState () throws Exception {
+			if (resetFails) {
+				throw new Exception ("Reset failed.");
+			}
+			resets++;
+		}
+
+		@Override
+		void quit () {
+			quits++;
+		}
+	}
+
+	/**
+	 * Starts FakeDrivers, taking a while, and counts them.
+	 */
+	static class FakeStarter implements GopherDriverPool.DriverStarter {
+		final long				delay;
+		final List<PoolKey>		started = new ArrayList<PoolKey>();
+		int						running = 0;
+		int						maxRunning = 0;
+
+		FakeStarter (long delay) {
+			this.delay = delay;
+		}
+
+		public GopherDriverImpl start (PoolKey key) throws Exception {
+			synchronized (this) {
+				started.add(key);
+				maxRunning = Math.max(maxRunning, ++running);
+			}
+			try {
+				Thread.sleep(delay);
+			} finally {
+				synchronized (this) {
+					running--;
+				}
+			}
+			return new FakeDriver ();
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.echostar.gopher.selenium;
+
+import org.openqa.selenium.By;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.echostar.gopher.persist.ElementLocator;
+import com.echostar.gopher.persist.ElementLocatorType;
+
+/**
+ * Test {@link Locator Locator}.
+ */
+public class Locator_Test {
+
+	@Test
+	public static void testCompile () throws Exception {
+
+		Assert.assertEquals(Locator.compile(new String[] {" ID ", " login "}).getBy(), By.id("login"));
+		Assert.assertEquals(Locator.compile("CLASSNAME", " menu ").getBy(), By.className("menu"));
+		Assert.assertEquals(Locator.compile(new String[] {"CLASSNAME", "menu"}).getBy(), By.className("menu"));
+		// getWebElement has always found a CLASSNAME locator by XPath.
+		Assert.assertEquals(Locator.compile(new String[] {"CLASSNAME", "//div"}, true).getBy(), By.xpath("//div"));
+		Assert.assertEquals(Locator.compile(new String[] {"ID", "login"}, true).getBy(), By.id("login"));
+		Assert.assertEquals(Locator.compile("PLINK", "Sign").getBy(), By.partialLinkText("Sign"));
+		Assert.assertEquals(Locator.compile("PARTIAL_LINK", "Sign").getBy(), By.partialLinkText("Sign"));
+		Assert.assertNull(Locator.compile("UNKNOWN", "x").getBy());
+	}
+
+	@Test
+	public static void testXPath () throws Exception {
+
+		Assert.assertEquals(Locator.compile("ID", "login").getXPath(), ".//*[@id='login']");
+		Assert.assertEquals(Locator.compile("LINK", "Don't").getXPath(), ".//a[normalize-space(.)=\"Don't\"]");
+		Assert.assertEquals(Locator.toXPathLiteral("a'b\"c"), "concat('a',\"'\",'b\"c')");
+		Assert.assertEquals(Locator.compile("TAGNAME", "div").getXPath(), ".//div");
+		Assert.assertEquals(Locator.compile("CLASSNAME", "menu").getXPath(),
+			".//*[contains(concat(' ',normalize-space(@class),' '),' menu ')]");
+		Assert.assertNull(Locator.compile("CLASSNAME", "a b").getXPath());
+		Assert.assertNull(Locator.compile("UNKNOWN", "x").getXPath());
+	}
+
+	@Test
+	public static void testForElementLocator () throws Exception {
+
+		ElementLocator elementLocator = new ElementLocator (ElementLocatorType.NAME, "user", "userName", "user name");
+		elementLocator.setId(-1L);
+
+		Locator locator = elementLocator.getCompiledLocator();
+		Assert.assertSame(elementLocator.getCompiledLocator(), locator);
+		Assert.assertEquals(locator.getBy(), By.name("userName"));
+
+		elementLocator.setValue("login");
+		Assert.assertEquals(elementLocator.getCompiledLocator().getBy(), By.name("login"));
+	}
+}
@@ -0,0 +1,39 @@
+package com.echostar.gopher.selenium;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test {@link NavigationReadiness NavigationReadiness}.
+ */
+public class NavigationReadiness_Test {
+
+	@Test
+	public static void testParse () throws Exception {
+
+		NavigationReadiness base = NavigationReadiness.parse (NavigationReadiness.DEFAULT_SPEC, null);
+		NavigationReadiness readiness = NavigationReadiness.parse ("readyState=interactive, quiet=500", base);
+
+		Assert.assertEquals(readiness.getReadyState(), "interactive");
+		Assert.assertEquals(readiness.getQuiet(), 500);
+		Assert.assertEquals(readiness.isNetwork(), base.isNetwork());
+		Assert.assertEquals(readiness.getTimeout(), base.getTimeout());
+	}
+
+	@Test(expectedExceptions = Exception.class)
+	public static void testParseNotValid () throws Exception {
+		NavigationReadiness.parse ("readyState=done", null);
+	}
+
+	@Test
+	public static void testIsReady () throws Exception {
+
+		NavigationReadiness readiness = new NavigationReadiness ("interactive", true, 300, 10000);
+
+		Assert.assertFalse(readiness.isReady("loading", 0, 1000));
+		Assert.assertFalse(readiness.isReady("complete", 1, 1000));
+		Assert.assertFalse(readiness.isReady("complete", 0, 100));
+		Assert.assertTrue(readiness.isReady("interactive", 0, 300));
+		Assert.assertTrue(new NavigationReadiness ("complete", false, 300, 10000).isReady("complete", 2, 0));
+	}
+}
@@ -0,0 +1,40 @@
+package com.echostar.gopher.selenium;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test {@link PollingWait PollingWait}.
+ */
+public class PollingWait_Test {
+
+	@Test
+	public static void testUntilTrue () throws Exception {
+
+		final int[] calls = new int[1];
+		PollingWait wait = new PollingWait (10, 20);
+		boolean result = wait.until(new PollingWait.Condition() {
+			public boolean isTrue () throws Exception {
+				return ++calls[0] == 3;
+			}
+		}, 5000);
+
+		Assert.assertTrue(result);
+		Assert.assertEquals(calls[0], 3);
+	}
+
+	@Test
+	public static void testUntilTimeout () throws Exception {
+
+		PollingWait wait = new PollingWait (10, 20);
+		long start = System.currentTimeMillis();
+		boolean result = wait.until(new PollingWait.Condition() {
+			public boolean isTrue () throws Exception {
+				throw new Exception ("not yet");
+			}
+		}, 100);
+
+		Assert.assertFalse(result);
+		Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+	}
+}
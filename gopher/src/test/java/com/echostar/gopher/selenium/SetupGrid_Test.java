@@ -0,0 +1,77 @@
+package com.echostar.gopher.selenium;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.echostar.gopher.persist.PlatformEnum;
+import com.echostar.gopher.persist.TestNode;
+
+/**
+ * Test {@link SetupGrid SetupGrid} without a grid.
+ */
+public class SetupGrid_Test {
+
+	@Test
+	public static void testIsNodeRegistered () throws Exception {
+
+		String found = "{\"msg\":\"proxy found !\",\"success\":true,\"request\":{\"capabilities\":"+
+			"[{\"browserName\":\"firefox\"},{\"browserName\":\"chrome\"}]}}";
+		Assert.assertTrue(SetupGrid.isNodeRegistered(found, ""));
+		Assert.assertTrue(SetupGrid.isNodeRegistered(found, "firefox::chrome"));
+		Assert.assertFalse(SetupGrid.isNodeRegistered(found, "firefox::safari"));
+		Assert.assertFalse(SetupGrid.isNodeRegistered(
+			"{\"msg\":\"Cannot find proxy with ID=http://1.2.3.4:5555 in the registry.\",\"success\":false}", ""));
+		Assert.assertFalse(SetupGrid.isNodeRegistered(null, ""));
+	}
+
+	@Test
+	public static void testStartNodes () throws Exception {
+
+		List<SetupGrid.NodeStartup> startups = new ArrayList<SetupGrid.NodeStartup>();
+		for (int i = 0; i < 4; i++) {
+			startups.add(new FakeStartup ("10.0.0."+i, 300));
+		}
+		startups.add(new FakeStartup ("10.0.0.9", 10000));
+
+		long start = System.currentTimeMillis();
+		List<SetupGrid.NodeReport> reports = SetupGrid.startNodes(startups, 5, 1000);
+		long millis = System.currentTimeMillis() - start;
+
+		Assert.assertEquals(reports.size(), 5);
+		for (int i = 0; i < 4; i++) {
+			Assert.assertEquals(reports.get(i).getNodeIP(), "10.0.0."+i);
+			Assert.assertTrue(reports.get(i).isUp());
+		}
+		Assert.assertEquals(reports.get(4).getStatus(), SetupGrid.NodeReport.TIMEOUT);
+		// In parallel, the slow node bounds the time.
+		Assert.assertTrue(millis < 3000, "Took "+millis+" ms.");
+	}
+
+	/**
+	 * A node start that only sleeps.
+	 */
+	static class FakeStartup extends SetupGrid.NodeStartup {
+
+		private long sleep;
+
+		FakeStartup (String nodeIP, long sleep) {
+			super (new TestNode (PlatformEnum.WIN7, nodeIP, "5555", "user", "pw", "C:\\grid", "selenium.jar"),
+				"pw", "PsExec.exe", "127.0.0.1", "4444", "");
+			this.sleep = sleep;
+		}
+
+		@Override
+		public SetupGrid.NodeReport call () throws Exception {
+			synchronized (this) {
+				started = System.currentTimeMillis();
+				notifyAll();
+			}
+			Thread.sleep(sleep);
+			return new SetupGrid.NodeReport (nodeIP, nodePort, platform, SetupGrid.NodeReport.UP,
+				System.currentTimeMillis() - started, null);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.echostar.gopher.selenium;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.echostar.gopher.persist.PlatformEnum;
+import com.echostar.gopher.persist.TestNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test {@link TestNodeMonitor TestNodeMonitor} against stub nodes, without a database.
+ */
+public class TestNodeMonitor_Test {
+
+	@Test
+	public static void testParseFreeSlots () throws Exception {
+
+		Assert.assertEquals(TestNodeMonitor.parseFreeSlots("{\"status\":0,\"value\":{\"build\":{}}}"), -1);
+		Assert.assertEquals(TestNodeMonitor.parseFreeSlots("{\"value\":{\"ready\": false}}"), 0);
+		Assert.assertEquals(TestNodeMonitor.parseFreeSlots(
+			"{\"value\":{\"ready\":true,\"nodes\":[{\"slots\":[{\"session\":null},{\"session\":{\"id\":1}},{\"session\": null}]}]}}"), 2);
+	}
+
+	@Test
+	public static void testCheck () throws Exception {
+
+		HttpServer up = stubNode ("{\"status\":0,\"value\":{}}", 200, 0);
+		HttpServer full = stubNode ("{\"value\":{\"ready\":false}}", 200, 0);
+		HttpServer error = stubNode ("", 500, 0);
+		HttpServer slow = stubNode ("{\"status\":0}", 200, 3000);
+		try {
+			List<TestNode> testNodes = new ArrayList<TestNode>();
+			testNodes.add(testNode (1, up));
+			testNodes.add(testNode (2, full));
+			testNodes.add(testNode (3, error));
+			testNodes.add(testNode (4, slow));
+			TestNode dead = new TestNode (PlatformEnum.WIN7, "127.0.0.1", "1", "user", "pw", "C:\\grid", "selenium.jar");
+			dead.setId(5L);
+			testNodes.add(dead);
+
+			TestNodeMonitor monitor = new TestNodeMonitor (60000, 500, false, 0);
+			Assert.assertTrue(monitor.isAvailable(dead), "Not checked yet.");
+			List<TestNodeMonitor.NodeHealth> checks = monitor.check(testNodes);
+
+			Assert.assertTrue(checks.get(0).isUp());
+			Assert.assertEquals(checks.get(0).getFreeSlots(), -1);
+			Assert.assertTrue(monitor.isAvailable(testNodes.get(0)));
+
+			Assert.assertTrue(checks.get(1).isUp());
+			Assert.assertFalse(monitor.isAvailable(testNodes.get(1)), "Saturated.");
+			Assert.assertFalse(monitor.isDown(testNodes.get(1)));
+
+			Assert.assertFalse(checks.get(2).isUp());
+			Assert.assertEquals(checks.get(2).getMessage(), "HTTP 500");
+
+			Assert.assertTrue(monitor.isDown(testNodes.get(3)), "Timed out.");
+			Assert.assertTrue(checks.get(3).getLatency() < 2000);
+
+			Assert.assertTrue(monitor.isDown(dead));
+			Assert.assertEquals(monitor.getHealth().size(), 5);
+		} finally {
+			up.stop(0);
+			full.stop(0);
+			error.stop(0);
+			slow.stop(0);
+		}
+	}
+
+	/**
+	 * Start a stub node answering /wd/hub/status.
+	 *
+	 * @param body		the response body
+	 * @param code		the response code
+	 * @param delay		the time in ms to wait before answering
+	 * @return			the server
+	 * @throws IOException	on error
+	 */
+	private static HttpServer stubNode (final String body, final int code, final long delay) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/wd/hub/status", new HttpHandler() {
+			public void handle (HttpExchange exchange) throws IOException {
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					return;
+				}
+				byte[] bytes = body.getBytes("UTF-8");
+				exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(bytes);
+				out.close();
+			}
+		});
+		server.setExecutor(null);
+		server.start();
+		return server;
+	}
+
+	private static TestNode testNode (long id, HttpServer server) {
+		TestNode testNode = new TestNode (PlatformEnum.WIN7, "127.0.0.1",
+			String.valueOf(server.getAddress().getPort()), "user", "pw", "C:\\grid", "selenium.jar");
+		testNode.setId(id);
+		return testNode;
+	}
+}
@@ -31,6 +31,7 @@ import com.echostar.gopher.persist.TestSuiteInstance;
 import com.echostar.gopher.testng.ErrorUtil;
 import com.echostar.gopher.testng.SuiteListenerAdaptor;
 import com.echostar.gopher.testng.TestNGClassBase;
+import com.echostar.gopher.testng.TestRunResultRecorder;
 import com.echostar.gopher.util.ExceptionUtil;
 
 public class DataProvider2_Test extends TestNGClassBase {
@@ -185,6 +186,8 @@ public class DataProvider2_Test extends TestNGClassBase {
 		//String suiteName = suite.getName();
 		GopherData gopherData = null;
 		try {
+			// TestRunResults are written in the background.
+			TestRunResultRecorder.getInstance().drain();
 			gopherData = GopherDataFactory.getGopherData();
 			log.debug("afterSuite getting suiteInstance.");
 			SuiteInstance suiteInstance = SuiteListenerAdaptor.getSuiteInstance(gopherData);
@@ -0,0 +1,75 @@
+package com.echostar.gopher.testng;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.echostar.gopher.persist.BrowserEnum;
+import com.echostar.gopher.persist.DataRoleEnum;
+import com.echostar.gopher.persist.DataTypeEnum;
+import com.echostar.gopher.persist.ElementLocator;
+import com.echostar.gopher.persist.ElementLocatorType;
+import com.echostar.gopher.persist.TestCase;
+import com.echostar.gopher.persist.TestData;
+import com.echostar.gopher.persist.TestDataType;
+import com.echostar.gopher.persist.TestRun;
+
+/**
+ * Test {@link IncrementalRun IncrementalRun} without a database.
+ */
+public class IncrementalRun_Test {
+
+	@Test
+	public static void testFingerprint () throws Exception {
+
+		TestRun testRun = new TestRun (null, BrowserEnum.FIREFOX, true, null, null);
+		testRun.setId(1L);
+		TestCase testCase = testCase ("1.0", "a", "b", "//input");
+		String fingerprint = IncrementalRun.fingerprint(testRun, testCase, "http://sut", BrowserEnum.FIREFOX, "42");
+		Assert.assertEquals(fingerprint.length(), 64);
+
+		Assert.assertEquals(IncrementalRun.fingerprint(testRun, testCase ("1.0", "b", "a", "//input"),
+			"http://sut", BrowserEnum.FIREFOX, "42"), fingerprint, "TestData order does not matter.");
+
+		Assert.assertNotEquals(IncrementalRun.fingerprint(testRun, testCase ("1.1", "a", "b", "//input"),
+			"http://sut", BrowserEnum.FIREFOX, "42"), fingerprint, "Version");
+		Assert.assertNotEquals(IncrementalRun.fingerprint(testRun, testCase ("1.0", "a", "c", "//input"),
+			"http://sut", BrowserEnum.FIREFOX, "42"), fingerprint, "TestData");
+		Assert.assertNotEquals(IncrementalRun.fingerprint(testRun, testCase ("1.0", "a", "b", "//button"),
+			"http://sut", BrowserEnum.FIREFOX, "42"), fingerprint, "Locator");
+		Assert.assertNotEquals(IncrementalRun.fingerprint(testRun, testCase,
+			"http://other", BrowserEnum.FIREFOX, "42"), fingerprint, "URL");
+		Assert.assertNotEquals(IncrementalRun.fingerprint(testRun, testCase,
+			"http://sut", BrowserEnum.CHROME, "42"), fingerprint, "Browser");
+		Assert.assertNotEquals(IncrementalRun.fingerprint(testRun, testCase,
+			"http://sut", BrowserEnum.FIREFOX, "43"), fingerprint, "Build");
+	}
+
+	@Test
+	public static void testIsFresh () throws Exception {
+
+		long hour = 60L * 60 * 1000;
+		Map<String, Date> passes = new HashMap<String, Date>();
+		passes.put("recent", new Date(System.currentTimeMillis() - hour));
+		passes.put("old", new Date(System.currentTimeMillis() - 3 * hour));
+		IncrementalRun incrementalRun = new IncrementalRun (passes, 2 * hour);
+		Assert.assertTrue(incrementalRun.isFresh("recent"));
+		Assert.assertFalse(incrementalRun.isFresh("old"));
+		Assert.assertFalse(incrementalRun.isFresh("never"));
+	}
+
+	private static TestCase testCase (String version, String value1, String value2, String xpath) {
+		TestCase testCase = new TestCase ("login", version, true, null);
+		testCase.setTestData(new ArrayList<TestData>());
+		TestDataType type = new TestDataType ("user", DataTypeEnum.STRING, DataRoleEnum.LABEL);
+		testCase.addTestData(new TestData (type, value1));
+		testCase.addTestData(new TestData (type, value2));
+		testCase.setElementLocators(new ArrayList<ElementLocator>());
+		testCase.getElementLocators().add(new ElementLocator (ElementLocatorType.XPATH, "field", xpath, null));
+		return testCase;
+	}
+}
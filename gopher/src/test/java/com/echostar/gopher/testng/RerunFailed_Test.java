@@ -0,0 +1,67 @@
+package com.echostar.gopher.testng;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.echostar.gopher.persist.BrowserEnum;
+import com.echostar.gopher.persist.Suite;
+import com.echostar.gopher.persist.SuiteInstance;
+import com.echostar.gopher.persist.TestRun;
+import com.echostar.gopher.persist.TestSuite;
+
+/**
+ * Test {@link RerunFailed RerunFailed} without a database.
+ */
+public class RerunFailed_Test {
+
+	@Test
+	public static void testFilter () throws Exception {
+
+		Map<Long, Boolean> results = new HashMap<Long, Boolean>();
+		results.put(1L, true);
+		results.put(2L, false);
+		results.put(3L, null);
+		results.put(4L, false);
+
+		RerunFailed rerun = new RerunFailed (7L, RerunFailed.failed(results));
+		Assert.assertEquals(rerun.getSuiteInstanceId(), Long.valueOf(7));
+
+		List<TestRun> testRuns = Arrays.asList(testRun (4), testRun (1), testRun (2), testRun (3), testRun (5));
+		List<TestRun> failed = rerun.filter(testRuns);
+		Assert.assertEquals(failed.size(), 3, "Not run in the SuiteInstance is not rerun.");
+		Assert.assertSame(failed.get(0), testRuns.get(0));
+		Assert.assertSame(failed.get(1), testRuns.get(2));
+		Assert.assertSame(failed.get(2), testRuns.get(3), "No result is not a pass.");
+	}
+
+	@Test
+	public static void testCheckSuite () throws Exception {
+
+		SuiteInstance suiteInstance = new SuiteInstance (null, null,
+			new Suite ("Nightly", "1.0", null, true, new ArrayList<TestSuite>()));
+		suiteInstance.setId(7L);
+		RerunFailed.checkSuite(suiteInstance, "Nightly", "1.0");
+		for (String[] other : new String[][] {{"Smoke", "1.0"}, {"Nightly", "2.0"}}) {
+			try {
+				RerunFailed.checkSuite(suiteInstance, other[0], other[1]);
+				Assert.fail("A SuiteInstance of another Suite is not rerun.");
+			} catch (AssertionError e) {
+				throw e;
+			} catch (Exception e) {
+				Assert.assertTrue(e.getMessage().contains("SuiteInstance 7"), e.getMessage());
+			}
+		}
+	}
+
+	private static TestRun testRun (long id) {
+		TestRun testRun = new TestRun (null, BrowserEnum.FIREFOX, true, null, null);
+		testRun.setId(id);
+		return testRun;
+	}
+}
@@ -0,0 +1,83 @@
+package com.echostar.gopher.testng;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.echostar.gopher.persist.BrowserEnum;
+import com.echostar.gopher.persist.TestRun;
+
+/**
+ * Test {@link Shard Shard} without a database.
+ */
+public class Shard_Test {
+
+	@Test
+	public static void testFilter () throws Exception {
+
+		List<TestRun> testRuns = new ArrayList<TestRun>();
+		for (long id = 1; id <= 10; id++) {
+			testRuns.add(testRun (id));
+		}
+		int total = 0;
+		for (int index = 0; index < 3; index++) {
+			List<TestRun> share = new Shard (index, 3, null).filter(testRuns);
+			for (TestRun testRun : share) {
+				Assert.assertEquals(testRun.getId() % 3, index);
+			}
+			total += share.size();
+		}
+		Assert.assertEquals(total, testRuns.size(), "Every TestRun is in exactly one shard.");
+	}
+
+	@Test
+	public static void testAssign () throws Exception {
+
+		List<TestRun> testRuns = new ArrayList<TestRun>();
+		for (long id = 1; id <= 6; id++) {
+			testRuns.add(testRun (id));
+		}
+		// A TestRun of a TestClass in the suite twice.
+		testRuns.add(testRun (1));
+		Map<Long, Long> expected = new HashMap<Long, Long>();
+		expected.put(1L, 8000L);
+		expected.put(2L, 7000L);
+		expected.put(3L, 6000L);
+		expected.put(4L, 5000L);
+		expected.put(5L, 4000L);
+		// 6 has no results and is expected to take the mean, 6000.
+
+		Map<Long, Integer> assignment = Shard.assign(testRuns, expected, 60000, 2);
+		Assert.assertEquals(assignment.size(), 6);
+		long[] load = new long[2];
+		for (Map.Entry<Long, Integer> entry : assignment.entrySet()) {
+			Long duration = expected.get(entry.getKey());
+			load[entry.getValue()] += duration == null ? 6000 : duration;
+		}
+		Assert.assertEquals(load[0], 18000);
+		Assert.assertEquals(load[1], 18000);
+		Assert.assertEquals(assignment.get(3L), Integer.valueOf(1), "Ties go in id order.");
+		Assert.assertEquals(assignment.get(6L), Integer.valueOf(0));
+
+		// Every shard computes the same split from the TestRuns in any order.
+		List<TestRun> reversed = new ArrayList<TestRun>(testRuns);
+		Collections.reverse(reversed);
+		Assert.assertEquals(Shard.assign(reversed, expected, 60000, 2), assignment);
+
+		List<TestRun> share = new Shard (1, 2, assignment).filter(testRuns);
+		Assert.assertEquals(share.size(), 3);
+		Assert.assertEquals(new Shard (1, 2, assignment).shardOf(testRun (9)), 1,
+			"A TestRun not in the split is split by id.");
+	}
+
+	private static TestRun testRun (long id) {
+		TestRun testRun = new TestRun (null, BrowserEnum.FIREFOX, true, null, null);
+		testRun.setId(id);
+		return testRun;
+	}
+}
@@ -0,0 +1,110 @@
+package com.echostar.gopher.testng;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.echostar.gopher.persist.BrowserEnum;
+import com.echostar.gopher.persist.DeferredTestRun;
+import com.echostar.gopher.persist.TestRun;
+import com.echostar.gopher.persist.TestRunResult;
+
+/**
+ * Test {@link SuiteBudget SuiteBudget} without a database.
+ */
+public class SuiteBudget_Test {
+
+	private static final long DAY = 24L * 60 * 60 * 1000;
+	private static final long NOW = 100 * DAY;
+
+	@Test
+	public static void testValue () throws Exception {
+
+		SuiteBudget suiteBudget = new SuiteBudget (60000, 1, 60, 20, 100, 10, 30, 30, 60000);
+		Assert.assertEquals(suiteBudget.value(null, NOW), 100.0);
+		// Passed today.
+		Assert.assertEquals(suiteBudget.value(Arrays.asList(outcome (true, NOW, 1000)), NOW), 0.0);
+		// Failed one of two, 15 days ago.
+		Assert.assertEquals(suiteBudget.value(Arrays.asList(outcome (false, NOW - 15 * DAY, 1000),
+			outcome (true, NOW - 16 * DAY, 1000)), NOW), 40.0, 0.001);
+		// Not run for longer than the window.
+		Assert.assertEquals(suiteBudget.value(Arrays.asList(outcome (true, NOW - 90 * DAY, 1000)), NOW), 20.0, 0.001);
+	}
+
+	@Test
+	public static void testSelect () throws Exception {
+
+		List<TestRun> testRuns = new ArrayList<TestRun>();
+		for (int i = 1; i <= 5; i++) {
+			testRuns.add(testRun (i));
+		}
+		Map<Long, List<TestRunResult>> outcomes = new HashMap<Long, List<TestRunResult>>();
+		// 1 always fails and is short, 2 always fails and is long, 3 and 4 pass, 5 never ran.
+		outcomes.put(1L, Arrays.asList(outcome (false, NOW, 10000), outcome (false, NOW - DAY, 10000)));
+		outcomes.put(2L, Arrays.asList(outcome (false, NOW, 50000)));
+		outcomes.put(3L, Arrays.asList(outcome (true, NOW - 29 * DAY, 20000)));
+		outcomes.put(4L, Arrays.asList(outcome (true, NOW, 20000)));
+
+		SuiteBudget suiteBudget = new SuiteBudget (40000, 2, 60, 20, 100, 10, 30, 30, 60000);
+		suiteBudget.select(testRuns, outcomes, NOW);
+
+		// 5 never ran and is expected to take the mean, 25000 ms.
+		Assert.assertTrue(suiteBudget.isSelected(testRuns.get(4)));
+		Assert.assertTrue(suiteBudget.isSelected(testRuns.get(0)));
+		Assert.assertTrue(suiteBudget.isSelected(testRuns.get(2)));
+		Assert.assertFalse(suiteBudget.isSelected(testRuns.get(1)), "Too long for the budget.");
+		Assert.assertFalse(suiteBudget.isSelected(testRuns.get(3)));
+		Assert.assertEquals(suiteBudget.getDeferred().size(), 2);
+		Assert.assertTrue(suiteBudget.getExpectedMakespan() <= 40000);
+
+		TestRun added = testRun (6);
+		Assert.assertEquals(suiteBudget.filter(Arrays.asList(testRuns.get(1), added, testRuns.get(0))),
+			Arrays.asList(added, testRuns.get(0)), "TestRuns added later run.");
+	}
+
+	@Test
+	public static void testJoin () throws Exception {
+
+		List<TestRun> testRuns = new ArrayList<TestRun>();
+		for (int i = 1; i <= 4; i++) {
+			testRuns.add(testRun (i));
+		}
+		Map<Long, List<TestRunResult>> outcomes = new HashMap<Long, List<TestRunResult>>();
+		for (int i = 1; i <= 4; i++) {
+			outcomes.put((long) i, Arrays.asList(outcome (i % 2 == 0, NOW - i * DAY, 20000)));
+		}
+		SuiteBudget creator = new SuiteBudget (40000, 1, 60, 20, 100, 10, 30, 30, 60000);
+		creator.select(testRuns, outcomes, NOW);
+
+		// Another executor of the SuiteInstance reads the deferred TestRuns the creator recorded.
+		List<DeferredTestRun> recorded = new ArrayList<DeferredTestRun>();
+		for (TestRun testRun : creator.getDeferred()) {
+			recorded.add(new DeferredTestRun (null, testRun, 1.0, 20000L, "over budget"));
+		}
+		SuiteBudget joined = new SuiteBudget (40000, 1, 60, 20, 100, 10, 30, 30, 60000);
+		joined.join(recorded);
+		Assert.assertEquals(joined.getDeferred(), creator.getDeferred());
+		Assert.assertEquals(joined.filter(testRuns), creator.filter(testRuns), "The same TestRuns run.");
+		Assert.assertEquals(joined.filter(testRuns).size(), 2);
+	}
+
+	private static TestRunResult outcome (boolean result, long startTime, long duration) {
+		TestRunResult testRunResult = new TestRunResult ();
+		testRunResult.setResult(result);
+		testRunResult.setStartTime(new Date(startTime));
+		testRunResult.setEndTime(new Date(startTime + duration));
+		return testRunResult;
+	}
+
+	private static TestRun testRun (long id) {
+		TestRun testRun = new TestRun (null, BrowserEnum.FIREFOX, true, null, null);
+		testRun.setId(id);
+		return testRun;
+	}
+}
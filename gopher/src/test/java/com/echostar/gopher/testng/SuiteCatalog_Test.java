@@ -0,0 +1,60 @@
+package com.echostar.gopher.testng;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.echostar.gopher.persist.TestCase;
+import com.echostar.gopher.persist.TestClass;
+import com.echostar.gopher.persist.TestSuite;
+
+/**
+ * Test {@link SuiteCatalog SuiteCatalog} without a database.
+ */
+public class SuiteCatalog_Test {
+
+	@Test
+	public static void testBuild () throws Exception {
+
+		TestClass login = testClass (1, "com.example.Login");
+		TestClass search = testClass (2, "com.example.Search");
+		TestClass empty = testClass (3, "com.example.Empty");
+		// Login is in the suite twice, so its TestCases come back twice.
+		TestSuite testSuite = new TestSuite ("suite", "1.0", null, true,
+			new ArrayList<TestClass>(Arrays.asList(login, search, login, empty)));
+
+		List<TestCase> loginCases = new ArrayList<TestCase>();
+		List<TestCase> searchCases = new ArrayList<TestCase>();
+		List<TestCase> rows = new ArrayList<TestCase>();
+		for (int i = 0; i < 1000; i++) {
+			loginCases.add(testCase (i, login));
+			searchCases.add(testCase (1000 + i, search));
+		}
+		rows.addAll(loginCases);
+		rows.addAll(searchCases);
+		rows.addAll(loginCases);
+
+		SuiteCatalog catalog = SuiteCatalog.build(testSuite, rows);
+		Assert.assertSame(catalog.getTestSuite(), testSuite);
+		Assert.assertSame(catalog.getTestClass("com.example.Login"), login);
+		Assert.assertEquals(catalog.getTestCases(login), loginCases, "Once each, in order.");
+		Assert.assertEquals(catalog.getTestCases(search), searchCases);
+		Assert.assertEquals(catalog.getTestCases(empty).size(), 0);
+		Assert.assertEquals(catalog.getTestCases(testClass (4, "com.example.Other")).size(), 0);
+	}
+
+	private static TestClass testClass (long id, String className) {
+		TestClass testClass = new TestClass (className, "1.0", className, null, true, null);
+		testClass.setId(id);
+		return testClass;
+	}
+
+	private static TestCase testCase (long id, TestClass testClass) {
+		TestCase testCase = new TestCase ("case "+id, "1.0", true, testClass);
+		testCase.setId(id);
+		return testCase;
+	}
+}
@@ -0,0 +1,102 @@
+package com.echostar.gopher.testng;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.echostar.gopher.exception.TestException;
+import com.echostar.gopher.persist.TestCase;
+import com.echostar.gopher.persist.TestClass;
+import com.echostar.gopher.persist.TestClassDecorator;
+import com.echostar.gopher.persist.TestRun;
+import com.echostar.gopher.persist.TestSuite;
+import com.echostar.gopher.selenium.NavigationReadiness;
+
+/**
+ * Test the parts of {@link TestNGClassBase TestNGClassBase} that need no database.
+ */
+public class TestNGClassBase_Test {
+
+	@Test
+	public static void testDetermineReadiness () throws Exception {
+
+		TestClass testClass = testClass (1);
+		TestSuite testSuite = new TestSuite ();
+		TestClassDecorator other = new TestClassDecorator (null, null, true, testSuite, testClass (2));
+		other.setReadiness("quiet=2000");
+		TestClassDecorator decorator = new TestClassDecorator (null, null, true, testSuite, testClass);
+		decorator.setReadiness("readyState=interactive");
+		testSuite.addTestClassDecorator(other);
+		testSuite.addTestClassDecorator(decorator);
+		TestRun testRun = testRun (testClass);
+
+		RecordingTest test = new RecordingTest ();
+		Assert.assertEquals(test.determineReadiness(null, testRun).toString(),
+			NavigationReadiness.getDefault().toString(), "No rule, the default rule.");
+		Assert.assertEquals(test.determineReadiness(testSuite, testRun).getReadyState(), "interactive",
+			"The TestClassDecorator's rule.");
+		Assert.assertEquals(test.determineReadiness(testSuite, testRun).getQuiet(),
+			NavigationReadiness.getDefault().getQuiet(), "Missing names from the default rule.");
+
+		testRun.setReadiness("readyState=loading,quiet=0");
+		NavigationReadiness readiness = test.determineReadiness(testSuite, testRun);
+		Assert.assertEquals(readiness.getReadyState(), "loading", "The TestRun's rule first.");
+		Assert.assertEquals(readiness.getQuiet(), 0);
+	}
+
+	@Test
+	public static void testRunDoTest () throws Exception {
+
+		TestClass testClass = testClass (1);
+		TestSuite testSuite = new TestSuite ();
+		TestClassDecorator decorator = new TestClassDecorator (null, null, true, testSuite, testClass);
+		decorator.setReadiness("readyState=interactive,timeout=5000");
+		testSuite.addTestClassDecorator(decorator);
+		TestRun testRun = testRun (testClass);
+
+		// doTest sees the TestRun's rule as the current rule, and only while it runs.
+		RecordingTest test = new RecordingTest ();
+		test.runDoTest(testRun, testRun.getTestCase(), testClass, testSuite);
+		Assert.assertEquals(test.current.getReadyState(), "interactive");
+		Assert.assertEquals(test.current.getTimeout(), 5000);
+		Assert.assertSame(NavigationReadiness.getCurrent(), NavigationReadiness.getDefault());
+
+		// A rule that is not valid fails the TestRun, not the suite.
+		testRun.setReadiness("readyState=done");
+		test.current = null;
+		try {
+			test.runDoTest(testRun, testRun.getTestCase(), testClass, testSuite);
+			Assert.fail("The rule is not valid.");
+		} catch (TestException e) {
+		}
+		Assert.assertNull(test.current, "doTest not run.");
+	}
+
+	private static TestClass testClass (long id) {
+		TestClass testClass = new TestClass ("class "+id, "1.0", "com.example.Class"+id, null, true, null);
+		testClass.setId(id);
+		return testClass;
+	}
+
+	private static TestRun testRun (TestClass testClass) {
+		TestCase testCase = new TestCase ("case", "1.0", true, testClass);
+		TestRun testRun = new TestRun (null, null, true, testCase, null);
+		testRun.setId(1L);
+		return testRun;
+	}
+
+	/**
+	 * Record the current readiness rule in doTest.
+	 */
+	static class RecordingTest extends TestNGClassBase {
+		NavigationReadiness current;
+
+		RecordingTest () throws Exception {
+		}
+
+		@Override
+		public void doTest (TestRun testRun, TestCase testCase, TestClass testClass,
+			TestSuite testSuite) throws Exception {
+			current = NavigationReadiness.getCurrent();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.echostar.gopher.testng;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.echostar.gopher.persist.GopherData;
+import com.echostar.gopher.persist.Suite;
+import com.echostar.gopher.persist.TestClass;
+import com.echostar.gopher.persist.TestSuite;
+
+/**
+ * Test the suite files {@link TestNGSuiteWriter TestNGSuiteWriter} writes,
+ * with a GopherData that has no decorators instead of a database.
+ */
+public class TestNGSuiteWriter_Test {
+
+	@Test
+	public static void testShards () throws Exception {
+
+		Suite suite = new Suite ("Nightly", "1.0", null, true, new ArrayList<TestSuite>(Arrays.asList(
+			testSuite ("Login_Suite"), testSuite (TestNGSuiteWriter.SHUTDOWN_GRID_SUITE),
+			testSuite (TestNGSuiteWriter.STARTUP_GRID_SUITE), testSuite ("Search_Suite"))));
+
+		File dir = Files.createTempDirectory("TestNGSuiteWriter_Test").toFile();
+		try {
+			TestNGSuiteWriter writer = new TestNGSuiteWriter (dir.getPath(), noDecorators ());
+
+			writer.writeSuiteFile(suite, null, 1);
+			Assert.assertEquals(suiteFiles (new File (dir, "Nightly.xml")), Arrays.asList(
+				"StartupGrid_Suite.xml", "Login_Suite.xml", "Search_Suite.xml", "ShutdownGrid_Suite.xml"),
+				"Not sharded, the grid starts first and stops last.");
+
+			writer.writeSuiteFile(suite, null, 2);
+			for (int shardIndex = 0; shardIndex < 2; shardIndex++) {
+				Assert.assertEquals(suiteFiles (new File (dir, "Nightly_shard"+shardIndex+".xml")),
+					Arrays.asList("Login_Suite.xml", "Search_Suite.xml"), "A shard neither starts nor stops the grid.");
+			}
+			Assert.assertEquals(suiteFiles (new File (dir, "Nightly_gridStartup.xml")),
+				Arrays.asList("StartupGrid_Suite.xml"));
+			Assert.assertEquals(suiteFiles (new File (dir, "Nightly_gridShutdown.xml")),
+				Arrays.asList("ShutdownGrid_Suite.xml"));
+		} finally {
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	private static TestSuite testSuite (String name) {
+		return new TestSuite (name, "1.0", null, true, new ArrayList<TestClass>());
+	}
+
+	private static List<String> suiteFiles (File file) throws Exception {
+		String xml = new String (Files.readAllBytes(file.toPath()), "UTF-8");
+		List<String> paths = new ArrayList<String>();
+		Matcher matcher = Pattern.compile("<suite-file path=\"([^\"]*)\"").matcher(xml);
+		while (matcher.find()) {
+			paths.add(matcher.group(1));
+		}
+		return paths;
+	}
+
+	/**
+	 * A GopherData finding no decorators.
+	 */
+	private static GopherData noDecorators () {
+		return (GopherData) Proxy.newProxyInstance(GopherData.class.getClassLoader(),
+			new Class<?>[] {GopherData.class}, new InvocationHandler () {
+				public Object invoke (Object proxy, Method method, Object[] args) {
+					if (method.getReturnType() == List.class) {
+						return new ArrayList<Object>();
+					}
+					return null;
+				}
+			});
+	}
+}
@@ -0,0 +1,91 @@
+package com.echostar.gopher.testng;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.echostar.gopher.persist.BrowserEnum;
+import com.echostar.gopher.persist.TestRun;
+
+/**
+ * Test {@link TestRunDurations TestRunDurations} without a database.
+ */
+public class TestRunDurations_Test {
+
+	@Test
+	public static void testEstimate () throws Exception {
+
+		Map<Long, List<Long>> durations = new HashMap<Long, List<Long>>();
+		durations.put(1L, Arrays.asList(1000L));
+		// Newest first: 2000 is the latest.
+		durations.put(2L, Arrays.asList(2000L, 1000L));
+		durations.put(3L, Arrays.asList(1000L, 1000L, 1000000L));
+		durations.put(4L, new ArrayList<Long>());
+
+		Map<Long, Long> expected = TestRunDurations.estimate(durations, 2, 30);
+		Assert.assertEquals(expected.get(1L), Long.valueOf(1000));
+		Assert.assertEquals(expected.get(2L), Long.valueOf(1300));
+		Assert.assertEquals(expected.get(3L), Long.valueOf(1000), "Only the latest 2 count.");
+		Assert.assertFalse(expected.containsKey(4L));
+	}
+
+	@Test
+	public static void testLongestFirst () throws Exception {
+
+		Map<Long, Long> expected = new HashMap<Long, Long>();
+		expected.put(1L, 1000L);
+		expected.put(2L, 5000L);
+		expected.put(3L, 3000L);
+		TestRunDurations durations = new TestRunDurations (expected, 60000);
+
+		List<TestRun> testRuns = Arrays.asList(testRun (1), testRun (2), testRun (3), testRun (4));
+		Assert.assertEquals(durations.getExpected(testRuns.get(3)), -1);
+		List<TestRun> ordered = durations.longestFirst(testRuns);
+		Assert.assertEquals(ids (ordered), Arrays.asList(2L, 3L, 4L, 1L));
+		Assert.assertEquals(durations.getExpected(testRuns.get(3)), 3000, "The mean of the others.");
+
+		// Without results at all the default is expected, and the order is kept.
+		List<TestRun> unknown = Arrays.asList(testRun (5), testRun (6));
+		Assert.assertEquals(ids (durations.longestFirst(unknown)), Arrays.asList(5L, 6L));
+		Assert.assertEquals(durations.getExpected(unknown.get(0)), 60000);
+	}
+
+	@Test
+	public static void testMakespan () throws Exception {
+
+		List<Long> durations = Arrays.asList(2L, 3L, 4L, 6L, 5L, 7L);
+		// 7+2, 6+3, 5+4 on 3 workers.
+		Assert.assertEquals(TestRunDurations.makespan(durations, 3), 9);
+		Assert.assertEquals(TestRunDurations.makespan(durations, 1), 27);
+		Assert.assertEquals(TestRunDurations.makespan(new ArrayList<Long>(), 2), 0);
+
+		Map<Long, Long> expected = new HashMap<Long, Long>();
+		expected.put(1L, 100L);
+		TestRunDurations testRunDurations = new TestRunDurations (expected, 60000);
+		Assert.assertEquals(testRunDurations.getMakespanReport(), "No TestRuns recorded.");
+		testRunDurations.record(testRun (1), new Date(1000), new Date(1150));
+		testRunDurations.record(testRun (2), new Date(1100), new Date(1200));
+		String report = testRunDurations.getMakespanReport();
+		Assert.assertTrue(report.startsWith("Expected makespan 100 ms, actual 200 ms, for 2 TestRuns on 1 threads (1 not ordered"), report);
+	}
+
+	private static TestRun testRun (long id) {
+		TestRun testRun = new TestRun (null, BrowserEnum.FIREFOX, true, null, null);
+		testRun.setId(id);
+		return testRun;
+	}
+
+	private static List<Long> ids (List<TestRun> testRuns) {
+		List<Long> ids = new ArrayList<Long>();
+		for (TestRun testRun : testRuns) {
+			ids.add(testRun.getId());
+		}
+		return ids;
+	}
+}
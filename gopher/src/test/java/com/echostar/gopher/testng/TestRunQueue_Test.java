@@ -0,0 +1,219 @@
+package com.echostar.gopher.testng;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.echostar.gopher.persist.BrowserEnum;
+import com.echostar.gopher.persist.TestRun;
+
+/**
+ * Test {@link TestRunQueue TestRunQueue} without a database,
+ * with the queue table in memory and executors on threads.
+ */
+public class TestRunQueue_Test {
+
+	private static final Long SUITE_INSTANCE_ID = 7L;
+
+	@Test
+	public static void testExecutors () throws Exception {
+
+		final MemoryStore store = new MemoryStore ();
+		final Map<Long, Object[]> rows = rows (40);
+		final Map<Long, Integer> runs = Collections.synchronizedMap(new HashMap<Long, Integer>());
+		final List<String> owners = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch started = new CountDownLatch(5);
+
+		List<Thread> executors = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++) {
+			final TestRunQueue queue = new TestRunQueue (store, "executor"+i, 3, 60000);
+			Thread executor = new Thread("executor"+i) {
+				@Override
+				public void run () {
+					try {
+						// The last executor joins mid-suite.
+						if (getName().equals("executor3")) {
+							started.await();
+						}
+						Iterator<Object[]> pulled = queue.pull(SUITE_INSTANCE_ID, rows);
+						while (pulled.hasNext()) {
+							TestRun testRun = (TestRun) pulled.next()[0];
+							Integer count = runs.get(testRun.getId());
+							runs.put(testRun.getId(), count == null ? 1 : count + 1);
+							owners.add(getName());
+							started.countDown();
+							Thread.sleep(2);
+							queue.complete(SUITE_INSTANCE_ID, testRun);
+						}
+					} catch (Exception e) {
+						throw new RuntimeException (e);
+					}
+				}
+			};
+			executors.add(executor);
+			executor.start();
+		}
+		for (Thread executor : executors) {
+			executor.join();
+		}
+
+		Assert.assertEquals(runs.size(), rows.size(), "Every TestRun ran.");
+		for (Integer count : runs.values()) {
+			Assert.assertEquals(count, Integer.valueOf(1), "No TestRun ran twice.");
+		}
+		Assert.assertTrue(owners.contains("executor3"), "The executor joining late took work.");
+		Assert.assertEquals(store.queue.size(), rows.size(), "Every executor queued the same TestRuns once.");
+		for (Entry entry : store.queue.values()) {
+			Assert.assertTrue(entry.done);
+		}
+	}
+
+	@Test
+	public static void testLeaseExpiry () throws Exception {
+
+		MemoryStore store = new MemoryStore ();
+		Map<Long, Object[]> rows = rows (4);
+
+		// The first executor claims two TestRuns, runs one and dies.
+		TestRunQueue crashed = new TestRunQueue (store, "crashed", 2, 50);
+		Iterator<Object[]> pulled = crashed.pull(SUITE_INSTANCE_ID, rows);
+		crashed.complete(SUITE_INSTANCE_ID, (TestRun) pulled.next()[0]);
+
+		// Before the lease expires the second TestRun is not claimed again.
+		TestRunQueue survivor = new TestRunQueue (store, "survivor", 10, 60000);
+		List<Long> ran = drain (survivor.pull(SUITE_INSTANCE_ID, rows), survivor);
+		Assert.assertEquals(ran, Arrays.asList(3L, 4L));
+
+		Thread.sleep(100);
+		ran = drain (survivor.pull(SUITE_INSTANCE_ID, rows), survivor);
+		Assert.assertEquals(ran, Arrays.asList(2L), "The expired lease is claimed by the survivor.");
+		Assert.assertEquals(store.queue.get(2L).claims, 2);
+
+		// The late complete of the dead executor is refused.
+		crashed.complete(SUITE_INSTANCE_ID, (TestRun) rows.get(2L)[0]);
+		Assert.assertEquals(store.queue.get(2L).owner, "survivor");
+	}
+
+	@Test
+	public static void testRenewAndRelease () throws Exception {
+
+		MemoryStore store = new MemoryStore ();
+		Map<Long, Object[]> rows = rows (3);
+
+		TestRunQueue owner = new TestRunQueue (store, "owner", 3, 200);
+		Iterator<Object[]> pulled = owner.pull(SUITE_INSTANCE_ID, rows);
+		Assert.assertTrue(pulled.hasNext());
+
+		// Renewed leases do not expire.
+		Thread.sleep(120);
+		owner.renew();
+		Thread.sleep(120);
+		TestRunQueue other = new TestRunQueue (store, "other", 3, 60000);
+		Assert.assertEquals(drain (other.pull(SUITE_INSTANCE_ID, rows), other).size(), 0);
+
+		// Released TestRuns are claimed at once.
+		owner.release();
+		Assert.assertEquals(drain (other.pull(SUITE_INSTANCE_ID, rows), other), Arrays.asList(1L, 2L, 3L));
+	}
+
+	private static List<Long> drain (Iterator<Object[]> pulled, TestRunQueue queue) {
+		List<Long> ran = new ArrayList<Long>();
+		while (pulled.hasNext()) {
+			TestRun testRun = (TestRun) pulled.next()[0];
+			ran.add(testRun.getId());
+			queue.complete(SUITE_INSTANCE_ID, testRun);
+		}
+		return ran;
+	}
+
+	private static Map<Long, Object[]> rows (int count) {
+		Map<Long, Object[]> rows = new LinkedHashMap<Long, Object[]>();
+		for (long id = 1; id <= count; id++) {
+			TestRun testRun = new TestRun (null, BrowserEnum.FIREFOX, true, null, null);
+			testRun.setId(id);
+			rows.put(id, new Object[] {testRun, null, null, null});
+		}
+		return rows;
+	}
+
+	private static class Entry {
+		String	owner;
+		long	leaseUntil;
+		boolean	done;
+		int		claims;
+	}
+
+	/**
+	 * The queue table of one SuiteInstance, with the semantics of the database queries.
+	 */
+	private static class MemoryStore implements TestRunQueue.Store {
+
+		// Map of TestRun id to its entry, in queue order.
+		final Map<Long, Entry> queue = new LinkedHashMap<Long, Entry>();
+
+		public synchronized void enqueue (Long suiteInstanceId, List<Long> testRunIds) {
+			for (Long testRunId : testRunIds) {
+				if (!queue.containsKey(testRunId)) {
+					queue.put(testRunId, new Entry ());
+				}
+			}
+		}
+
+		public synchronized List<Long> claim (Long suiteInstanceId, Collection<Long> testRunIds,
+			String owner, int max, long now, long leaseUntil) {
+			List<Long> claimed = new ArrayList<Long>();
+			for (Map.Entry<Long, Entry> e : queue.entrySet()) {
+				Entry entry = e.getValue();
+				if (claimed.size() < max && testRunIds.contains(e.getKey()) && !entry.done &&
+					(entry.owner == null || entry.leaseUntil < now)) {
+					entry.owner = owner;
+					entry.leaseUntil = leaseUntil;
+					entry.claims++;
+					claimed.add(e.getKey());
+				}
+			}
+			return claimed;
+		}
+
+		public synchronized int renew (String owner, long leaseUntil) {
+			int renewed = 0;
+			for (Entry entry : queue.values()) {
+				if (owner.equals(entry.owner) && !entry.done) {
+					entry.leaseUntil = leaseUntil;
+					renewed++;
+				}
+			}
+			return renewed;
+		}
+
+		public synchronized boolean complete (Long suiteInstanceId, Long testRunId, String owner) {
+			Entry entry = queue.get(testRunId);
+			if (entry == null || !owner.equals(entry.owner)) {
+				return false;
+			}
+			entry.done = true;
+			return true;
+		}
+
+		public synchronized int release (String owner) {
+			int released = 0;
+			for (Entry entry : queue.values()) {
+				if (owner.equals(entry.owner) && !entry.done) {
+					entry.owner = null;
+					released++;
+				}
+			}
+			return released;
+		}
+	}
+}
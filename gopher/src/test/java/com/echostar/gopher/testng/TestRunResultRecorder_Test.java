@@ -0,0 +1,152 @@
+package com.echostar.gopher.testng;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.echostar.gopher.testng.TestRunResultRecorder.PendingResult;
+
+/**
+ * Test {@link TestRunResultRecorder TestRunResultRecorder} batching and draining
+ * with a writeBatch that records what it is given instead of using a database.
+ */
+public class TestRunResultRecorder_Test {
+
+	@Test
+	public static void testBatching () throws Exception {
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<List<Long>> batches = Collections.synchronizedList(new ArrayList<List<Long>>());
+		TestRunResultRecorder recorder = new TestRunResultRecorder (100, 3, 10000) {
+			@Override
+			void writeBatch (List<PendingResult> batch) throws Exception {
+				started.countDown();
+				release.await();
+				batches.add(ids (batch));
+			}
+		};
+		recorder.start();
+
+		// The writer holds the first result while the rest queue up.
+		record (recorder, 0);
+		Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+		for (long id = 1; id <= 7; id++) {
+			record (recorder, id);
+		}
+		release.countDown();
+		Assert.assertTrue(recorder.drain(), "Every result written.");
+
+		List<Long> written = new ArrayList<Long>();
+		for (List<Long> batch : batches) {
+			Assert.assertTrue(batch.size() <= 3, "Batch "+batch+" within the batch size.");
+			written.addAll(batch);
+		}
+		Assert.assertEquals(batches.get(0).size(), 1);
+		Assert.assertEquals(batches.size(), 4, "Batches "+batches);
+		Assert.assertEquals(written, ids (0, 8), "Written once each, in order.");
+	}
+
+	@Test
+	public static void testFallback () throws Exception {
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<List<Long>> batches = Collections.synchronizedList(new ArrayList<List<Long>>());
+		TestRunResultRecorder recorder = new TestRunResultRecorder (100, 10, 10000) {
+			@Override
+			void writeBatch (List<PendingResult> batch) throws Exception {
+				started.countDown();
+				release.await();
+				batches.add(ids (batch));
+				if (batch.size() > 1 || batch.get(0).testRunId == 3L) {
+					throw new Exception ("Batch of "+batch.size()+" failed.");
+				}
+			}
+		};
+		recorder.start();
+
+		record (recorder, 0);
+		Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+		for (long id = 1; id <= 5; id++) {
+			record (recorder, id);
+		}
+		release.countDown();
+		Assert.assertTrue(recorder.drain(), "A failed result is not left pending.");
+
+		// The first alone, then a batch of the rest that fails and is retried one at a time.
+		Assert.assertEquals(batches.get(0), ids (0, 1));
+		Assert.assertEquals(batches.get(1), ids (1, 6));
+		for (int i = 2; i < batches.size(); i++) {
+			Assert.assertEquals(batches.get(i).size(), 1);
+			Assert.assertEquals(batches.get(i).get(0), Long.valueOf(i - 1));
+		}
+		Assert.assertEquals(batches.size(), 7);
+	}
+
+	@Test
+	public static void testDrainTimeout () throws Exception {
+
+		final CountDownLatch release = new CountDownLatch(1);
+		TestRunResultRecorder recorder = new TestRunResultRecorder (100, 10, 200) {
+			@Override
+			void writeBatch (List<PendingResult> batch) throws Exception {
+				release.await();
+			}
+		};
+		recorder.start();
+
+		record (recorder, 0);
+		long start = System.currentTimeMillis();
+		Assert.assertFalse(recorder.drain(), "The writer is stuck.");
+		long elapsed = System.currentTimeMillis() - start;
+		Assert.assertTrue(elapsed >= 150 && elapsed < 5000, "Waited "+elapsed+" ms.");
+
+		release.countDown();
+		Assert.assertTrue(recorder.drain(), "Drained once the writer moves.");
+	}
+
+	@Test
+	public static void testTestNode () throws Exception {
+
+		final List<PendingResult> written = Collections.synchronizedList(new ArrayList<PendingResult>());
+		TestRunResultRecorder recorder = new TestRunResultRecorder (100, 3, 10000) {
+			@Override
+			void writeBatch (List<PendingResult> batch) throws Exception {
+				written.addAll(batch);
+			}
+		};
+		recorder.start();
+
+		recorder.record(true, null, null, null, "user", "url", 1L, null, null, null, null, false, 9L);
+		record (recorder, 2);
+		Assert.assertTrue(recorder.drain());
+		Assert.assertEquals(written.get(0).testNodeId, Long.valueOf(9), "The leased TestNode is kept.");
+		Assert.assertNull(written.get(1).testNodeId);
+	}
+
+	private static void record (TestRunResultRecorder recorder, long testRunId) throws Exception {
+		recorder.record(true, null, null, null, "user", "url", testRunId, null, null, null);
+	}
+
+	private static List<Long> ids (List<PendingResult> batch) {
+		List<Long> ids = new ArrayList<Long>();
+		for (PendingResult pending : batch) {
+			ids.add(pending.testRunId);
+		}
+		return ids;
+	}
+
+	private static List<Long> ids (long from, long to) {
+		List<Long> ids = new ArrayList<Long>();
+		for (long id = from; id < to; id++) {
+			ids.add(id);
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,222 @@
+package com.echostar.gopher.testng;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.echostar.gopher.persist.Browser;
+import com.echostar.gopher.persist.BrowserEnum;
+import com.echostar.gopher.persist.PlatformEnum;
+import com.echostar.gopher.persist.TestNode;
+import com.echostar.gopher.persist.TestRun;
+
+/**
+ * Test {@link TestRunScheduler TestRunScheduler} without a database or nodes.
+ */
+public class TestRunScheduler_Test {
+
+	@Test
+	public static void testParseSlots () throws Exception {
+
+		List<Browser> browsers = Arrays.asList(new Browser ("firefox", BrowserEnum.FIREFOX),
+			new Browser ("chrome", BrowserEnum.CHROME), new Browser ("iexplore", BrowserEnum.IEXPLORE));
+		Map<BrowserEnum, Integer> slots = TestRunScheduler.parseSlots("firefox=3, CHROME=2", browsers, 1);
+		Assert.assertEquals(slots.get(BrowserEnum.FIREFOX), Integer.valueOf(3));
+		Assert.assertEquals(slots.get(BrowserEnum.CHROME), Integer.valueOf(2));
+		Assert.assertEquals(slots.get(BrowserEnum.IEXPLORE), Integer.valueOf(1));
+		Assert.assertNull(slots.get(BrowserEnum.SAFARI));
+		Assert.assertEquals(TestRunScheduler.parseSlots(null, browsers, 4).get(BrowserEnum.CHROME), Integer.valueOf(4));
+
+		for (String spec : new String[] {"firefox", "opera=1", "firefox=many"}) {
+			try {
+				TestRunScheduler.parseSlots(spec, browsers, 1);
+				Assert.fail("Accepted '"+spec+"'.");
+			} catch (Exception e) {
+				// Expected.
+			}
+		}
+	}
+
+	@Test
+	public static void testPlan () throws Exception {
+
+		TestNode big = testNode (1, PlatformEnum.WIN7, "firefox=3");
+		TestNode small = testNode (2, PlatformEnum.WIN7, "firefox=1");
+		TestNode mac = testNode (3, PlatformEnum.OSX10_10, "firefox=10");
+		TestRunScheduler scheduler = new TestRunScheduler (1, 1000, null);
+		scheduler.configure(Arrays.asList(big, small, mac));
+
+		List<TestRun> testRuns = new ArrayList<TestRun>();
+		for (int i = 0; i < 8; i++) {
+			testRuns.add(testRun (i, small));
+		}
+		TestRun chrome = testRun (8, big);
+		chrome.setBrowser(BrowserEnum.CHROME);
+		testRuns.add(chrome);
+
+		List<TestRun> ordered = scheduler.plan(testRuns);
+		Assert.assertEquals(ordered.size(), testRuns.size());
+		Assert.assertSame(ordered.get(ordered.size() - 1), chrome, "No node runs chrome.");
+
+		// Three to one, taking from each node in turn.
+		long[] expected = {0, 3, 1, 7, 2, 4, 5, 6};
+		for (int i = 0; i < expected.length; i++) {
+			Assert.assertEquals(ordered.get(i).getId(), Long.valueOf(expected[i]), "Order "+ordered);
+		}
+		Assert.assertSame(scheduler.acquire(ordered.get(0)).getTestNode(), big);
+		Assert.assertSame(scheduler.acquire(ordered.get(1)).getTestNode(), small);
+		Assert.assertSame(scheduler.acquire(ordered.get(2)).getTestNode(), big);
+		Assert.assertNull(scheduler.acquire(chrome));
+	}
+
+	@Test
+	public static void testSteal () throws Exception {
+
+		TestNode a = testNode (1, PlatformEnum.WIN7, null);
+		TestNode b = testNode (2, PlatformEnum.WIN7, null);
+		TestRunScheduler scheduler = new TestRunScheduler (1, 200, null);
+		scheduler.configure(Arrays.asList(a, b));
+
+		List<TestRun> testRuns = new ArrayList<TestRun>();
+		for (int i = 0; i < 4; i++) {
+			testRuns.add(testRun (i, a));
+		}
+		scheduler.plan(testRuns);
+
+		TestRunScheduler.Lease lease0 = scheduler.acquire(testRuns.get(0));
+		TestRunScheduler.Lease lease1 = scheduler.acquire(testRuns.get(1));
+		Assert.assertSame(lease0.getTestNode(), a);
+		Assert.assertSame(lease1.getTestNode(), b);
+
+		// b is free but has work queued, so nothing is stolen and the wait times out.
+		lease1.release();
+		long start = System.currentTimeMillis();
+		Assert.assertNull(scheduler.acquire(testRuns.get(2)));
+		Assert.assertTrue(System.currentTimeMillis() - start >= 200);
+
+		// b drains its queue, then steals from a.
+		TestRunScheduler.Lease lease3 = scheduler.acquire(testRuns.get(3));
+		Assert.assertSame(lease3.getTestNode(), b);
+		TestRun late = testRun (4, a);
+		scheduler.plan(Arrays.asList(late));
+		lease3.release();
+		lease3.release();
+		TestRunScheduler.Lease stolen = scheduler.acquire(late);
+		Assert.assertNotNull(stolen);
+		Assert.assertSame(stolen.getTestNode(), b, scheduler.getStatus());
+		Assert.assertTrue(stolen.isStolen());
+		Assert.assertTrue(scheduler.getStatus().contains("steals=1"), scheduler.getStatus());
+		stolen.release();
+		lease0.release();
+	}
+
+	@Test
+	public static void testUnplan () throws Exception {
+
+		TestNode a = testNode (1, PlatformEnum.WIN7, null);
+		TestNode b = testNode (2, PlatformEnum.WIN7, null);
+		TestRunScheduler scheduler = new TestRunScheduler (1, 200, null);
+		scheduler.configure(Arrays.asList(a, b));
+
+		List<TestRun> testRuns = new ArrayList<TestRun>();
+		for (int i = 0; i < 4; i++) {
+			testRuns.add(testRun (i, a));
+		}
+		List<TestRun> ordered = scheduler.plan(testRuns);
+		TestRunScheduler.Lease lease0 = scheduler.acquire(ordered.get(0));
+		Assert.assertSame(lease0.getTestNode(), a);
+
+		// b's TestRuns are skipped, so b steals a's next TestRun instead of waiting for them.
+		scheduler.unplan(ordered.get(1));
+		scheduler.unplan(ordered.get(3));
+		scheduler.unplan(ordered.get(3));
+		TestRunScheduler.Lease stolen = scheduler.acquire(ordered.get(2));
+		Assert.assertNotNull(stolen, scheduler.getStatus());
+		Assert.assertSame(stolen.getTestNode(), b);
+		Assert.assertTrue(stolen.isStolen());
+		Assert.assertFalse(isQueued (scheduler), "Nothing queued. "+scheduler.getStatus());
+		stolen.release();
+		lease0.release();
+	}
+
+	@Test
+	public static void testOrder () throws Exception {
+
+		TestNode a = testNode (1, PlatformEnum.WIN7, null);
+		TestNode b = testNode (2, PlatformEnum.WIN7, null);
+		TestRunScheduler scheduler = new TestRunScheduler (1, 200, null);
+		scheduler.configure(Arrays.asList(a, b));
+
+		List<TestRun> testRuns = new ArrayList<TestRun>();
+		for (int i = 0; i < 4; i++) {
+			testRuns.add(testRun (i, a));
+		}
+		List<TestRun> ordered = scheduler.order(testRuns);
+		Assert.assertEquals(ordered, scheduler.plan(testRuns), "Ordered as planned.");
+		for (TestRun testRun : testRuns) {
+			scheduler.unplan(testRun);
+		}
+		scheduler.order(testRuns);
+		Assert.assertFalse(isQueued (scheduler), "Nothing queued. "+scheduler.getStatus());
+
+		// Another executor claimed the TestRuns before these, so these take any free slot.
+		TestRunScheduler.Lease lease2 = scheduler.acquire(ordered.get(2));
+		TestRunScheduler.Lease lease3 = scheduler.acquire(ordered.get(3));
+		Assert.assertNotSame(lease2.getTestNode(), lease3.getTestNode());
+		Assert.assertFalse(lease2.isStolen());
+		lease2.release();
+		lease3.release();
+	}
+
+	@Test
+	public static void testWaitForRelease () throws Exception {
+
+		TestNode a = testNode (1, PlatformEnum.WIN7, null);
+		final TestRunScheduler scheduler = new TestRunScheduler (1, 10000, null);
+		scheduler.configure(Arrays.asList(a));
+		final List<TestRun> testRuns = Arrays.asList(testRun (0, a), testRun (1, a));
+		scheduler.plan(testRuns);
+
+		TestRunScheduler.Lease first = scheduler.acquire(testRuns.get(0));
+		final TestRunScheduler.Lease[] second = new TestRunScheduler.Lease[1];
+		Thread waiter = new Thread() {
+			@Override
+			public void run () {
+				try {
+					second[0] = scheduler.acquire(testRuns.get(1));
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		};
+		waiter.start();
+		Thread.sleep(100);
+		Assert.assertNull(second[0], "Did not wait.");
+		first.release();
+		waiter.join(5000);
+		Assert.assertNotNull(second[0]);
+		Assert.assertSame(second[0].getTestNode(), a);
+	}
+
+	private static boolean isQueued (TestRunScheduler scheduler) {
+		return scheduler.getStatus().matches("(?s).*queued=\\{FIREFOX=[1-9].*");
+	}
+
+	private static TestNode testNode (long id, PlatformEnum platform, String slots) {
+		TestNode testNode = new TestNode (platform, "127.0.0."+id, "5555", "user", "pw", "C:\\grid", "selenium.jar");
+		testNode.setId(id);
+		testNode.setSlots(slots);
+		testNode.addBrowser(new Browser ("firefox", BrowserEnum.FIREFOX));
+		return testNode;
+	}
+
+	private static TestRun testRun (long id, TestNode testNode) {
+		TestRun testRun = new TestRun (null, BrowserEnum.FIREFOX, true, null, testNode);
+		testRun.setId(id);
+		return testRun;
+	}
+}